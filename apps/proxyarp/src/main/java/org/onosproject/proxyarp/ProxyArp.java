@@ -25,6 +25,7 @@ import org.apache.felix.scr.annotations.ReferenceCardinality;
 import org.onlab.packet.Ethernet;
 import org.onlab.packet.ICMP6;
 import org.onlab.packet.IPv6;
+import org.onlab.packet.PacketView;
 import org.onlab.util.Tools;
 import org.onosproject.cfg.ComponentConfigService;
 import org.onosproject.core.ApplicationId;
@@ -200,16 +201,20 @@ public class ProxyArp {
                 return;
             }
 
+            // Look at the EtherType first; only IPv6 packets need parsing
             InboundPacket pkt = context.inPacket();
-            Ethernet ethPkt = pkt.parsed();
-            if (ethPkt == null) {
-                return;
-            }
+            PacketView view = pkt.view();
+            short etherType = view.etherType();
 
-            if (ethPkt.getEtherType() == TYPE_ARP) {
+            if (etherType == TYPE_ARP) {
                 //handle the arp packet.
                 proxyArpService.handlePacket(context);
-            } else if (ipv6NeighborDiscovery && ethPkt.getEtherType() == TYPE_IPV6) {
+            } else if (ipv6NeighborDiscovery && etherType == TYPE_IPV6 &&
+                    view.ipProtocol() == PROTOCOL_ICMP6) {
+                Ethernet ethPkt = pkt.parsed();
+                if (ethPkt == null) {
+                    return;
+                }
                 IPv6 ipv6Pkt = (IPv6) ethPkt.getPayload();
                 if (ipv6Pkt.getNextHeader() == IPv6.PROTOCOL_ICMP6) {
                     ICMP6 icmp6Pkt = (ICMP6) ipv6Pkt.getPayload();
@@ -223,8 +228,8 @@ public class ProxyArp {
 
             // FIXME why were we listening to IPv4 frames at all?
             // Do not ARP for multicast packets.  Let mfwd handle them.
-            if (ethPkt.getEtherType() == Ethernet.TYPE_IPV4) {
-                if (ethPkt.getDestinationMAC().isMulticast()) {
+            if (etherType == Ethernet.TYPE_IPV4) {
+                if (view.destinationMac().isMulticast()) {
                     return;
                 }
             }
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.distributedprimitives.cli;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.karaf.shell.commands.Argument;
+import org.apache.karaf.shell.commands.Command;
+import org.onosproject.cli.AbstractShellCommand;
+import org.onosproject.store.serializers.KryoNamespaces;
+import org.onosproject.store.service.AsyncConsistentMap;
+import org.onosproject.store.service.Serializer;
+import org.onosproject.store.service.StorageService;
+
+/**
+ * CLI command to compare per-key and batched consistent map operations.
+ */
+@Command(scope = "onos", name = "map-batch-test",
+        description = "Compare per-key and batched consistent map operations")
+public class ConsistentMapBatchTestCommand extends AbstractShellCommand {
+
+    private static final String FORMAT = "%-10s %10d ms %12.0f ops/s";
+
+    @Argument(index = 0, name = "name",
+            description = "map name",
+            required = true, multiValued = false)
+    String name = null;
+
+    @Argument(index = 1, name = "count",
+            description = "number of keys",
+            required = false, multiValued = false)
+    int count = 10000;
+
+    @Override
+    protected void execute() {
+        StorageService storageService = get(StorageService.class);
+        AsyncConsistentMap<String, String> map = storageService.<String, String>consistentMapBuilder()
+                .withName(name)
+                .withSerializer(Serializer.using(KryoNamespaces.BASIC))
+                .buildAsyncMap();
+
+        Set<String> keys = IntStream.range(0, count)
+                .mapToObj(i -> "key" + i)
+                .collect(Collectors.toSet());
+        Map<String, String> entries = keys.stream()
+                .collect(Collectors.toMap(key -> key, key -> "value"));
+
+        run("put", () -> CompletableFuture.allOf(entries.entrySet()
+                                                         .stream()
+                                                         .map(e -> map.put(e.getKey(), e.getValue()))
+                                                         .toArray(CompletableFuture[]::new)));
+        run("get", () -> CompletableFuture.allOf(keys.stream()
+                                                      .map(map::get)
+                                                      .toArray(CompletableFuture[]::new)));
+        run("remove", () -> CompletableFuture.allOf(keys.stream()
+                                                         .map(map::remove)
+                                                         .toArray(CompletableFuture[]::new)));
+        run("putAll", () -> map.putAll(entries));
+        run("getAll", () -> map.getAll(keys));
+        run("removeAll", () -> map.removeAll(keys));
+    }
+
+    private void run(String operation, Supplier<CompletableFuture<?>> test) {
+        long start = System.nanoTime();
+        test.get().join();
+        long elapsed = System.nanoTime() - start;
+        print(FORMAT, operation, elapsed / 1_000_000, count * 1e9 / elapsed);
+    }
+}
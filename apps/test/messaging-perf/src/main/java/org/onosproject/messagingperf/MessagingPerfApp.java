@@ -21,6 +21,11 @@ import static org.onlab.util.Tools.get;
 import static org.onlab.util.Tools.groupedThreads;
 import static org.slf4j.LoggerFactory.getLogger;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Dictionary;
 import java.util.List;
 import java.util.Objects;
@@ -32,6 +37,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import java.util.stream.IntStream;
 
@@ -47,10 +53,13 @@ import org.onlab.util.BoundedThreadPool;
 import org.onlab.util.KryoNamespace;
 import org.onosproject.cfg.ComponentConfigService;
 import org.onosproject.cluster.ClusterService;
+import org.onosproject.cluster.ControllerNode;
 import org.onosproject.cluster.NodeId;
 import org.onosproject.core.CoreService;
 import org.onosproject.store.cluster.messaging.ClusterCommunicationService;
+import org.onosproject.store.cluster.messaging.Endpoint;
 import org.onosproject.store.cluster.messaging.MessageSubject;
+import org.onosproject.store.cluster.messaging.MessagingService;
 import org.onosproject.store.serializers.KryoNamespaces;
 import org.onosproject.store.serializers.KryoSerializer;
 import org.osgi.service.component.ComponentContext;
@@ -76,6 +85,9 @@ public class MessagingPerfApp {
     @Reference(cardinality = MANDATORY_UNARY)
     protected ClusterCommunicationService communicationService;
 
+    @Reference(cardinality = MANDATORY_UNARY)
+    protected MessagingService messagingService;
+
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
     protected CoreService coreService;
 
@@ -88,8 +100,15 @@ public class MessagingPerfApp {
     private static final MessageSubject TEST_REQUEST_REPLY_TOPIC =
             new MessageSubject("net-perf-rr-message");
 
+    private static final String TEST_RAW_MESSAGE_TYPE = "net-perf-raw-message";
+
     private static final int DEFAULT_SENDER_THREAD_POOL_SIZE = 2;
     private static final int DEFAULT_RECEIVER_THREAD_POOL_SIZE = 2;
+    private static final int DEFAULT_RAW_PAYLOAD_SIZE = 0;
+
+    // Per-thread allocation counters are a HotSpot extension, looked up
+    // reflectively so that the app runs on any JVM.
+    private static final Method THREAD_ALLOCATED_BYTES = threadAllocatedBytesMethod();
 
     @Property(name = "totalSenderThreads", intValue = DEFAULT_SENDER_THREAD_POOL_SIZE,
             label = "Number of sender threads")
@@ -107,6 +126,16 @@ public class MessagingPerfApp {
             label = "Set this to true to handle message on IO thread")
     private boolean receiveOnIOLoopThread = false;
 
+    @Property(name = "rawPayloadSize", intValue = DEFAULT_RAW_PAYLOAD_SIZE,
+            label = "Size of the payload of one-way raw messages sent directly "
+                    + "through the messaging service; 0 disables them")
+    private int rawPayloadSize = DEFAULT_RAW_PAYLOAD_SIZE;
+
+    @Property(name = "bufferMessagingOn", boolValue = false,
+            label = "Set this to true to send and receive raw messages as buffers "
+                    + "rather than byte arrays")
+    private boolean bufferMessagingOn = false;
+
     protected int reportIntervalSeconds = 1;
 
     private Executor messageReceivingExecutor;
@@ -124,6 +153,13 @@ public class MessagingPerfApp {
     private AtomicInteger attempted = new AtomicInteger(0);
     private AtomicInteger completed = new AtomicInteger(0);
 
+    // Allocation of all threads, used to compare messaging variants
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private final AtomicLong lastAllocatedBytes = new AtomicLong(-1);
+
+    private volatile byte[] rawPayloadBytes = new byte[0];
+    private volatile ByteBuffer rawPayload = ByteBuffer.allocateDirect(0);
+
     protected static final KryoSerializer SERIALIZER = new KryoSerializer() {
         @Override
         protected void setupKryoPool() {
@@ -179,6 +215,8 @@ public class MessagingPerfApp {
             totalReceiverThreads = DEFAULT_RECEIVER_THREAD_POOL_SIZE;
             serializationOn = true;
             receiveOnIOLoopThread = false;
+            rawPayloadSize = DEFAULT_RAW_PAYLOAD_SIZE;
+            bufferMessagingOn = false;
             return;
         }
 
@@ -188,6 +226,8 @@ public class MessagingPerfApp {
         int newTotalReceiverThreads = totalReceiverThreads;
         boolean newSerializationOn = serializationOn;
         boolean newReceiveOnIOLoopThread = receiveOnIOLoopThread;
+        int newRawPayloadSize = rawPayloadSize;
+        boolean newBufferMessagingOn = bufferMessagingOn;
         try {
             String s = get(properties, "totalSenderThreads");
             newTotalSenderThreads = isNullOrEmpty(s)
@@ -205,6 +245,14 @@ public class MessagingPerfApp {
             newReceiveOnIOLoopThread = isNullOrEmpty(s)
                     ? receiveOnIOLoopThread : Boolean.parseBoolean(s.trim());
 
+            s = get(properties, "rawPayloadSize");
+            newRawPayloadSize = isNullOrEmpty(s)
+                    ? rawPayloadSize : Math.max(0, Integer.parseInt(s.trim()));
+
+            s = get(properties, "bufferMessagingOn");
+            newBufferMessagingOn = isNullOrEmpty(s)
+                    ? bufferMessagingOn : Boolean.parseBoolean(s.trim());
+
         } catch (NumberFormatException | ClassCastException e) {
             return;
         }
@@ -212,7 +260,9 @@ public class MessagingPerfApp {
         boolean modified = newTotalSenderThreads != totalSenderThreads ||
                 newTotalReceiverThreads != totalReceiverThreads ||
                 newSerializationOn != serializationOn ||
-                newReceiveOnIOLoopThread != receiveOnIOLoopThread;
+                newReceiveOnIOLoopThread != receiveOnIOLoopThread ||
+                newRawPayloadSize != rawPayloadSize ||
+                newBufferMessagingOn != bufferMessagingOn;
 
         // If nothing has changed, simply return.
         if (!modified) {
@@ -222,6 +272,8 @@ public class MessagingPerfApp {
         totalSenderThreads = newTotalSenderThreads;
         totalReceiverThreads = newTotalReceiverThreads;
         serializationOn = newSerializationOn;
+        rawPayloadSize = newRawPayloadSize;
+        bufferMessagingOn = newBufferMessagingOn;
         if (!receiveOnIOLoopThread && newReceiveOnIOLoopThread != receiveOnIOLoopThread) {
             ((ExecutorService) messageReceivingExecutor).shutdown();
         }
@@ -251,17 +303,24 @@ public class MessagingPerfApp {
 
     private void logConfig(String prefix) {
         log.info("{} with senderThreadPoolSize = {}; receivingThreadPoolSize = {}"
-                + " serializationOn = {}, receiveOnIOLoopThread = {}",
+                + " serializationOn = {}, receiveOnIOLoopThread = {},"
+                + " rawPayloadSize = {}, bufferMessagingOn = {}",
                  prefix,
                  totalSenderThreads,
                  totalReceiverThreads,
                  serializationOn,
-                 receiveOnIOLoopThread);
+                 receiveOnIOLoopThread,
+                 rawPayloadSize,
+                 bufferMessagingOn);
     }
 
     private void setupCodecs() {
         encoder = serializationOn ? SERIALIZER::encode : d -> dataBytes;
         decoder = serializationOn ? SERIALIZER::decode : b -> data;
+        rawPayloadBytes = new byte[rawPayloadSize];
+        Arrays.fill(rawPayloadBytes, (byte) 1);
+        rawPayload = ByteBuffer.allocateDirect(rawPayloadSize);
+        rawPayload.put(rawPayloadBytes).flip();
     }
 
     private void registerMessageHandlers() {
@@ -277,15 +336,32 @@ public class MessagingPerfApp {
                 Function.identity(),
                 encoder,
                 messageReceivingExecutor);
+
+        if (bufferMessagingOn) {
+            messagingService.registerBufferHandler(
+                    TEST_RAW_MESSAGE_TYPE,
+                    (ep, buffer) -> { received.incrementAndGet(); },
+                    messageReceivingExecutor);
+        } else {
+            messagingService.registerHandler(
+                    TEST_RAW_MESSAGE_TYPE,
+                    (Endpoint ep, byte[] bytes) -> { received.incrementAndGet(); },
+                    messageReceivingExecutor);
+        }
     }
 
     private void unregisterMessageHandlers() {
         communicationService.removeSubscriber(TEST_UNICAST_MESSAGE_TOPIC);
         communicationService.removeSubscriber(TEST_REQUEST_REPLY_TOPIC);
+        messagingService.unregisterHandler(TEST_RAW_MESSAGE_TYPE);
     }
 
     private void startTest() {
         IntStream.range(0, totalSenderThreads).forEach(i -> requestReply());
+        if (rawPayloadSize > 0) {
+            Endpoint peer = rawPeer();
+            IntStream.range(0, totalSenderThreads).forEach(i -> sendRaw(peer));
+        }
     }
 
     private void stopTest() {
@@ -313,6 +389,18 @@ public class MessagingPerfApp {
         }
     }
 
+    private void sendRaw(Endpoint peer) {
+        try {
+            sent.incrementAndGet();
+            CompletableFuture<Void> future = bufferMessagingOn
+                    ? messagingService.sendAsync(peer, TEST_RAW_MESSAGE_TYPE, rawPayload)
+                    : messagingService.sendAsync(peer, TEST_RAW_MESSAGE_TYPE, rawPayloadBytes);
+            future.whenComplete((result, error) -> messageSendingExecutor.submit(() -> sendRaw(peer)));
+        } catch (Exception e) {
+            log.info("sendRaw()", e);
+        }
+    }
+
     private void unicast() {
         try {
             sent.incrementAndGet();
@@ -349,8 +437,48 @@ public class MessagingPerfApp {
                     .id();
     }
 
+    private Endpoint rawPeer() {
+        ControllerNode localNode = clusterService.getLocalNode();
+        ControllerNode peer = clusterService.getNodes()
+                    .stream()
+                    .filter(node -> !localNode.equals(node))
+                    .findAny()
+                    .orElse(localNode);
+        return new Endpoint(peer.ip(), peer.tcpPort());
+    }
+
+    private static Method threadAllocatedBytesMethod() {
+        try {
+            return Class.forName("com.sun.management.ThreadMXBean")
+                    .getMethod("getThreadAllocatedBytes", long[].class);
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private long allocatedBytes() {
+        if (THREAD_ALLOCATED_BYTES == null ||
+                !THREAD_ALLOCATED_BYTES.getDeclaringClass().isInstance(threadMXBean)) {
+            return -1;
+        }
+        try {
+            long[] allocated = (long[]) THREAD_ALLOCATED_BYTES.invoke(threadMXBean,
+                                                                      (Object) threadMXBean.getAllThreadIds());
+            return Arrays.stream(allocated).filter(bytes -> bytes > 0).sum();
+        } catch (ReflectiveOperationException e) {
+            return -1;
+        }
+    }
+
     private void reportPerformance() {
-        log.info("Attempted: {} Completed: {}", attempted.getAndSet(0), completed.getAndSet(0));
+        long allocated = allocatedBytes();
+        long previous = lastAllocatedBytes.getAndSet(allocated);
+        // Threads which exited during the interval may make this an underestimate
+        long allocationRate = allocated < 0 || previous < 0
+                ? -1 : Math.max(0, allocated - previous) / 1024 / reportIntervalSeconds;
+        log.info("Attempted: {} Completed: {} Sent: {} Received: {} Allocated: {} KB/s",
+                 attempted.getAndSet(0), completed.getAndSet(0),
+                 sent.getAndSet(0), received.getAndSet(0), allocationRate);
     }
 
     private static class Data {
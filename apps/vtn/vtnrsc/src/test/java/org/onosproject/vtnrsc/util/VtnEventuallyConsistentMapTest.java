@@ -229,6 +229,11 @@ public final class VtnEventuallyConsistentMapTest<K, V> extends VtnEventuallyCon
             return this;
         }
 
+        @Override
+        public EventuallyConsistentMapBuilder<K, V> withGossip(int fanout) {
+            return this;
+        }
+
         @Override
         public EventuallyConsistentMapBuilder<K, V> withPersistence() {
             return this;
@@ -35,7 +35,7 @@ import static org.onosproject.net.packet.PacketProcessor.DIRECTOR_MAX;
         description = "Lists packet processors")
 public class PacketProcessorsListCommand extends AbstractShellCommand {
 
-    private static final String FMT = "priority=%s, class=%s, packets=%d, avgNanos=%d";
+    private static final String FMT = "priority=%s, class=%s, packets=%d, avgNanos=%d, avgCpuNanos=%d";
 
     @Override
     protected void execute() {
@@ -56,7 +56,8 @@ public class PacketProcessorsListCommand extends AbstractShellCommand {
                     .put("priority", priorityFormat(p.priority()))
                     .put("class", p.processor().getClass().getName())
                     .put("packets", p.invocations())
-                    .put("avgNanos", p.averageNanos()));
+                    .put("avgNanos", p.averageNanos())
+                    .put("avgCpuNanos", p.averageCpuNanos()));
         }
 
         return result;
@@ -65,7 +66,7 @@ public class PacketProcessorsListCommand extends AbstractShellCommand {
     private void print(PacketProcessorEntry entry) {
         print(FMT, priorityFormat(entry.priority()),
               entry.processor().getClass().getName(),
-              entry.invocations(), entry.averageNanos());
+              entry.invocations(), entry.averageNanos(), entry.averageCpuNanos());
     }
 
     private String priorityFormat(int priority) {
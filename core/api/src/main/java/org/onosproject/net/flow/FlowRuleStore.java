@@ -15,7 +15,10 @@
  */
 package org.onosproject.net.flow;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
 
 import org.onosproject.net.DeviceId;
 import org.onosproject.store.Store;
@@ -90,6 +93,34 @@ public interface FlowRuleStore extends Store<FlowRuleBatchEvent, FlowRuleStoreDe
      */
     FlowRuleEvent addOrUpdateFlowRule(FlowEntry rule);
 
+    /**
+     * Stores new flow rules, or updates existing entries, of the given
+     * device as a single operation.
+     *
+     * @param deviceId device identifier
+     * @param rules    the flow rules to add or update
+     * @return events for the entries added or updated
+     */
+    default List<FlowRuleEvent> addOrUpdateFlowRules(DeviceId deviceId,
+                                                     Collection<FlowEntry> rules) {
+        return rules.stream()
+                .map(this::addOrUpdateFlowRule)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Refreshes the life and the last-seen time of existing entries of the
+     * given device, whose statistics are otherwise unchanged, without
+     * generating any events.
+     *
+     * @param deviceId device identifier
+     * @param rules    the flow entries as last reported by the device
+     */
+    default void refreshFlowRules(DeviceId deviceId, Collection<FlowEntry> rules) {
+        addOrUpdateFlowRules(deviceId, rules);
+    }
+
     /**
      * @param rule the flow entry to remove
      * @return flow_removed event, or null if nothing removed
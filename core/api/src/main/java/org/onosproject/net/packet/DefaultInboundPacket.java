@@ -15,12 +15,19 @@
  */
 package org.onosproject.net.packet;
 
+import com.google.common.base.Suppliers;
 import org.onosproject.net.ConnectPoint;
+import org.onlab.packet.DeserializationException;
 import org.onlab.packet.Ethernet;
+import org.onlab.packet.PacketView;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 import static com.google.common.base.MoreObjects.toStringHelper;
 
@@ -30,7 +37,7 @@ import static com.google.common.base.MoreObjects.toStringHelper;
 public final class DefaultInboundPacket implements InboundPacket {
 
     private final ConnectPoint receivedFrom;
-    private final Ethernet parsed;
+    private final Supplier<Ethernet> parsed;
     private final ByteBuffer unparsed;
     private final Optional<Long> cookie;
 
@@ -57,11 +64,37 @@ public final class DefaultInboundPacket implements InboundPacket {
     public DefaultInboundPacket(ConnectPoint receivedFrom, Ethernet parsed,
             ByteBuffer unparsed, Optional<Long> cookie) {
         this.receivedFrom = receivedFrom;
-        this.parsed = parsed;
+        this.parsed = Suppliers.ofInstance(parsed);
         this.unparsed = unparsed;
         this.cookie = cookie;
     }
 
+    /**
+     * Creates an immutable inbound packet with cookie, parsed from the raw
+     * bytes on the first call to {@link #parsed()}.
+     *
+     * @param receivedFrom connection point where received
+     * @param unparsed     unparsed raw bytes
+     * @param cookie       cookie
+     */
+    public DefaultInboundPacket(ConnectPoint receivedFrom, ByteBuffer unparsed,
+                                Optional<Long> cookie) {
+        this.receivedFrom = receivedFrom;
+        this.parsed = Suppliers.memoize(() -> parse(unparsed));
+        this.unparsed = unparsed;
+        this.cookie = cookie;
+    }
+
+    private static Ethernet parse(ByteBuffer unparsed) {
+        try {
+            return PacketView.wrap(unparsed).ethernet();
+        } catch (BufferUnderflowException | DeserializationException e) {
+            Logger log = LoggerFactory.getLogger(DefaultInboundPacket.class);
+            log.error("packet deserialization problem : {}", e.getMessage());
+            return null;
+        }
+    }
+
     @Override
     public ConnectPoint receivedFrom() {
         return receivedFrom;
@@ -69,7 +102,7 @@ public final class DefaultInboundPacket implements InboundPacket {
 
     @Override
     public Ethernet parsed() {
-        return parsed;
+        return parsed.get();
     }
 
     @Override
@@ -85,7 +118,7 @@ public final class DefaultInboundPacket implements InboundPacket {
 
     @Override
     public int hashCode() {
-        return Objects.hash(receivedFrom, parsed, unparsed);
+        return Objects.hash(receivedFrom, unparsed);
     }
 
     @Override
@@ -96,8 +129,8 @@ public final class DefaultInboundPacket implements InboundPacket {
         if (obj instanceof InboundPacket) {
             final DefaultInboundPacket other = (DefaultInboundPacket) obj;
             return Objects.equals(this.receivedFrom, other.receivedFrom) &&
-                    Objects.equals(this.parsed, other.parsed) &&
-                    Objects.equals(this.unparsed, other.unparsed);
+                    Objects.equals(this.unparsed, other.unparsed) &&
+                    Objects.equals(this.parsed(), other.parsed());
         }
         return false;
     }
@@ -106,7 +139,7 @@ public final class DefaultInboundPacket implements InboundPacket {
     public String toString() {
         return toStringHelper(this)
                 .add("receivedFrom", receivedFrom)
-                .add("parsed", parsed)
+                .add("parsed", parsed())
                 .toString();
     }
 }
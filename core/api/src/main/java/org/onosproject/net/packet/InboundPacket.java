@@ -17,6 +17,7 @@ package org.onosproject.net.packet;
 
 import org.onosproject.net.ConnectPoint;
 import org.onlab.packet.Ethernet;
+import org.onlab.packet.PacketView;
 
 import java.nio.ByteBuffer;
 import java.util.Optional;
@@ -41,6 +42,17 @@ public interface InboundPacket {
      */
     Ethernet parsed();
 
+    /**
+     * Returns a view of the packet decoding the header fields on demand,
+     * without parsing the whole packet nor copying it. Cheaper than
+     * {@link #parsed()} for looking up a few header fields.
+     *
+     * @return packet view
+     */
+    default PacketView view() {
+        return PacketView.wrap(unparsed());
+    }
+
     /**
      * Unparsed packet data.
      *
@@ -55,4 +55,22 @@ public interface PacketProcessorEntry {
      * @return average time in nanos
      */
     long averageNanos();
+
+    /**
+     * Returns the total CPU time, in nanoseconds, spent processing packets.
+     *
+     * @return total CPU time in nanos; 0 if not measured
+     */
+    default long totalCpuNanos() {
+        return 0;
+    }
+
+    /**
+     * Returns the average CPU time, in nanoseconds, spent processing packets.
+     *
+     * @return average CPU time in nanos; 0 if not measured
+     */
+    default long averageCpuNanos() {
+        return invocations() > 0 ? totalCpuNanos() / invocations() : 0;
+    }
 }
@@ -21,6 +21,7 @@ import org.onosproject.net.flow.TrafficSelector;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * Service for intercepting data plane packets and for emitting synthetic
@@ -42,7 +43,24 @@ public interface PacketService {
      */
     void addProcessor(PacketProcessor processor, int priority);
 
-    // TODO allow processors to register for particular types of packets
+    /**
+     * Adds the specified processor to the list of packet processors, to be
+     * given only the packets matching any of the given selectors. The
+     * selectors may only match the EtherType, IP protocol and TCP/UDP ports.
+     * Implementations unable to filter the packets may give the processor
+     * all packets, as {@link #addProcessor(PacketProcessor, int)} does.
+     *
+     * @param processor processor to be added
+     * @param priority  priority in the reverse natural order
+     * @param interests selectors of the packets of interest to the processor
+     * @throws java.lang.IllegalArgumentException if a selector has other
+     *                                            criteria
+     */
+    default void addProcessor(PacketProcessor processor, int priority,
+                              Set<TrafficSelector> interests) {
+        addProcessor(processor, priority);
+    }
+
 
     /**
      * Removes the specified processor from the processing pipeline.
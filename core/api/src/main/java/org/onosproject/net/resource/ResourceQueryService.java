@@ -18,6 +18,7 @@ package org.onosproject.net.resource;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * Service for retrieving resource information.
@@ -81,6 +82,24 @@ public interface ResourceQueryService {
      */
     <T> Set<T> getAvailableResourceValues(DiscreteResourceId parent, Class<T> cls);
 
+    /**
+     * Returns at most the specified number of available resource values which are
+     * the values of the child resource of the specified parent and whose type is
+     * the specified type.
+     *
+     * @param parent parent resource ID
+     * @param cls class to specify a type of resource
+     * @param limit maximum number of the values to be returned
+     * @param <T> type of the resource
+     * @return at most limit available resource values of the specified type under
+     * the specified parent resource
+     */
+    default <T> Set<T> getAvailableResourceValues(DiscreteResourceId parent, Class<T> cls, int limit) {
+        return getAvailableResourceValues(parent, cls).stream()
+                .limit(limit)
+                .collect(Collectors.toSet());
+    }
+
     /**
      * Returns resources registered under the specified resource.
      *
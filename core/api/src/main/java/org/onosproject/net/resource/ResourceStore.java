@@ -21,6 +21,7 @@ import org.onosproject.store.Store;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * Service for storing resource and consumer information.
@@ -133,4 +134,39 @@ public interface ResourceStore extends Store<ResourceEvent, ResourceStoreDelegat
      * whose type is the specified class.
      */
     <T> Collection<Resource> getAllocatedResources(DiscreteResourceId parent, Class<T> cls);
+
+    /**
+     * Returns a set of the child resources of the specified parent and whose type is
+     * the specified class, which are not allocated to any consumer.
+     *
+     * @param parent ID of the parent of the resources to be returned
+     * @param cls class instance of the children
+     * @param <T> type of the resource
+     * @return a set of the available child resources of the specified parent and whose
+     * type is the specified class
+     */
+    default <T> Set<Resource> getAvailableResources(DiscreteResourceId parent, Class<T> cls) {
+        return getChildResources(parent, cls).stream()
+                .filter(this::isAvailable)
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Returns at most the specified number of the child resources of the specified parent
+     * and whose type is the specified class, which are not allocated to any consumer.
+     * Which of the available resources are returned is up to the implementation.
+     *
+     * @param parent ID of the parent of the resources to be returned
+     * @param cls class instance of the children
+     * @param limit maximum number of the resources to be returned
+     * @param <T> type of the resource
+     * @return a set of at most limit available child resources of the specified parent
+     * and whose type is the specified class
+     */
+    default <T> Set<Resource> getAvailableResources(DiscreteResourceId parent, Class<T> cls, int limit) {
+        return getChildResources(parent, cls).stream()
+                .filter(this::isAvailable)
+                .limit(limit)
+                .collect(Collectors.toSet());
+    }
 }
@@ -134,13 +134,39 @@ public class ClusterMessage {
         return buffer.array();
     }
 
+    /**
+     * Serializes this instance into buffers, the last of which shares the
+     * payload instead of copying it.
+     * @return buffers holding the serialized message, in order
+     */
+    public ByteBuffer[] getBuffers() {
+        byte[] senderBytes = sender.toString().getBytes(Charsets.UTF_8);
+        byte[] subjectBytes = subject.value().getBytes(Charsets.UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(12 + senderBytes.length + subjectBytes.length);
+        header.putInt(senderBytes.length);
+        header.put(senderBytes);
+        header.putInt(subjectBytes.length);
+        header.put(subjectBytes);
+        header.putInt(payload.length);
+        header.flip();
+        return new ByteBuffer[] {header, ByteBuffer.wrap(payload)};
+    }
+
     /**
      * Decodes a new ClusterMessage from raw bytes.
      * @param bytes raw bytes
      * @return cluster message
      */
     public static ClusterMessage fromBytes(byte[] bytes) {
-        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return fromBytes(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Decodes a new ClusterMessage from the remaining bytes of a buffer.
+     * @param buffer buffer holding the raw bytes
+     * @return cluster message
+     */
+    public static ClusterMessage fromBytes(ByteBuffer buffer) {
         byte[] senderBytes = new byte[buffer.getInt()];
         buffer.get(senderBytes);
         byte[] subjectBytes = new byte[buffer.getInt()];
@@ -15,6 +15,7 @@
  */
 package org.onosproject.store.cluster.messaging;
 
+import java.nio.ByteBuffer;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.function.BiConsumer;
@@ -35,6 +36,28 @@ public interface MessagingService {
      */
     CompletableFuture<Void> sendAsync(Endpoint ep, String type, byte[] payload);
 
+    /**
+     * Sends a message asynchronously to the specified communication end point.
+     * The message payload is the concatenation of the remaining bytes of the
+     * buffers, which must not change until the returned future is completed;
+     * the buffer positions are left untouched.
+     * @param ep end point to send the message to.
+     * @param type type of message.
+     * @param payload message payload buffers.
+     * @return future that is completed when the message is sent
+     */
+    default CompletableFuture<Void> sendAsync(Endpoint ep, String type, ByteBuffer... payload) {
+        int length = 0;
+        for (ByteBuffer buffer : payload) {
+            length += buffer.remaining();
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(length);
+        for (ByteBuffer buffer : payload) {
+            bytes.put(buffer.duplicate());
+        }
+        return sendAsync(ep, type, bytes.array());
+    }
+
     /**
      * Sends a message asynchronously and expects a response.
      * @param ep end point to send the message to.
@@ -44,6 +67,28 @@ public interface MessagingService {
      */
     CompletableFuture<byte[]> sendAndReceive(Endpoint ep, String type, byte[] payload);
 
+    /**
+     * Sends a message asynchronously and expects a response. The message
+     * payload is the concatenation of the remaining bytes of the buffers,
+     * which must not change until the returned future is completed; the
+     * buffer positions are left untouched.
+     * @param ep end point to send the message to.
+     * @param type type of message.
+     * @param payload message payload buffers.
+     * @return a response future
+     */
+    default CompletableFuture<byte[]> sendAndReceive(Endpoint ep, String type, ByteBuffer... payload) {
+        int length = 0;
+        for (ByteBuffer buffer : payload) {
+            length += buffer.remaining();
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(length);
+        for (ByteBuffer buffer : payload) {
+            bytes.put(buffer.duplicate());
+        }
+        return sendAndReceive(ep, type, bytes.array());
+    }
+
     /**
      * Sends a message synchronously and expects a response.
      * @param ep end point to send the message to.
@@ -62,6 +107,20 @@ public interface MessagingService {
      */
     void registerHandler(String type, BiConsumer<Endpoint, byte[]> handler, Executor executor);
 
+    /**
+     * Registers a new message handler for message type, which is handed the
+     * message payload as a buffer. Implementations may hand out a view of
+     * their receive buffers, hence the buffer is only valid for the duration
+     * of the handler invocation and must not be retained.
+     * @param type message type.
+     * @param handler message handler
+     * @param executor executor to use for running message handler logic.
+     */
+    default void registerBufferHandler(String type, BiConsumer<Endpoint, ByteBuffer> handler, Executor executor) {
+        registerHandler(type, (BiConsumer<Endpoint, byte[]>) (ep, bytes) -> handler.accept(ep, ByteBuffer.wrap(bytes)),
+                        executor);
+    }
+
     /**
      * Registers a new message handler for message type.
      * @param type message type.
@@ -17,10 +17,12 @@
 package org.onosproject.store.service;
 
 import java.util.Collection;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.function.BiFunction;
 import java.util.function.Function;
@@ -109,6 +111,28 @@ public interface AsyncConsistentMap<K, V> extends DistributedPrimitive {
      */
     CompletableFuture<Versioned<V>> get(K key);
 
+    /**
+     * Returns the values (and versions) to which the specified keys are mapped.
+     * Keys for which this map contains no mapping are absent from the result.
+     * <p>
+     * The default implementation issues a get for each key; implementations
+     * may fetch the keys in bulk instead.
+     *
+     * @param keys the keys whose associated values (and versions) are to be returned
+     * @return a future map of the keys to their values (and versions)
+     */
+    default CompletableFuture<Map<K, Versioned<V>>> getAll(Set<K> keys) {
+        Map<K, Versioned<V>> values = new ConcurrentHashMap<>();
+        return CompletableFuture.allOf(keys.stream()
+                                           .map(key -> get(key).thenAccept(value -> {
+                                               if (value != null) {
+                                                   values.put(key, value);
+                                               }
+                                           }))
+                                           .toArray(CompletableFuture[]::new))
+                                .thenApply(v -> values);
+    }
+
     /**
      * If the specified key is not already associated with a value (or is mapped to null),
      * attempts to compute its value using the given mapping function and enters it into
@@ -202,6 +226,38 @@ public interface AsyncConsistentMap<K, V> extends DistributedPrimitive {
      */
     CompletableFuture<Versioned<V>> remove(K key);
 
+    /**
+     * Associates each of the specified values with its key in this map,
+     * replacing the values previously associated with the keys.
+     * <p>
+     * The default implementation issues a put for each entry; implementations
+     * may apply the entries in bulk instead.
+     *
+     * @param entries entries to put into this map
+     * @return future that will be successfully completed when the entries are put
+     */
+    default CompletableFuture<Void> putAll(Map<K, V> entries) {
+        return CompletableFuture.allOf(entries.entrySet()
+                                              .stream()
+                                              .map(entry -> put(entry.getKey(), entry.getValue()))
+                                              .toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * Removes the mappings for the specified keys from this map, if present.
+     * <p>
+     * The default implementation issues a remove for each key; implementations
+     * may remove the keys in bulk instead.
+     *
+     * @param keys keys whose mappings are to be removed from the map
+     * @return future that will be successfully completed when the keys are removed
+     */
+    default CompletableFuture<Void> removeAll(Set<K> keys) {
+        return CompletableFuture.allOf(keys.stream()
+                                           .map(this::remove)
+                                           .toArray(CompletableFuture[]::new));
+    }
+
     /**
      * Removes all of the mappings from this map (optional operation).
      * The map will be empty after this call returns.
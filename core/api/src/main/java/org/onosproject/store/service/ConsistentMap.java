@@ -17,6 +17,7 @@
 package org.onosproject.store.service;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -76,6 +77,24 @@ public interface ConsistentMap<K, V> extends DistributedPrimitive {
      */
     Versioned<V> get(K key);
 
+    /**
+     * Returns the values (and versions) to which the specified keys are mapped.
+     * Keys for which this map contains no mapping are absent from the result.
+     *
+     * @param keys the keys whose associated values (and versions) are to be returned
+     * @return map of the keys to their values (and versions)
+     */
+    default Map<K, Versioned<V>> getAll(Set<K> keys) {
+        Map<K, Versioned<V>> values = new HashMap<>();
+        keys.forEach(key -> {
+            Versioned<V> value = get(key);
+            if (value != null) {
+                values.put(key, value);
+            }
+        });
+        return values;
+    }
+
     /**
      * If the specified key is not already associated with a value (or is mapped to null),
      * attempts to compute its value using the given mapping function and enters it into
@@ -166,6 +185,25 @@ public interface ConsistentMap<K, V> extends DistributedPrimitive {
      */
     Versioned<V> remove(K key);
 
+    /**
+     * Associates each of the specified values with its key in this map,
+     * replacing the values previously associated with the keys.
+     *
+     * @param entries entries to put into this map
+     */
+    default void putAll(Map<K, V> entries) {
+        entries.forEach(this::put);
+    }
+
+    /**
+     * Removes the mappings for the specified keys from this map, if present.
+     *
+     * @param keys keys whose mappings are to be removed from the map
+     */
+    default void removeAll(Set<K> keys) {
+        keys.forEach(this::remove);
+    }
+
     /**
      * Removes all of the mappings from this map (optional operation).
      * The map will be empty after this call returns.
@@ -26,7 +26,13 @@ import org.onosproject.store.primitives.DistributedPrimitiveBuilder;
 public abstract class ConsistentMapBuilder<K, V>
     extends DistributedPrimitiveBuilder<ConsistentMapBuilder<K, V>, ConsistentMap<K, V>> {
 
+    private static final int DEFAULT_REPLICA_MAX_ENTRIES = 100000;
+    private static final long DEFAULT_REPLICA_MAX_STALENESS_MILLIS = 1000;
+
     private boolean purgeOnUninstall = false;
+    private boolean replicatedReads = false;
+    private int replicaMaxEntries = DEFAULT_REPLICA_MAX_ENTRIES;
+    private long replicaMaxStalenessMillis = DEFAULT_REPLICA_MAX_STALENESS_MILLIS;
 
     public ConsistentMapBuilder() {
         super(DistributedPrimitive.Type.CONSISTENT_MAP);
@@ -50,6 +56,61 @@ public abstract class ConsistentMapBuilder<K, V>
         return purgeOnUninstall;
     }
 
+    /**
+     * Serves reads of the map from a local replica of all its entries, kept
+     * current by the map events, using the default limits.
+     *
+     * @return this builder
+     */
+    public ConsistentMapBuilder<K, V> withReplicatedReads() {
+        return withReplicatedReads(DEFAULT_REPLICA_MAX_ENTRIES, DEFAULT_REPLICA_MAX_STALENESS_MILLIS);
+    }
+
+    /**
+     * Serves reads of the map from a local replica of all its entries, kept
+     * current by the map events. Once the map loses contact with the cluster,
+     * the replica is read for up to the specified time, after which reads go
+     * to the distributed map. Maps with more than the specified number of
+     * entries are not replicated.
+     *
+     * @param maxEntries maximum number of entries to replicate
+     * @param maxStalenessMillis maximum time for which reads may be stale, in milliseconds
+     * @return this builder
+     */
+    public ConsistentMapBuilder<K, V> withReplicatedReads(int maxEntries, long maxStalenessMillis) {
+        replicatedReads = true;
+        replicaMaxEntries = maxEntries;
+        replicaMaxStalenessMillis = maxStalenessMillis;
+        return this;
+    }
+
+    /**
+     * Returns if reads of the map are served from a local replica.
+     *
+     * @return {@code true} if yes; {@code false} otherwise
+     */
+    public boolean replicatedReads() {
+        return replicatedReads;
+    }
+
+    /**
+     * Returns the maximum number of entries replicated for local reads.
+     *
+     * @return maximum number of entries
+     */
+    public int replicaMaxEntries() {
+        return replicaMaxEntries;
+    }
+
+    /**
+     * Returns the maximum time for which reads from the local replica may be stale.
+     *
+     * @return maximum staleness, in milliseconds
+     */
+    public long replicaMaxStalenessMillis() {
+        return replicaMaxStalenessMillis;
+    }
+
     /**
      * Builds an async consistent map based on the configuration options
      * supplied to this builder.
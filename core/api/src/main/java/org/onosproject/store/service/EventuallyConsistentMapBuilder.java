@@ -180,6 +180,22 @@ public interface EventuallyConsistentMapBuilder<K, V> {
      */
     EventuallyConsistentMapBuilder<K, V> withFasterConvergence();
 
+    /**
+     * Configures the map to gossip updates: each update is pushed to the
+     * specified number of random peers, and forwarded in the same way by
+     * each peer to which it is news, rather than being sent to all peers.
+     * Suited to large clusters, where it spreads the work of replicating
+     * updates across the nodes at the cost of slower convergence; updates
+     * the gossip fails to reach a peer with are recovered by anti-entropy.
+     * <p>
+     * The default behavior is to send updates to all peers.
+     * </p>
+     *
+     * @param fanout number of peers each update is pushed to
+     * @return this EventuallyConsistentMapBuilder
+     */
+    EventuallyConsistentMapBuilder<K, V> withGossip(int fanout);
+
     /**
      * Configure the map to persist data to disk.
      * <p>
@@ -20,8 +20,11 @@ import org.onosproject.cluster.NodeId;
 
 import com.google.common.testing.EqualsTester;
 
+import java.nio.ByteBuffer;
+
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
 
 /**
  * Units tests for ClusterMessage class.
@@ -79,4 +82,19 @@ public class ClusterMessageTest {
         ClusterMessage message = ClusterMessage.fromBytes(fromBytes);
         assertThat(message, is(message3));
     }
+
+    /**
+     * Tests the getBuffers method.
+     */
+    @Test
+    public void testBufferMethods() {
+        ByteBuffer[] buffers = message3.getBuffers();
+        assertThat(buffers.length, is(2));
+        assertThat(buffers[1].array(), sameInstance(payload1));
+
+        ByteBuffer bytes = ByteBuffer.allocate(buffers[0].remaining() + buffers[1].remaining());
+        bytes.put(buffers[0]).put(buffers[1]).flip();
+        assertThat(bytes.array(), is(message3.getBytes()));
+        assertThat(ClusterMessage.fromBytes(bytes), is(message3));
+    }
 }
@@ -18,10 +18,15 @@ package org.onosproject.common;
 import com.google.common.base.Function;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.ImmutableSetMultimap.Builder;
+import org.onlab.graph.CompactGraph;
+import org.onlab.graph.CompactPathSearch;
 import org.onlab.graph.DefaultEdgeWeigher;
 import org.onlab.graph.DijkstraGraphSearch;
 import org.onlab.graph.DisjointPathPair;
@@ -57,10 +62,14 @@ import org.onosproject.net.topology.TopologyVertex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.stream.Collectors;
 
 import static com.google.common.base.MoreObjects.toStringHelper;
@@ -87,8 +96,18 @@ public class DefaultTopology extends AbstractModel implements Topology {
     private static final SuurballeGraphSearch<TopologyVertex, TopologyEdge> SUURBALLE =
             new SuurballeGraphSearch<>();
 
+    private static final Comparator<TopologyEdge> BACK_LINK_ORDER =
+            Comparator.comparing((TopologyEdge edge) -> edge.src().deviceId().toString())
+                    .thenComparingLong(edge -> edge.link().src().port().toLong());
+
+    private static final int DEFAULT_PATH_CACHE_SIZE = 10_000;
+    private static final int COMPACT_WEIGHTS_CACHE_SIZE = 16;
+    private static final double[] NON_SCALAR_WEIGHTS = new double[0];
+
     private static LinkWeigher defaultLinkWeigher = null;
     private static GraphPathSearch<TopologyVertex, TopologyEdge> defaultGraphPathSearch = null;
+    private static int pathCacheSize = DEFAULT_PATH_CACHE_SIZE;
+    private static int precomputeClusterSize = 0;
 
     private final long time;
     private final long creationTime;
@@ -97,17 +116,37 @@ public class DefaultTopology extends AbstractModel implements Topology {
 
     private final LinkWeigher hopCountWeigher;
 
-    private final Supplier<SccResult<TopologyVertex, TopologyEdge>> clusterResults;
+    private final Supplier<ClusterResults> clusterResults;
     private final Supplier<ImmutableMap<ClusterId, TopologyCluster>> clusters;
     private final Supplier<ImmutableSet<ConnectPoint>> infrastructurePoints;
     private final Supplier<ImmutableSetMultimap<ClusterId, ConnectPoint>> broadcastSets;
     private final Function<ConnectPoint, Boolean> broadcastFunction;
     private final Supplier<ClusterIndexes> clusterIndexes;
 
+    // Paths computed on-demand; the topology is immutable, so these remain
+    // valid for its entire lifetime.
+    private final Cache<PathKey, Set<Path>> pathCache;
+    private final Cache<PathKey, Set<DisjointPath>> disjointPathCache;
+
+    // Array-based form of the graph for allocation-free shortest path
+    // searches, along with the edge weights of recently used weighers and
+    // the search state not in use by any thread; all of it is released
+    // along with the topology.
+    private final Supplier<CompactGraph<TopologyVertex, TopologyEdge>> compactGraph;
+    private final Cache<LinkWeigher, double[]> compactWeights =
+            CacheBuilder.newBuilder().maximumSize(COMPACT_WEIGHTS_CACHE_SIZE).build();
+    private final Queue<CompactPathSearch<TopologyVertex, TopologyEdge>> compactSearches =
+            new ConcurrentLinkedQueue<>();
+
+    // Topology from which unaffected clusters can be carried over; released
+    // once the clusters have been computed.
+    private volatile DefaultTopology previous;
+
     /**
      * Sets the default link-weight to be used when computing paths. If null is
      * specified, the builtin default link-weight measuring hop-counts will be
-     * used.
+     * used. The paths computed with the default link-weight are cached for the
+     * lifetime of a topology, so its weights must depend only on the topology.
      *
      * @param linkWeigher new default link-weight
      */
@@ -128,6 +167,31 @@ public class DefaultTopology extends AbstractModel implements Topology {
         defaultGraphPathSearch = graphPathSearch;
     }
 
+    /**
+     * Sets the maximum number of on-demand computed path sets, and separately
+     * disjoint path sets, to be retained by each newly created topology for
+     * subsequent lookups between the same devices. Zero disables caching.
+     *
+     * @param size maximum number of cached path sets
+     */
+    public static void setPathCacheSize(int size) {
+        checkArgument(size >= 0, "Path cache size must not be negative");
+        log.info("Setting path cache size to {}", size);
+        pathCacheSize = size;
+    }
+
+    /**
+     * Sets the size of clusters up to which the shortest paths from a source
+     * device to all other devices are computed at once, upon the first lookup
+     * of a path from that source. Zero disables such precomputation.
+     *
+     * @param size maximum cluster size in devices
+     */
+    public static void setPrecomputeClusterSize(int size) {
+        checkArgument(size >= 0, "Cluster size must not be negative");
+        log.info("Setting path precomputation cluster size to {}", size);
+        precomputeClusterSize = size;
+    }
 
     /**
      * Creates a topology descriptor attributed to the specified provider.
@@ -138,8 +202,26 @@ public class DefaultTopology extends AbstractModel implements Topology {
      */
     public DefaultTopology(ProviderId providerId, GraphDescription description,
                            Function<ConnectPoint, Boolean> broadcastFunction) {
+        this(providerId, description, broadcastFunction, null);
+    }
+
+    /**
+     * Creates a topology descriptor attributed to the specified provider,
+     * carrying over the clusters and broadcast sets of the previous topology
+     * which are not affected by the changes in the graph. If no previous
+     * topology is given, everything is computed from scratch.
+     *
+     * @param providerId        identity of the provider
+     * @param description       data describing the new topology
+     * @param broadcastFunction broadcast point function
+     * @param previous          previous topology; may be null
+     */
+    public DefaultTopology(ProviderId providerId, GraphDescription description,
+                           Function<ConnectPoint, Boolean> broadcastFunction,
+                           DefaultTopology previous) {
         super(providerId);
         this.broadcastFunction = broadcastFunction;
+        this.previous = previous;
         this.time = description.timestamp();
         this.creationTime = description.creationTime();
 
@@ -155,6 +237,11 @@ public class DefaultTopology extends AbstractModel implements Topology {
         this.hopCountWeigher = adapt(new HopCountLinkWeight(graph.getVertexes().size()));
         this.broadcastSets = Suppliers.memoize(this::buildBroadcastSets);
         this.infrastructurePoints = Suppliers.memoize(this::findInfrastructurePoints);
+        this.compactGraph = Suppliers.memoize(() -> new CompactGraph<>(graph));
+        this.pathCache = pathCacheSize > 0 ?
+                CacheBuilder.newBuilder().maximumSize(pathCacheSize).recordStats().build() : null;
+        this.disjointPathCache = pathCacheSize > 0 ?
+                CacheBuilder.newBuilder().maximumSize(pathCacheSize).recordStats().build() : null;
         this.computeCost = Math.max(0, System.nanoTime() - time);
     }
 
@@ -325,6 +412,20 @@ public class DefaultTopology extends AbstractModel implements Topology {
         return broadcastSets.get().get(clusterId);
     }
 
+    /**
+     * Returns the hit/miss statistics of the path and disjoint path lookups
+     * served by this topology. Lookups using weighers without value equality
+     * bypass the caches and are not counted.
+     *
+     * @return combined path cache statistics
+     */
+    public CacheStats pathCacheStats() {
+        if (pathCache == null) {
+            return new CacheStats(0, 0, 0, 0, 0, 0);
+        }
+        return pathCache.stats().plus(disjointPathCache.stats());
+    }
+
     /**
      * Returns the set of pre-computed shortest paths between source and
      * destination devices.
@@ -377,15 +478,122 @@ public class DefaultTopology extends AbstractModel implements Topology {
             return ImmutableSet.of();
         }
 
-        GraphPathSearch.Result<TopologyVertex, TopologyEdge> result =
-                graphPathSearch().search(graph, srcV, dstV, weigher, maxPaths);
+        GraphPathSearch<TopologyVertex, TopologyEdge> search = graphPathSearch();
+        if (!isCacheable(pathCache, weigher)) {
+            return searchPaths(search, srcV, dstV, weigher, maxPaths);
+        }
+
+        PathKey key = new PathKey(src, dst, weigher, maxPaths, search);
+        Set<Path> paths = pathCache.getIfPresent(key);
+        if (paths == null && maxPaths == ALL_PATHS && search == DIJKSTRA &&
+                isPrecomputed(src)) {
+            paths = precomputePaths(srcV, weigher).get(dst);
+        }
+        if (paths == null) {
+            paths = searchPaths(search, srcV, dstV, weigher, maxPaths);
+            pathCache.put(key, paths);
+        }
+        return paths;
+    }
+
+    // Indicates whether paths computed using the given weigher are to be
+    // looked up in and added to the given cache. Only the default weighers
+    // are known not to change their weights within a topology; weighers
+    // given by callers may depend on resources or other state.
+    private boolean isCacheable(Cache<?, ?> cache, LinkWeigher weigher) {
+        return cache != null && weigher != null &&
+                (weigher == hopCountWeigher || weigher == defaultLinkWeigher);
+    }
+
+    // Searches the graph for paths between the given vertexes.
+    private Set<Path> searchPaths(GraphPathSearch<TopologyVertex, TopologyEdge> search,
+                                  TopologyVertex srcV, TopologyVertex dstV,
+                                  LinkWeigher weigher, int maxPaths) {
         ImmutableSet.Builder<Path> builder = ImmutableSet.builder();
-        for (org.onlab.graph.Path<TopologyVertex, TopologyEdge> path : result.paths()) {
+        for (org.onlab.graph.Path<TopologyVertex, TopologyEdge> path :
+                shortestPaths(search, srcV, dstV, weigher, maxPaths)) {
             builder.add(networkPath(path));
         }
         return builder.build();
     }
 
+    // Dijkstra searches with scalar link weights are run over the compact
+    // form of the graph; all other searches over the graph itself.
+    private Set<org.onlab.graph.Path<TopologyVertex, TopologyEdge>> shortestPaths(
+            GraphPathSearch<TopologyVertex, TopologyEdge> search,
+            TopologyVertex srcV, TopologyVertex dstV,
+            LinkWeigher weigher, int maxPaths) {
+        if (search == DIJKSTRA) {
+            CompactPathSearch<TopologyVertex, TopologyEdge> compactSearch = compactSearches.poll();
+            if (compactSearch == null) {
+                compactSearch = new CompactPathSearch<>(compactGraph.get());
+            }
+            try {
+                // Weights of weighers which may be used again are computed
+                // once; others only for the edges reached by the search.
+                Set<org.onlab.graph.Path<TopologyVertex, TopologyEdge>> paths;
+                if (isCacheable(compactWeights, weigher)) {
+                    double[] weights = compactWeights(weigher);
+                    paths = weights != null ?
+                            compactSearch.search(srcV, dstV, weights, maxPaths) : null;
+                } else {
+                    paths = compactSearch.search(srcV, dstV, weigher, maxPaths);
+                }
+                if (paths != null) {
+                    return paths;
+                }
+            } finally {
+                compactSearches.offer(compactSearch);
+            }
+        }
+        return search.search(graph, srcV, dstV, weigher, maxPaths).paths();
+    }
+
+    // Returns the compact graph edge weights produced by the given weigher;
+    // null if the weigher does not produce scalar weights.
+    private double[] compactWeights(LinkWeigher weigher) {
+        double[] weights = compactWeights.getIfPresent(weigher);
+        if (weights == null) {
+            weights = compactGraph.get().weights(weigher);
+            if (weights == null) {
+                weights = NON_SCALAR_WEIGHTS;
+            }
+            compactWeights.put(weigher, weights);
+        }
+        return weights != NON_SCALAR_WEIGHTS ? weights : null;
+    }
+
+    // Indicates whether paths from the given device are to be computed
+    // for all destinations at once.
+    private boolean isPrecomputed(DeviceId src) {
+        int size = precomputeClusterSize;
+        if (size == 0) {
+            return false;
+        }
+        TopologyCluster cluster = clustersByDevice().get(src);
+        return cluster != null && cluster.deviceCount() <= size;
+    }
+
+    // Computes the shortest paths from the given vertex to all others using
+    // a single search and caches them by their destination.
+    private Map<DeviceId, Set<Path>> precomputePaths(TopologyVertex srcV,
+                                                     LinkWeigher weigher) {
+        Map<DeviceId, ImmutableSet.Builder<Path>> builders = new HashMap<>();
+        for (org.onlab.graph.Path<TopologyVertex, TopologyEdge> path :
+                shortestPaths(DIJKSTRA, srcV, null, weigher, ALL_PATHS)) {
+            builders.computeIfAbsent(path.dst().deviceId(), k -> ImmutableSet.builder())
+                    .add(networkPath(path));
+        }
+        Map<DeviceId, Set<Path>> paths = new HashMap<>();
+        builders.forEach((dst, builder) -> {
+            Set<Path> dstPaths = builder.build();
+            paths.put(dst, dstPaths);
+            pathCache.put(new PathKey(srcV.deviceId(), dst, weigher, ALL_PATHS, DIJKSTRA),
+                          dstPaths);
+        });
+        return paths;
+    }
+
     /**
      * /**
      * Returns the set of pre-computed shortest disjoint path pairs between
@@ -418,6 +626,23 @@ public class DefaultTopology extends AbstractModel implements Topology {
             return ImmutableSet.of();
         }
 
+        if (!isCacheable(disjointPathCache, weigher)) {
+            return searchDisjointPaths(srcV, dstV, weigher);
+        }
+
+        PathKey key = new PathKey(src, dst, weigher, ALL_PATHS, SUURBALLE);
+        Set<DisjointPath> paths = disjointPathCache.getIfPresent(key);
+        if (paths == null) {
+            paths = searchDisjointPaths(srcV, dstV, weigher);
+            disjointPathCache.put(key, paths);
+        }
+        return paths;
+    }
+
+    // Searches the graph for disjoint path pairs between the given vertexes.
+    private Set<DisjointPath> searchDisjointPaths(TopologyVertex srcV,
+                                                  TopologyVertex dstV,
+                                                  LinkWeigher weigher) {
         GraphPathSearch.Result<TopologyVertex, TopologyEdge> result =
                 SUURBALLE.search(graph, srcV, dstV, weigher, ALL_PATHS);
         ImmutableSet.Builder<DisjointPath> builder = ImmutableSet.builder();
@@ -540,16 +765,28 @@ public class DefaultTopology extends AbstractModel implements Topology {
     }
 
     // Searches for SCC clusters in the network topology graph using Tarjan
-    // algorithm.
-    private SccResult<TopologyVertex, TopologyEdge> searchForClusters() {
-        return TARJAN.search(graph, new NoIndirectLinksWeigher());
+    // algorithm; only the parts of the graph which changed since the previous
+    // topology, if any, are searched.
+    private ClusterResults searchForClusters() {
+        DefaultTopology prior = previous;
+        previous = null;
+        if (prior != null) {
+            return new IncrementalClusterSearch(prior.graph, prior.clusterResults.get(),
+                                                prior.broadcastSets.get(), graph,
+                                                new NoIndirectLinksWeigher())
+                    .search();
+        }
+        SccResult<TopologyVertex, TopologyEdge> result =
+                TARJAN.search(graph, new NoIndirectLinksWeigher());
+        return new ClusterResults(result.clusterVertexes(), result.clusterEdges(),
+                                  ImmutableMap.of());
     }
 
     // Builds the topology clusters and returns the id-cluster bindings.
     private ImmutableMap<ClusterId, TopologyCluster> buildTopologyClusters() {
         ImmutableMap.Builder<ClusterId, TopologyCluster> clusterBuilder =
                 ImmutableMap.builder();
-        SccResult<TopologyVertex, TopologyEdge> results = clusterResults.get();
+        ClusterResults results = clusterResults.get();
 
         // Extract both vertexes and edges from the results; the lists form
         // pairs along the same index.
@@ -584,11 +821,18 @@ public class DefaultTopology extends AbstractModel implements Topology {
         return minVertex;
     }
 
-    // Processes a map of broadcast sets for each cluster.
+    // Processes a map of broadcast sets for each cluster; clusters carried
+    // over from the previous topology retain their broadcast sets.
     private ImmutableSetMultimap<ClusterId, ConnectPoint> buildBroadcastSets() {
         Builder<ClusterId, ConnectPoint> builder = ImmutableSetMultimap.builder();
+        Map<Integer, Set<ConnectPoint>> carriedOver = clusterResults.get().broadcastPoints;
         for (TopologyCluster cluster : clusters.get().values()) {
-            addClusterBroadcastSet(cluster, builder);
+            Set<ConnectPoint> points = carriedOver.get(cluster.id().index());
+            if (points != null) {
+                builder.putAll(cluster.id(), points);
+            } else {
+                addClusterBroadcastSet(cluster, builder);
+            }
         }
         return builder.build();
     }
@@ -598,9 +842,17 @@ public class DefaultTopology extends AbstractModel implements Topology {
     // all other devices within the cluster.
     private void addClusterBroadcastSet(TopologyCluster cluster,
                                         Builder<ClusterId, ConnectPoint> builder) {
+        // Shortest paths between members of a strongly connected cluster
+        // never leave it, so search only the cluster's own sub-graph rather
+        // than the whole topology graph.
+        int index = cluster.id().index();
+        TopologyGraph clusterGraph =
+                new DefaultTopologyGraph(clusterResults.get().clusterVertexes().get(index),
+                                         clusterResults.get().clusterEdges().get(index));
+
         // Use the graph root search results to build the broadcast set.
         Result<TopologyVertex, TopologyEdge> result =
-                DIJKSTRA.search(graph, cluster.root(), null, hopCountWeigher, 1);
+                DIJKSTRA.search(clusterGraph, cluster.root(), null, hopCountWeigher, 1);
         for (Map.Entry<TopologyVertex, Set<TopologyEdge>> entry :
                 result.parents().entrySet()) {
             TopologyVertex vertex = entry.getKey();
@@ -616,14 +868,29 @@ public class DefaultTopology extends AbstractModel implements Topology {
                 continue;
             }
 
-            // Use the first back-link source and destinations to add to the
+            // Use the back-link source and destinations to add to the
             // broadcast set.
-            Link link = parents.iterator().next().link();
+            Link link = backLink(vertex, result.costs()).link();
             builder.put(cluster.id(), link.src());
             builder.put(cluster.id(), link.dst());
         }
     }
 
+    // Of all the back-links of the vertex which lie along shortest paths from
+    // the root, returns the one with the lowest source, so that the broadcast
+    // set does not depend on the order in which the search found them.
+    private TopologyEdge backLink(TopologyVertex vertex, Map<TopologyVertex, Weight> costs) {
+        Weight cost = costs.get(vertex);
+        return graph.getEdgesTo(vertex).stream()
+                .filter(edge -> costs.containsKey(edge.src()))
+                .filter(edge -> {
+                    Weight weight = hopCountWeigher.weight(edge);
+                    return weight.isViable() &&
+                            costs.get(edge.src()).merge(weight).compareTo(cost) == 0;
+                })
+                .min(BACK_LINK_ORDER).get();
+    }
+
     // Collects and returns an set of all infrastructure link end-points.
     private ImmutableSet<ConnectPoint> findInfrastructurePoints() {
         ImmutableSet.Builder<ConnectPoint> builder = ImmutableSet.builder();
@@ -692,6 +959,80 @@ public class DefaultTopology extends AbstractModel implements Topology {
         }
     }
 
+    // Key of the cached path sets; paths depend on the search algorithm and
+    // the link weigher as well as on the end-points.
+    private static final class PathKey {
+        private final DeviceId src;
+        private final DeviceId dst;
+        private final LinkWeigher weigher;
+        private final int maxPaths;
+        private final GraphPathSearch<TopologyVertex, TopologyEdge> search;
+
+        private PathKey(DeviceId src, DeviceId dst, LinkWeigher weigher, int maxPaths,
+                        GraphPathSearch<TopologyVertex, TopologyEdge> search) {
+            this.src = src;
+            this.dst = dst;
+            this.weigher = weigher;
+            this.maxPaths = maxPaths;
+            this.search = search;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(src, dst, weigher, maxPaths, search);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj instanceof PathKey) {
+                final PathKey other = (PathKey) obj;
+                return Objects.equals(this.src, other.src) &&
+                        Objects.equals(this.dst, other.dst) &&
+                        Objects.equals(this.weigher, other.weigher) &&
+                        this.maxPaths == other.maxPaths &&
+                        Objects.equals(this.search, other.search);
+            }
+            return false;
+        }
+    }
+
+    static final class ClusterResults {
+        final List<Set<TopologyVertex>> clusterVertexes;
+        final List<Set<TopologyEdge>> clusterEdges;
+        final Map<Integer, Set<ConnectPoint>> broadcastPoints;
+
+        /**
+         * Creates cluster search results.
+         *
+         * @param clusterVertexes vertexes of each cluster
+         * @param clusterEdges    edges of each cluster
+         * @param broadcastPoints broadcast sets of the clusters carried over
+         *                        from the previous topology, by cluster index
+         */
+        ClusterResults(List<Set<TopologyVertex>> clusterVertexes,
+                       List<Set<TopologyEdge>> clusterEdges,
+                       Map<Integer, Set<ConnectPoint>> broadcastPoints) {
+            this.clusterVertexes = clusterVertexes;
+            this.clusterEdges = clusterEdges;
+            this.broadcastPoints = broadcastPoints;
+        }
+
+        int clusterCount() {
+            return clusterVertexes.size();
+        }
+
+        List<Set<TopologyVertex>> clusterVertexes() {
+            return clusterVertexes;
+        }
+
+        List<Set<TopologyEdge>> clusterEdges() {
+            return clusterEdges;
+        }
+    }
+
     static final class ClusterIndexes {
         final ImmutableMap<DeviceId, TopologyCluster> clustersByDevice;
         final ImmutableSetMultimap<TopologyCluster, DeviceId> devicesByCluster;
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.common;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Maps;
+import org.onlab.graph.EdgeWeigher;
+import org.onlab.graph.TarjanGraphSearch;
+import org.onlab.graph.TarjanGraphSearch.SccResult;
+import org.onosproject.common.DefaultTopology.ClusterResults;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.topology.ClusterId;
+import org.onosproject.net.topology.TopologyEdge;
+import org.onosproject.net.topology.TopologyGraph;
+import org.onosproject.net.topology.TopologyVertex;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Derives the SCC clusters of a topology graph from the clusters of the
+ * previous graph, searching anew only the part of the graph affected by the
+ * changes between the two.
+ * <p>
+ * A cluster of the previous graph is carried over as-is unless one of its
+ * vertexes was removed, one of the links between its vertexes changed, or it
+ * may have been merged with other clusters by newly viable links. All other
+ * vertexes are searched using Tarjan algorithm over the sub-graph they induce;
+ * as the affected vertexes always form whole clusters of the new graph, the
+ * combined result is the same as that of searching the whole new graph.
+ * </p>
+ * <p>
+ * The broadcast set of a carried-over cluster is reused only if no link
+ * crosses the boundary of the cluster, in either graph. The broadcast tree
+ * of such a cluster then depends only on its own links, which did not
+ * change; otherwise the tree is computed anew.
+ * </p>
+ */
+final class IncrementalClusterSearch {
+
+    private final TopologyGraph oldGraph;
+    private final ClusterResults oldResults;
+    private final ImmutableSetMultimap<ClusterId, ConnectPoint> oldBroadcastSets;
+    private final TopologyGraph graph;
+    private final EdgeWeigher<TopologyVertex, TopologyEdge> weigher;
+
+    private final Map<TopologyVertex, Integer> oldClusterOf = new HashMap<>();
+    private final Set<Integer> dirtyClusters = new HashSet<>();
+    private final Set<TopologyVertex> dirtyVertexes = new HashSet<>();
+    private final Set<TopologyVertex> mergeSources = new HashSet<>();
+    private final Set<TopologyVertex> mergeTargets = new HashSet<>();
+
+    /**
+     * Creates a search for the clusters of the given graph.
+     *
+     * @param oldGraph         previous topology graph
+     * @param oldResults       clusters of the previous topology graph
+     * @param oldBroadcastSets broadcast sets of the previous clusters
+     * @param graph            new topology graph
+     * @param weigher          weigher used to determine whether edges are viable
+     */
+    IncrementalClusterSearch(TopologyGraph oldGraph, ClusterResults oldResults,
+                             ImmutableSetMultimap<ClusterId, ConnectPoint> oldBroadcastSets,
+                             TopologyGraph graph,
+                             EdgeWeigher<TopologyVertex, TopologyEdge> weigher) {
+        this.oldGraph = oldGraph;
+        this.oldResults = oldResults;
+        this.oldBroadcastSets = oldBroadcastSets;
+        this.graph = graph;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Searches for the clusters of the new graph.
+     *
+     * @return cluster results, including the broadcast sets of the clusters
+     * carried over from the previous graph
+     */
+    ClusterResults search() {
+        List<Set<TopologyVertex>> oldVertexes = oldResults.clusterVertexes();
+        for (int i = 0; i < oldVertexes.size(); i++) {
+            for (TopologyVertex vertex : oldVertexes.get(i)) {
+                oldClusterOf.put(vertex, i);
+            }
+        }
+
+        findChangedVertexes();
+        findChangedEdges();
+        findMergedClusters();
+
+        // Collect the vertexes which need to be searched anew.
+        Set<TopologyVertex> searchVertexes = new HashSet<>(dirtyVertexes);
+        for (Integer index : dirtyClusters) {
+            for (TopologyVertex vertex : oldVertexes.get(index)) {
+                if (graph.getVertexes().contains(vertex)) {
+                    searchVertexes.add(vertex);
+                }
+            }
+        }
+
+        ImmutableList.Builder<Set<TopologyVertex>> vertexes = ImmutableList.builder();
+        ImmutableList.Builder<Set<TopologyEdge>> edges = ImmutableList.builder();
+        ImmutableMap.Builder<Integer, Set<ConnectPoint>> broadcastPoints =
+                ImmutableMap.builder();
+        int index = 0;
+
+        // Carry over the untouched clusters, refreshing their edges as the
+        // links themselves may carry new annotations.
+        for (int i = 0; i < oldVertexes.size(); i++) {
+            if (!dirtyClusters.contains(i)) {
+                Set<TopologyVertex> clusterVertexes = oldVertexes.get(i);
+                vertexes.add(clusterVertexes);
+                edges.add(clusterEdges(clusterVertexes));
+                if (isIsolated(oldGraph, clusterVertexes) && isIsolated(graph, clusterVertexes)) {
+                    broadcastPoints.put(index, oldBroadcastSets.get(ClusterId.clusterId(i)));
+                }
+                index++;
+            }
+        }
+
+        // Search the affected part of the graph and append its clusters.
+        if (!searchVertexes.isEmpty()) {
+            TopologyGraph subGraph = searchVertexes.size() == graph.getVertexes().size() ?
+                    graph : subGraph(searchVertexes);
+            SccResult<TopologyVertex, TopologyEdge> result =
+                    new TarjanGraphSearch<TopologyVertex, TopologyEdge>().search(subGraph, weigher);
+            vertexes.addAll(result.clusterVertexes());
+            edges.addAll(result.clusterEdges());
+        }
+
+        return new ClusterResults(vertexes.build(), edges.build(), broadcastPoints.build());
+    }
+
+    // Clusters which lost vertexes may split; new vertexes form new clusters.
+    private void findChangedVertexes() {
+        for (TopologyVertex vertex : oldGraph.getVertexes()) {
+            if (!graph.getVertexes().contains(vertex)) {
+                dirtyClusters.add(oldClusterOf.get(vertex));
+            }
+        }
+        for (TopologyVertex vertex : graph.getVertexes()) {
+            if (!oldClusterOf.containsKey(vertex)) {
+                dirtyVertexes.add(vertex);
+            }
+        }
+    }
+
+    // Identifies edges which were added, removed or changed their viability.
+    private void findChangedEdges() {
+        Map<TopologyEdge, TopologyEdge> oldEdges =
+                Maps.newHashMapWithExpectedSize(oldGraph.getEdges().size());
+        for (TopologyEdge edge : oldGraph.getEdges()) {
+            oldEdges.put(edge, edge);
+        }
+
+        for (TopologyEdge edge : graph.getEdges()) {
+            TopologyEdge oldEdge = oldEdges.remove(edge);
+            boolean viable = isViable(edge);
+            if (oldEdge == null || isViable(oldEdge) != viable) {
+                edgeChanged(edge, viable);
+            }
+        }
+
+        // Whatever remains has been removed.
+        for (TopologyEdge edge : oldEdges.values()) {
+            edgeChanged(edge, false);
+        }
+    }
+
+    // Any change of an edge within a cluster affects that cluster, while an
+    // edge between clusters matters only if it newly allows traversal.
+    private void edgeChanged(TopologyEdge edge, boolean newlyViable) {
+        Integer srcCluster = oldClusterOf.get(edge.src());
+        Integer dstCluster = oldClusterOf.get(edge.dst());
+        if (srcCluster != null && srcCluster.equals(dstCluster)) {
+            dirtyClusters.add(srcCluster);
+        } else if (newlyViable) {
+            mergeSources.add(edge.dst());
+            mergeTargets.add(edge.src());
+        }
+    }
+
+    // A newly viable edge between clusters merges all clusters lying on a
+    // cycle through it, i.e. all vertexes reachable from its destination
+    // which can also reach its source.
+    private void findMergedClusters() {
+        if (mergeSources.isEmpty()) {
+            return;
+        }
+        Set<TopologyVertex> reachable = reach(mergeSources, true);
+        Set<TopologyVertex> reaching = reach(mergeTargets, false);
+        for (TopologyVertex vertex : reachable) {
+            if (reaching.contains(vertex)) {
+                Integer cluster = oldClusterOf.get(vertex);
+                if (cluster != null) {
+                    dirtyClusters.add(cluster);
+                } else {
+                    dirtyVertexes.add(vertex);
+                }
+            }
+        }
+    }
+
+    // Finds all vertexes reachable from (or reaching) the given vertexes
+    // using viable edges only.
+    private Set<TopologyVertex> reach(Set<TopologyVertex> start, boolean forward) {
+        Set<TopologyVertex> seen = new HashSet<>(start);
+        Deque<TopologyVertex> queue = new ArrayDeque<>(start);
+        while (!queue.isEmpty()) {
+            TopologyVertex vertex = queue.poll();
+            Collection<TopologyEdge> next = forward ?
+                    graph.getEdgesFrom(vertex) : graph.getEdgesTo(vertex);
+            for (TopologyEdge edge : next) {
+                TopologyVertex other = forward ? edge.dst() : edge.src();
+                if (isViable(edge) && seen.add(other)) {
+                    queue.add(other);
+                }
+            }
+        }
+        return seen;
+    }
+
+    // Indicates whether no edge of the given graph crosses the boundary of
+    // the given cluster, be it viable or not.
+    private static boolean isIsolated(TopologyGraph graph, Set<TopologyVertex> cluster) {
+        for (TopologyVertex vertex : cluster) {
+            for (TopologyEdge edge : graph.getEdgesFrom(vertex)) {
+                if (!cluster.contains(edge.dst())) {
+                    return false;
+                }
+            }
+            for (TopologyEdge edge : graph.getEdgesTo(vertex)) {
+                if (!cluster.contains(edge.src())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Produces the graph induced by the given vertexes.
+    private TopologyGraph subGraph(Set<TopologyVertex> vertexes) {
+        return new DefaultTopologyGraph(vertexes, clusterEdges(vertexes));
+    }
+
+    // Collects the edges of the new graph between the given vertexes.
+    private Set<TopologyEdge> clusterEdges(Set<TopologyVertex> vertexes) {
+        Set<TopologyEdge> edges = new HashSet<>();
+        for (TopologyVertex vertex : vertexes) {
+            for (TopologyEdge edge : graph.getEdgesFrom(vertex)) {
+                if (vertexes.contains(edge.dst())) {
+                    edges.add(edge);
+                }
+            }
+        }
+        return Collections.unmodifiableSet(edges);
+    }
+
+    private boolean isViable(TopologyEdge edge) {
+        return weigher.weight(edge).isViable();
+    }
+}
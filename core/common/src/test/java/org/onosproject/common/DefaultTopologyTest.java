@@ -16,6 +16,7 @@
 package org.onosproject.common;
 
 import org.junit.Before;
+import org.junit.Ignore;
 import org.junit.Test;
 import org.onlab.graph.DefaultEdgeWeigher;
 import org.onlab.graph.ScalarWeight;
@@ -34,17 +35,21 @@ import org.onosproject.net.topology.ClusterId;
 import org.onosproject.net.topology.DefaultGraphDescription;
 import org.onosproject.net.topology.DefaultTopologyVertex;
 import org.onosproject.net.topology.GraphDescription;
+import org.onosproject.net.topology.HopCountLinkWeight;
 import org.onosproject.net.topology.LinkWeigher;
 import org.onosproject.net.topology.TopologyCluster;
 import org.onosproject.net.topology.TopologyEdge;
 import org.onosproject.net.topology.TopologyVertex;
 
+import java.util.HashSet;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import static com.google.common.collect.ImmutableSet.of;
 import static org.junit.Assert.*;
 import static org.onosproject.net.DeviceId.deviceId;
 import static org.onosproject.net.PortNumber.portNumber;
+import static org.onosproject.net.topology.AdapterLinkWeigher.adapt;
 
 /**
  * Test of the default topology implementation.
@@ -78,8 +83,28 @@ public class DefaultTopologyTest {
     }
     public static final LinkWeigher WEIGHER = new TestLinkWeigher();
 
+    // Test weigher with value equality, whose paths are not cached either.
+    private static final class ValueLinkWeigher extends DefaultEdgeWeigher<TopologyVertex, TopologyEdge>
+            implements LinkWeigher {
+        @Override
+        public Weight weight(TopologyEdge edge) {
+            return WEIGHER.weight(edge);
+        }
+
+        @Override
+        public int hashCode() {
+            return ValueLinkWeigher.class.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof ValueLinkWeigher;
+        }
+    }
 
     private DefaultTopology dt;
+    private Set<Device> devices;
+    private Set<Link> links;
 
     public static final ClusterId C0 = ClusterId.clusterId(0);
     public static final ClusterId C1 = ClusterId.clusterId(1);
@@ -87,13 +112,13 @@ public class DefaultTopologyTest {
     @Before
     public void setUp() {
         long now = System.currentTimeMillis();
-        Set<Device> devices = of(device("1"), device("2"),
-                                 device("3"), device("4"),
-                                 device("5"));
-        Set<Link> links = of(link("1", 1, "2", 1), link("2", 1, "1", 1),
-                             link("3", 2, "2", 2), link("2", 2, "3", 2),
-                             link("1", 3, "4", 3), link("4", 3, "1", 3),
-                             link("3", 4, "4", 4), link("4", 4, "3", 4));
+        devices = of(device("1"), device("2"),
+                     device("3"), device("4"),
+                     device("5"));
+        links = of(link("1", 1, "2", 1), link("2", 1, "1", 1),
+                   link("3", 2, "2", 2), link("2", 2, "3", 2),
+                   link("1", 3, "4", 3), link("4", 3, "1", 3),
+                   link("3", 4, "4", 4), link("4", 4, "3", 4));
         GraphDescription graphDescription =
                 new DefaultGraphDescription(now, System.currentTimeMillis(), devices, links);
 
@@ -123,6 +148,42 @@ public class DefaultTopologyTest {
         assertEquals("incorrect path count", 1, paths.size());
     }
 
+    @Test
+    public void pathCached() {
+        Set<Path> paths = dt.getPaths(D1, D3);
+        assertSame("paths should be cached", paths, dt.getPaths(D1, D3));
+        assertEquals("incorrect hit count", 1, dt.pathCacheStats().hitCount());
+        assertEquals("incorrect miss count", 1, dt.pathCacheStats().missCount());
+    }
+
+    @Test
+    public void pathNotCachedForGivenWeighers() {
+        assertEquals("incorrect path count", 1, dt.getPaths(D1, D3, WEIGHER).size());
+        assertEquals("incorrect path count", 1, dt.getPaths(D1, D3, WEIGHER).size());
+        assertEquals("incorrect path count", 1, dt.getPaths(D1, D3, new ValueLinkWeigher()).size());
+        assertEquals("incorrect path count", 1, dt.getPaths(D1, D3, new ValueLinkWeigher()).size());
+        assertEquals("incorrect path count", 2,
+                     dt.getPaths(D1, D3, adapt(new HopCountLinkWeight())).size());
+        assertEquals("incorrect path pair count", 1,
+                     dt.getDisjointPaths(D1, D3, WEIGHER).size());
+        assertEquals("incorrect hit count", 0, dt.pathCacheStats().hitCount());
+        assertEquals("incorrect miss count", 0, dt.pathCacheStats().missCount());
+    }
+
+    @Test
+    public void pathPrecomputed() {
+        DefaultTopology.setPrecomputeClusterSize(4);
+        try {
+            assertEquals("incorrect path count", 2, dt.getPaths(D1, D3).size());
+            assertEquals("incorrect path count", 1, dt.getPaths(D1, D2).size());
+            assertEquals("incorrect path count", 1, dt.getPaths(D1, D4).size());
+            assertEquals("incorrect hit count", 2, dt.pathCacheStats().hitCount());
+            assertEquals("incorrect miss count", 1, dt.pathCacheStats().missCount());
+        } finally {
+            DefaultTopology.setPrecomputeClusterSize(0);
+        }
+    }
+
     @Test
     public void pointRelated() {
         assertTrue("should be infrastructure point",
@@ -143,6 +204,191 @@ public class DefaultTopologyTest {
         assertFalse("cluster should not contain D5", devs.contains(D5));
     }
 
+    @Test
+    public void incrementalUnchanged() {
+        DefaultTopology next = incremental(devices, links);
+        assertSameClusters(full(devices, links), next);
+        assertEquals("incorrect broadcast set size", 6, next.broadcastSetSize(
+                next.getCluster(D1).id()));
+    }
+
+    @Test
+    public void incrementalClusterSplit() {
+        Set<Link> fewerLinks = links.stream()
+                .filter(l -> !l.src().deviceId().equals(D4) &&
+                        !l.dst().deviceId().equals(D4))
+                .collect(Collectors.toSet());
+        DefaultTopology next = incremental(devices, fewerLinks);
+        assertSameClusters(full(devices, fewerLinks), next);
+        assertEquals("incorrect cluster count", 3, next.clusterCount());
+    }
+
+    @Test
+    public void incrementalClusterMerge() {
+        Set<Link> moreLinks = new HashSet<>(links);
+        moreLinks.add(link("4", 5, "5", 5));
+        DefaultTopology next = incremental(devices, moreLinks);
+        assertSameClusters(full(devices, moreLinks), next);
+        assertEquals("incorrect cluster count", 2, next.clusterCount());
+
+        moreLinks.add(link("5", 5, "4", 5));
+        DefaultTopology merged = incremental(next, devices, moreLinks);
+        assertSameClusters(full(devices, moreLinks), merged);
+        assertEquals("incorrect cluster count", 1, merged.clusterCount());
+        assertEquals("incorrect cluster device count", 5,
+                     merged.getClusterDevices(merged.getCluster(D5)).size());
+        assertEquals("incorrect broadcast set size", 8,
+                     merged.broadcastSetSize(merged.getCluster(D5).id()));
+    }
+
+    @Test
+    public void incrementalDeviceChanges() {
+        Set<Device> moreDevices = new HashSet<>(devices);
+        moreDevices.add(device("6"));
+        Set<Link> moreLinks = new HashSet<>(links);
+        moreLinks.add(link("5", 6, "6", 6));
+        moreLinks.add(link("6", 6, "5", 6));
+        DefaultTopology next = incremental(moreDevices, moreLinks);
+        assertSameClusters(full(moreDevices, moreLinks), next);
+        assertEquals("incorrect cluster count", 2, next.clusterCount());
+
+        Set<Device> fewerDevices = devices.stream()
+                .filter(d -> !d.id().equals(D2)).collect(Collectors.toSet());
+        DefaultTopology removed = incremental(next, fewerDevices, links);
+        assertSameClusters(full(fewerDevices, links), removed);
+        assertEquals("incorrect cluster count", 2, removed.clusterCount());
+    }
+
+    @Test
+    public void incrementalIndirectLinks() {
+        Set<Link> moreLinks = new HashSet<>(links);
+        moreLinks.add(indirectLink("4", 5, "5", 5));
+        moreLinks.add(indirectLink("5", 5, "4", 5));
+        DefaultTopology next = incremental(devices, moreLinks);
+        assertSameClusters(full(devices, moreLinks), next);
+        assertEquals("incorrect cluster count", 2, next.clusterCount());
+
+        DefaultTopology back = incremental(next, devices, links);
+        assertSameClusters(full(devices, links), back);
+    }
+
+    /**
+     * Measures the time taken to build a topology of 1k, 5k and 10k devices
+     * in clusters of 10 after a link of one cluster went down, from scratch
+     * and on top of the previous topology.
+     */
+    @Test
+    @Ignore("benchmark")
+    public void benchmarkIncremental() {
+        for (int size : new int[]{1_000, 5_000, 10_000}) {
+            Set<Device> manyDevices = new HashSet<>();
+            Set<Link> manyLinks = new HashSet<>();
+            for (int i = 0; i < size; i++) {
+                manyDevices.add(device(Integer.toString(i)));
+                String next = Integer.toString(i % 10 == 9 ? i - 9 : i + 1);
+                manyLinks.add(link(Integer.toString(i), 1, next, 2));
+                manyLinks.add(link(next, 2, Integer.toString(i), 1));
+            }
+            Set<Link> fewerLinks = new HashSet<>(manyLinks);
+            fewerLinks.remove(link("0", 1, "1", 2));
+            fewerLinks.remove(link("1", 2, "0", 1));
+
+            for (int round = 0; round < 3; round++) {
+                DefaultTopology previous = build(full(manyDevices, manyLinks));
+                long start = System.nanoTime();
+                build(full(manyDevices, fewerLinks));
+                long fullNanos = System.nanoTime() - start;
+                start = System.nanoTime();
+                build(incremental(previous, manyDevices, fewerLinks));
+                long incrementalNanos = System.nanoTime() - start;
+                System.out.printf("%d devices: full %d ms, incremental %d ms%n", size,
+                                  fullNanos / 1_000_000, incrementalNanos / 1_000_000);
+            }
+        }
+    }
+
+    /**
+     * Measures repeated path lookups from a sample of the devices of a ring
+     * of 400 to all others, with and without the path cache.
+     */
+    @Test
+    @Ignore("benchmark")
+    public void benchmarkPathCache() {
+        int size = 400;
+        Set<Device> ringDevices = new HashSet<>();
+        Set<Link> ringLinks = new HashSet<>();
+        for (int i = 0; i < size; i++) {
+            ringDevices.add(device(Integer.toString(i)));
+            String next = Integer.toString((i + 1) % size);
+            ringLinks.add(link(Integer.toString(i), 1, next, 2));
+            ringLinks.add(link(next, 2, Integer.toString(i), 1));
+        }
+
+        try {
+            for (int cacheSize : new int[]{0, 200_000, 0, 200_000}) {
+                DefaultTopology.setPathCacheSize(cacheSize);
+                DefaultTopology topology = full(ringDevices, ringLinks);
+                long start = System.nanoTime();
+                for (int round = 0; round < 3; round++) {
+                    for (int src = 0; src < size; src += 20) {
+                        for (int dst = 0; dst < size; dst++) {
+                            topology.getPaths(did(Integer.toString(src)),
+                                              did(Integer.toString(dst)));
+                        }
+                    }
+                }
+                System.out.printf("cache size %d: %d ms, %s%n", cacheSize,
+                                  (System.nanoTime() - start) / 1_000_000,
+                                  topology.pathCacheStats());
+            }
+        } finally {
+            DefaultTopology.setPathCacheSize(10_000);
+        }
+    }
+
+    // Computes the clusters and broadcast sets of the given topology.
+    private static DefaultTopology build(DefaultTopology topology) {
+        topology.getClusters().forEach(c -> topology.broadcastSetSize(c.id()));
+        return topology;
+    }
+
+    // Builds a topology from scratch.
+    private DefaultTopology full(Set<Device> devices, Set<Link> links) {
+        return new DefaultTopology(PID, new DefaultGraphDescription(
+                System.nanoTime(), System.currentTimeMillis(), devices, links));
+    }
+
+    // Builds a topology on top of the one built in set-up.
+    private DefaultTopology incremental(Set<Device> devices, Set<Link> links) {
+        return incremental(dt, devices, links);
+    }
+
+    // Builds a topology on top of the given previous topology.
+    private DefaultTopology incremental(DefaultTopology previous,
+                                        Set<Device> devices, Set<Link> links) {
+        return new DefaultTopology(PID, new DefaultGraphDescription(
+                System.nanoTime(), System.currentTimeMillis(), devices, links),
+                                   null, previous);
+    }
+
+    // Asserts that both topologies consist of the same clusters.
+    private void assertSameClusters(DefaultTopology expected, DefaultTopology actual) {
+        assertEquals("incorrect cluster count", expected.clusterCount(),
+                     actual.clusterCount());
+        for (TopologyCluster cluster : expected.getClusters()) {
+            DeviceId root = cluster.root().deviceId();
+            TopologyCluster other = actual.getCluster(root);
+            assertEquals("incorrect root node", cluster.root(), other.root());
+            assertEquals("incorrect cluster devices", expected.getClusterDevices(cluster),
+                         actual.getClusterDevices(other));
+            assertEquals("incorrect cluster links", expected.getClusterLinks(cluster),
+                         actual.getClusterLinks(other));
+            assertEquals("incorrect broadcast set",
+                         expected.broadcastPoints(cluster.id()),
+                         actual.broadcastPoints(other.id()));
+        }
+    }
+
     // Short-hand for creating a link.
     public static Link link(String src, int sp, String dst, int dp) {
         return DefaultLink.builder().providerId(PID)
@@ -152,6 +398,15 @@ public class DefaultTopologyTest {
                 .build();
     }
 
+    // Short-hand for creating an indirect link.
+    public static Link indirectLink(String src, int sp, String dst, int dp) {
+        return DefaultLink.builder().providerId(PID)
+                .src(new ConnectPoint(did(src), portNumber(sp)))
+                .dst(new ConnectPoint(did(dst), portNumber(dp)))
+                .type(Link.Type.INDIRECT)
+                .build();
+    }
+
     // Crates a new device with the specified id
     public static Device device(String id) {
         return new DefaultDevice(PID, did(id), Device.Type.SWITCH,
@@ -15,39 +15,64 @@
  */
 package org.onosproject.event.impl;
 
+import java.util.Arrays;
+import java.util.Dictionary;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Hashtable;
 import java.util.Set;
 import java.util.TimerTask;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Modified;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.ReferenceCardinality;
+import org.apache.felix.scr.annotations.ReferencePolicy;
 import org.apache.felix.scr.annotations.Service;
+import org.onlab.metrics.MetricsComponent;
+import org.onlab.metrics.MetricsFeature;
+import org.onlab.metrics.MetricsService;
 import org.onlab.util.SharedExecutors;
+import org.onlab.util.Tools;
+import org.onosproject.cfg.ComponentConfigService;
+import org.onosproject.cfg.ConfigProperty;
 import org.onosproject.event.AbstractEvent;
 import org.onosproject.event.DefaultEventSinkRegistry;
 import org.onosproject.event.Event;
 import org.onosproject.event.EventDeliveryService;
 import org.onosproject.event.EventSink;
+import org.onosproject.net.LinkKey;
 import org.onosproject.net.device.DeviceEvent;
 import org.onosproject.net.flow.FlowRuleEvent;
 import org.onosproject.net.host.HostEvent;
 import org.onosproject.net.intent.IntentEvent;
 import org.onosproject.net.link.LinkEvent;
 import org.onosproject.net.topology.TopologyEvent;
+import org.osgi.service.component.ComponentContext;
 import org.slf4j.Logger;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Timer;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static org.onlab.metrics.MetricsUtil.startTimer;
+import static org.onlab.metrics.MetricsUtil.stopTimer;
 import static org.onlab.util.Tools.groupedThreads;
 import static org.onosproject.security.AppGuard.checkPermission;
 import static org.onosproject.security.AppPermission.Type.EVENT_READ;
@@ -55,6 +80,13 @@ import static org.onosproject.security.AppPermission.Type.EVENT_WRITE;
 import static org.slf4j.LoggerFactory.getLogger;
 /**
  * Simple implementation of an event dispatching service.
+ * <p>
+ * Events are routed to one of several dispatch loops based on their class.
+ * Each loop can be sharded across a number of worker threads; events are
+ * assigned to workers by their subject, so that events pertaining to the
+ * same subject are always delivered in order, while events for unrelated
+ * subjects may be delivered in parallel.
+ * </p>
  */
 @Component(immediate = true)
 @Service
@@ -63,13 +95,83 @@ public class CoreEventDispatcher extends DefaultEventSinkRegistry
 
     private final Logger log = getLogger(getClass());
 
+    private static final String TOPOLOGY = "topology";
+    private static final String PROGRAMMING = "programming";
+    private static final String DEFAULT = "default";
+
+    private static final String METRICS_COMPONENT = "EventDispatcher";
+    private static final String QUEUE_DEPTH = "queueDepth";
+    private static final String DROPPED_EVENTS = "droppedEvents";
+    private static final String SINK_LATENCY = "latency";
+
+    private static final int DEFAULT_DISPATCH_WORKERS = 1;
+    @Property(name = "dispatchWorkers", intValue = DEFAULT_DISPATCH_WORKERS,
+            label = "Number of worker threads per dispatch loop; events " +
+                    "with the same subject are always handled by the same worker")
+    private int dispatchWorkers = DEFAULT_DISPATCH_WORKERS;
+
+    private static final int DEFAULT_QUEUE_SIZE = 0;
+    @Property(name = "dispatchQueueSize", intValue = DEFAULT_QUEUE_SIZE,
+            label = "Number of events queued per dispatch worker beyond which " +
+                    "events are dropped if dropOnOverflow is set; 0 means unbounded")
+    private int dispatchQueueSize = DEFAULT_QUEUE_SIZE;
+
+    private static final boolean DEFAULT_DROP_ON_OVERFLOW = false;
+    @Property(name = "dropOnOverflow", boolValue = DEFAULT_DROP_ON_OVERFLOW,
+            label = "Drop events when a dispatch queue is full; otherwise the " +
+                    "queue keeps growing and the watchdog reports the backlog")
+    private volatile boolean dropOnOverflow = DEFAULT_DROP_ON_OVERFLOW;
+
+    private static final int DEFAULT_QUEUE_WARN_THRESHOLD = 10_000;
+    @Property(name = "queueWarnThreshold", intValue = DEFAULT_QUEUE_WARN_THRESHOLD,
+            label = "Number of queued events in a dispatch loop above which " +
+                    "the watchdog reports a backlog")
+    private int queueWarnThreshold = DEFAULT_QUEUE_WARN_THRESHOLD;
+
+    // This must be optional to avoid a cyclic dependency, since the stores
+    // behind the configuration service post events through this service
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL_UNARY,
+            policy = ReferencePolicy.DYNAMIC)
+    protected volatile ComponentConfigService cfgService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected MetricsService metricsService;
+
+    private volatile Map<Class, DispatchLoop> dispatcherMap;
+    private volatile DispatchLoop defaultDispatcher;
+    private volatile Set<DispatchLoop> dispatchers;
+
+    private final ConcurrentMap<Class, Timer> sinkTimers = Maps.newConcurrentMap();
+    private MetricsComponent metricsComponent;
 
-    private DispatchLoop topologyDispatcher = new DispatchLoop("topology");
-    private DispatchLoop programmingDispatcher = new DispatchLoop("programming");
-    private DispatchLoop defaultDispatcher = new DispatchLoop("default");
+    // Default number of millis a sink can take to process an event.
+    private static final long DEFAULT_EXECUTE_MS = 5_000; // ms
+    private static final long WATCHDOG_MS = 250; // ms
+
+    @SuppressWarnings("unchecked")
+    private static final Event KILL_PILL = new AbstractEvent(null, 0) {
+    };
 
-    private Map<Class, DispatchLoop> dispatcherMap =
-            new ImmutableMap.Builder<Class, DispatchLoop>()
+    private long maxProcessMillis = DEFAULT_EXECUTE_MS;
+
+    /**
+     * Creates an event dispatcher with a single worker per dispatch loop
+     * and unbounded event queues.
+     */
+    public CoreEventDispatcher() {
+        createDispatchers();
+        dispatchers.forEach(DispatchLoop::start);
+    }
+
+    // Creates a fresh set of dispatch loops using the current configuration;
+    // the loops queue the events posted to them but do not deliver them
+    // until they are started.
+    private synchronized void createDispatchers() {
+        DispatchLoop topologyDispatcher = new DispatchLoop(TOPOLOGY);
+        DispatchLoop programmingDispatcher = new DispatchLoop(PROGRAMMING);
+        defaultDispatcher = new DispatchLoop(DEFAULT);
+
+        dispatcherMap = new ImmutableMap.Builder<Class, DispatchLoop>()
                 .put(TopologyEvent.class, topologyDispatcher)
                 .put(DeviceEvent.class, topologyDispatcher)
                 .put(LinkEvent.class, topologyDispatcher)
@@ -78,21 +180,11 @@ public class CoreEventDispatcher extends DefaultEventSinkRegistry
                 .put(IntentEvent.class, programmingDispatcher)
                 .build();
 
-    private Set<DispatchLoop> dispatchers =
-            new ImmutableSet.Builder<DispatchLoop>()
+        dispatchers = new ImmutableSet.Builder<DispatchLoop>()
                 .addAll(dispatcherMap.values())
                 .add(defaultDispatcher)
                 .build();
-
-    // Default number of millis a sink can take to process an event.
-    private static final long DEFAULT_EXECUTE_MS = 5_000; // ms
-    private static final long WATCHDOG_MS = 250; // ms
-
-    @SuppressWarnings("unchecked")
-    private static final Event KILL_PILL = new AbstractEvent(null, 0) {
-    };
-
-    private long maxProcessMillis = DEFAULT_EXECUTE_MS;
+    }
 
     private DispatchLoop getDispatcher(Event event) {
         DispatchLoop dispatcher = dispatcherMap.get(event.getClass());
@@ -104,29 +196,121 @@ public class CoreEventDispatcher extends DefaultEventSinkRegistry
 
     @Override
     public void post(Event event) {
+        // Never blocks; events dropped on overflow are reported by the watchdog
+        getDispatcher(event).add(event);
+    }
 
-        if (!getDispatcher(event).add(event)) {
-            log.error("Unable to post event {}", event);
+    /**
+     * Hook for wiring up optional reference to a service.
+     *
+     * @param service service being announced
+     */
+    protected void bindCfgService(ComponentConfigService service) {
+        if (cfgService == null) {
+            cfgService = service;
+            cfgService.registerProperties(getClass());
+            Set<ConfigProperty> properties = cfgService.getProperties(getClass().getName());
+            if (properties != null) {
+                Hashtable<String, String> values = new Hashtable<>();
+                properties.stream().filter(p -> p.value() != null)
+                        .forEach(p -> values.put(p.name(), p.value()));
+                readComponentConfiguration(values);
+            }
+        }
+    }
+
+    /**
+     * Hook for unwiring optional reference to a service.
+     *
+     * @param service service being withdrawn
+     */
+    protected void unbindCfgService(ComponentConfigService service) {
+        if (cfgService == service) {
+            cfgService.unregisterProperties(getClass(), false);
+            cfgService = null;
         }
     }
 
     @Activate
-    public void activate() {
+    public void activate(ComponentContext context) {
+        modified(context);
 
         if (maxProcessMillis != 0) {
             dispatchers.forEach(DispatchLoop::startWatchdog);
         }
+        registerMetrics();
 
         log.info("Started");
     }
 
     @Deactivate
     public void deactivate() {
+        unregisterMetrics();
         dispatchers.forEach(DispatchLoop::stop);
 
         log.info("Stopped");
     }
 
+    @Modified
+    public void modified(ComponentContext context) {
+        if (context == null) {
+            return;
+        }
+        readComponentConfiguration(context.getProperties());
+    }
+
+    // Applies the given configuration, replacing the dispatch loops if their
+    // number of workers or queue size changed.
+    private synchronized void readComponentConfiguration(Dictionary<?, ?> properties) {
+        int newWorkers = Tools.getIntegerProperty(properties, "dispatchWorkers",
+                                                  dispatchWorkers);
+        int newQueueSize = Tools.getIntegerProperty(properties, "dispatchQueueSize",
+                                                    dispatchQueueSize);
+        dropOnOverflow = Tools.isPropertyEnabled(properties, "dropOnOverflow",
+                                                 dropOnOverflow);
+        queueWarnThreshold = Tools.getIntegerProperty(properties, "queueWarnThreshold",
+                                                      queueWarnThreshold);
+
+        if (newWorkers < 1) {
+            log.warn("dispatchWorkers must be greater than 0");
+            newWorkers = dispatchWorkers;
+        }
+        if (newQueueSize < 0) {
+            log.warn("dispatchQueueSize must be greater than or equal to 0");
+            newQueueSize = dispatchQueueSize;
+        }
+
+        if (newWorkers != dispatchWorkers || newQueueSize != dispatchQueueSize) {
+            dispatchWorkers = newWorkers;
+            dispatchQueueSize = newQueueSize;
+            reconfigureDispatchers();
+        }
+
+        log.info("Settings: dispatchWorkers={}, dispatchQueueSize={}, " +
+                         "dropOnOverflow={}, queueWarnThreshold={}",
+                 dispatchWorkers, dispatchQueueSize, dropOnOverflow,
+                 queueWarnThreshold);
+    }
+
+    // Swaps in new dispatch loops. The new loops only start delivering once
+    // the old loops have delivered all the events queued to them, so that
+    // the events of a subject are still delivered in order.
+    private synchronized void reconfigureDispatchers() {
+        Set<DispatchLoop> oldDispatchers = dispatchers;
+        createDispatchers();
+        Set<DispatchLoop> newDispatchers = dispatchers;
+        oldDispatchers.forEach(DispatchLoop::stop);
+        CompletableFuture.allOf(oldDispatchers.stream()
+                                        .map(DispatchLoop::terminated)
+                                        .toArray(CompletableFuture[]::new))
+                .thenRun(() -> newDispatchers.forEach(loop -> {
+                    loop.start();
+                    if (maxProcessMillis != 0) {
+                        loop.startWatchdog();
+                    }
+                }));
+    }
+
     @Override
     public void setDispatchTimeLimit(long millis) {
         checkPermission(EVENT_WRITE);
@@ -148,109 +332,311 @@ public class CoreEventDispatcher extends DefaultEventSinkRegistry
         return maxProcessMillis;
     }
 
-    // Auxiliary event dispatching loop that feeds off the events queue.
-    private class DispatchLoop implements Runnable {
+    // Registers the per-loop queue depth and drop count gauges.
+    private void registerMetrics() {
+        if (metricsService == null) {
+            return;
+        }
+        metricsComponent = metricsService.registerComponent(METRICS_COMPONENT);
+        for (String name : Arrays.asList(TOPOLOGY, PROGRAMMING, DEFAULT)) {
+            MetricsFeature feature = metricsComponent.registerFeature(name);
+            metricsService.registerMetric(metricsComponent, feature, QUEUE_DEPTH,
+                                          (Gauge<Integer>) () -> queueDepth(name));
+            metricsService.registerMetric(metricsComponent, feature, DROPPED_EVENTS,
+                                          (Gauge<Long>) () -> droppedEvents(name));
+        }
+    }
+
+    private void unregisterMetrics() {
+        if (metricsService == null || metricsComponent == null) {
+            return;
+        }
+        for (String name : Arrays.asList(TOPOLOGY, PROGRAMMING, DEFAULT)) {
+            MetricsFeature feature = metricsComponent.registerFeature(name);
+            metricsService.removeMetric(metricsComponent, feature, QUEUE_DEPTH);
+            metricsService.removeMetric(metricsComponent, feature, DROPPED_EVENTS);
+        }
+        sinkTimers.keySet().forEach(sinkClass -> metricsService.removeMetric(
+                metricsComponent, metricsComponent.registerFeature(sinkClass.getName()),
+                SINK_LATENCY));
+        sinkTimers.clear();
+        metricsComponent = null;
+    }
+
+    private int queueDepth(String name) {
+        return dispatchers.stream().filter(d -> d.name.equals(name))
+                .mapToInt(DispatchLoop::queueDepth).sum();
+    }
+
+    private long droppedEvents(String name) {
+        return dispatchers.stream().filter(d -> d.name.equals(name))
+                .mapToLong(d -> d.droppedEvents.get()).sum();
+    }
+
+    // Returns the processing latency timer for the given sink, if metrics
+    // collection is available.
+    private Timer sinkTimer(EventSink sink) {
+        MetricsComponent component = metricsComponent;
+        if (component == null) {
+            return null;
+        }
+        return sinkTimers.computeIfAbsent(sink.getClass(), sinkClass ->
+                metricsService.createTimer(component,
+                                           component.registerFeature(sinkClass.getName()),
+                                           SINK_LATENCY));
+    }
+
+    /**
+     * Returns the key by which an event is assigned to a dispatch worker.
+     * Subjects whose equality covers mutable state, such as devices, hosts
+     * and intents, are keyed by their identifier; topology events, which
+     * carry a new topology each time, all share a single key.
+     *
+     * @param event event to be dispatched
+     * @return key identifying the entity the event is about
+     */
+    static Object shardKey(Event event) {
+        if (event instanceof TopologyEvent) {
+            return TopologyEvent.class;
+        } else if (event instanceof DeviceEvent) {
+            return ((DeviceEvent) event).subject().id();
+        } else if (event instanceof HostEvent) {
+            return ((HostEvent) event).subject().id();
+        } else if (event instanceof LinkEvent) {
+            return LinkKey.linkKey(((LinkEvent) event).subject());
+        } else if (event instanceof IntentEvent) {
+            return ((IntentEvent) event).subject().key();
+        } else if (event instanceof FlowRuleEvent) {
+            return ((FlowRuleEvent) event).subject().id();
+        }
+        return event.subject();
+    }
+
+    // Auxiliary event dispatching loop that shards events across one or more
+    // workers, each feeding off its own events queue.
+    private class DispatchLoop {
         private final String name;
-        private volatile boolean stopped;
-        private volatile EventSink lastSink;
-        // Means to detect long-running sinks
-        private final Stopwatch stopwatch = Stopwatch.createUnstarted();
+        private final DispatchWorker[] workers;
+        private final AtomicLong droppedEvents = new AtomicLong();
+        private final AtomicLong reportedDrops = new AtomicLong();
         private TimerTask watchdog;
-        private volatile Future<?> dispatchFuture;
-        private final BlockingQueue<Event> eventsQueue;
-        private final ExecutorService executor;
 
         DispatchLoop(String name) {
             this.name = name;
-            executor = newSingleThreadExecutor(
-                    groupedThreads("onos/event",
-                    "dispatch-" + name + "%d", log));
-            eventsQueue = new LinkedBlockingQueue<>();
-            dispatchFuture = executor.submit(this);
+            workers = new DispatchWorker[dispatchWorkers];
+            for (int i = 0; i < workers.length; i++) {
+                workers[i] = new DispatchWorker(workers.length > 1 ? name + "-" + i : name,
+                                                dispatchQueueSize);
+            }
         }
 
-        public boolean add(Event event) {
-            return eventsQueue.add(event);
+        void start() {
+            for (DispatchWorker worker : workers) {
+                worker.start();
+            }
         }
 
-        @Override
-        public void run() {
-            stopped = false;
-            log.info("Dispatch loop initiated");
-            while (!stopped) {
-                try {
-                    // Fetch the next event and if it is the kill-pill, bail
-                    Event event = eventsQueue.take();
-                    if (event == KILL_PILL) {
-                        break;
-                    }
-                    process(event);
-                } catch (InterruptedException e) {
-                    log.warn("Dispatch loop interrupted");
-                } catch (Exception | Error e) {
-                    log.warn("Error encountered while dispatching event:", e);
-                }
+        boolean add(Event event) {
+            if (workers[workerIndex(event)].add(event)) {
+                return true;
+            }
+            droppedEvents.incrementAndGet();
+            return false;
+        }
+
+        // Events about the same entity always map onto the same worker so
+        // that they are delivered in the order in which they were posted.
+        private int workerIndex(Event event) {
+            if (workers.length == 1) {
+                return 0;
             }
-            log.info("Dispatch loop terminated");
+            return Math.floorMod(Objects.hashCode(shardKey(event)), workers.length);
         }
 
-        // Locate the sink for the event class and use it to process the event
-        @SuppressWarnings("unchecked")
-        private void process(Event event) {
-            EventSink sink = getSink(event.getClass());
-            if (sink != null) {
-                lastSink = sink;
-                stopwatch.start();
-                sink.process(event);
-                stopwatch.reset();
-            } else {
-                log.warn("No sink registered for event class {}",
-                         event.getClass().getName());
+        int queueDepth() {
+            int depth = 0;
+            for (DispatchWorker worker : workers) {
+                depth += worker.eventsQueue.size();
             }
+            return depth;
         }
 
+        // Stops the workers once they have delivered the events queued to
+        // them; the watchdog keeps running until then.
         void stop() {
-            stopped = true;
-            stopWatchdog();
-            add(KILL_PILL);
+            for (DispatchWorker worker : workers) {
+                worker.stop();
+            }
+            terminated().thenRun(this::stopWatchdog);
         }
 
-        // Monitors event sinks to make sure none take too long to execute.
+        CompletableFuture<Void> terminated() {
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[workers.length];
+            for (int i = 0; i < workers.length; i++) {
+                futures[i] = workers[i].terminated;
+            }
+            return CompletableFuture.allOf(futures);
+        }
+
+        // Monitors event sinks to make sure none take too long to execute and
+        // reports backlogged queues and events dropped due to overflow.
         private class Watchdog extends TimerTask {
             @Override
             public void run() {
-                long elapsedTimeMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
-                if (elapsedTimeMillis > maxProcessMillis) {
-                    stopwatch.reset();
-                    log.warn("Event sink {} exceeded execution time limit: {} ms; " +
-                             "spawning new dispatch loop",
-                             lastSink.getClass().getName(), elapsedTimeMillis);
-
-                    // Notify the sink that it has exceeded its time limit.
-                    lastSink.onProcessLimit();
+                for (DispatchWorker worker : workers) {
+                    worker.checkProcessLimit();
+                }
 
-                    // Cancel the old dispatch loop and submit a new one.
+                int depth = queueDepth();
+                if (depth > queueWarnThreshold) {
+                    log.warn("Dispatcher {} has {} events queued", name, depth);
+                }
 
-                stop();
-                dispatchFuture.cancel(true);
-                dispatchFuture = executor.submit(this);
+                long dropped = droppedEvents.get();
+                long newlyDropped = dropped - reportedDrops.getAndSet(dropped);
+                if (newlyDropped > 0) {
+                    log.warn("Dispatcher {} dropped {} events due to full queues",
+                             name, newlyDropped);
                 }
             }
         }
 
-        private void startWatchdog() {
+        private synchronized void startWatchdog() {
             log.info("Starting watchdog task for dispatcher {}", name);
+            stopWatchdog();
             watchdog = new Watchdog();
             SharedExecutors.getTimer().schedule(watchdog, WATCHDOG_MS, WATCHDOG_MS);
         }
 
-        private void stopWatchdog() {
+        private synchronized void stopWatchdog() {
             log.info("Stopping watchdog task for dispatcher {}", name);
             if (watchdog != null) {
                 watchdog.cancel();
+                watchdog = null;
             }
         }
     }
 
+    // Single worker of a dispatch loop; delivers the events from its queue
+    // to their sinks one at a time.
+    private class DispatchWorker {
+        private final String name;
+        private final int queueSize;
+        private final BlockingQueue<Event> eventsQueue = new LinkedBlockingQueue<>();
+        // Completed once the events queued before the worker was stopped
+        // have all been delivered
+        private final CompletableFuture<Void> terminated = new CompletableFuture<>();
+        private ExecutorService executor;
+        private boolean stopping;
+        private volatile DispatchTask task;
+        private volatile Future<?> dispatchFuture;
+
+        DispatchWorker(String name, int queueSize) {
+            this.name = name;
+            this.queueSize = queueSize;
+        }
+
+        // Enqueues the event without ever blocking; the event is dropped if
+        // the queue is full and dropping is enabled.
+        boolean add(Event event) {
+            if (dropOnOverflow && queueSize > 0 && eventsQueue.size() >= queueSize) {
+                return false;
+            }
+            return eventsQueue.add(event);
+        }
+
+        synchronized void start() {
+            executor = newSingleThreadExecutor(
+                    groupedThreads("onos/event",
+                    "dispatch-" + name + "%d", log));
+            task = new DispatchTask();
+            dispatchFuture = executor.submit(task);
+            if (stopping) {
+                executor.shutdown();
+            }
+        }
+
+        // Lets the worker deliver the events already queued, then terminate.
+        synchronized void stop() {
+            stopping = true;
+            eventsQueue.add(KILL_PILL);
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+
+        // Cancels the current dispatch task if its sink exceeded the time
+        // limit and spawns a fresh one on a new thread to resume dispatching.
+        synchronized void checkProcessLimit() {
+            DispatchTask current = task;
+            if (current == null) {
+                return;
+            }
+            long elapsedTimeMillis = current.stopwatch.elapsed(TimeUnit.MILLISECONDS);
+            if (maxProcessMillis != 0 && elapsedTimeMillis > maxProcessMillis) {
+                EventSink sink = current.lastSink;
+                log.warn("Event sink {} exceeded execution time limit: {} ms; " +
+                                 "spawning new dispatch loop",
+                         sink.getClass().getName(), elapsedTimeMillis);
+
+                // Notify the sink that it has exceeded its time limit.
+                sink.onProcessLimit();
+
+                // Cancel the old dispatch task and submit a new one.
+                current.stopped = true;
+                dispatchFuture.cancel(true);
+                executor.shutdown();
+                start();
+            }
+        }
+
+        private class DispatchTask implements Runnable {
+            private volatile boolean stopped;
+            private volatile EventSink lastSink;
+            // Means to detect long-running sinks
+            private final Stopwatch stopwatch = Stopwatch.createUnstarted();
+
+            @Override
+            public void run() {
+                log.info("Dispatch loop initiated");
+                while (!stopped) {
+                    try {
+                        // Fetch the next event and if it is the kill-pill, bail
+                        Event event = eventsQueue.take();
+                        if (event == KILL_PILL) {
+                            terminated.complete(null);
+                            break;
+                        }
+                        process(event);
+                    } catch (InterruptedException e) {
+                        log.warn("Dispatch loop interrupted");
+                    } catch (Exception | Error e) {
+                        log.warn("Error encountered while dispatching event:", e);
+                    }
+                }
+                log.info("Dispatch loop terminated");
+            }
+
+            // Locate the sink for the event class and use it to process the event
+            @SuppressWarnings("unchecked")
+            private void process(Event event) {
+                EventSink sink = getSink(event.getClass());
+                if (sink != null) {
+                    lastSink = sink;
+                    Timer.Context context = startTimer(sinkTimer(sink));
+                    stopwatch.start();
+                    try {
+                        sink.process(event);
+                    } finally {
+                        stopwatch.reset();
+                        stopTimer(context);
+                    }
+                } else {
+                    log.warn("No sink registered for event class {}",
+                             event.getClass().getName());
+                }
+            }
+        }
+    }
 
 }
@@ -15,6 +15,8 @@
  */
 package org.onosproject.net.flow.impl;
 
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Timer;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
@@ -29,6 +31,9 @@ import org.apache.felix.scr.annotations.Property;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.ReferenceCardinality;
 import org.apache.felix.scr.annotations.Service;
+import org.onlab.metrics.MetricsComponent;
+import org.onlab.metrics.MetricsFeature;
+import org.onlab.metrics.MetricsService;
 import org.onlab.util.Tools;
 import org.onosproject.cfg.ComponentConfigService;
 import org.onosproject.core.ApplicationId;
@@ -64,6 +69,7 @@ import org.onosproject.net.provider.AbstractProviderService;
 import org.osgi.service.component.ComponentContext;
 import org.slf4j.Logger;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Dictionary;
 import java.util.HashSet;
@@ -77,6 +83,8 @@ import java.util.concurrent.Executors;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Strings.isNullOrEmpty;
 import static org.onlab.util.Tools.get;
+import static org.onlab.metrics.MetricsUtil.startTimer;
+import static org.onlab.metrics.MetricsUtil.stopTimer;
 import static org.onlab.util.Tools.groupedThreads;
 import static org.onosproject.net.flow.FlowRuleEvent.Type.RULE_ADD_REQUESTED;
 import static org.onosproject.net.flow.FlowRuleEvent.Type.RULE_REMOVE_REQUESTED;
@@ -115,6 +123,15 @@ public class FlowRuleManager
             label = "Frequency (in seconds) for polling flow statistics via fallback provider")
     private int fallbackFlowPollFrequency = DEFAULT_POLL_FREQUENCY;
 
+    @Property(name = "reconcileChangedFlowsOnly", boolValue = true,
+            label = "Update only the stored flow entries whose statistics changed " +
+                    "when reconciling with the flow statistics reported by devices")
+    private boolean reconcileChangedFlowsOnly = true;
+
+    private static final String METRICS_COMPONENT = "FlowRuleManager";
+    private static final String RECONCILIATION = "statsReconciliation";
+    private static final String CHANGED_FLOWS = "changedFlows";
+
     private final FlowRuleStoreDelegate delegate = new InternalStoreDelegate();
     private final DeviceListener deviceListener = new InternalDeviceListener();
 
@@ -145,6 +162,18 @@ public class FlowRuleManager
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
     protected ComponentConfigService cfgService;
 
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected MetricsService metricsService;
+
+    private MetricsComponent metricsComponent;
+    private final Map<DeviceId, ReconciliationMetrics> reconciliationMetrics =
+            Maps.newConcurrentMap();
+
+    // Flow entries whose statistics changed during the last reconciliation
+    // with each device; these are updated once more even if unchanged since,
+    // so that statistics consumers see their load settle.
+    private final Map<DeviceId, Set<FlowEntry>> changedFlows = Maps.newConcurrentMap();
+
     @Activate
     public void activate(ComponentContext context) {
         modified(context);
@@ -153,6 +182,9 @@ public class FlowRuleManager
         deviceService.addListener(deviceListener);
         cfgService.registerProperties(getClass());
         idGenerator = coreService.getIdGenerator(FLOW_OP_TOPIC);
+        if (metricsService != null) {
+            metricsComponent = metricsService.registerComponent(METRICS_COMPONENT);
+        }
         log.info("Started");
     }
 
@@ -164,6 +196,8 @@ public class FlowRuleManager
         operationsService.shutdownNow();
         store.unsetDelegate(delegate);
         eventDispatcher.removeSink(FlowRuleEvent.class);
+        reconciliationMetrics.keySet().forEach(this::removeReconciliationMetrics);
+        changedFlows.clear();
         log.info("Stopped");
     }
 
@@ -210,6 +244,16 @@ public class FlowRuleManager
                     purgeOnDisconnection ? "enabled" : "disabled");
         }
 
+        flag = Tools.isPropertyEnabled(properties, "reconcileChangedFlowsOnly");
+        if (flag == null) {
+            log.info("ReconcileChangedFlowsOnly is not configured, " +
+                    "using current value of {}", reconcileChangedFlowsOnly);
+        } else {
+            reconcileChangedFlowsOnly = flag;
+            log.info("Configured. ReconcileChangedFlowsOnly is {}",
+                    reconcileChangedFlowsOnly ? "enabled" : "disabled");
+        }
+
         String s = get(properties, "fallbackFlowPollFrequency");
         try {
             fallbackFlowPollFrequency = isNullOrEmpty(s) ? DEFAULT_POLL_FREQUENCY : Integer.parseInt(s);
@@ -414,22 +458,43 @@ public class FlowRuleManager
             log.debug("Flow {} is on switch but not in store.", flowRule);
         }
 
-        private void flowAdded(FlowEntry flowEntry) {
-            checkNotNull(flowEntry, FLOW_RULE_NULL);
-            checkValidity();
-
-            if (checkRuleLiveness(flowEntry, store.getFlowEntry(flowEntry))) {
-                FlowRuleEvent event = store.addOrUpdateFlowRule(flowEntry);
-                if (event == null) {
-                    log.debug("No flow store event generated.");
-                } else {
-                    log.trace("Flow {} {}", flowEntry, event.type());
-                    post(event);
+        // Writes the given entries of the device to the store in one go and
+        // posts the resulting events. Should the batch fail, the entries are
+        // written one by one, so that a bad entry does not hold up the rest.
+        private void flowsAdded(DeviceId deviceId, List<FlowEntry> flowEntries) {
+            if (flowEntries.isEmpty()) {
+                return;
+            }
+            List<FlowRuleEvent> events;
+            try {
+                events = store.addOrUpdateFlowRules(deviceId, flowEntries);
+            } catch (Exception e) {
+                log.debug("Can't update added rules in one go {}", e.getMessage());
+                events = new ArrayList<>();
+                for (FlowEntry flowEntry : flowEntries) {
+                    try {
+                        FlowRuleEvent event = store.addOrUpdateFlowRule(flowEntry);
+                        if (event != null) {
+                            events.add(event);
+                        }
+                    } catch (Exception ex) {
+                        log.debug("Can't update added rule {}", ex.getMessage());
+                    }
                 }
-            } else {
-                log.debug("Removing flow rules....");
-                removeFlowRules(flowEntry);
             }
+            for (FlowRuleEvent event : events) {
+                log.trace("Flow {} {}", event.subject(), event.type());
+                post(event);
+            }
+        }
+
+        // Indicates whether the entry reported by the device carries any
+        // news compared to the stored entry.
+        private boolean isChanged(FlowEntry storedRule, FlowEntry swRule) {
+            return storedRule.state() != FlowEntry.FlowEntryState.ADDED ||
+                    storedRule.packets() != swRule.packets() ||
+                    storedRule.bytes() != swRule.bytes() ||
+                    storedRule.liveType() != swRule.liveType();
         }
 
         private boolean checkRuleLiveness(FlowEntry swRule, FlowEntry storedRule) {
@@ -485,16 +550,37 @@ public class FlowRuleManager
 
         private void pushFlowMetricsInternal(DeviceId deviceId, Iterable<FlowEntry> flowEntries,
                                              boolean useMissingFlow) {
+            checkValidity();
+            ReconciliationMetrics metrics = reconciliationMetrics(deviceId);
+            Timer.Context timer = startTimer(metrics != null ? metrics.timer : null);
+
             Map<FlowEntry, FlowEntry> storedRules = Maps.newHashMap();
             store.getFlowEntries(deviceId).forEach(f -> storedRules.put(f, f));
 
+            Set<FlowEntry> previouslyChanged =
+                    changedFlows.getOrDefault(deviceId, Collections.emptySet());
+            Set<FlowEntry> changed = new HashSet<>();
+            List<FlowEntry> toUpdate = new ArrayList<>();
+            List<FlowEntry> toRefresh = new ArrayList<>();
+
             for (FlowEntry rule : flowEntries) {
                 try {
                     FlowEntry storedRule = storedRules.remove(rule);
                     if (storedRule != null) {
                         if (storedRule.exactMatch(rule)) {
                             // we both have the rule, let's update some info then.
-                            flowAdded(rule);
+                            if (!checkRuleLiveness(rule, storedRule)) {
+                                log.debug("Removing flow rules....");
+                                removeFlowRules(rule);
+                            } else if (isChanged(storedRule, rule)) {
+                                changed.add(rule);
+                                toUpdate.add(rule);
+                            } else if (!reconcileChangedFlowsOnly ||
+                                    previouslyChanged.contains(rule)) {
+                                toUpdate.add(rule);
+                            } else {
+                                toRefresh.add(rule);
+                            }
                         } else {
                             // the two rules are not an exact match - remove the
                             // switch's rule and install our rule
@@ -512,6 +598,20 @@ public class FlowRuleManager
                 }
             }
 
+            flowsAdded(deviceId, toUpdate);
+            if (!toRefresh.isEmpty()) {
+                try {
+                    store.refreshFlowRules(deviceId, toRefresh);
+                } catch (Exception e) {
+                    log.debug("Can't refresh unchanged rules {}", e.getMessage());
+                }
+            }
+            if (changed.isEmpty()) {
+                changedFlows.remove(deviceId);
+            } else {
+                changedFlows.put(deviceId, changed);
+            }
+
             // DO NOT reinstall
             if (useMissingFlow) {
                 for (FlowEntry rule : storedRules.keySet()) {
@@ -524,6 +624,11 @@ public class FlowRuleManager
                     }
                 }
             }
+
+            stopTimer(timer);
+            if (metrics != null) {
+                metrics.changedFlows.update(toUpdate.size());
+            }
         }
 
         @Override
@@ -681,6 +786,42 @@ public class FlowRuleManager
         return store.getTableStatistics(deviceId);
     }
 
+    // Returns the statistics reconciliation metrics of the given device,
+    // if metrics collection is available.
+    private ReconciliationMetrics reconciliationMetrics(DeviceId deviceId) {
+        MetricsComponent component = metricsComponent;
+        if (component == null) {
+            return null;
+        }
+        return reconciliationMetrics.computeIfAbsent(deviceId, id -> {
+            MetricsFeature feature = component.registerFeature(id.toString());
+            return new ReconciliationMetrics(
+                    metricsService.createTimer(component, feature, RECONCILIATION),
+                    metricsService.createHistogram(component, feature, CHANGED_FLOWS));
+        });
+    }
+
+    private void removeReconciliationMetrics(DeviceId deviceId) {
+        MetricsComponent component = metricsComponent;
+        if (reconciliationMetrics.remove(deviceId) != null && component != null) {
+            MetricsFeature feature = component.registerFeature(deviceId.toString());
+            metricsService.removeMetric(component, feature, RECONCILIATION);
+            metricsService.removeMetric(component, feature, CHANGED_FLOWS);
+        }
+    }
+
+    // Cost of reconciling the stored flow entries of a device with the flow
+    // statistics it reported, and the number of entries updated as a result.
+    private static final class ReconciliationMetrics {
+        private final Timer timer;
+        private final Histogram changedFlows;
+
+        private ReconciliationMetrics(Timer timer, Histogram changedFlows) {
+            this.timer = timer;
+            this.changedFlows = changedFlows;
+        }
+    }
+
     private class InternalDeviceListener implements DeviceListener {
         @Override
         public void event(DeviceEvent event) {
@@ -689,6 +830,8 @@ public class FlowRuleManager
                 case DEVICE_AVAILABILITY_CHANGED:
                     DeviceId deviceId = event.subject().id();
                     if (!deviceService.isAvailable(deviceId)) {
+                        changedFlows.remove(deviceId);
+                        removeReconciliationMetrics(deviceId);
                         if (purgeOnDisconnection) {
                             store.purgeFlowRule(deviceId);
                         }
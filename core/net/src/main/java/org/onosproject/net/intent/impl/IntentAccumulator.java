@@ -16,7 +16,7 @@
 package org.onosproject.net.intent.impl;
 
 import com.google.common.collect.Maps;
-import org.onlab.util.AbstractAccumulator;
+import org.onlab.util.AbstractLockFreeAccumulator;
 import org.onosproject.net.intent.IntentBatchDelegate;
 import org.onosproject.net.intent.IntentData;
 import org.onosproject.net.intent.Key;
@@ -30,7 +30,7 @@ import java.util.Timer;
  * An accumulator for building batches of intent operations. Only one batch should
  * be in process per instance at a time.
  */
-public class IntentAccumulator extends AbstractAccumulator<IntentData> {
+public class IntentAccumulator extends AbstractLockFreeAccumulator<IntentData> {
 
     private static final int DEFAULT_MAX_EVENTS = 1000;
     private static final int DEFAULT_MAX_IDLE_MS = 10;
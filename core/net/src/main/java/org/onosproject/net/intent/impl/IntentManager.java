@@ -15,6 +15,7 @@
  */
 package org.onosproject.net.intent.impl;
 
+import com.google.common.collect.Maps;
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.Deactivate;
@@ -63,6 +64,7 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -109,6 +111,12 @@ public class IntentManager
             label = "Number of worker threads")
     private int numThreads = DEFAULT_NUM_THREADS;
 
+    private static final int DEFAULT_MAX_BATCHES_IN_FLIGHT = 1;
+    @Property(name = "maxBatchesInFlight",
+            intValue = DEFAULT_MAX_BATCHES_IN_FLIGHT,
+            label = "Maximum number of intent batches processed at the same time")
+    private int maxBatchesInFlight = DEFAULT_MAX_BATCHES_IN_FLIGHT;
+
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
     protected CoreService coreService;
 
@@ -222,6 +230,13 @@ public class IntentManager
             }
             logConfig("Reconfigured number of worker threads");
         }
+
+        s = Tools.get(context.getProperties(), "maxBatchesInFlight");
+        int newMaxBatchesInFlight = isNullOrEmpty(s) ? maxBatchesInFlight : Integer.parseInt(s.trim());
+        if (newMaxBatchesInFlight != maxBatchesInFlight && newMaxBatchesInFlight > 0) {
+            maxBatchesInFlight = newMaxBatchesInFlight;
+            log.info("Reconfigured maximum number of batches in flight to {}", maxBatchesInFlight);
+        }
     }
 
     private void logConfig(String prefix) {
@@ -418,42 +433,101 @@ public class IntentManager
         }
     }
 
+    /**
+     * Batch delegate processing up to the configured number of batches at the
+     * same time, so that the compilation and installation of a batch overlap
+     * with the store write of the previous ones.
+     * <p>
+     * An intent whose key is part of a batch still in flight is only
+     * processed once that batch has been written to the store, preserving
+     * the order of the operations on each intent; the other intents of the
+     * batch proceed meanwhile.
+     */
     private class InternalBatchDelegate implements IntentBatchDelegate {
+
+        private final AtomicInteger batchesInFlight = new AtomicInteger();
+        // Batches in flight, by the keys of their intents
+        private final Map<Key, CompletableFuture<Void>> keysInFlight = Maps.newConcurrentMap();
+
         @Override
         public void execute(Collection<IntentData> operations) {
             log.debug("Execute {} operation(s).", operations.size());
             log.trace("Execute operations: {}", operations);
 
-            // batchExecutor is single-threaded, so only one batch is in flight at a time
-            CompletableFuture.runAsync(() -> {
+            if (batchesInFlight.incrementAndGet() < maxBatchesInFlight) {
+                accumulator.ready();
+            }
+
+            // batchExecutor is single-threaded, so batches are dispatched and
+            // written to the store one at a time
+            CompletableFuture.runAsync(() -> dispatch(operations), batchExecutor)
+                    .exceptionally(e -> {
+                        log.error("Error submitting batches:", e);
+                        batchDone();
+                        return null;
+                    });
+        }
+
+        private void batchDone() {
+            if (batchesInFlight.decrementAndGet() < maxBatchesInFlight) {
+                accumulator.ready();
+            }
+        }
+
+        private void dispatch(Collection<IntentData> operations) {
+            CompletableFuture<Void> batch = new CompletableFuture<>();
+
+            // an intent appearing twice would wait for its own batch; keep its
+            // last operation, as the accumulator does
+            Map<Key, IntentData> latest = Maps.newLinkedHashMap();
+            operations.forEach(x -> latest.put(x.key(), x));
+
+            try {
                 // process intent until the phase reaches one of the final phases
-                List<CompletableFuture<IntentData>> futures = operations.stream()
-                        .map(x -> CompletableFuture.completedFuture(x)
-                                .thenApply(IntentManager.this::createInitialPhase)
-                                .thenApplyAsync(IntentProcessPhase::process, workerExecutor)
-                                .thenApply(FinalIntentProcessPhase::data)
-                                .exceptionally(e -> {
-                                    //FIXME
-                                    log.warn("Future failed: {}", e);
-                                    return null;
-                                }))
+                List<CompletableFuture<IntentData>> futures = latest.values().stream()
+                        .map(x -> {
+                            // wait for the batch in flight with the same intent, if any
+                            CompletableFuture<Void> previous = keysInFlight.put(x.key(), batch);
+                            CompletableFuture<IntentData> start = previous == null
+                                    ? CompletableFuture.completedFuture(x) : previous.handle((v, e) -> x);
+                            return start
+                                    .thenApply(IntentManager.this::createInitialPhase)
+                                    .thenApplyAsync(IntentProcessPhase::process, workerExecutor)
+                                    .thenApply(FinalIntentProcessPhase::data)
+                                    .exceptionally(e -> {
+                                        //FIXME
+                                        log.warn("Future failed: {}", e);
+                                        return null;
+                                    });
+                        })
                         .collect(Collectors.toList());
 
                 // write multiple data to store in order
-                store.batchWrite(Tools.allOf(futures).join().stream()
-                                         .filter(Objects::nonNull)
-                                         .collect(Collectors.toList()));
-            }, batchExecutor).exceptionally(e -> {
-                log.error("Error submitting batches:", e);
-                // FIXME incomplete Intents should be cleaned up
-                //       (transition to FAILED, etc.)
-
-                // the batch has failed
-                // TODO: maybe we should do more?
-                log.error("Walk the plank, matey...");
-                return null;
-            }).thenRun(accumulator::ready);
+                Tools.allOf(futures).thenAcceptAsync(data -> store.batchWrite(
+                        data.stream().filter(Objects::nonNull).collect(Collectors.toList())), batchExecutor)
+                        .whenComplete((v, e) -> {
+                            if (e != null) {
+                                log.error("Error submitting batches:", e);
+                                // FIXME incomplete Intents should be cleaned up
+                                //       (transition to FAILED, etc.)
+
+                                // the batch has failed
+                                // TODO: maybe we should do more?
+                                log.error("Walk the plank, matey...");
+                            }
+                            release(latest.keySet(), batch);
+                            batchDone();
+                        });
+            } catch (RuntimeException e) {
+                // the batch will not be written; let the next ones proceed
+                release(latest.keySet(), batch);
+                throw e;
+            }
+        }
 
+        private void release(Collection<Key> keys, CompletableFuture<Void> batch) {
+            keys.forEach(key -> keysInFlight.remove(key, batch));
+            batch.complete(null);
         }
     }
 
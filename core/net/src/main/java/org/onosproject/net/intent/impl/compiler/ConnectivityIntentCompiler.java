@@ -23,6 +23,7 @@ import org.apache.felix.scr.annotations.ReferenceCardinality;
 import org.onlab.graph.DefaultEdgeWeigher;
 import org.onlab.graph.ScalarWeight;
 import org.onlab.graph.Weight;
+import org.onlab.metrics.MetricsService;
 import org.onosproject.net.DisjointPath;
 import org.onosproject.net.ElementId;
 import org.onosproject.net.Path;
@@ -32,21 +33,30 @@ import org.onosproject.net.intent.IntentCompiler;
 import org.onosproject.net.intent.IntentExtensionService;
 import org.onosproject.net.intent.constraint.HashedPathSelectionConstraint;
 import org.onosproject.net.intent.impl.PathNotFoundException;
+import org.onosproject.net.resource.Resource;
 import org.onosproject.net.resource.ResourceQueryService;
 import org.onosproject.net.provider.ProviderId;
 import org.onosproject.net.topology.LinkWeigher;
 import org.onosproject.net.topology.PathService;
+import org.onosproject.net.topology.Topology;
 import org.onosproject.net.topology.TopologyEdge;
+import org.onosproject.net.topology.TopologyService;
 import org.onosproject.net.topology.TopologyVertex;
 
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Function;
 
 /**
  * Base class for compilers of various
  * {@link org.onosproject.net.intent.ConnectivityIntent connectivity intents}.
+ * <p>
+ * The paths computed for intents are cached for the current topology, so
+ * that intents sharing their end-points and constraints share their paths.
+ * Paths whose computation depended on the availability of resources are not
+ * cached, since resources change without the topology changing.
  */
 @Component(immediate = true)
 public abstract class ConnectivityIntentCompiler<T extends ConnectivityIntent>
@@ -63,6 +73,14 @@ public abstract class ConnectivityIntentCompiler<T extends ConnectivityIntent>
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
     protected ResourceQueryService resourceService;
 
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected TopologyService topologyService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected MetricsService metricsService;
+
+    private volatile PathCache pathCache;
+
     /**
      * Returns an edge-weight capable of evaluating links on the basis of the
      * specified constraints.
@@ -110,6 +128,76 @@ public abstract class ConnectivityIntentCompiler<T extends ConnectivityIntent>
         return path;
     }
 
+    /**
+     * Returns the key identifying the given end-point of a path in the path
+     * cache. Paths computed for end-points with equal keys are shared within
+     * a topology, hence the key must capture whatever the path to the
+     * end-point depends on besides the topology.
+     *
+     * @param endpoint path end-point
+     * @return path cache key of the end-point
+     */
+    protected Object pathEndpoint(ElementId endpoint) {
+        return endpoint;
+    }
+
+    /**
+     * Returns the paths between two elements satisfying the given
+     * constraints, computing them only if not already computed for the
+     * current topology.
+     *
+     * @param one         start of the paths
+     * @param two         end of the paths
+     * @param constraints path constraints
+     * @param disjoint    whether disjoint paths are to be computed
+     * @param compute     computation of the paths with a given weigher
+     * @param <P>         type of paths
+     * @return paths passing all constraints
+     */
+    private <P extends Path> List<P> getPaths(ElementId one, ElementId two,
+                                              List<Constraint> constraints, boolean disjoint,
+                                              Function<LinkWeigher, Set<P>> compute) {
+        Topology topology = topologyService.currentTopology();
+        PathCache.Key key = new PathCache.Key(pathEndpoint(one), pathEndpoint(two),
+                                              constraints, disjoint);
+        LinkWeigher weigher = weigher(constraints);
+        Set<P> paths = pathCache().get(topology, key, () -> compute.apply(weigher),
+                                       () -> !dependsOnResources(weigher));
+        List<P> filtered = filter(paths, constraints);
+        if (!filtered.isEmpty() || paths.isEmpty()) {
+            return filtered;
+        }
+        // Resources may have been taken since the paths were computed
+        return filter(compute.apply(weigher(constraints)), constraints);
+    }
+
+    // Weighers other than the constraint based one are assumed to depend on resources.
+    private static boolean dependsOnResources(LinkWeigher weigher) {
+        return !(weigher instanceof ConnectivityIntentCompiler<?>.ConstraintBasedLinkWeigher) ||
+                ((ConnectivityIntentCompiler<?>.ConstraintBasedLinkWeigher) weigher).resourcesConsulted;
+    }
+
+    private <P extends Path> List<P> filter(Set<P> paths, List<Constraint> constraints) {
+        return FluentIterable.from(paths)
+                .filter(path -> checkPath(path, constraints))
+                .toList();
+    }
+
+    // Returns the path cache, created once the metrics service is injected.
+    private PathCache pathCache() {
+        PathCache cache = pathCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = pathCache;
+                if (cache == null) {
+                    cache = new PathCache(metricsService, getClass().getSimpleName());
+                    pathCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
     /**
      * Computes a path between two ConnectPoints.
      *
@@ -120,11 +208,9 @@ public abstract class ConnectivityIntentCompiler<T extends ConnectivityIntent>
      */
     protected Path getPath(ConnectivityIntent intent,
                            ElementId one, ElementId two) {
-        Set<Path> paths = pathService.getPaths(one, two, weigher(intent.constraints()));
         final List<Constraint> constraints = intent.constraints();
-        ImmutableList<Path> filtered = FluentIterable.from(paths)
-                .filter(path -> checkPath(path, constraints))
-                .toList();
+        List<Path> filtered = getPaths(one, two, constraints, false,
+                                       weigher -> pathService.getPaths(one, two, weigher));
         if (filtered.isEmpty()) {
             return null;
         }
@@ -147,11 +233,9 @@ public abstract class ConnectivityIntentCompiler<T extends ConnectivityIntent>
      */
     protected DisjointPath getDisjointPath(ConnectivityIntent intent,
                            ElementId one, ElementId two) {
-        Set<DisjointPath> paths = pathService.getDisjointPaths(one, two, weigher(intent.constraints()));
         final List<Constraint> constraints = intent.constraints();
-        ImmutableList<DisjointPath> filtered = FluentIterable.from(paths)
-                .filter(path -> checkPath(path, constraints))
-                .toList();
+        List<DisjointPath> filtered = getPaths(one, two, constraints, true,
+                                               weigher -> pathService.getDisjointPaths(one, two, weigher));
         if (filtered.isEmpty()) {
             throw new PathNotFoundException(one, two);
         }
@@ -165,11 +249,18 @@ public abstract class ConnectivityIntentCompiler<T extends ConnectivityIntent>
 
     /**
      * Edge-weight capable of evaluating link cost using a set of constraints.
+     * <p>
+     * Constraints may weigh links by the current resource availability,
+     * which changes without the topology changing, so the topology does
+     * not cache the paths computed with it. The weigher records whether
+     * any resource availability was consulted, so that the compiler does
+     * not cache such paths either.
      */
     protected class ConstraintBasedLinkWeigher extends DefaultEdgeWeigher<TopologyVertex, TopologyEdge>
             implements LinkWeigher {
 
         private final List<Constraint> constraints;
+        private volatile boolean resourcesConsulted;
 
         /**
          * Creates a new edge-weight function capable of evaluating links
@@ -196,15 +287,20 @@ public abstract class ConnectivityIntentCompiler<T extends ConnectivityIntent>
                 return new ScalarWeight(HOP_WEIGHT_VALUE);
             }
 
-            double cost = it.next().cost(edge.link(), resourceService::isAvailable);
+            double cost = it.next().cost(edge.link(), this::isAvailable);
             while (it.hasNext() && cost > 0) {
-                if (it.next().cost(edge.link(), resourceService::isAvailable) < 0) {
+                if (it.next().cost(edge.link(), this::isAvailable) < 0) {
                     cost = -1;
                 }
             }
             return new ScalarWeight(cost);
 
         }
+
+        private boolean isAvailable(Resource resource) {
+            resourcesConsulted = true;
+            return resourceService.isAvailable(resource);
+        }
     }
 
 }
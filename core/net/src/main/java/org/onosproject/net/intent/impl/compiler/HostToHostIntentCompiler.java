@@ -25,8 +25,10 @@ import org.apache.felix.scr.annotations.ReferenceCardinality;
 import org.onosproject.net.DefaultLink;
 import org.onosproject.net.DefaultPath;
 import org.onosproject.net.DeviceId;
+import org.onosproject.net.ElementId;
 import org.onosproject.net.FilteredConnectPoint;
 import org.onosproject.net.Host;
+import org.onosproject.net.HostId;
 import org.onosproject.net.Link;
 import org.onosproject.net.Path;
 import org.onosproject.net.flow.TrafficSelector;
@@ -74,6 +76,13 @@ public class HostToHostIntentCompiler
         intentManager.unregisterCompiler(HostToHostIntent.class);
     }
 
+    @Override
+    protected Object pathEndpoint(ElementId endpoint) {
+        // Paths to a host depend on where it is attached
+        Host host = endpoint instanceof HostId ? hostService.getHost((HostId) endpoint) : null;
+        return host == null ? endpoint : Arrays.asList(endpoint, host.location());
+    }
+
     @Override
     public List<Intent> compile(HostToHostIntent intent, List<Intent> installable) {
         // If source and destination are the same, there are never any installables.
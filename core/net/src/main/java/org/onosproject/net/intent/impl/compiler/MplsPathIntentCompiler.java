@@ -60,6 +60,7 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -76,6 +77,10 @@ import static org.slf4j.LoggerFactory.getLogger;
 @Component(immediate = true)
 public class MplsPathIntentCompiler implements IntentCompiler<MplsPathIntent> {
 
+    // Number of labels available at the source of a link looked up before
+    // all the labels available at both ends are intersected
+    private static final int LABEL_CANDIDATES = 16;
+
     private final Logger log = getLogger(getClass());
 
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
@@ -150,18 +155,32 @@ public class MplsPathIntentCompiler implements IntentCompiler<MplsPathIntent> {
     private Map<LinkKey, MplsLabel> findMplsLabels(Set<LinkKey> links) {
         Map<LinkKey, MplsLabel> labels = new HashMap<>();
         for (LinkKey link : links) {
-            Set<MplsLabel> forward = findMplsLabel(link.src());
-            Set<MplsLabel> backward = findMplsLabel(link.dst());
-            Set<MplsLabel> common = Sets.intersection(forward, backward);
-            if (common.isEmpty()) {
-                continue;
-            }
-            labels.put(link, common.iterator().next());
+            findMplsLabel(link).ifPresent(label -> labels.put(link, label));
         }
 
         return labels;
     }
 
+    // Finds a label available at both ends of the link, looking first among
+    // a few of the labels available at the source
+    private Optional<MplsLabel> findMplsLabel(LinkKey link) {
+        Set<MplsLabel> candidates = resourceService.getAvailableResourceValues(
+                Resources.discrete(link.src().deviceId(), link.src().port()).id(),
+                MplsLabel.class, LABEL_CANDIDATES);
+        Optional<MplsLabel> label = candidates.stream()
+                .filter(x -> resourceService.isAvailable(
+                        Resources.discrete(link.dst().deviceId(), link.dst().port(), x).resource()))
+                .findFirst();
+        if (label.isPresent() || candidates.size() < LABEL_CANDIDATES) {
+            return label;
+        }
+
+        Set<MplsLabel> forward = findMplsLabel(link.src());
+        Set<MplsLabel> backward = findMplsLabel(link.dst());
+        Set<MplsLabel> common = Sets.intersection(forward, backward);
+        return common.stream().findFirst();
+    }
+
     private Set<MplsLabel> findMplsLabel(ConnectPoint cp) {
         return resourceService.getAvailableResourceValues(
                 Resources.discrete(cp.deviceId(), cp.port()).id(),
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.net.intent.impl.compiler;
+
+import com.codahale.metrics.Counter;
+import com.google.common.collect.ImmutableList;
+import org.onlab.metrics.MetricsComponent;
+import org.onlab.metrics.MetricsFeature;
+import org.onlab.metrics.MetricsService;
+import org.onosproject.net.Path;
+import org.onosproject.net.intent.Constraint;
+import org.onosproject.net.topology.Topology;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+
+/**
+ * Cache of the paths computed by a connectivity intent compiler.
+ * <p>
+ * Intents with the same end-points and constraints share the paths computed
+ * for them, so that recompiling the intents affected by a topology change
+ * computes the paths of each distinct end-point pair once. Concurrent lookups
+ * of the same paths wait for a single computation. Entries are valid for the
+ * topology they were computed for and are all dropped once the current
+ * topology changes.
+ */
+final class PathCache {
+
+    static final int MAX_ENTRIES = 10_000;
+
+    private static final String COMPONENT = "IntentCompiler";
+    private static final String HITS = "pathCacheHits";
+    private static final String MISSES = "pathCacheMisses";
+
+    private final Counter hits;
+    private final Counter misses;
+
+    private volatile Epoch epoch = new Epoch(null);
+
+    /**
+     * Creates a path cache.
+     *
+     * @param metricsService metrics service for the hit and miss counters;
+     *                       may be null
+     * @param name           name of the compiler using the cache
+     */
+    PathCache(MetricsService metricsService, String name) {
+        if (metricsService != null) {
+            MetricsComponent component = metricsService.registerComponent(COMPONENT);
+            MetricsFeature feature = component.registerFeature(name);
+            hits = metricsService.createCounter(component, feature, HITS);
+            misses = metricsService.createCounter(component, feature, MISSES);
+        } else {
+            hits = new Counter();
+            misses = new Counter();
+        }
+    }
+
+    /**
+     * Returns the paths cached for the given key and topology, computing
+     * them if not cached yet. Paths computed are kept only if found to be
+     * cacheable once computed; lookups waiting for the computation get them
+     * in any case.
+     *
+     * @param topology  current topology
+     * @param key       key of the paths
+     * @param compute   computation of the paths
+     * @param cacheable whether the paths just computed may be cached
+     * @param <P>       type of paths
+     * @return set of paths
+     */
+    @SuppressWarnings("unchecked")
+    <P extends Path> Set<P> get(Topology topology, Key key, Supplier<Set<P>> compute,
+                                BooleanSupplier cacheable) {
+        Epoch current = epoch;
+        if (current.topology != topology) {
+            // Concurrent lookups may replace the new epoch more than once,
+            // which only costs the entries added in between
+            current = new Epoch(topology);
+            epoch = current;
+        }
+
+        CompletableFuture<Set<? extends Path>> future = current.entries.get(key);
+        if (future != null) {
+            hits.inc();
+            return (Set<P>) join(future);
+        }
+        misses.inc();
+        if (current.entries.size() >= MAX_ENTRIES) {
+            return compute.get();
+        }
+
+        CompletableFuture<Set<? extends Path>> computation = new CompletableFuture<>();
+        future = current.entries.putIfAbsent(key, computation);
+        if (future != null) {
+            return (Set<P>) join(future);
+        }
+        try {
+            Set<P> paths = compute.get();
+            computation.complete(paths);
+            if (!cacheable.getAsBoolean()) {
+                current.entries.remove(key, computation);
+            }
+            return paths;
+        } catch (RuntimeException e) {
+            current.entries.remove(key, computation);
+            computation.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private static Set<? extends Path> join(CompletableFuture<Set<? extends Path>> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of lookups served from the cache.
+     *
+     * @return hit count
+     */
+    long hitCount() {
+        return hits.getCount();
+    }
+
+    /**
+     * Returns the number of lookups that were not served from the cache.
+     *
+     * @return miss count
+     */
+    long missCount() {
+        return misses.getCount();
+    }
+
+    // Entries computed for a topology
+    private static final class Epoch {
+        private final Topology topology;
+        private final ConcurrentMap<Key, CompletableFuture<Set<? extends Path>>> entries =
+                new ConcurrentHashMap<>();
+
+        private Epoch(Topology topology) {
+            this.topology = topology;
+        }
+    }
+
+    /**
+     * Key of the paths computed between two end-points.
+     */
+    static final class Key {
+        private final Object one;
+        private final Object two;
+        private final List<Constraint> constraints;
+        private final boolean disjoint;
+
+        /**
+         * Creates the key of the paths between two end-points.
+         *
+         * @param one         key of the start of the paths
+         * @param two         key of the end of the paths
+         * @param constraints path constraints
+         * @param disjoint    whether the paths are disjoint path pairs
+         */
+        Key(Object one, Object two, List<Constraint> constraints, boolean disjoint) {
+            this.one = one;
+            this.two = two;
+            this.constraints = constraints == null ? ImmutableList.of() : ImmutableList.copyOf(constraints);
+            this.disjoint = disjoint;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(one, two, constraints, disjoint);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj instanceof Key) {
+                final Key other = (Key) obj;
+                return Objects.equals(this.one, other.one) &&
+                        Objects.equals(this.two, other.two) &&
+                        Objects.equals(this.constraints, other.constraints) &&
+                        this.disjoint == other.disjoint;
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return toStringHelper(this)
+                    .add("one", one)
+                    .add("two", two)
+                    .add("constraints", constraints)
+                    .add("disjoint", disjoint)
+                    .toString();
+        }
+    }
+}
@@ -87,6 +87,12 @@ public class ProtectedTransportIntentCompiler
      */
     private static final String REV = "rev";
 
+    /**
+     * Number of labels available at the first connect point of a path
+     * looked up before all the available labels are intersected.
+     */
+    private static final int LABEL_CANDIDATES = 16;
+
 
     private final Logger log = getLogger(getClass());
 
@@ -475,16 +481,32 @@ public class ProtectedTransportIntentCompiler
      * @param <T> label resource type
      */
     <T> Set<T> commonLabelResource(Path path, Class<T> klass) {
-         Optional<Set<T>> common = path.links().stream()
+         List<ConnectPoint> cps = path.links().stream()
             .flatMap(link -> Stream.of(link.src(), link.dst()))
             .distinct()
-            .map(cp -> getAvailableResourceValues(cp, klass))
-            .reduce(Sets::intersection);
+            .collect(Collectors.toList());
+         if (cps.isEmpty()) {
+             throw new IntentCompilationException("No common label available for: " + path);
+         }
 
-         if (!common.isPresent() || common.get().isEmpty()) {
+         // a few labels available at the first connect point usually are
+         // available along the whole path
+         Set<T> candidates = getAvailableResourceValues(cps.get(0), klass, LABEL_CANDIDATES);
+         Set<T> common = candidates.stream()
+            .filter(label -> cps.stream().skip(1)
+                    .allMatch(cp -> resourceService.isAvailable(Resources.discrete(resourceId(cp), label).resource())))
+            .collect(Collectors.toSet());
+         if (common.isEmpty() && candidates.size() >= LABEL_CANDIDATES) {
+             common = cps.stream()
+                .map(cp -> getAvailableResourceValues(cp, klass))
+                .reduce(Sets::intersection)
+                .get();
+         }
+
+         if (common.isEmpty()) {
              throw new IntentCompilationException("No common label available for: " + path);
          }
-         return common.get();
+         return common;
     }
 
     <T> Set<T> getAvailableResourceValues(ConnectPoint cp, Class<T> klass) {
@@ -493,4 +515,11 @@ public class ProtectedTransportIntentCompiler
                                  klass);
     }
 
+    <T> Set<T> getAvailableResourceValues(ConnectPoint cp, Class<T> klass, int limit) {
+        return resourceService.getAvailableResourceValues(
+                                 resourceId(cp),
+                                 klass,
+                                 limit);
+    }
+
 }
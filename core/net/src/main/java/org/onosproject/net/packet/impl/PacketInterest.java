@@ -0,0 +1,152 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.net.packet.impl;
+
+import org.onlab.packet.IPv4;
+import org.onlab.packet.PacketView;
+import org.onosproject.net.flow.TrafficSelector;
+import org.onosproject.net.flow.criteria.Criterion;
+import org.onosproject.net.flow.criteria.EthTypeCriterion;
+import org.onosproject.net.flow.criteria.IPProtocolCriterion;
+import org.onosproject.net.flow.criteria.TcpPortCriterion;
+import org.onosproject.net.flow.criteria.UdpPortCriterion;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Packets a processor is interested in, as declared by a traffic selector.
+ * Only the EtherType, IP protocol and TCP/UDP port criteria are supported.
+ */
+final class PacketInterest {
+
+    private static final int ANY = -1;
+
+    private final int ethType;
+    private final int ipProto;
+    private final int srcPort;
+    private final int dstPort;
+
+    private PacketInterest(int ethType, int ipProto, int srcPort, int dstPort) {
+        this.ethType = ethType;
+        this.ipProto = ipProto;
+        this.srcPort = srcPort;
+        this.dstPort = dstPort;
+    }
+
+    /**
+     * Returns the interest declared by a traffic selector.
+     *
+     * @param selector traffic selector
+     * @return packet interest
+     * @throws IllegalArgumentException if the selector has unsupported or
+     *                                  conflicting criteria
+     */
+    static PacketInterest of(TrafficSelector selector) {
+        int ethType = ANY;
+        int ipProto = ANY;
+        int l4Proto = ANY;
+        int srcPort = ANY;
+        int dstPort = ANY;
+        for (Criterion criterion : selector.criteria()) {
+            switch (criterion.type()) {
+                case ETH_TYPE:
+                    ethType = ((EthTypeCriterion) criterion).ethType().toShort() & 0xffff;
+                    break;
+                case IP_PROTO:
+                    ipProto = ((IPProtocolCriterion) criterion).protocol();
+                    break;
+                case TCP_SRC:
+                    l4Proto = transport(l4Proto, IPv4.PROTOCOL_TCP);
+                    srcPort = ((TcpPortCriterion) criterion).tcpPort().toInt();
+                    break;
+                case TCP_DST:
+                    l4Proto = transport(l4Proto, IPv4.PROTOCOL_TCP);
+                    dstPort = ((TcpPortCriterion) criterion).tcpPort().toInt();
+                    break;
+                case UDP_SRC:
+                    l4Proto = transport(l4Proto, IPv4.PROTOCOL_UDP);
+                    srcPort = ((UdpPortCriterion) criterion).udpPort().toInt();
+                    break;
+                case UDP_DST:
+                    l4Proto = transport(l4Proto, IPv4.PROTOCOL_UDP);
+                    dstPort = ((UdpPortCriterion) criterion).udpPort().toInt();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported criterion " + criterion.type());
+            }
+        }
+        if (l4Proto != ANY) {
+            checkArgument(ipProto == ANY || ipProto == l4Proto, "Conflicting IP protocol and ports");
+            ipProto = l4Proto;
+        }
+        return new PacketInterest(ethType, ipProto, srcPort, dstPort);
+    }
+
+    // Returns the transport protocol implied by a port criterion
+    private static int transport(int current, int implied) {
+        checkArgument(current == ANY || current == implied, "Conflicting TCP and UDP ports");
+        return implied;
+    }
+
+    /**
+     * Returns whether any EtherType is of interest.
+     *
+     * @return true if the EtherType is not constrained
+     */
+    boolean anyEthType() {
+        return ethType == ANY;
+    }
+
+    /**
+     * Returns the EtherType of interest.
+     *
+     * @return EtherType; meaningless if any EtherType is of interest
+     */
+    short ethType() {
+        return (short) ethType;
+    }
+
+    /**
+     * Returns whether a packet is of interest.
+     *
+     * @param packet packet view
+     * @return true if the packet is of interest
+     */
+    boolean matches(PacketView packet) {
+        if (ethType != ANY && ethType != (packet.etherType() & 0xffff)) {
+            return false;
+        }
+        if (ipProto != ANY && ipProto != packet.ipProtocol()) {
+            return false;
+        }
+        if (srcPort != ANY && srcPort != packet.sourcePort()) {
+            return false;
+        }
+        return dstPort == ANY || dstPort == packet.destinationPort();
+    }
+
+    @Override
+    public String toString() {
+        return toStringHelper(this)
+                .omitNullValues()
+                .add("ethType", ethType == ANY ? null : String.format("0x%04x", ethType))
+                .add("ipProto", ipProto == ANY ? null : ipProto)
+                .add("srcPort", srcPort == ANY ? null : srcPort)
+                .add("dstPort", dstPort == ANY ? null : dstPort)
+                .toString();
+    }
+}
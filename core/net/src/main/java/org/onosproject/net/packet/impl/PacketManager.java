@@ -16,6 +16,8 @@
 package org.onosproject.net.packet.impl;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
@@ -23,6 +25,8 @@ import org.apache.felix.scr.annotations.Deactivate;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.ReferenceCardinality;
 import org.apache.felix.scr.annotations.Service;
+import org.onlab.packet.PacketView;
+import org.onlab.util.GuavaCollectors;
 import org.onosproject.cluster.ClusterService;
 import org.onosproject.cluster.NodeId;
 import org.onosproject.core.ApplicationId;
@@ -42,6 +46,7 @@ import org.onosproject.net.flowobjective.Objective;
 import org.onosproject.net.flowobjective.ObjectiveContext;
 import org.onosproject.net.flowobjective.ObjectiveError;
 import org.onosproject.net.packet.DefaultPacketRequest;
+import org.onosproject.net.packet.InboundPacket;
 import org.onosproject.net.packet.OutboundPacket;
 import org.onosproject.net.packet.PacketContext;
 import org.onosproject.net.packet.PacketEvent;
@@ -59,10 +64,17 @@ import org.onosproject.net.provider.AbstractProviderRegistry;
 import org.onosproject.net.provider.AbstractProviderService;
 import org.slf4j.Logger;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.onlab.util.Tools.groupedThreads;
@@ -88,6 +100,9 @@ public class PacketManager
     private static final String ERROR_NULL_APP_ID = "Application ID cannot be null";
     private static final String ERROR_NULL_DEVICE_ID = "Device ID cannot be null";
 
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported();
+
     private final PacketStoreDelegate delegate = new InternalStoreDelegate();
 
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
@@ -111,6 +126,12 @@ public class PacketManager
 
     private final List<ProcessorEntry> processors = Lists.newCopyOnWriteArrayList();
 
+    // Dispatch index: the processors to give the packets of an EtherType to,
+    // and those to give the packets of the other EtherTypes to, in priority
+    // order; rebuilt whenever the processors change
+    private volatile Map<Short, List<ProcessorEntry>> processorsByEthType = ImmutableMap.of();
+    private volatile List<ProcessorEntry> anyEthTypeProcessors = ImmutableList.of();
+
     private final  PacketDriverProvider defaultProvider = new PacketDriverProvider();
 
     private ApplicationId appId;
@@ -146,7 +167,22 @@ public class PacketManager
     public void addProcessor(PacketProcessor processor, int priority) {
         checkPermission(PACKET_EVENT);
         checkNotNull(processor, ERROR_NULL_PROCESSOR);
-        ProcessorEntry entry = new ProcessorEntry(processor, priority);
+        addEntry(new ProcessorEntry(processor, priority, ImmutableSet.of()));
+    }
+
+    @Override
+    public void addProcessor(PacketProcessor processor, int priority,
+                             Set<TrafficSelector> interests) {
+        checkPermission(PACKET_EVENT);
+        checkNotNull(processor, ERROR_NULL_PROCESSOR);
+        checkNotNull(interests, ERROR_NULL_SELECTOR);
+        addEntry(new ProcessorEntry(processor, priority, interests.stream()
+                .map(PacketInterest::of)
+                .collect(Collectors.toSet())));
+    }
+
+    private synchronized void addEntry(ProcessorEntry entry) {
+        int priority = entry.priority();
 
         // Insert the new processor according to its priority.
         int i = 0;
@@ -156,6 +192,7 @@ public class PacketManager
             }
         }
         processors.add(i, entry);
+        indexProcessors();
     }
 
     @Override
@@ -163,15 +200,35 @@ public class PacketManager
         checkPermission(PACKET_EVENT);
         checkNotNull(processor, ERROR_NULL_PROCESSOR);
 
-        // Remove the processor entry.
-        for (int i = 0; i < processors.size(); i++) {
-            if (processors.get(i).processor() == processor) {
-                processors.remove(i);
-                break;
+        synchronized (this) {
+            // Remove the processor entry.
+            for (int i = 0; i < processors.size(); i++) {
+                if (processors.get(i).processor() == processor) {
+                    processors.remove(i);
+                    break;
+                }
             }
+            indexProcessors();
         }
     }
 
+    // Rebuilds the dispatch index from the processors
+    private void indexProcessors() {
+        Map<Short, List<ProcessorEntry>> byEthType = new HashMap<>();
+        processors.stream()
+                .flatMap(entry -> entry.interests.stream())
+                .filter(interest -> !interest.anyEthType())
+                .map(PacketInterest::ethType)
+                .distinct()
+                .forEach(ethType -> byEthType.put(ethType, processors.stream()
+                        .filter(entry -> entry.accepts(ethType))
+                        .collect(GuavaCollectors.toImmutableList())));
+        anyEthTypeProcessors = processors.stream()
+                .filter(ProcessorEntry::acceptsAnyEthType)
+                .collect(GuavaCollectors.toImmutableList());
+        processorsByEthType = ImmutableMap.copyOf(byEthType);
+    }
+
     @Override
     public List<PacketProcessorEntry> getProcessors() {
         checkPermission(PACKET_READ);
@@ -372,18 +429,33 @@ public class PacketManager
 
         @Override
         public void processPacket(PacketContext context) {
-            // TODO filter packets sent to processors based on registrations
-            for (ProcessorEntry entry : processors) {
+            // Without raw bytes to look at, all processors get the packet
+            InboundPacket inPacket = context.inPacket();
+            PacketView view = null;
+            List<ProcessorEntry> entries = processors;
+            if (inPacket != null && inPacket.unparsed() != null) {
+                view = inPacket.view();
+                entries = processorsByEthType.getOrDefault(view.etherType(), anyEthTypeProcessors);
+            }
+            for (ProcessorEntry entry : entries) {
+                if (view != null && !entry.matches(view)) {
+                    continue;
+                }
                 try {
                     long start = System.nanoTime();
+                    long cpuStart = cpuNanos();
                     entry.processor().process(context);
-                    entry.addNanos(System.nanoTime() - start);
+                    entry.addNanos(System.nanoTime() - start, cpuNanos() - cpuStart);
                 } catch (Exception e) {
                     log.warn("Packet processor {} threw an exception", entry.processor(), e);
                 }
             }
         }
 
+        private long cpuNanos() {
+            return CPU_TIME ? THREADS.getCurrentThreadCpuTime() : 0;
+        }
+
     }
 
 
@@ -451,12 +523,17 @@ public class PacketManager
     private class ProcessorEntry implements PacketProcessorEntry {
         private final PacketProcessor processor;
         private final int priority;
-        private long invocations = 0;
-        private long nanos = 0;
-
-        public ProcessorEntry(PacketProcessor processor, int priority) {
+        // Empty if interested in all packets
+        private final Set<PacketInterest> interests;
+        private final LongAdder invocations = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder cpuNanos = new LongAdder();
+
+        public ProcessorEntry(PacketProcessor processor, int priority,
+                              Set<PacketInterest> interests) {
             this.processor = processor;
             this.priority = priority;
+            this.interests = ImmutableSet.copyOf(interests);
         }
 
         @Override
@@ -471,22 +548,52 @@ public class PacketManager
 
         @Override
         public long invocations() {
-            return invocations;
+            return invocations.sum();
         }
 
         @Override
         public long totalNanos() {
-            return nanos;
+            return nanos.sum();
         }
 
         @Override
         public long averageNanos() {
-            return invocations > 0 ? nanos / invocations : 0;
+            long count = invocations();
+            return count > 0 ? totalNanos() / count : 0;
+        }
+
+        @Override
+        public long totalCpuNanos() {
+            return cpuNanos.sum();
+        }
+
+        void addNanos(long nanos, long cpuNanos) {
+            this.nanos.add(nanos);
+            this.cpuNanos.add(cpuNanos);
+            this.invocations.increment();
         }
 
-        void addNanos(long nanos) {
-            this.nanos += nanos;
-            this.invocations++;
+        // Whether the packets of the given EtherType may be of interest
+        boolean accepts(short ethType) {
+            return interests.isEmpty() || interests.stream()
+                    .anyMatch(interest -> interest.anyEthType() || interest.ethType() == ethType);
+        }
+
+        // Whether the packets of an EtherType nobody registered for may be of interest
+        boolean acceptsAnyEthType() {
+            return interests.isEmpty() || interests.stream().anyMatch(PacketInterest::anyEthType);
+        }
+
+        boolean matches(PacketView packet) {
+            if (interests.isEmpty()) {
+                return true;
+            }
+            for (PacketInterest interest : interests) {
+                if (interest.matches(packet)) {
+                    return true;
+                }
+            }
+            return false;
         }
     }
 }
@@ -44,6 +44,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.onosproject.security.AppGuard.checkPermission;
 import static org.onosproject.security.AppPermission.Type.RESOURCE_WRITE;
@@ -165,10 +166,7 @@ public final class ResourceManager extends AbstractListenerManager<ResourceEvent
         checkNotNull(parent);
         checkNotNull(cls);
 
-        return store.getChildResources(parent, cls).stream()
-                // We access store twice in this method, then the store may be updated by others
-                .filter(store::isAvailable)
-                .collect(Collectors.toSet());
+        return store.getAvailableResources(parent, cls);
     }
 
     @Override
@@ -177,9 +175,20 @@ public final class ResourceManager extends AbstractListenerManager<ResourceEvent
         checkNotNull(parent);
         checkNotNull(cls);
 
-        return store.getChildResources(parent, cls).stream()
-                // We access store twice in this method, then the store may be updated by others
-                .filter(store::isAvailable)
+        return store.getAvailableResources(parent, cls).stream()
+                .map(x -> x.valueAs(cls))
+                .flatMap(Tools::stream)
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public <T> Set<T> getAvailableResourceValues(DiscreteResourceId parent, Class<T> cls, int limit) {
+        checkPermission(RESOURCE_READ);
+        checkNotNull(parent);
+        checkNotNull(cls);
+        checkArgument(limit >= 0);
+
+        return store.getAvailableResources(parent, cls, limit).stream()
                 .map(x -> x.valueAs(cls))
                 .flatMap(Tools::stream)
                 .collect(Collectors.toSet());
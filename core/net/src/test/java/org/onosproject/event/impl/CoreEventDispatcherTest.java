@@ -15,18 +15,45 @@
  */
 package org.onosproject.event.impl;
 
+import com.google.common.collect.ImmutableSet;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.onlab.osgi.ComponentContextAdapter;
+import org.onlab.packet.ChassisId;
+import org.onlab.packet.MacAddress;
+import org.onlab.packet.VlanId;
+import org.onosproject.cfg.ComponentConfigAdapter;
 import org.onosproject.event.AbstractEvent;
 import org.onosproject.event.EventSink;
+import org.onosproject.net.DefaultAnnotations;
+import org.onosproject.net.DefaultDevice;
+import org.onosproject.net.DefaultHost;
+import org.onosproject.net.Device;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.Host;
+import org.onosproject.net.HostId;
+import org.onosproject.net.HostLocation;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.device.DeviceEvent;
+import org.onosproject.net.host.HostEvent;
+import org.onosproject.net.provider.ProviderId;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.Hashtable;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.onosproject.net.device.DeviceEvent.Type.DEVICE_ADDED;
+import static org.onosproject.net.device.DeviceEvent.Type.DEVICE_UPDATED;
+import static org.onosproject.net.host.HostEvent.Type.HOST_ADDED;
+import static org.onosproject.net.host.HostEvent.Type.HOST_MOVED;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -38,9 +65,31 @@ public class CoreEventDispatcherTest {
     private final PrickleSink prickleSink = new PrickleSink();
     private final GooSink gooSink = new GooSink();
 
+    private static final ComponentContextAdapter SHARDED = new ComponentContextAdapter() {
+        @Override
+        public Dictionary getProperties() {
+            Hashtable<String, String> props = new Hashtable<>();
+            props.put("dispatchWorkers", "4");
+            props.put("dispatchQueueSize", "1000");
+            return props;
+        }
+    };
+
+    private static final ComponentContextAdapter SMALL_QUEUES = new ComponentContextAdapter() {
+        @Override
+        public Dictionary getProperties() {
+            Hashtable<String, String> props = new Hashtable<>();
+            props.put("dispatchQueueSize", "1");
+            return props;
+        }
+    };
+
+    private final ComponentConfigAdapter cfgService = new ComponentConfigAdapter();
+
     @Before
     public void setUp() {
-        dispatcher.activate();
+        dispatcher.bindCfgService(cfgService);
+        dispatcher.activate(null);
         dispatcher.addSink(Prickle.class, prickleSink);
         dispatcher.addSink(Goo.class, gooSink);
     }
@@ -50,6 +99,7 @@ public class CoreEventDispatcherTest {
         dispatcher.removeSink(Goo.class);
         dispatcher.removeSink(Prickle.class);
         dispatcher.deactivate();
+        dispatcher.unbindCfgService(cfgService);
     }
 
     @Test
@@ -88,6 +138,131 @@ public class CoreEventDispatcherTest {
         assertTrue(takesTooLong.interrupted);
     }
 
+    @Test
+    public void postShardedPreservesSubjectOrder() throws Exception {
+        dispatcher.modified(SHARDED);
+        SequenceSink sequenceSink = new SequenceSink();
+        dispatcher.addSink(SequenceEvent.class, sequenceSink);
+
+        int subjects = 16;
+        int perSubject = 100;
+        sequenceSink.latch = new CountDownLatch(subjects * perSubject);
+        for (int i = 0; i < perSubject; i++) {
+            for (int s = 0; s < subjects; s++) {
+                dispatcher.post(new SequenceEvent("subject-" + s, i));
+            }
+        }
+        assertTrue("events not delivered",
+                   sequenceSink.latch.await(5, TimeUnit.SECONDS));
+
+        assertEquals("incorrect subject count", subjects, sequenceSink.sequences.size());
+        sequenceSink.sequences.values().forEach(seq -> {
+            assertEquals("incorrect event count", perSubject, seq.size());
+            for (int i = 0; i < perSubject; i++) {
+                assertEquals("events delivered out of order", i, (int) seq.get(i));
+            }
+        });
+        dispatcher.removeSink(SequenceEvent.class);
+    }
+
+    @Test
+    public void shardKeyIgnoresMutableState() {
+        ProviderId pid = new ProviderId("of", "foo");
+        DeviceId did = DeviceId.deviceId("of:foo");
+        Device device = new DefaultDevice(pid, did, Device.Type.SWITCH, "m", "h", "s", "n", new ChassisId());
+        Device annotated = new DefaultDevice(pid, did, Device.Type.SWITCH, "m", "h", "s", "n", new ChassisId(),
+                                             DefaultAnnotations.builder().set("name", "foo").build());
+        assertEquals("device events sharded apart",
+                     CoreEventDispatcher.shardKey(new DeviceEvent(DEVICE_ADDED, device)),
+                     CoreEventDispatcher.shardKey(new DeviceEvent(DEVICE_UPDATED, annotated)));
+
+        HostId hid = HostId.hostId(MacAddress.valueOf(1L), VlanId.NONE);
+        Host host = new DefaultHost(pid, hid, MacAddress.valueOf(1L), VlanId.NONE,
+                                    new HostLocation(did, PortNumber.portNumber(1), 0), ImmutableSet.of());
+        Host moved = new DefaultHost(pid, hid, MacAddress.valueOf(1L), VlanId.NONE,
+                                     new HostLocation(did, PortNumber.portNumber(2), 0), ImmutableSet.of());
+        assertEquals("host events sharded apart",
+                     CoreEventDispatcher.shardKey(new HostEvent(HOST_ADDED, host)),
+                     CoreEventDispatcher.shardKey(new HostEvent(HOST_MOVED, moved, host)));
+    }
+
+    @Test
+    public void reconfigurePreservesSubjectOrder() throws Exception {
+        SequenceSink sequenceSink = new SequenceSink();
+        dispatcher.addSink(SequenceEvent.class, sequenceSink);
+
+        int subjects = 16;
+        int perSubject = 200;
+        sequenceSink.latch = new CountDownLatch(subjects * perSubject);
+        for (int i = 0; i < perSubject; i++) {
+            if (i == perSubject / 2) {
+                dispatcher.modified(SHARDED);
+            }
+            for (int s = 0; s < subjects; s++) {
+                dispatcher.post(new SequenceEvent("subject-" + s, i));
+            }
+        }
+        assertTrue("events not delivered",
+                   sequenceSink.latch.await(5, TimeUnit.SECONDS));
+
+        sequenceSink.sequences.values().forEach(seq -> {
+            for (int i = 0; i < perSubject; i++) {
+                assertEquals("events delivered out of order", i, (int) seq.get(i));
+            }
+        });
+        dispatcher.removeSink(SequenceEvent.class);
+    }
+
+    @Test
+    public void stopDeliversQueuedEvents() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        SequenceSink sequenceSink = new SequenceSink() {
+            @Override
+            public void process(SequenceEvent event) {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.process(event);
+            }
+        };
+        dispatcher.addSink(SequenceEvent.class, sequenceSink);
+
+        sequenceSink.latch = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            dispatcher.post(new SequenceEvent("subject", i));
+        }
+        dispatcher.deactivate();
+        blocked.countDown();
+        assertTrue("queued events dropped",
+                   sequenceSink.latch.await(5, TimeUnit.SECONDS));
+        dispatcher.removeSink(SequenceEvent.class);
+    }
+
+    @Test
+    public void sinkPostingToItselfDoesNotBlock() throws Exception {
+        dispatcher.modified(SMALL_QUEUES);
+        SequenceSink sequenceSink = new SequenceSink() {
+            @Override
+            public void process(SequenceEvent event) {
+                if (event.sequence == 0) {
+                    for (int i = 1; i <= 10; i++) {
+                        dispatcher.post(new SequenceEvent(event.subject(), i));
+                    }
+                }
+                super.process(event);
+            }
+        };
+        dispatcher.addSink(SequenceEvent.class, sequenceSink);
+
+        sequenceSink.latch = new CountDownLatch(11);
+        dispatcher.post(new SequenceEvent("subject", 0));
+        assertTrue("events not delivered",
+                   sequenceSink.latch.await(1, TimeUnit.SECONDS));
+        dispatcher.removeSink(SequenceEvent.class);
+    }
+
     private void validate(Sink sink, String... strings) {
         int i = 0;
         assertEquals("incorrect event count", strings.length, sink.subjects.size());
@@ -162,4 +337,27 @@ public class CoreEventDispatcherTest {
         }
     }
 
+    private static class SequenceEvent extends AbstractEvent<Type, String> {
+        private final int sequence;
+
+        protected SequenceEvent(String subject, int sequence) {
+            super(Type.FOO, subject);
+            this.sequence = sequence;
+        }
+    }
+
+    private static class SequenceSink implements EventSink<SequenceEvent> {
+        final Map<String, List<Integer>> sequences =
+                Collections.synchronizedMap(new HashMap<>());
+        CountDownLatch latch;
+
+        @Override
+        public void process(SequenceEvent event) {
+            sequences.computeIfAbsent(event.subject(),
+                                      s -> Collections.synchronizedList(new ArrayList<>()))
+                    .add(event.sequence);
+            latch.countDown();
+        }
+    }
+
 }
@@ -17,6 +17,7 @@ package org.onosproject.net.flow.impl;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -361,6 +362,37 @@ public class FlowRuleManagerTest {
                        RULE_ADDED, RULE_ADDED);
     }
 
+    @Test
+    public void unchangedFlowMetrics() {
+        FlowRule f1 = addFlowRule(1);
+        FlowRule f2 = addFlowRule(2);
+        FlowEntry fe1 = new DefaultFlowEntry(f1);
+        FlowEntry fe2 = new DefaultFlowEntry(f2);
+
+        providerService.pushFlowMetrics(DID, ImmutableList.of(fe1, fe2));
+        validateEvents(RULE_ADD_REQUESTED, RULE_ADD_REQUESTED, RULE_ADDED, RULE_ADDED);
+
+        // entries changed by the previous poll are updated once more
+        providerService.pushFlowMetrics(DID, ImmutableList.of(fe1, fe2));
+        validateEvents(RULE_UPDATED, RULE_UPDATED);
+
+        providerService.pushFlowMetrics(DID, ImmutableList.of(fe1, fe2));
+        validateEvents();
+
+        // unchanged entries still have their life refreshed
+        FlowEntry older = new DefaultFlowEntry(f2, FlowEntryState.ADDED, 7, 0, 0);
+        providerService.pushFlowMetrics(DID, ImmutableList.of(fe1, older));
+        validateEvents();
+        assertEquals("stored entry life should be refreshed", 7,
+                     Iterables.find(service.getFlowEntries(DID), f2::equals).life());
+
+        FlowEntry busy = new DefaultFlowEntry(f1, FlowEntryState.ADDED, 5, 10, 1000);
+        providerService.pushFlowMetrics(DID, ImmutableList.of(busy, fe2));
+        validateEvents(RULE_UPDATED);
+        assertEquals("stored entry should be updated", 10,
+                     Iterables.find(service.getFlowEntries(DID), f1::equals).packets());
+    }
+
     @Test
     public void extraneousFlow() {
         FlowRule f1 = flowRule(1, 1);
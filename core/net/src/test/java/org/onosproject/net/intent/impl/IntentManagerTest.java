@@ -16,6 +16,7 @@
 package org.onosproject.net.intent.impl;
 
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
@@ -26,6 +27,9 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.onlab.junit.TestUtils;
+import org.onlab.junit.TestUtils.TestUtilsException;
+import org.onlab.osgi.ComponentContextAdapter;
 import org.onosproject.TestApplicationId;
 import org.onosproject.cfg.ComponentConfigAdapter;
 import org.onosproject.cfg.ComponentConfigService;
@@ -35,6 +39,7 @@ import org.onosproject.core.impl.TestCoreManager;
 import org.onosproject.net.NetworkResource;
 import org.onosproject.net.intent.FlowRuleIntent;
 import org.onosproject.net.intent.Intent;
+import org.onosproject.net.intent.IntentBatchDelegate;
 import org.onosproject.net.intent.IntentCompilationException;
 import org.onosproject.net.intent.IntentCompiler;
 import org.onosproject.net.intent.IntentData;
@@ -50,6 +55,8 @@ import org.onosproject.store.trivial.SimpleIntentStore;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -221,6 +228,15 @@ public class IntentManagerTest {
         return new EntryForIntentMatcher(id);
     }
 
+    private static final ComponentContextAdapter PIPELINED = new ComponentContextAdapter() {
+        @Override
+        public Dictionary getProperties() {
+            Hashtable<String, String> props = new Hashtable<>();
+            props.put("maxBatchesInFlight", "4");
+            return props;
+        }
+    };
+
     @Before
     public void setUp() {
         manager = new IntentManager();
@@ -351,6 +367,53 @@ public class IntentManagerTest {
     }
 
 
+    /**
+     * Tests that the operations on each intent are applied in order with
+     * several batches in flight.
+     */
+    @Test
+    public void stressSubmitWithdrawPipelined() {
+        manager.modified(PIPELINED);
+        flowRuleService.setFuture(true);
+
+        int count = 50;
+
+        Intent intent = new MockIntent(MockIntent.nextId());
+        for (int i = 0; i < count; i++) {
+            service.submit(new MockIntent(MockIntent.nextId()));
+            service.submit(intent);
+            service.withdraw(intent);
+        }
+
+        assertAfter(SUBMIT_TIMEOUT_MS, () -> {
+            assertEquals(count + 1L, service.getIntentCount());
+            assertEquals((long) count, flowRuleService.getFlowRuleCount());
+            assertEquals(WITHDRAWN, service.getIntentState(intent.key()));
+        });
+        verifyState();
+    }
+
+    /**
+     * Tests that a batch holding several operations on the same intent does
+     * not hold back the later operations on it.
+     */
+    @Test
+    public void duplicateKeysInBatch() throws TestUtilsException {
+        manager.modified(PIPELINED);
+        flowRuleService.setFuture(true);
+
+        Intent intent = new MockIntent(MockIntent.nextId());
+        IntentBatchDelegate batchDelegate = TestUtils.getField(manager, "batchDelegate");
+        batchDelegate.execute(ImmutableList.of(new IntentData(intent, INSTALL_REQ, null),
+                                               new IntentData(intent, INSTALL_REQ, null)));
+
+        service.submit(intent);
+        assertAfter(SUBMIT_TIMEOUT_MS, () -> assertEquals(INSTALLED, service.getIntentState(intent.key())));
+        service.withdraw(intent);
+        assertAfter(SUBMIT_TIMEOUT_MS, () -> assertEquals(WITHDRAWN, service.getIntentState(intent.key())));
+        verifyState();
+    }
+
     /**
      * Tests for proper behavior of installation of an intent that triggers
      * a compilation error.
@@ -26,6 +26,7 @@ import org.onosproject.core.ApplicationId;
 import org.onosproject.net.FilteredConnectPoint;
 import org.onosproject.net.Host;
 import org.onosproject.net.HostId;
+import org.onosproject.net.HostLocation;
 import org.onosproject.net.Link;
 import org.onosproject.net.flow.TrafficSelector;
 import org.onosproject.net.flow.TrafficTreatment;
@@ -36,6 +37,7 @@ import org.onosproject.net.intent.Intent;
 import org.onosproject.net.intent.IntentTestsMocks;
 import org.onosproject.net.intent.LinkCollectionIntent;
 import org.onosproject.net.resource.MockResourceService;
+import org.onosproject.net.topology.TopologyServiceAdapter;
 
 import java.util.List;
 import java.util.Set;
@@ -89,11 +91,13 @@ public class HostToHostIntentCompilerTest extends AbstractIntentTest {
         Host hostOne = createMock(Host.class);
         expect(hostOne.mac()).andReturn(new MacAddress(HOST_ONE_MAC.getBytes())).anyTimes();
         expect(hostOne.vlan()).andReturn(VlanId.vlanId()).anyTimes();
+        expect(hostOne.location()).andReturn(new HostLocation(connectPoint(HOP_1, PORT_1), 0)).anyTimes();
         replay(hostOne);
 
         Host hostTwo = createMock(Host.class);
         expect(hostTwo.mac()).andReturn(new MacAddress(HOST_TWO_MAC.getBytes())).anyTimes();
         expect(hostTwo.vlan()).andReturn(VlanId.vlanId()).anyTimes();
+        expect(hostTwo.location()).andReturn(new HostLocation(connectPoint(HOP_8, PORT_1), 0)).anyTimes();
         replay(hostTwo);
 
         mockHostService = createMock(HostService.class);
@@ -129,6 +133,7 @@ public class HostToHostIntentCompilerTest extends AbstractIntentTest {
         HostToHostIntentCompiler compiler =
                 new HostToHostIntentCompiler();
         compiler.pathService = new IntentTestsMocks.MockPathService(hops);
+        compiler.topologyService = new TopologyServiceAdapter();
         compiler.hostService = mockHostService;
         compiler.resourceService = new MockResourceService();
         return compiler;
@@ -37,6 +37,7 @@ import org.onosproject.net.intent.Intent;
 import org.onosproject.net.intent.IntentTestsMocks;
 import org.onosproject.net.intent.MplsIntent;
 import org.onosproject.net.intent.MplsPathIntent;
+import org.onosproject.net.topology.TopologyServiceAdapter;
 
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.notNullValue;
@@ -89,6 +90,7 @@ public class MplsIntentCompilerTest extends AbstractIntentTest {
         MplsIntentCompiler compiler =
                 new MplsIntentCompiler();
         compiler.pathService = new IntentTestsMocks.MockPathService(hops);
+        compiler.topologyService = new TopologyServiceAdapter();
         return compiler;
     }
 
@@ -32,6 +32,7 @@ import org.onosproject.net.intent.Intent;
 import org.onosproject.net.intent.IntentTestsMocks;
 import org.onosproject.net.intent.LinkCollectionIntent;
 import org.onosproject.net.intent.MultiPointToSinglePointIntent;
+import org.onosproject.net.topology.TopologyServiceAdapter;
 
 import java.util.HashSet;
 import java.util.List;
@@ -109,6 +110,7 @@ public class MultiPointToSinglePointIntentCompilerTest extends AbstractIntentTes
         MultiPointToSinglePointIntentCompiler compiler =
                 new MultiPointToSinglePointIntentCompiler();
         compiler.pathService = new IntentTestsMocks.Mp2MpMockPathService(hops);
+        compiler.topologyService = new TopologyServiceAdapter();
         compiler.deviceService = new IntentTestsMocks.MockDeviceService();
         return compiler;
     }
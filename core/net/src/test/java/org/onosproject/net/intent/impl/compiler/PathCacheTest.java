@@ -0,0 +1,275 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.net.intent.impl.compiler;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.onlab.util.Bandwidth;
+import org.onosproject.TestApplicationId;
+import org.onosproject.common.DefaultTopology;
+import org.onosproject.core.ApplicationId;
+import org.onosproject.net.Device;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.ElementId;
+import org.onosproject.net.FilteredConnectPoint;
+import org.onosproject.net.Link;
+import org.onosproject.net.Path;
+import org.onosproject.net.intent.AbstractIntentTest;
+import org.onosproject.net.intent.Constraint;
+import org.onosproject.net.intent.Intent;
+import org.onosproject.net.intent.IntentTestsMocks;
+import org.onosproject.net.intent.PointToPointIntent;
+import org.onosproject.net.intent.constraint.BandwidthConstraint;
+import org.onosproject.net.intent.constraint.LinkTypeConstraint;
+import org.onosproject.net.resource.MockResourceService;
+import org.onosproject.net.provider.ProviderId;
+import org.onosproject.net.topology.DefaultGraphDescription;
+import org.onosproject.net.topology.LinkWeigher;
+import org.onosproject.net.topology.PathServiceAdapter;
+import org.onosproject.net.topology.Topology;
+import org.onosproject.net.topology.TopologyServiceAdapter;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.onosproject.net.NetTestTools.connectPoint;
+import static org.onosproject.net.NetTestTools.device;
+import static org.onosproject.net.NetTestTools.link;
+
+/**
+ * Tests the caching of the paths computed by connectivity intent compilers.
+ */
+public class PathCacheTest extends AbstractIntentTest {
+
+    private static final ApplicationId APPID = new TestApplicationId("foo");
+    private static final ProviderId PID = new ProviderId("of", "foo");
+    private static final String[] HOPS = {"d1", "d2", "d3"};
+    private static final Set<Device> DEVICES = ImmutableSet.of(device("d1"), device("d2"), device("d3"));
+
+    private final TestTopologyService topologyService = new TestTopologyService();
+    private final AtomicInteger computations = new AtomicInteger();
+    private PointToPointIntentCompiler compiler;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        topologyService.topology = topology(DEVICES, ImmutableSet.of());
+        compiler = new PointToPointIntentCompiler();
+        compiler.topologyService = topologyService;
+        compiler.resourceService = new MockResourceService();
+        compiler.pathService = new IntentTestsMocks.MockPathService(HOPS) {
+            @Override
+            public Set<Path> getPaths(ElementId src, ElementId dst, LinkWeigher weigher) {
+                computations.incrementAndGet();
+                return super.getPaths(src, dst, weigher);
+            }
+        };
+    }
+
+    private static PointToPointIntent intent(String ingress, String egress, int port,
+                                             List<Constraint> constraints) {
+        return PointToPointIntent.builder()
+                .appId(APPID)
+                .filteredIngressPoint(new FilteredConnectPoint(connectPoint(ingress, port)))
+                .filteredEgressPoint(new FilteredConnectPoint(connectPoint(egress, port)))
+                .constraints(constraints)
+                .build();
+    }
+
+    /**
+     * Tests that intents between the same devices share their paths until
+     * the topology changes.
+     */
+    @Test
+    public void sharedPaths() {
+        for (int port = 1; port <= 100; port++) {
+            List<Intent> result = compiler.compile(intent("d1", "d3", port, ImmutableList.of()), null);
+            assertEquals(1, result.size());
+        }
+        assertEquals("paths should be computed once", 1, computations.get());
+
+        topologyService.topology = topology(DEVICES, ImmutableSet.of());
+        compiler.compile(intent("d1", "d3", 1, ImmutableList.of()), null);
+        compiler.compile(intent("d1", "d3", 2, ImmutableList.of()), null);
+        assertEquals("paths should be computed anew", 2, computations.get());
+    }
+
+    /**
+     * Tests that paths are not shared between different constraints or
+     * end-points.
+     */
+    @Test
+    public void distinctPaths() {
+        compiler.compile(intent("d1", "d3", 1, ImmutableList.of()), null);
+        Constraint constraint = new LinkTypeConstraint(false, Link.Type.OPTICAL);
+        compiler.compile(intent("d1", "d3", 1, ImmutableList.of(constraint)), null);
+        compiler.compile(intent("d3", "d1", 1, ImmutableList.of()), null);
+        assertEquals(3, computations.get());
+    }
+
+    /**
+     * Tests that the paths computed by weighing links on the availability of
+     * resources are not shared, unlike those computed with other constraints.
+     */
+    @Test
+    public void resourceDependentPaths() {
+        topologyService.topology = topology(DEVICES, ImmutableSet.of(link("d1", 1, "d2", 2), link("d2", 1, "d3", 2)));
+        compiler.pathService = new PathServiceAdapter() {
+            @Override
+            public Set<Path> getPaths(ElementId src, ElementId dst, LinkWeigher weigher) {
+                computations.incrementAndGet();
+                return ((DefaultTopology) topologyService.topology)
+                        .getPaths((DeviceId) src, (DeviceId) dst, weigher);
+            }
+        };
+
+        Constraint bandwidth = new BandwidthConstraint(Bandwidth.bps(10));
+        compiler.compile(intent("d1", "d3", 1, ImmutableList.of(bandwidth)), null);
+        compiler.compile(intent("d1", "d3", 2, ImmutableList.of(bandwidth)), null);
+        assertEquals("paths should be computed for each intent", 2, computations.get());
+
+        Constraint linkType = new LinkTypeConstraint(false, Link.Type.OPTICAL);
+        compiler.compile(intent("d1", "d3", 1, ImmutableList.of(linkType)), null);
+        compiler.compile(intent("d1", "d3", 2, ImmutableList.of(linkType)), null);
+        assertEquals("paths should be computed once", 3, computations.get());
+    }
+
+    /**
+     * Tests that concurrent compilations of intents between the same devices
+     * wait for a single path computation.
+     */
+    @Test
+    public void concurrentCompilations() throws Exception {
+        CountDownLatch computing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        compiler.pathService = new IntentTestsMocks.MockPathService(HOPS) {
+            @Override
+            public Set<Path> getPaths(ElementId src, ElementId dst, LinkWeigher weigher) {
+                computations.incrementAndGet();
+                computing.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.getPaths(src, dst, weigher);
+            }
+        };
+
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<Intent>>> results = Lists.newArrayList();
+            for (int i = 1; i <= threads; i++) {
+                PointToPointIntent intent = intent("d1", "d3", i, ImmutableList.of());
+                results.add(executor.submit(() -> compiler.compile(intent, null)));
+            }
+            assertTrue(computing.await(5, TimeUnit.SECONDS));
+            release.countDown();
+            for (Future<List<Intent>> result : results) {
+                assertEquals(1, result.get(5, TimeUnit.SECONDS).size());
+            }
+            assertEquals("paths should be computed once", 1, computations.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Measures the time taken to recompile point-to-point intents between
+     * a limited number of device pairs of a ring after a link failure, with
+     * and without the path cache.
+     */
+    @Test
+    @Ignore("benchmark")
+    public void benchmark() {
+        int size = 200;
+        Set<Device> devices = Sets.newHashSet();
+        Set<Link> links = Sets.newLinkedHashSet();
+        for (int i = 0; i < size; i++) {
+            String next = "r" + ((i + 1) % size);
+            devices.add(device("r" + i));
+            links.add(link("r" + i, 1, next, 2));
+            links.add(link(next, 2, "r" + i, 1));
+        }
+        List<PointToPointIntent> intents = Lists.newArrayList();
+        for (int i = 0; i < 10000; i++) {
+            int pair = i % 100;
+            intents.add(intent("r" + pair, "r" + (pair + size / 3), 3 + i / 100, ImmutableList.of()));
+        }
+
+        compiler.pathService = new PathServiceAdapter() {
+            @Override
+            public Set<Path> getPaths(ElementId src, ElementId dst, LinkWeigher weigher) {
+                computations.incrementAndGet();
+                return ((DefaultTopology) topologyService.topology)
+                        .getPaths((DeviceId) src, (DeviceId) dst, weigher);
+            }
+        };
+        for (boolean cached : new boolean[]{false, true}) {
+            topologyService.topology = topology(devices, links);
+            intents.forEach(intent -> compiler.compile(intent, null));
+
+            // Fail a link of the ring and recompile all intents, each with a
+            // compiler of its own when not sharing the paths
+            links.remove(links.iterator().next());
+            topologyService.topology = topology(devices, links);
+            computations.set(0);
+            long start = System.nanoTime();
+            intents.forEach(intent -> (cached ? compiler : newCompiler()).compile(intent, null));
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("%s: %d intents recompiled in %d ms, %d path computations%n",
+                              cached ? "cached" : "uncached", intents.size(),
+                              TimeUnit.NANOSECONDS.toMillis(elapsed), computations.get());
+        }
+    }
+
+    private PointToPointIntentCompiler newCompiler() {
+        PointToPointIntentCompiler newCompiler = new PointToPointIntentCompiler();
+        newCompiler.topologyService = compiler.topologyService;
+        newCompiler.resourceService = compiler.resourceService;
+        newCompiler.pathService = compiler.pathService;
+        return newCompiler;
+    }
+
+    private static Topology topology(Set<Device> devices, Set<Link> links) {
+        long now = System.currentTimeMillis();
+        return new DefaultTopology(PID, new DefaultGraphDescription(now, now, devices, links));
+    }
+
+    private static final class TestTopologyService extends TopologyServiceAdapter {
+        private volatile Topology topology;
+
+        @Override
+        public Topology currentTopology() {
+            return topology;
+        }
+    }
+}
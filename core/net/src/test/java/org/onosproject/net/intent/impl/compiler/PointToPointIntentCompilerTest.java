@@ -35,6 +35,7 @@ import org.onosproject.net.intent.PointToPointIntent;
 import org.onosproject.net.intent.constraint.BandwidthConstraint;
 import org.onosproject.net.intent.impl.PathNotFoundException;
 import org.onosproject.net.resource.ResourceService;
+import org.onosproject.net.topology.TopologyServiceAdapter;
 
 import java.util.Collections;
 import java.util.List;
@@ -111,6 +112,7 @@ public class PointToPointIntentCompilerTest extends AbstractIntentTest {
     private PointToPointIntentCompiler makeCompiler(String[] hops) {
         PointToPointIntentCompiler compiler = new PointToPointIntentCompiler();
         compiler.pathService = new IntentTestsMocks.MockPathService(hops);
+        compiler.topologyService = new TopologyServiceAdapter();
         return compiler;
     }
 
@@ -125,6 +127,7 @@ public class PointToPointIntentCompilerTest extends AbstractIntentTest {
         final PointToPointIntentCompiler compiler = new PointToPointIntentCompiler();
         compiler.resourceService = resourceService;
         compiler.pathService = new IntentTestsMocks.MockPathService(hops);
+        compiler.topologyService = new TopologyServiceAdapter();
         return compiler;
     }
 
@@ -33,6 +33,7 @@ import org.onosproject.net.intent.Intent;
 import org.onosproject.net.intent.IntentTestsMocks;
 import org.onosproject.net.intent.LinkCollectionIntent;
 import org.onosproject.net.intent.SinglePointToMultiPointIntent;
+import org.onosproject.net.topology.TopologyServiceAdapter;
 
 import java.util.HashSet;
 import java.util.List;
@@ -113,6 +114,7 @@ public class SinglePointToMultiPointIntentCompilerTest extends AbstractIntentTes
                 new SinglePointToMultiPointIntentCompiler();
 
         compiler.pathService = new IntentTestsMocks.Mp2MpMockPathService(hops);
+        compiler.topologyService = new TopologyServiceAdapter();
         return compiler;
     }
 
@@ -18,35 +18,58 @@ package org.onosproject.net.packet.impl;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import org.junit.Before;
 import org.junit.Test;
+import org.onlab.packet.ARP;
+import org.onlab.packet.Ethernet;
+import org.onlab.packet.IPv4;
+import org.onlab.packet.Ip4Address;
+import org.onlab.packet.MacAddress;
+import org.onlab.packet.TCP;
+import org.onlab.packet.TpPort;
 import org.onosproject.cluster.ClusterServiceAdapter;
 import org.onosproject.common.event.impl.TestEventDispatcher;
 import org.onosproject.core.CoreServiceAdapter;
 import org.onosproject.core.IdGenerator;
 import org.onosproject.event.TestListener;
 import org.onosproject.net.AnnotationKeys;
+import org.onosproject.net.ConnectPoint;
 import org.onosproject.net.DefaultAnnotations;
 import org.onosproject.net.DefaultDevice;
 import org.onosproject.net.Device;
 import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
 import org.onosproject.net.device.DeviceServiceAdapter;
 import org.onosproject.net.driver.AbstractHandlerBehaviour;
 import org.onosproject.net.driver.DefaultDriver;
 import org.onosproject.net.driver.impl.DriverManager;
+import org.onosproject.net.flow.DefaultTrafficSelector;
 import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flow.TrafficSelector;
+import org.onosproject.net.packet.DefaultInboundPacket;
 import org.onosproject.net.packet.DefaultOutboundPacket;
+import org.onosproject.net.packet.DefaultPacketContext;
 import org.onosproject.net.packet.OutboundPacket;
+import org.onosproject.net.packet.PacketContext;
+import org.onosproject.net.packet.PacketProcessor;
+import org.onosproject.net.packet.PacketProcessorEntry;
 import org.onosproject.net.packet.PacketProgrammable;
+import org.onosproject.net.packet.PacketProvider;
 import org.onosproject.net.packet.PacketProviderRegistry;
+import org.onosproject.net.packet.PacketProviderService;
 import org.onosproject.net.provider.ProviderId;
 import org.onosproject.net.provider.TestProvider;
 import org.onosproject.store.trivial.SimplePacketStore;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.Assert.assertEquals;
+import static org.onosproject.net.packet.PacketProcessor.director;
 import static org.onosproject.net.NetTestTools.injectEventDispatcher;
 
 /**
@@ -73,6 +96,8 @@ public class PacketManagerTest {
 
     private TestDriverManager driverService;
 
+    private final List<String> processed = new ArrayList<>();
+
     @Before
     public void setUp() {
         mgr = new PacketManager();
@@ -102,6 +127,96 @@ public class PacketManagerTest {
         assertEquals("Packet not emitted correctly", packet, emittedPacket);
     }
 
+    private PacketProcessor processor(String name) {
+        return context -> processed.add(name);
+    }
+
+    private static PacketContext context(Ethernet frame) {
+        ConnectPoint cp = new ConnectPoint(FOO_DID, PortNumber.portNumber(1));
+        return new DefaultPacketContext(0, new DefaultInboundPacket(cp, ByteBuffer.wrap(frame.serialize()),
+                                                                    Optional.empty()), null, false) {
+            @Override
+            public void send() {
+            }
+        };
+    }
+
+    private static Ethernet arp() {
+        return ARP.buildArpRequest(MacAddress.valueOf(1).toBytes(), Ip4Address.valueOf(1).toOctets(),
+                                   Ip4Address.valueOf(2).toOctets(), Ethernet.VLAN_UNTAGGED);
+    }
+
+    private static Ethernet tcp(int dstPort) {
+        TCP tcp = new TCP();
+        tcp.setSourcePort(40000).setDestinationPort(dstPort);
+        IPv4 ip = new IPv4();
+        ip.setSourceAddress(1).setDestinationAddress(2).setProtocol(IPv4.PROTOCOL_TCP);
+        ip.setPayload(tcp);
+        Ethernet eth = new Ethernet();
+        eth.setEtherType(Ethernet.TYPE_IPV4)
+                .setSourceMACAddress(MacAddress.valueOf(1))
+                .setDestinationMACAddress(MacAddress.valueOf(2))
+                .setPayload(ip);
+        return eth;
+    }
+
+    /**
+     * Tests that packets are given only to the processors interested in
+     * them, in priority order.
+     */
+    @Test
+    public void processorInterests() {
+        TrafficSelector arp = DefaultTrafficSelector.builder().matchEthType(Ethernet.TYPE_ARP).build();
+        TrafficSelector http = DefaultTrafficSelector.builder().matchEthType(Ethernet.TYPE_IPV4)
+                .matchIPProtocol(IPv4.PROTOCOL_TCP).matchTcpDst(TpPort.tpPort(80)).build();
+        TrafficSelector tcp = DefaultTrafficSelector.builder().matchIPProtocol(IPv4.PROTOCOL_TCP).build();
+        mgr.addProcessor(processor("all"), director(2));
+        mgr.addProcessor(processor("arp"), director(1), ImmutableSet.of(arp));
+        mgr.addProcessor(processor("http"), director(3), ImmutableSet.of(http));
+        mgr.addProcessor(processor("arp+tcp"), director(4), ImmutableSet.of(arp, tcp));
+        PacketProviderService providerService = providerRegistry.register(new TestPacketProvider());
+
+        providerService.processPacket(context(arp()));
+        assertEquals(ImmutableList.of("arp", "all", "arp+tcp"), processed);
+
+        processed.clear();
+        providerService.processPacket(context(tcp(80)));
+        assertEquals(ImmutableList.of("all", "http", "arp+tcp"), processed);
+
+        processed.clear();
+        providerService.processPacket(context(tcp(22)));
+        assertEquals(ImmutableList.of("all", "arp+tcp"), processed);
+
+        mgr.removeProcessor(mgr.getProcessors().get(0).processor());
+        processed.clear();
+        providerService.processPacket(context(arp()));
+        assertEquals(ImmutableList.of("all", "arp+tcp"), processed);
+
+        List<Long> invocations = new ArrayList<>();
+        mgr.getProcessors().stream().map(PacketProcessorEntry::invocations).forEach(invocations::add);
+        assertEquals(ImmutableList.of(4L, 1L, 4L), invocations);
+    }
+
+    /**
+     * Tests that interests with criteria other than the EtherType, IP
+     * protocol and ports are rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void unsupportedInterest() {
+        TrafficSelector selector = DefaultTrafficSelector.builder().matchInPort(PortNumber.portNumber(1)).build();
+        mgr.addProcessor(processor("port"), director(1), ImmutableSet.of(selector));
+    }
+
+    private static class TestPacketProvider extends TestProvider implements PacketProvider {
+        TestPacketProvider() {
+            super(FOO_PID);
+        }
+
+        @Override
+        public void emit(OutboundPacket packet) {
+        }
+    }
+
     private static class TestDeviceService extends DeviceServiceAdapter {
         @Override
         public int getDeviceCount() {
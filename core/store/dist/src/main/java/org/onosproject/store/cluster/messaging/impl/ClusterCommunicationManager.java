@@ -38,6 +38,7 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Objects;
 
+import java.nio.ByteBuffer;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
@@ -128,11 +129,11 @@ public class ClusterCommunicationManager
                                                NodeId toNodeId) {
         checkPermission(CLUSTER_WRITE);
         try {
-            byte[] payload = new ClusterMessage(
+            ByteBuffer[] payload = new ClusterMessage(
                     localNodeId,
                     subject,
                     timeFunction(encoder, subjectMeteringAgent, SERIALIZING).apply(message)
-                    ).getBytes();
+                    ).getBuffers();
             return doUnicast(subject, payload, toNodeId);
         } catch (Exception e) {
             return Tools.exceptionalFuture(e);
@@ -145,11 +146,11 @@ public class ClusterCommunicationManager
                               Function<M, byte[]> encoder,
                               Set<NodeId> nodes) {
         checkPermission(CLUSTER_WRITE);
-        byte[] payload = new ClusterMessage(
+        ByteBuffer[] payload = new ClusterMessage(
                 localNodeId,
                 subject,
                 timeFunction(encoder, subjectMeteringAgent, SERIALIZING).apply(message))
-                .getBytes();
+                .getBuffers();
         nodes.forEach(nodeId -> doUnicast(subject, payload, nodeId));
     }
 
@@ -166,14 +167,14 @@ public class ClusterCommunicationManager
                     subject,
                     timeFunction(encoder, subjectMeteringAgent, SERIALIZING).
                             apply(message));
-            return sendAndReceive(subject, envelope.getBytes(), toNodeId).
+            return sendAndReceive(subject, envelope.getBuffers(), toNodeId).
                     thenApply(bytes -> timeFunction(decoder, subjectMeteringAgent, DESERIALIZING).apply(bytes));
         } catch (Exception e) {
             return Tools.exceptionalFuture(e);
         }
     }
 
-    private CompletableFuture<Void> doUnicast(MessageSubject subject, byte[] payload, NodeId toNodeId) {
+    private CompletableFuture<Void> doUnicast(MessageSubject subject, ByteBuffer[] payload, NodeId toNodeId) {
         ControllerNode node = clusterService.getNode(toNodeId);
         checkArgument(node != null, "Unknown nodeId: %s", toNodeId);
         Endpoint nodeEp = new Endpoint(node.ip(), node.tcpPort());
@@ -181,7 +182,7 @@ public class ClusterCommunicationManager
         return messagingService.sendAsync(nodeEp, subject.value(), payload).whenComplete((r, e) -> context.stop(e));
     }
 
-    private CompletableFuture<byte[]> sendAndReceive(MessageSubject subject, byte[] payload, NodeId toNodeId) {
+    private CompletableFuture<byte[]> sendAndReceive(MessageSubject subject, ByteBuffer[] payload, NodeId toNodeId) {
         ControllerNode node = clusterService.getNode(toNodeId);
         checkArgument(node != null, "Unknown nodeId: %s", toNodeId);
         Endpoint nodeEp = new Endpoint(node.ip(), node.tcpPort());
@@ -249,7 +250,7 @@ public class ClusterCommunicationManager
             Consumer<M> handler,
             Executor executor) {
         checkPermission(CLUSTER_WRITE);
-        messagingService.registerHandler(subject.value(),
+        messagingService.registerBufferHandler(subject.value(),
                 new InternalMessageConsumer<>(decoder, handler),
                 executor);
     }
@@ -324,7 +325,7 @@ public class ClusterCommunicationManager
         }
     }
 
-    private class InternalMessageConsumer<M> implements BiConsumer<Endpoint, byte[]> {
+    private class InternalMessageConsumer<M> implements BiConsumer<Endpoint, ByteBuffer> {
         private final Function<byte[], M> decoder;
         private final Consumer<M> consumer;
 
@@ -334,9 +335,10 @@ public class ClusterCommunicationManager
         }
 
         @Override
-        public void accept(Endpoint sender, byte[] bytes) {
+        public void accept(Endpoint sender, ByteBuffer buffer) {
+            // Only the payload is copied out of the buffer, which is not retained
             consumer.accept(timeFunction(decoder, subjectMeteringAgent, DESERIALIZING).
-                    apply(ClusterMessage.fromBytes(bytes).payload()));
+                    apply(ClusterMessage.fromBytes(buffer).payload()));
         }
     }
 }
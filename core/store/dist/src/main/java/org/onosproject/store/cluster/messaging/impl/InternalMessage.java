@@ -17,13 +17,22 @@ package org.onosproject.store.cluster.messaging.impl;
 
 import com.google.common.base.MoreObjects;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import org.onlab.util.ByteArraySizeHashPrinter;
 import org.onosproject.core.HybridLogicalTime;
 import org.onosproject.store.cluster.messaging.Endpoint;
 
+import java.nio.ByteBuffer;
+
 /**
  * Internal message representation with additional attributes
  * for supporting, synchronous request/reply behavior.
+ * <p>
+ * The payload is either held as a byte array or as a buffer, which for
+ * inbound messages is a slice of the pooled buffer the message was read
+ * from. Buffer backed messages must be released once handled.
+ * </p>
  */
 public final class InternalMessage {
 
@@ -61,8 +70,9 @@ public final class InternalMessage {
     private final long id;
     private final Endpoint sender;
     private final String type;
-    private final byte[] payload;
+    private final ByteBuf buffer;
     private final Status status;
+    private byte[] payload;
 
     public InternalMessage(int preamble,
                            HybridLogicalTime time,
@@ -86,6 +96,32 @@ public final class InternalMessage {
         this.sender = sender;
         this.type = type;
         this.payload = payload;
+        this.buffer = Unpooled.wrappedBuffer(payload);
+        this.status = status;
+    }
+
+    public InternalMessage(int preamble,
+                           HybridLogicalTime time,
+                           long id,
+                           Endpoint sender,
+                           String type,
+                           ByteBuf payload) {
+        this(preamble, time, id, sender, type, payload, Status.OK);
+    }
+
+    public InternalMessage(int preamble,
+                           HybridLogicalTime time,
+                           long id,
+                           Endpoint sender,
+                           String type,
+                           ByteBuf payload,
+                           Status status) {
+        this.preamble = preamble;
+        this.time = time;
+        this.id = id;
+        this.sender = sender;
+        this.type = type;
+        this.buffer = payload;
         this.status = status;
     }
 
@@ -109,10 +145,76 @@ public final class InternalMessage {
         return sender;
     }
 
+    /**
+     * Returns the message payload, copying it out of the payload buffer on
+     * first use.
+     *
+     * @return payload bytes
+     */
     public byte[] payload() {
+        if (payload == null) {
+            byte[] bytes = new byte[buffer.readableBytes()];
+            buffer.getBytes(buffer.readerIndex(), bytes);
+            payload = bytes;
+        }
         return payload;
     }
 
+    /**
+     * Returns a view of the message payload, sharing its memory.
+     *
+     * @return payload buffer
+     */
+    public ByteBuffer payloadBuffer() {
+        return buffer.nioBuffer();
+    }
+
+    /**
+     * Returns the length of the message payload.
+     *
+     * @return payload length in bytes
+     */
+    public int payloadLength() {
+        return buffer.readableBytes();
+    }
+
+    /**
+     * Writes the message payload into the specified buffer.
+     *
+     * @param out buffer to write the payload to
+     */
+    void writePayload(ByteBuf out) {
+        out.writeBytes(buffer, buffer.readerIndex(), buffer.readableBytes());
+    }
+
+    /**
+     * Returns the message payload as a retained buffer sharing its memory,
+     * to be written out and released by the channel.
+     *
+     * @return retained payload buffer
+     */
+    ByteBuf retainedPayload() {
+        return buffer.retainedDuplicate();
+    }
+
+    /**
+     * Retains the payload buffer for use beyond the current handler.
+     *
+     * @return this message
+     */
+    InternalMessage retain() {
+        buffer.retain();
+        return this;
+    }
+
+    /**
+     * Releases the payload buffer; the payload may no longer be accessed
+     * unless it has already been copied out or is otherwise retained.
+     */
+    void release() {
+        buffer.release();
+    }
+
     public Status status() {
         return status;
     }
@@ -125,7 +227,7 @@ public final class InternalMessage {
                 .add("type", type)
                 .add("sender", sender)
                 .add("status", status)
-                .add("payload", ByteArraySizeHashPrinter.of(payload))
+                .add("payload", payload != null ? ByteArraySizeHashPrinter.of(payload) : buffer)
                 .toString();
     }
 }
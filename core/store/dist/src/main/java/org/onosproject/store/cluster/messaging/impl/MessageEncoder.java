@@ -19,7 +19,7 @@ import com.google.common.base.Charsets;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.handler.codec.MessageToMessageEncoder;
 import org.onlab.packet.IpAddress;
 import org.onlab.packet.IpAddress.Version;
 import org.onosproject.store.cluster.messaging.Endpoint;
@@ -27,15 +27,28 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.List;
 
 /**
- * Encode InternalMessage out into a byte buffer.
+ * Encode InternalMessage out into byte buffers.
+ * <p>
+ * The header is written into a buffer taken from the channel allocator,
+ * while payloads larger than {@link #COPY_THRESHOLD} are passed down the
+ * pipeline as is, without being copied.
+ * </p>
  */
 @Sharable
-public class MessageEncoder extends MessageToByteEncoder<Object> {
-// Effectively MessageToByteEncoder<InternalMessage>,
+public class MessageEncoder extends MessageToMessageEncoder<Object> {
+// Effectively MessageToMessageEncoder<InternalMessage>,
 // had to specify <Object> to avoid Class Loader not being able to find some classes.
 
+    // Payloads up to this size are cheaper to copy than to write separately
+    static final int COPY_THRESHOLD = 1024;
+
+    // Fixed size header fields: preamble, time, counter, id, ip version,
+    // port, type length, status and payload length
+    private static final int HEADER_LENGTH = 4 + 8 + 8 + 8 + 1 + 4 + 4 + 4 + 4;
+
     private final Logger log = LoggerFactory.getLogger(getClass());
 
     private final int preamble;
@@ -50,50 +63,60 @@ public class MessageEncoder extends MessageToByteEncoder<Object> {
     protected void encode(
             ChannelHandlerContext context,
             Object rawMessage,
-            ByteBuf out) throws Exception {
+            List<Object> out) throws Exception {
 
         InternalMessage message = (InternalMessage) rawMessage;
 
-        out.writeInt(this.preamble);
+        Endpoint sender = message.sender();
+        IpAddress senderIp = sender.host();
+        byte[] senderIpBytes = senderIp.toOctets();
+        byte[] messageTypeBytes = message.type().getBytes(Charsets.UTF_8);
+        int payloadLength = message.payloadLength();
+        boolean copyPayload = payloadLength <= COPY_THRESHOLD;
+
+        int capacity = HEADER_LENGTH + senderIpBytes.length + messageTypeBytes.length;
+        ByteBuf header = context.alloc().ioBuffer(copyPayload ? capacity + payloadLength : capacity);
+
+        header.writeInt(this.preamble);
 
         // write time
-        out.writeLong(message.time().logicalTime());
-        out.writeLong(message.time().logicalCounter());
+        header.writeLong(message.time().logicalTime());
+        header.writeLong(message.time().logicalCounter());
 
         // write message id
-        out.writeLong(message.id());
+        header.writeLong(message.id());
 
-        Endpoint sender = message.sender();
-
-        IpAddress senderIp = sender.host();
         if (senderIp.version() == Version.INET) {
-            out.writeByte(0);
+            header.writeByte(0);
         } else {
-            out.writeByte(1);
+            header.writeByte(1);
         }
-        out.writeBytes(senderIp.toOctets());
+        header.writeBytes(senderIpBytes);
 
         // write sender port
-        out.writeInt(sender.port());
-
-        byte[] messageTypeBytes = message.type().getBytes(Charsets.UTF_8);
+        header.writeInt(sender.port());
 
         // write length of message type
-        out.writeInt(messageTypeBytes.length);
+        header.writeInt(messageTypeBytes.length);
 
         // write message type bytes
-        out.writeBytes(messageTypeBytes);
+        header.writeBytes(messageTypeBytes);
 
         // write message status value
-        out.writeInt(message.status().ordinal());
-
-        byte[] payload = message.payload();
+        header.writeInt(message.status().ordinal());
 
         // write payload length
-        out.writeInt(payload.length);
+        header.writeInt(payloadLength);
 
-        // write payload.
-        out.writeBytes(payload);
+        if (copyPayload) {
+            // write small payloads along with the header
+            message.writePayload(header);
+            out.add(header);
+        } else {
+            // hand larger payloads to the channel as they are
+            out.add(header);
+            out.add(message.retainedPayload());
+        }
     }
 
     @Override
@@ -106,7 +129,7 @@ public class MessageEncoder extends MessageToByteEncoder<Object> {
         context.close();
     }
 
-    // Effectively same result as one generated by MessageToByteEncoder<InternalMessage>
+    // Effectively same result as one generated by MessageToMessageEncoder<InternalMessage>
     @Override
     public final boolean acceptOutboundMessage(Object msg) throws Exception {
         return msg instanceof InternalMessage;
@@ -15,7 +15,10 @@
  */
 package org.onosproject.store.cluster.messaging.impl;
 
+import com.codahale.metrics.Histogram;
+import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.RemovalListener;
@@ -24,13 +27,17 @@ import com.google.common.util.concurrent.MoreExecutors;
 
 import io.netty.bootstrap.Bootstrap;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
 import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoop;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.ServerChannel;
 import io.netty.channel.SimpleChannelInboundHandler;
@@ -46,10 +53,18 @@ import org.apache.commons.pool.impl.GenericKeyedObjectPool;
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Modified;
+import org.apache.felix.scr.annotations.Property;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.ReferenceCardinality;
+import org.apache.felix.scr.annotations.ReferencePolicy;
 import org.apache.felix.scr.annotations.Service;
+import org.onlab.metrics.MetricsComponent;
+import org.onlab.metrics.MetricsFeature;
+import org.onlab.metrics.MetricsService;
 import org.onlab.util.Tools;
+import org.onosproject.cfg.ComponentConfigService;
+import org.onosproject.cfg.ConfigProperty;
 import org.onosproject.cluster.ClusterMetadataService;
 import org.onosproject.cluster.ControllerNode;
 import org.onosproject.core.HybridLogicalClockService;
@@ -57,6 +72,7 @@ import org.onosproject.store.cluster.messaging.Endpoint;
 import org.onosproject.store.cluster.messaging.MessagingException;
 import org.onosproject.store.cluster.messaging.MessagingService;
 import org.onosproject.store.cluster.messaging.impl.InternalMessage.Status;
+import org.osgi.service.component.ComponentContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -67,13 +83,20 @@ import javax.net.ssl.TrustManagerFactory;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.security.KeyStore;
+import java.util.Dictionary;
+import java.util.EnumMap;
+import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -82,6 +105,8 @@ import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 
+import static com.google.common.base.Strings.isNullOrEmpty;
+import static org.onlab.util.Tools.get;
 import static org.onlab.util.Tools.groupedThreads;
 import static org.onosproject.security.AppGuard.checkPermission;
 import static org.onosproject.security.AppPermission.Type.CLUSTER_WRITE;
@@ -100,9 +125,80 @@ public class NettyMessagingManager implements MessagingService {
 
     private static final String REPLY_MESSAGE_TYPE = "NETTY_MESSAGING_REQUEST_REPLY";
 
+    private static final boolean DEFAULT_COALESCE_MESSAGES = false;
+    private static final int DEFAULT_MAX_COALESCE_DELAY_MICROS = 200;
+    private static final int DEFAULT_MAX_COALESCED_MESSAGES = 64;
+    private static final int DEFAULT_MAX_COALESCED_BYTES = 64 * 1024;
+
+    private static final boolean DEFAULT_PRIORITY_LANES = true;
+    private static final String DEFAULT_CONTROL_MESSAGE_TYPES =
+            "onos-cluster-heartbeat,onos-copycat-,mastership-store-";
+
+    private static final String METRICS_COMPONENT = "NettyMessagingManager";
+    private static final String COALESCED_MESSAGES = "coalescedMessages";
+    private static final String COALESCED_BYTES = "coalescedBytes";
+    private static final String LATENCY_MICROS = "latencyMicros";
+
+    /**
+     * Lanes messages to a peer are sent on, each with connections of its own
+     * so that control traffic is not held up behind bulk transfers.
+     */
+    private enum Lane {
+        /**
+         * Latency sensitive messages, such as heartbeats and Raft traffic.
+         */
+        CONTROL,
+
+        /**
+         * All other messages.
+         */
+        BULK
+    }
+
+    @Property(name = "coalesceMessages", boolValue = DEFAULT_COALESCE_MESSAGES,
+            label = "Indicates whether messages to the same endpoint are written " +
+                    "out together, with a single flush")
+    private volatile boolean coalesceMessages = DEFAULT_COALESCE_MESSAGES;
+
+    @Property(name = "maxCoalesceDelayMicros", intValue = DEFAULT_MAX_COALESCE_DELAY_MICROS,
+            label = "Maximum time in microseconds a message is held back waiting " +
+                    "for others to the same endpoint")
+    private volatile int maxCoalesceDelayMicros = DEFAULT_MAX_COALESCE_DELAY_MICROS;
+
+    @Property(name = "maxCoalescedMessages", intValue = DEFAULT_MAX_COALESCED_MESSAGES,
+            label = "Maximum number of messages written out with a single flush")
+    private volatile int maxCoalescedMessages = DEFAULT_MAX_COALESCED_MESSAGES;
+
+    @Property(name = "maxCoalescedBytes", intValue = DEFAULT_MAX_COALESCED_BYTES,
+            label = "Maximum number of payload bytes written out with a single flush")
+    private volatile int maxCoalescedBytes = DEFAULT_MAX_COALESCED_BYTES;
+
+    @Property(name = "priorityLanes", boolValue = DEFAULT_PRIORITY_LANES,
+            label = "Indicates whether control messages are sent on connections " +
+                    "of their own, ahead of bulk traffic")
+    private volatile boolean priorityLanes = DEFAULT_PRIORITY_LANES;
+
+    @Property(name = "controlMessageTypes", value = DEFAULT_CONTROL_MESSAGE_TYPES,
+            label = "Comma separated prefixes of the types of messages sent on " +
+                    "the control lane")
+    private volatile List<String> controlMessageTypes = parseMessageTypes(DEFAULT_CONTROL_MESSAGE_TYPES);
+
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
     protected HybridLogicalClockService clockService;
 
+    // This must be optional to avoid a cyclic dependency, since the store
+    // behind the configuration service communicates through this service
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL_UNARY,
+            policy = ReferencePolicy.DYNAMIC)
+    protected volatile ComponentConfigService configService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected MetricsService metricsService;
+
+    private MetricsComponent metricsComponent;
+    private final Map<Endpoint, CoalescingMetrics> coalescingMetrics = new ConcurrentHashMap<>();
+    private final Map<Lane, Histogram> laneLatencies = new EnumMap<>(Lane.class);
+
     private Endpoint localEp;
     private int preamble;
     private final AtomicBoolean started = new AtomicBoolean(false);
@@ -120,8 +216,7 @@ public class NettyMessagingManager implements MessagingService {
             })
             .build();
 
-    private final GenericKeyedObjectPool<Endpoint, Connection> channels
-            = new GenericKeyedObjectPool<>(new OnosCommunicationChannelFactory());
+    private final Map<Lane, GenericKeyedObjectPool<Endpoint, Connection>> channels = new EnumMap<>(Lane.class);
 
     private EventLoopGroup serverGroup;
     private EventLoopGroup clientGroup;
@@ -140,7 +235,7 @@ public class NettyMessagingManager implements MessagingService {
     protected ClusterMetadataService clusterMetadataService;
 
     @Activate
-    public void activate() throws Exception {
+    public void activate(ComponentContext context) throws Exception {
         ControllerNode localNode = clusterMetadataService.getLocalNode();
         getTlsParameters();
 
@@ -148,13 +243,26 @@ public class NettyMessagingManager implements MessagingService {
             log.warn("Already running at local endpoint: {}", localEp);
             return;
         }
+        modified(context);
+        if (metricsService != null) {
+            metricsComponent = metricsService.registerComponent(METRICS_COMPONENT);
+            for (Lane lane : Lane.values()) {
+                MetricsFeature feature = metricsComponent.registerFeature(lane.name().toLowerCase());
+                laneLatencies.put(lane, metricsService.createHistogram(metricsComponent, feature, LATENCY_MICROS));
+            }
+        }
         this.preamble = clusterMetadataService.getClusterMetadata().getName().hashCode();
         this.localEp = new Endpoint(localNode.ip(), localNode.tcpPort());
-        channels.setLifo(true);
-        channels.setTestOnBorrow(true);
-        channels.setTestOnReturn(true);
-        channels.setMinEvictableIdleTimeMillis(60_000L);
-        channels.setTimeBetweenEvictionRunsMillis(30_000L);
+        for (Lane lane : Lane.values()) {
+            GenericKeyedObjectPool<Endpoint, Connection> pool =
+                    new GenericKeyedObjectPool<>(new OnosCommunicationChannelFactory(lane));
+            pool.setLifo(true);
+            pool.setTestOnBorrow(true);
+            pool.setTestOnReturn(true);
+            pool.setMinEvictableIdleTimeMillis(60_000L);
+            pool.setTimeBetweenEvictionRunsMillis(30_000L);
+            channels.put(lane, pool);
+        }
         initEventLoopGroup();
         startAcceptingConnections();
         started.set(true);
@@ -165,14 +273,131 @@ public class NettyMessagingManager implements MessagingService {
     @Deactivate
     public void deactivate() throws Exception {
         if (started.get()) {
-            channels.close();
+            for (GenericKeyedObjectPool<Endpoint, Connection> pool : channels.values()) {
+                pool.close();
+            }
             serverGroup.shutdownGracefully();
             clientGroup.shutdownGracefully();
+            coalescingMetrics.keySet().forEach(this::removeCoalescingMetrics);
+            removeLaneMetrics();
             started.set(false);
         }
         log.info("Stopped");
     }
 
+    /**
+     * Hook for wiring up optional reference to a service.
+     *
+     * @param service service being announced
+     */
+    protected void bindConfigService(ComponentConfigService service) {
+        if (configService == null) {
+            configService = service;
+            configService.registerProperties(getClass());
+            Set<ConfigProperty> properties = configService.getProperties(getClass().getName());
+            if (properties != null) {
+                Hashtable<String, String> values = new Hashtable<>();
+                properties.stream().filter(p -> p.value() != null)
+                        .forEach(p -> values.put(p.name(), p.value()));
+                readComponentConfiguration(values);
+            }
+        }
+    }
+
+    /**
+     * Hook for unwiring optional reference to a service.
+     *
+     * @param service service being withdrawn
+     */
+    protected void unbindConfigService(ComponentConfigService service) {
+        if (configService == service) {
+            configService.unregisterProperties(getClass(), false);
+            configService = null;
+        }
+    }
+
+    @Modified
+    public void modified(ComponentContext context) {
+        if (context == null) {
+            logConfig("Default config");
+            return;
+        }
+        readComponentConfiguration(context.getProperties());
+    }
+
+    // Applies the given configuration, keeping the current value of any
+    // property not given
+    private synchronized void readComponentConfiguration(Dictionary<?, ?> properties) {
+        boolean newCoalesceMessages;
+        int newMaxCoalesceDelayMicros;
+        int newMaxCoalescedMessages;
+        int newMaxCoalescedBytes;
+        boolean newPriorityLanes;
+        List<String> newControlMessageTypes;
+        try {
+            String s = get(properties, "coalesceMessages");
+            newCoalesceMessages = isNullOrEmpty(s) ? coalesceMessages : Boolean.parseBoolean(s.trim());
+
+            s = get(properties, "maxCoalesceDelayMicros");
+            newMaxCoalesceDelayMicros = isNullOrEmpty(s) ? maxCoalesceDelayMicros : Integer.parseInt(s.trim());
+
+            s = get(properties, "maxCoalescedMessages");
+            newMaxCoalescedMessages = isNullOrEmpty(s) ? maxCoalescedMessages : Integer.parseInt(s.trim());
+
+            s = get(properties, "maxCoalescedBytes");
+            newMaxCoalescedBytes = isNullOrEmpty(s) ? maxCoalescedBytes : Integer.parseInt(s.trim());
+
+            s = get(properties, "priorityLanes");
+            newPriorityLanes = isNullOrEmpty(s) ? priorityLanes : Boolean.parseBoolean(s.trim());
+
+            s = get(properties, "controlMessageTypes");
+            newControlMessageTypes = isNullOrEmpty(s) ? controlMessageTypes : parseMessageTypes(s);
+        } catch (NumberFormatException | ClassCastException e) {
+            log.warn("Invalid configuration, using defaults", e);
+            newCoalesceMessages = DEFAULT_COALESCE_MESSAGES;
+            newMaxCoalesceDelayMicros = DEFAULT_MAX_COALESCE_DELAY_MICROS;
+            newMaxCoalescedMessages = DEFAULT_MAX_COALESCED_MESSAGES;
+            newMaxCoalescedBytes = DEFAULT_MAX_COALESCED_BYTES;
+            newPriorityLanes = DEFAULT_PRIORITY_LANES;
+            newControlMessageTypes = parseMessageTypes(DEFAULT_CONTROL_MESSAGE_TYPES);
+        }
+
+        maxCoalesceDelayMicros = Math.max(0, newMaxCoalesceDelayMicros);
+        maxCoalescedMessages = Math.max(1, newMaxCoalescedMessages);
+        maxCoalescedBytes = Math.max(1, newMaxCoalescedBytes);
+        coalesceMessages = newCoalesceMessages;
+        priorityLanes = newPriorityLanes;
+        controlMessageTypes = newControlMessageTypes;
+        logConfig("Reconfigured");
+    }
+
+    private void logConfig(String prefix) {
+        log.info("{} with coalesceMessages = {}; maxCoalesceDelayMicros = {}; "
+                         + "maxCoalescedMessages = {}; maxCoalescedBytes = {}; "
+                         + "priorityLanes = {}; controlMessageTypes = {}",
+                 prefix, coalesceMessages, maxCoalesceDelayMicros,
+                 maxCoalescedMessages, maxCoalescedBytes,
+                 priorityLanes, controlMessageTypes);
+    }
+
+    private static List<String> parseMessageTypes(String types) {
+        return ImmutableList.copyOf(Splitter.on(',').trimResults().omitEmptyStrings().split(types));
+    }
+
+    // Returns the lane messages of the given type are sent on. Types are
+    // matched against the few control prefixes on every message rather than
+    // remembered, since some subjects embed session or connection ids.
+    private Lane lane(String type) {
+        if (priorityLanes) {
+            for (String prefix : controlMessageTypes) {
+                if (type.startsWith(prefix)) {
+                    return Lane.CONTROL;
+                }
+            }
+        }
+        return Lane.BULK;
+    }
+
     private void getTlsParameters() {
         String tempString = System.getProperty("enableNettyTLS");
         enableNettyTls = Strings.isNullOrEmpty(tempString) ? TLS_DISABLED : Boolean.parseBoolean(tempString);
@@ -230,7 +455,23 @@ public class NettyMessagingManager implements MessagingService {
         return sendAsync(ep, message);
     }
 
+    @Override
+    public CompletableFuture<Void> sendAsync(Endpoint ep, String type, ByteBuffer... payload) {
+        checkPermission(CLUSTER_WRITE);
+        InternalMessage message = new InternalMessage(preamble,
+                                                      clockService.timeNow(),
+                                                      messageIdGenerator.incrementAndGet(),
+                                                      localEp,
+                                                      type,
+                                                      Unpooled.wrappedBuffer(payload));
+        return sendAsync(ep, message);
+    }
+
     protected CompletableFuture<Void> sendAsync(Endpoint ep, InternalMessage message) {
+        return sendAsync(ep, message, lane(message.type()));
+    }
+
+    private CompletableFuture<Void> sendAsync(Endpoint ep, InternalMessage message, Lane lane) {
         checkPermission(CLUSTER_WRITE);
         if (ep.equals(localEp)) {
             try {
@@ -242,14 +483,20 @@ public class NettyMessagingManager implements MessagingService {
         }
 
         CompletableFuture<Void> future = new CompletableFuture<>();
+        Histogram latency = laneLatencies.get(lane);
+        if (latency != null) {
+            long start = System.nanoTime();
+            future.whenComplete((r, e) -> latency.update(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start)));
+        }
+        GenericKeyedObjectPool<Endpoint, Connection> pool = channels.get(lane);
         try {
             Connection connection = null;
             try {
-                connection = channels.borrowObject(ep);
+                connection = pool.borrowObject(ep);
                 connection.send(message, future);
             } finally {
                 if (connection != null) {
-                    channels.returnObject(ep, connection);
+                    pool.returnObject(ep, connection);
                 }
             }
         } catch (Exception e) {
@@ -264,9 +511,19 @@ public class NettyMessagingManager implements MessagingService {
         return sendAndReceive(ep, type, payload, MoreExecutors.directExecutor());
     }
 
+    @Override
+    public CompletableFuture<byte[]> sendAndReceive(Endpoint ep, String type, ByteBuffer... payload) {
+        checkPermission(CLUSTER_WRITE);
+        return sendAndReceive(ep, type, Unpooled.wrappedBuffer(payload), MoreExecutors.directExecutor());
+    }
+
     @Override
     public CompletableFuture<byte[]> sendAndReceive(Endpoint ep, String type, byte[] payload, Executor executor) {
         checkPermission(CLUSTER_WRITE);
+        return sendAndReceive(ep, type, Unpooled.wrappedBuffer(payload), executor);
+    }
+
+    private CompletableFuture<byte[]> sendAndReceive(Endpoint ep, String type, ByteBuf payload, Executor executor) {
         CompletableFuture<byte[]> response = new CompletableFuture<>();
         Callback callback = new Callback(response, executor);
         Long messageId = messageIdGenerator.incrementAndGet();
@@ -277,7 +534,7 @@ public class NettyMessagingManager implements MessagingService {
                                                       localEp,
                                                       type,
                                                       payload);
-        return sendAsync(ep, message).whenComplete((r, e) -> {
+        return sendAsync(ep, message, lane(type)).whenComplete((r, e) -> {
             if (e != null) {
                 callbacks.invalidate(messageId);
             }
@@ -287,22 +544,49 @@ public class NettyMessagingManager implements MessagingService {
     @Override
     public void registerHandler(String type, BiConsumer<Endpoint, byte[]> handler, Executor executor) {
         checkPermission(CLUSTER_WRITE);
-        handlers.put(type, message -> executor.execute(() -> handler.accept(message.sender(), message.payload())));
+        handlers.put(type, message -> {
+            byte[] payload = message.payload();
+            executor.execute(() -> handler.accept(message.sender(), payload));
+        });
     }
 
     @Override
-    public void registerHandler(String type, BiFunction<Endpoint, byte[], byte[]> handler, Executor executor) {
+    public void registerBufferHandler(String type, BiConsumer<Endpoint, ByteBuffer> handler, Executor executor) {
         checkPermission(CLUSTER_WRITE);
-        handlers.put(type, message -> executor.execute(() -> {
-            byte[] responsePayload = null;
-            Status status = Status.OK;
+        handlers.put(type, message -> {
+            // Keep the payload buffer alive until the handler has run
+            message.retain();
             try {
-                responsePayload = handler.apply(message.sender(), message.payload());
-            } catch (Exception e) {
-                status = Status.ERROR_HANDLER_EXCEPTION;
+                executor.execute(() -> {
+                    try {
+                        handler.accept(message.sender(), message.payloadBuffer());
+                    } finally {
+                        message.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                message.release();
+                throw e;
             }
-            sendReply(message, status, Optional.ofNullable(responsePayload));
-        }));
+        });
+    }
+
+    @Override
+    public void registerHandler(String type, BiFunction<Endpoint, byte[], byte[]> handler, Executor executor) {
+        checkPermission(CLUSTER_WRITE);
+        handlers.put(type, message -> {
+            byte[] payload = message.payload();
+            executor.execute(() -> {
+                byte[] responsePayload = null;
+                Status status = Status.OK;
+                try {
+                    responsePayload = handler.apply(message.sender(), payload);
+                } catch (Exception e) {
+                    status = Status.ERROR_HANDLER_EXCEPTION;
+                }
+                sendReply(message, status, Optional.ofNullable(responsePayload));
+            });
+        });
     }
 
     @Override
@@ -352,6 +636,12 @@ public class NettyMessagingManager implements MessagingService {
     private class OnosCommunicationChannelFactory
             implements KeyedPoolableObjectFactory<Endpoint, Connection> {
 
+        private final Lane lane;
+
+        OnosCommunicationChannelFactory(Lane lane) {
+            this.lane = lane;
+        }
+
         @Override
         public void activateObject(Endpoint endpoint,  Connection connection)
                 throws Exception {
@@ -393,8 +683,8 @@ public class NettyMessagingManager implements MessagingService {
                     retFuture.completeExceptionally(future.cause());
                 }
             });
-            log.debug("Established a new connection to {}", ep);
-            return new Connection(retFuture);
+            log.debug("Established a new {} connection to {}", lane, ep);
+            return new Connection(ep, lane, retFuture);
         }
 
         @Override
@@ -503,6 +793,9 @@ public class NettyMessagingManager implements MessagingService {
                 dispatchLocally(message);
             } catch (RejectedExecutionException e) {
                 log.warn("Unable to dispatch message due to {}", e.getMessage());
+            } finally {
+                // Handlers copy the payload out or retain it for themselves
+                message.release();
             }
         }
 
@@ -574,7 +867,8 @@ public class NettyMessagingManager implements MessagingService {
                 REPLY_MESSAGE_TYPE,
                 responsePayload.orElse(new byte[0]),
                 status);
-        sendAsync(message.sender(), response).whenComplete((result, error) -> {
+        // Replies travel on the lane of the request they answer
+        sendAsync(message.sender(), response, lane(message.type())).whenComplete((result, error) -> {
             if (error != null) {
                 log.debug("Failed to respond", error);
             }
@@ -598,10 +892,67 @@ public class NettyMessagingManager implements MessagingService {
             executor.execute(() -> future.completeExceptionally(error));
         }
     }
+    // Returns the coalescing metrics of the given endpoint,
+    // if metrics collection is available.
+    private CoalescingMetrics coalescingMetrics(Endpoint ep) {
+        MetricsComponent component = metricsComponent;
+        if (component == null) {
+            return null;
+        }
+        return coalescingMetrics.computeIfAbsent(ep, e -> {
+            MetricsFeature feature = component.registerFeature(e.toString());
+            return new CoalescingMetrics(
+                    metricsService.createHistogram(component, feature, COALESCED_MESSAGES),
+                    metricsService.createHistogram(component, feature, COALESCED_BYTES));
+        });
+    }
+
+    private void removeLaneMetrics() {
+        MetricsComponent component = metricsComponent;
+        if (component != null) {
+            for (Lane lane : laneLatencies.keySet()) {
+                MetricsFeature feature = component.registerFeature(lane.name().toLowerCase());
+                metricsService.removeMetric(component, feature, LATENCY_MICROS);
+            }
+        }
+        laneLatencies.clear();
+    }
+
+    private void removeCoalescingMetrics(Endpoint ep) {
+        MetricsComponent component = metricsComponent;
+        if (coalescingMetrics.remove(ep) != null && component != null) {
+            MetricsFeature feature = component.registerFeature(ep.toString());
+            metricsService.removeMetric(component, feature, COALESCED_MESSAGES);
+            metricsService.removeMetric(component, feature, COALESCED_BYTES);
+        }
+    }
+
+    // Number of messages and of payload bytes written out to an endpoint
+    // with each flush, while coalescing.
+    private static final class CoalescingMetrics {
+        private final Histogram messages;
+        private final Histogram bytes;
+
+        private CoalescingMetrics(Histogram messages, Histogram bytes) {
+            this.messages = messages;
+            this.bytes = bytes;
+        }
+    }
+
     private final class Connection {
+        private final Endpoint ep;
+        private final Lane lane;
         private final CompletableFuture<Channel> internalFuture;
 
-        public Connection(CompletableFuture<Channel> internalFuture) {
+        // Messages written but not yet flushed while coalescing; only ever
+        // accessed from the event loop of the channel.
+        private int pendingMessages;
+        private int pendingBytes;
+        private ScheduledFuture<?> pendingFlush;
+
+        public Connection(Endpoint ep, Lane lane, CompletableFuture<Channel> internalFuture) {
+            this.ep = ep;
+            this.lane = lane;
             this.internalFuture = internalFuture;
         }
 
@@ -615,19 +966,74 @@ public class NettyMessagingManager implements MessagingService {
         public void send(Object message, CompletableFuture<Void> future) {
             internalFuture.whenComplete((channel, throwable) -> {
                 if (throwable == null) {
-                    channel.writeAndFlush(message).addListener(channelFuture -> {
+                    ChannelFutureListener listener = channelFuture -> {
                         if (!channelFuture.isSuccess()) {
                             future.completeExceptionally(channelFuture.cause());
                         } else {
                             future.complete(null);
                         }
-                    });
+                    };
+                    // Control messages are never held back
+                    if (coalesceMessages && lane == Lane.BULK) {
+                        EventLoop eventLoop = channel.eventLoop();
+                        if (eventLoop.inEventLoop()) {
+                            coalesce(channel, message, listener);
+                        } else {
+                            eventLoop.execute(() -> coalesce(channel, message, listener));
+                        }
+                    } else {
+                        channel.writeAndFlush(message).addListener(listener);
+                    }
                 } else {
                     future.completeExceptionally(throwable);
                 }
             });
         }
 
+        /**
+         * Writes a message out on the channel, deferring the flush until
+         * enough messages have been written or the coalescing delay expires.
+         * Must be called from the event loop of the channel.
+         */
+        private void coalesce(Channel channel, Object message, ChannelFutureListener listener) {
+            channel.write(message).addListener(listener);
+            pendingMessages++;
+            if (message instanceof InternalMessage) {
+                pendingBytes += ((InternalMessage) message).payloadLength();
+            }
+            if (pendingMessages >= maxCoalescedMessages
+                    || pendingBytes >= maxCoalescedBytes
+                    || !channel.isWritable()) {
+                flush(channel);
+            } else if (pendingFlush == null) {
+                pendingFlush = channel.eventLoop().schedule(() -> flush(channel),
+                                                            maxCoalesceDelayMicros,
+                                                            TimeUnit.MICROSECONDS);
+            }
+        }
+
+        /**
+         * Flushes the messages written out on the channel while coalescing.
+         * Must be called from the event loop of the channel.
+         */
+        private void flush(Channel channel) {
+            if (pendingFlush != null) {
+                pendingFlush.cancel(false);
+                pendingFlush = null;
+            }
+            if (pendingMessages == 0) {
+                return;
+            }
+            CoalescingMetrics metrics = coalescingMetrics(ep);
+            if (metrics != null) {
+                metrics.messages.update(pendingMessages);
+                metrics.bytes.update(pendingBytes);
+            }
+            pendingMessages = 0;
+            pendingBytes = 0;
+            channel.flush();
+        }
+
         /**
          * Destroys a channel by closing its channel (if it exists) and
          * cancelling its future.
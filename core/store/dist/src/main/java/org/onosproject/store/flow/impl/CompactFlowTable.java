@@ -0,0 +1,506 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.store.flow.impl;
+
+import org.onosproject.net.flow.FlowEntry;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.StoredFlowEntry;
+import org.onosproject.store.service.Serializer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Flow table of a single device which keeps its entries in serialized form.
+ * <p>
+ * Entries are indexed by the primitive value of their flow identifier using
+ * open addressing, so that no per-entry key, node or flow entry object is
+ * retained. An entry is materialized only when it is read; since the
+ * returned entry is a copy, changes are made through {@link #update}, which
+ * writes them back atomically. Entries sharing the same flow identifier, but
+ * not equal to each other, are kept side by side in the same slot. The table
+ * shrinks as entries are removed.
+ * </p>
+ */
+final class CompactFlowTable {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Serializer serializer;
+
+    // Slot i is taken iff values[i] != null; a value is either the encoded
+    // entry or, for colliding flow identifiers, an array of encoded entries.
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private Object[] values = new Object[INITIAL_CAPACITY];
+    private int slots;
+    private int size;
+
+    /**
+     * Creates an empty flow table.
+     *
+     * @param serializer serializer used to encode and decode the flow entries
+     */
+    CompactFlowTable(Serializer serializer) {
+        this.serializer = checkNotNull(serializer);
+    }
+
+    /**
+     * Returns the number of entries in the table.
+     *
+     * @return number of entries
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the stored entry matching the specified flow rule.
+     *
+     * @param rule flow rule
+     * @return copy of the stored entry; null if none matches
+     */
+    synchronized StoredFlowEntry get(FlowRule rule) {
+        int slot = slot(rule.id().value());
+        if (values[slot] == null) {
+            return null;
+        }
+        for (byte[] bytes : entries(values[slot])) {
+            StoredFlowEntry entry = serializer.decode(bytes);
+            if (entry.equals(rule)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns all the entries of the table.
+     *
+     * @return copies of the stored entries
+     */
+    synchronized Set<FlowEntry> getAll() {
+        Set<FlowEntry> all = new HashSet<>(size);
+        for (Object value : values) {
+            if (value != null) {
+                for (byte[] bytes : entries(value)) {
+                    all.add(serializer.decode(bytes));
+                }
+            }
+        }
+        return all;
+    }
+
+    /**
+     * Applies the given update to the stored entry matching the specified
+     * flow rule, atomically with respect to any other access to the table.
+     * The entry is written back only if the update returns a result.
+     *
+     * @param rule    flow rule
+     * @param updater function modifying the entry and returning a result;
+     *                null if the entry is left unchanged
+     * @param <T>     type of the result
+     * @return result of the update; null if no entry matches or the entry
+     * is left unchanged
+     */
+    synchronized <T> T update(FlowRule rule, Function<StoredFlowEntry, T> updater) {
+        int slot = slot(rule.id().value());
+        if (values[slot] == null) {
+            return null;
+        }
+        byte[][] entries = entries(values[slot]);
+        for (int i = 0; i < entries.length; i++) {
+            StoredFlowEntry stored = serializer.decode(entries[i]);
+            if (stored.equals(rule)) {
+                T result = updater.apply(stored);
+                if (result != null) {
+                    entries[i] = serializer.encode(stored);
+                    values[slot] = value(entries);
+                }
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stores the specified entry, replacing any equal entry.
+     *
+     * @param entry flow entry
+     */
+    synchronized void put(StoredFlowEntry entry) {
+        put(entry, true);
+    }
+
+    /**
+     * Stores the specified entry unless an equal entry is already present.
+     *
+     * @param entry flow entry
+     */
+    synchronized void putIfAbsent(StoredFlowEntry entry) {
+        put(entry, false);
+    }
+
+    /**
+     * Removes the entry matching the specified flow rule, provided the
+     * stored entry satisfies the given condition.
+     *
+     * @param rule      flow rule
+     * @param condition condition the stored entry must satisfy to be removed
+     * @return removed entry; null if none was removed
+     */
+    synchronized StoredFlowEntry remove(FlowRule rule, Predicate<StoredFlowEntry> condition) {
+        int slot = slot(rule.id().value());
+        if (values[slot] == null) {
+            return null;
+        }
+        byte[][] entries = entries(values[slot]);
+        for (int i = 0; i < entries.length; i++) {
+            StoredFlowEntry stored = serializer.decode(entries[i]);
+            if (stored.equals(rule)) {
+                if (!condition.test(stored)) {
+                    return null;
+                }
+                size--;
+                if (entries.length > 1) {
+                    values[slot] = value(without(entries, i));
+                } else {
+                    removeSlot(slot);
+                }
+                return stored;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a snapshot of the table contents in serialized form.
+     *
+     * @return table snapshot
+     */
+    synchronized Snapshot snapshot() {
+        Snapshot.Builder builder = new Snapshot.Builder(size);
+        for (int slot = 0; slot < values.length; slot++) {
+            if (values[slot] != null) {
+                for (byte[] bytes : entries(values[slot])) {
+                    builder.add(keys[slot], bytes);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns a snapshot of the entries with the specified flow identifiers,
+     * in serialized form.
+     *
+     * @param flowIds flow identifier values
+     * @return snapshot of the matching entries
+     */
+    synchronized Snapshot snapshot(long[] flowIds) {
+        Snapshot.Builder builder = new Snapshot.Builder(flowIds.length);
+        for (long flowId : flowIds) {
+            int slot = slot(flowId);
+            if (values[slot] != null) {
+                for (byte[] bytes : entries(values[slot])) {
+                    builder.add(flowId, bytes);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Replaces the contents of the table with those of the given snapshot,
+     * without decoding any of its entries.
+     *
+     * @param snapshot table snapshot
+     */
+    synchronized void restore(Snapshot snapshot) {
+        clear();
+        insert(snapshot);
+    }
+
+    /**
+     * Replaces the entries with the specified flow identifiers with those of
+     * the given snapshot, without decoding any of its entries. Flow
+     * identifiers with no entries in the snapshot are removed.
+     *
+     * @param flowIds  flow identifier values
+     * @param snapshot snapshot of the current entries with those identifiers
+     */
+    synchronized void apply(long[] flowIds, Snapshot snapshot) {
+        for (long flowId : flowIds) {
+            int slot = slot(flowId);
+            if (values[slot] != null) {
+                size -= entries(values[slot]).length;
+                removeSlot(slot);
+            }
+        }
+        insert(snapshot);
+    }
+
+    /**
+     * Removes all entries from the table.
+     */
+    synchronized void clear() {
+        keys = new long[INITIAL_CAPACITY];
+        values = new Object[INITIAL_CAPACITY];
+        slots = 0;
+        size = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return toStringHelper(this)
+                .add("size", size)
+                .add("capacity", values.length)
+                .toString();
+    }
+
+    private void insert(Snapshot snapshot) {
+        int offset = 0;
+        for (int i = 0; i < snapshot.flowIds.length; i++) {
+            byte[] bytes = Arrays.copyOfRange(snapshot.data, offset, offset + snapshot.lengths[i]);
+            offset += bytes.length;
+            int slot = slot(snapshot.flowIds[i]);
+            if (values[slot] == null) {
+                takeSlot(slot, snapshot.flowIds[i], bytes);
+            } else {
+                values[slot] = value(with(entries(values[slot]), bytes));
+            }
+            size++;
+        }
+    }
+
+    private void put(StoredFlowEntry entry, boolean replace) {
+        byte[] encoded = serializer.encode(entry);
+        long key = entry.id().value();
+        int slot = slot(key);
+        if (values[slot] == null) {
+            takeSlot(slot, key, encoded);
+            size++;
+            return;
+        }
+        byte[][] entries = entries(values[slot]);
+        for (int i = 0; i < entries.length; i++) {
+            if (serializer.decode(entries[i]).equals(entry)) {
+                if (replace) {
+                    entries[i] = encoded;
+                    values[slot] = value(entries);
+                }
+                return;
+            }
+        }
+        values[slot] = value(with(entries, encoded));
+        size++;
+    }
+
+    // Claims an empty slot, growing the table once it is three quarters full.
+    private void takeSlot(int slot, long key, byte[] encoded) {
+        keys[slot] = key;
+        values[slot] = encoded;
+        if (++slots > values.length - (values.length >> 2)) {
+            resize(values.length << 1);
+        }
+    }
+
+    // Empties the slot and shifts back the entries of the probe sequence
+    // which follows it, so that lookups need no tombstones. The table is
+    // halved once it is less than an eighth full.
+    private void removeSlot(int slot) {
+        int mask = values.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (values[next] != null) {
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[hole] = null;
+        if (--slots < values.length >> 3 && values.length > INITIAL_CAPACITY) {
+            resize(values.length >> 1);
+        }
+    }
+
+    // Returns the slot holding the key, or the empty slot where it belongs.
+    private int slot(long key) {
+        int mask = values.length - 1;
+        int slot = hash(key) & mask;
+        while (values[slot] != null && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static byte[][] entries(Object value) {
+        return value instanceof byte[] ? new byte[][] {(byte[]) value} : (byte[][]) value;
+    }
+
+    private static Object value(byte[][] entries) {
+        return entries.length == 1 ? entries[0] : entries;
+    }
+
+    private static byte[][] with(byte[][] entries, byte[] entry) {
+        byte[][] result = Arrays.copyOf(entries, entries.length + 1);
+        result[entries.length] = entry;
+        return result;
+    }
+
+    private static byte[][] without(byte[][] entries, int index) {
+        byte[][] result = new byte[entries.length - 1][];
+        System.arraycopy(entries, 0, result, 0, index);
+        System.arraycopy(entries, index + 1, result, index, entries.length - index - 1);
+        return result;
+    }
+
+    /**
+     * Serialized contents of a flow table, as shipped to the backup nodes.
+     */
+    static final class Snapshot {
+
+        private static final Snapshot EMPTY = new Snapshot(new long[0], new int[0], new byte[0]);
+
+        // Entry i carries flowIds[i] and occupies the next lengths[i] bytes of data
+        private final long[] flowIds;
+        private final int[] lengths;
+        private final byte[] data;
+
+        private Snapshot(long[] flowIds, int[] lengths, byte[] data) {
+            this.flowIds = flowIds;
+            this.lengths = lengths;
+            this.data = data;
+        }
+
+        /**
+         * Returns a snapshot of the given flow entries.
+         *
+         * @param entries    flow entries
+         * @param serializer serializer used to encode the entries
+         * @return snapshot of the entries
+         */
+        static Snapshot of(Collection<? extends FlowEntry> entries, Serializer serializer) {
+            if (entries.isEmpty()) {
+                return EMPTY;
+            }
+            Builder builder = new Builder(entries.size());
+            entries.forEach(entry -> builder.add(entry.id().value(), serializer.encode(entry)));
+            return builder.build();
+        }
+
+        /**
+         * Returns the number of entries in the snapshot.
+         *
+         * @return number of entries
+         */
+        int size() {
+            return flowIds.length;
+        }
+
+        /**
+         * Returns the size of the serialized entries in the snapshot.
+         *
+         * @return number of bytes
+         */
+        int dataSize() {
+            return data.length;
+        }
+
+        /**
+         * Decodes all the entries of the snapshot.
+         *
+         * @param serializer serializer used to decode the entries
+         * @return decoded entries
+         */
+        Set<StoredFlowEntry> decode(Serializer serializer) {
+            Set<StoredFlowEntry> entries = new HashSet<>(flowIds.length);
+            int offset = 0;
+            for (int length : lengths) {
+                entries.add(serializer.decode(Arrays.copyOfRange(data, offset, offset + length)));
+                offset += length;
+            }
+            return entries;
+        }
+
+        // Accumulates encoded entries, merging them into a single array.
+        private static final class Builder {
+            private long[] flowIds;
+            private int[] lengths;
+            private final List<byte[]> entries;
+            private int total;
+
+            private Builder(int expectedSize) {
+                flowIds = new long[expectedSize];
+                lengths = new int[expectedSize];
+                entries = new ArrayList<>(expectedSize);
+            }
+
+            private void add(long flowId, byte[] bytes) {
+                int n = entries.size();
+                if (n == flowIds.length) {
+                    flowIds = Arrays.copyOf(flowIds, Math.max(2 * n, 1));
+                    lengths = Arrays.copyOf(lengths, flowIds.length);
+                }
+                flowIds[n] = flowId;
+                lengths[n] = bytes.length;
+                entries.add(bytes);
+                total += bytes.length;
+            }
+
+            private Snapshot build() {
+                int n = entries.size();
+                byte[] data = new byte[total];
+                int offset = 0;
+                for (byte[] bytes : entries) {
+                    System.arraycopy(bytes, 0, data, offset, bytes.length);
+                    offset += bytes.length;
+                }
+                return new Snapshot(Arrays.copyOf(flowIds, n), Arrays.copyOf(lengths, n), data);
+            }
+        }
+    }
+}
@@ -15,6 +15,8 @@
  */
 package org.onosproject.store.flow.impl;
 
+ import java.util.ArrayList;
+ import java.util.Collection;
  import java.util.Collections;
  import java.util.Dictionary;
  import java.util.HashSet;
@@ -27,8 +29,12 @@ package org.onosproject.store.flow.impl;
  import java.util.concurrent.ScheduledExecutorService;
  import java.util.concurrent.ScheduledFuture;
  import java.util.concurrent.TimeUnit;
+ import java.util.concurrent.atomic.AtomicBoolean;
  import java.util.concurrent.atomic.AtomicInteger;
  import java.util.concurrent.atomic.AtomicReference;
+ import java.util.concurrent.locks.ReadWriteLock;
+ import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
  import java.util.stream.Collectors;
 
  import org.apache.felix.scr.annotations.Activate;
@@ -39,6 +45,9 @@ package org.onosproject.store.flow.impl;
  import org.apache.felix.scr.annotations.Reference;
  import org.apache.felix.scr.annotations.ReferenceCardinality;
  import org.apache.felix.scr.annotations.Service;
+ import org.onlab.metrics.MetricsComponent;
+ import org.onlab.metrics.MetricsFeature;
+ import org.onlab.metrics.MetricsService;
  import org.onlab.util.KryoNamespace;
  import org.onlab.util.Tools;
  import org.onosproject.cfg.ComponentConfigService;
@@ -72,6 +81,7 @@ package org.onosproject.store.flow.impl;
  import org.onosproject.store.cluster.messaging.ClusterCommunicationService;
  import org.onosproject.store.cluster.messaging.ClusterMessage;
  import org.onosproject.store.cluster.messaging.ClusterMessageHandler;
+import org.onosproject.store.cluster.messaging.MessagingException.NoRemoteHandler;
  import org.onosproject.store.flow.ReplicaInfoEvent;
  import org.onosproject.store.flow.ReplicaInfoEventListener;
  import org.onosproject.store.flow.ReplicaInfoService;
@@ -86,7 +96,10 @@ package org.onosproject.store.flow.impl;
  import org.osgi.service.component.ComponentContext;
  import org.slf4j.Logger;
 
- import com.google.common.collect.ImmutableList;
+ import com.codahale.metrics.Counter;
+ import com.codahale.metrics.Meter;
+ import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
  import com.google.common.collect.Iterables;
  import com.google.common.collect.Maps;
  import com.google.common.collect.Sets;
@@ -99,6 +112,7 @@ package org.onosproject.store.flow.impl;
  import static org.onosproject.store.flow.ReplicaInfoEvent.Type.MASTER_CHANGED;
  import static org.onosproject.store.flow.impl.FlowStoreMessageSubjects.APPLY_BATCH_FLOWS;
  import static org.onosproject.store.flow.impl.FlowStoreMessageSubjects.FLOW_TABLE_BACKUP;
+import static org.onosproject.store.flow.impl.FlowStoreMessageSubjects.FLOW_TABLE_DELTA_BACKUP;
  import static org.onosproject.store.flow.impl.FlowStoreMessageSubjects.GET_DEVICE_FLOW_ENTRIES;
  import static org.onosproject.store.flow.impl.FlowStoreMessageSubjects.GET_FLOW_ENTRY;
  import static org.onosproject.store.flow.impl.FlowStoreMessageSubjects.REMOTE_APPLY_COMPLETED;
@@ -120,10 +134,16 @@ public class DistributedFlowRuleStore
     private static final boolean DEFAULT_BACKUP_ENABLED = true;
     private static final int DEFAULT_MAX_BACKUP_COUNT = 2;
     private static final boolean DEFAULT_PERSISTENCE_ENABLED = false;
+    private static final boolean DEFAULT_COMPACT_FLOW_TABLE = false;
     private static final int DEFAULT_BACKUP_PERIOD_MILLIS = 2000;
     private static final long FLOW_RULE_STORE_TIMEOUT_MILLIS = 5000;
     // number of devices whose flow entries will be backed up in one communication round
     private static final int FLOW_TABLE_BACKUP_BATCH_SIZE = 1;
+    private static final long NO_VERSION = -1;
+
+    private static final String METRICS_COMPONENT = "DistributedFlowRuleStore";
+    private static final String BACKUP_BYTES = "backupBytes";
+    private static final String FULL_BACKUPS = "fullBackups";
 
     @Property(name = "msgHandlerPoolSize", intValue = MESSAGE_HANDLER_THREAD_POOL_SIZE,
             label = "Number of threads in the message handler pool")
@@ -140,6 +160,10 @@ public class DistributedFlowRuleStore
             label = "Indicates whether or not changes in the flow table should be persisted to disk.")
     private boolean persistenceEnabled = DEFAULT_PERSISTENCE_ENABLED;
 
+    @Property(name = "compactFlowTable", boolValue = DEFAULT_COMPACT_FLOW_TABLE,
+            label = "Indicates whether flow entries are kept in serialized form, indexed by flow ID")
+    private volatile boolean compactFlowTable = DEFAULT_COMPACT_FLOW_TABLE;
+
     @Property(name = "backupCount", intValue = DEFAULT_MAX_BACKUP_COUNT,
             label = "Max number of backup copies for each device")
     private volatile int backupCount = DEFAULT_MAX_BACKUP_COUNT;
@@ -170,6 +194,12 @@ public class DistributedFlowRuleStore
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
     protected PersistenceService persistenceService;
 
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected MetricsService metricsService;
+
+    private MetricsComponent metricsComponent;
+    private final Map<DeviceId, BackupMetrics> backupMetrics = Maps.newConcurrentMap();
+
     private Map<Long, NodeId> pendingResponses = Maps.newConcurrentMap();
     private ExecutorService messageHandlingExecutor;
     private ExecutorService eventHandler;
@@ -187,6 +217,9 @@ public class DistributedFlowRuleStore
 
     protected final Serializer serializer = Serializer.using(KryoNamespaces.API);
 
+    protected final Serializer backupSerializer =
+            Serializer.using(KryoNamespaces.API, FlowTableBackup.class, CompactFlowTable.Snapshot.class);
+
     protected final KryoNamespace.Builder serializerBuilder = KryoNamespace.newBuilder()
             .register(KryoNamespaces.API)
             .register(MastershipBasedTimestamp.class);
@@ -203,6 +236,10 @@ public class DistributedFlowRuleStore
 
         local = clusterService.getLocalNode().id();
 
+        if (metricsService != null) {
+            metricsComponent = metricsService.registerComponent(METRICS_COMPONENT);
+        }
+
         eventHandler = Executors.newSingleThreadExecutor(
                 groupedThreads("onos/flow", "event-handler", log));
         messageHandlingExecutor = Executors.newFixedThreadPool(
@@ -244,6 +281,7 @@ public class DistributedFlowRuleStore
         eventHandler.shutdownNow();
         messageHandlingExecutor.shutdownNow();
         backupSenderExecutor.shutdownNow();
+        backupMetrics.keySet().forEach(this::removeBackupMetrics);
         log.info("Stopped");
     }
 
@@ -261,6 +299,7 @@ public class DistributedFlowRuleStore
         boolean newBackupEnabled;
         int newBackupPeriod;
         int newBackupCount;
+        boolean newCompactFlowTable;
         try {
             String s = get(properties, "msgHandlerPoolSize");
             newPoolSize = isNullOrEmpty(s) ? msgHandlerPoolSize : Integer.parseInt(s.trim());
@@ -273,11 +312,15 @@ public class DistributedFlowRuleStore
 
             s = get(properties, "backupCount");
             newBackupCount = isNullOrEmpty(s) ? backupCount : Integer.parseInt(s.trim());
+
+            s = get(properties, "compactFlowTable");
+            newCompactFlowTable = isNullOrEmpty(s) ? compactFlowTable : Boolean.parseBoolean(s.trim());
         } catch (NumberFormatException | ClassCastException e) {
             newPoolSize = MESSAGE_HANDLER_THREAD_POOL_SIZE;
             newBackupEnabled = DEFAULT_BACKUP_ENABLED;
             newBackupPeriod = DEFAULT_BACKUP_PERIOD_MILLIS;
             newBackupCount = DEFAULT_MAX_BACKUP_COUNT;
+            newCompactFlowTable = DEFAULT_COMPACT_FLOW_TABLE;
         }
 
         boolean restartBackupTask = false;
@@ -289,6 +332,7 @@ public class DistributedFlowRuleStore
                     backupTask.cancel(false);
                     backupTask = null;
                 }
+                flowTable.resetBackups();
             } else {
                 replicaInfoManager.addListener(flowTable);
             }
@@ -322,6 +366,13 @@ public class DistributedFlowRuleStore
         if (backupCount != newBackupCount) {
             backupCount = newBackupCount;
         }
+        if (newCompactFlowTable && persistenceEnabled) {
+            log.warn("Compact flow table does not support persistence; keeping flow entries in persistent maps");
+            newCompactFlowTable = false;
+        }
+        if (newCompactFlowTable != compactFlowTable) {
+            flowTable.setCompact(newCompactFlowTable);
+        }
         logConfig("Reconfigured");
     }
 
@@ -338,8 +389,11 @@ public class DistributedFlowRuleStore
                 REMOVE_FLOW_ENTRY, serializer::decode, this::removeFlowRuleInternal, serializer::encode, executor);
         clusterCommunicator.addSubscriber(
                 REMOVE_FLOW_ENTRY, serializer::decode, this::removeFlowRuleInternal, serializer::encode, executor);
+        clusterCommunicator.addSubscriber(FLOW_TABLE_DELTA_BACKUP, backupSerializer::decode,
+                                          flowTable::onBackupReceipt, serializer::encode, executor);
+        // Backups from nodes predating the delta backups carry whole flow tables
         clusterCommunicator.addSubscriber(
-                FLOW_TABLE_BACKUP, serializer::decode, flowTable::onBackupReceipt, serializer::encode, executor);
+                FLOW_TABLE_BACKUP, serializer::decode, flowTable::onLegacyBackupReceipt, serializer::encode, executor);
     }
 
     private void unregisterMessageHandlers() {
@@ -349,11 +403,13 @@ public class DistributedFlowRuleStore
         clusterCommunicator.removeSubscriber(APPLY_BATCH_FLOWS);
         clusterCommunicator.removeSubscriber(REMOTE_APPLY_COMPLETED);
         clusterCommunicator.removeSubscriber(FLOW_TABLE_BACKUP);
+        clusterCommunicator.removeSubscriber(FLOW_TABLE_DELTA_BACKUP);
     }
 
     private void logConfig(String prefix) {
-        log.info("{} with msgHandlerPoolSize = {}; backupEnabled = {}, backupPeriod = {}, backupCount = {}",
-                 prefix, msgHandlerPoolSize, backupEnabled, backupPeriod, backupCount);
+        log.info("{} with msgHandlerPoolSize = {}; backupEnabled = {}, backupPeriod = {}, backupCount = {}, "
+                         + "compactFlowTable = {}",
+                 prefix, msgHandlerPoolSize, backupEnabled, backupPeriod, backupCount, compactFlowTable);
     }
 
     // This is not a efficient operation on a distributed sharded
@@ -507,14 +563,11 @@ public class DistributedFlowRuleStore
 
                             return op;
                         case REMOVE:
-                            entry = flowTable.getFlowEntry(op.target());
-                            if (entry != null) {
-                                //FIXME modification of "stored" flow entry outside of flow table
-                                entry.setState(FlowEntryState.PENDING_REMOVE);
-                                log.debug("Setting state of rule to pending remove: {}", entry);
+                            return flowTable.update(op.target(), stored -> {
+                                stored.setState(FlowEntryState.PENDING_REMOVE);
+                                log.debug("Setting state of rule to pending remove: {}", stored);
                                 return op;
-                            }
-                            break;
+                            }, true);
                         case MODIFY:
                             //TODO: figure this out at some point
                             break;
@@ -539,12 +592,13 @@ public class DistributedFlowRuleStore
     @Override
     public FlowRuleEvent pendingFlowRule(FlowEntry rule) {
         if (mastershipService.isLocalMaster(rule.deviceId())) {
-            StoredFlowEntry stored = flowTable.getFlowEntry(rule);
-            if (stored != null &&
-                    stored.state() != FlowEntryState.PENDING_ADD) {
+            return flowTable.update(rule, stored -> {
+                if (stored.state() == FlowEntryState.PENDING_ADD) {
+                    return null;
+                }
                 stored.setState(FlowEntryState.PENDING_ADD);
                 return new FlowRuleEvent(Type.RULE_UPDATED, rule);
-            }
+            }, true);
         }
         return null;
     }
@@ -561,11 +615,53 @@ public class DistributedFlowRuleStore
         return null;
     }
 
+    @Override
+    public List<FlowRuleEvent> addOrUpdateFlowRules(DeviceId deviceId,
+                                                    Collection<FlowEntry> rules) {
+        NodeId master = mastershipService.getMasterFor(deviceId);
+        if (!Objects.equals(local, master)) {
+            log.warn("Tried to update {} FlowRules of {} state,"
+                             + " while the Node was not the master.", rules.size(), deviceId);
+            return Collections.emptyList();
+        }
+
+        List<FlowRuleEvent> events = new ArrayList<>(rules.size());
+        for (FlowEntry rule : rules) {
+            try {
+                FlowRuleEvent event = addOrUpdateFlowRuleInternal(rule);
+                if (event != null) {
+                    events.add(event);
+                }
+            } catch (Exception e) {
+                log.warn("Failed to update FlowRule {}", rule, e);
+            }
+        }
+        return events;
+    }
+
+    @Override
+    public void refreshFlowRules(DeviceId deviceId, Collection<FlowEntry> rules) {
+        NodeId master = mastershipService.getMasterFor(deviceId);
+        if (!Objects.equals(local, master)) {
+            return;
+        }
+
+        for (FlowEntry rule : rules) {
+            try {
+                flowTable.update(rule, stored -> {
+                    stored.setLife(rule.life(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+                    stored.setLastSeen();
+                    return stored;
+                }, false);
+            } catch (Exception e) {
+                log.warn("Failed to refresh FlowRule {}", rule, e);
+            }
+        }
+    }
+
     private FlowRuleEvent addOrUpdateFlowRuleInternal(FlowEntry rule) {
         // check if this new rule is an update to an existing entry
-        StoredFlowEntry stored = flowTable.getFlowEntry(rule);
-        if (stored != null) {
-            //FIXME modification of "stored" flow entry outside of flow table
+        FlowRuleEvent event = flowTable.update(rule, stored -> {
             stored.setBytes(rule.bytes());
             stored.setLife(rule.life(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
             stored.setLiveType(rule.liveType());
@@ -576,6 +672,9 @@ public class DistributedFlowRuleStore
                 return new FlowRuleEvent(Type.RULE_ADDED, rule);
             }
             return new FlowRuleEvent(Type.RULE_UPDATED, rule);
+        }, true);
+        if (event != null) {
+            return event;
         }
 
         // TODO: Confirm if this behavior is correct. See SimpleFlowRuleStore
@@ -696,14 +795,73 @@ public class DistributedFlowRuleStore
         }
     }
 
+    // Epoch and version of a flow table backed up by the local node.
+    private static final class BackupVersion {
+        private final long epoch;
+        private final long version;
+
+        private BackupVersion(long epoch, long version) {
+            this.epoch = epoch;
+            this.version = version;
+        }
+    }
+
+    // Returns the backup replication metrics of the given device,
+    // if metrics collection is available.
+    private BackupMetrics backupMetrics(DeviceId deviceId) {
+        MetricsComponent component = metricsComponent;
+        if (component == null) {
+            return null;
+        }
+        return backupMetrics.computeIfAbsent(deviceId, id -> {
+            MetricsFeature feature = component.registerFeature(id.toString());
+            return new BackupMetrics(
+                    metricsService.createMeter(component, feature, BACKUP_BYTES),
+                    metricsService.createCounter(component, feature, FULL_BACKUPS));
+        });
+    }
+
+    private void removeBackupMetrics(DeviceId deviceId) {
+        MetricsComponent component = metricsComponent;
+        if (backupMetrics.remove(deviceId) != null && component != null) {
+            MetricsFeature feature = component.registerFeature(deviceId.toString());
+            metricsService.removeMetric(component, feature, BACKUP_BYTES);
+            metricsService.removeMetric(component, feature, FULL_BACKUPS);
+        }
+    }
+
+    // Bytes of flow entries replicated to backup nodes for a device, and the
+    // number of times the whole flow table had to be sent.
+    private static final class BackupMetrics {
+        private final Meter backupBytes;
+        private final Counter fullBackups;
+
+        private BackupMetrics(Meter backupBytes, Counter fullBackups) {
+            this.backupBytes = backupBytes;
+            this.fullBackups = fullBackups;
+        }
+    }
+
     private class InternalFlowTable implements ReplicaInfoEventListener {
 
         //TODO replace the Map<V,V> with ExtendedSet
         private final Map<DeviceId, Map<FlowId, Map<StoredFlowEntry, StoredFlowEntry>>>
                 flowEntries = Maps.newConcurrentMap();
 
-        private final Map<BackupOperation, Long> lastBackupTimes = Maps.newConcurrentMap();
-        private final Map<DeviceId, Long> lastUpdateTimes = Maps.newConcurrentMap();
+        // Flow tables of the devices while in compact mode
+        private final Map<DeviceId, CompactFlowTable> compactFlowEntries = Maps.newConcurrentMap();
+
+        // Flow table versions last acknowledged by each backup node
+        private final Map<BackupOperation, Long> lastBackupVersions = Maps.newConcurrentMap();
+        // Changes made to the flow tables of the devices, by version
+        private final Map<DeviceId, FlowTableChanges> flowTableChanges = Maps.newConcurrentMap();
+        // Versions of the flow tables backed up by the local node
+        private final Map<DeviceId, BackupVersion> backupVersions = Maps.newConcurrentMap();
+
+        // Held for reading by every access to the flow tables and for writing
+        // while their entries move between the compact and the map form, so
+        // that no access finds the entries of a device in neither.
+        private final ReadWriteLock modeLock = new ReentrantReadWriteLock();
 
         @Override
         public void event(ReplicaInfoEvent event) {
@@ -716,7 +874,10 @@ public class DistributedFlowRuleStore
                 return;
             }
             if (event.type() == MASTER_CHANGED) {
-                lastUpdateTimes.put(deviceId, System.currentTimeMillis());
+                // Versions acknowledged under the previous master are void.
+                lastBackupVersions.keySet().removeIf(op -> op.deviceId.equals(deviceId));
+                flowTableChanges.remove(deviceId);
+                getFlowTableChanges(deviceId).reset();
             }
             backupSenderExecutor.schedule(this::backup, 0, TimeUnit.SECONDS);
         }
@@ -732,12 +893,46 @@ public class DistributedFlowRuleStore
                 return;
             }
             log.debug("Sending flowEntries for devices {} to {} for backup.", deviceIds, nodeId);
+            Map<DeviceId, FlowTableBackup> backups = Maps.newHashMap();
+            deviceIds.forEach(id -> backups.put(id, createBackup(nodeId, id)));
+            clusterCommunicator.<Map<DeviceId, FlowTableBackup>, Set<DeviceId>>
+                    sendAndReceive(backups,
+                                   FLOW_TABLE_DELTA_BACKUP,
+                                   backupSerializer::encode,
+                                   serializer::decode,
+                                   nodeId)
+                    .whenComplete((backedupDevices, error) -> {
+                        if (error != null && Throwables.getRootCause(error) instanceof NoRemoteHandler) {
+                            // The node predates the delta backups
+                            legacyBackupFlowEntries(nodeId, deviceIds);
+                            return;
+                        }
+                        Set<DeviceId> devicesNotBackedup = error != null ?
+                            backups.keySet() :
+                            Sets.difference(backups.keySet(), backedupDevices);
+                        if (devicesNotBackedup.size() > 0) {
+                            log.warn("Failed to backup devices: {}. Reason: {}, Node: {}",
+                                     devicesNotBackedup, error != null ? error.getMessage() : "none",
+                                     nodeId);
+                        }
+                        // Devices not backed up are sent their whole flow table next.
+                        devicesNotBackedup.forEach(id -> lastBackupVersions.remove(new BackupOperation(nodeId, id)));
+                        if (backedupDevices != null && error == null) {
+                            backedupDevices.forEach(id -> {
+                                lastBackupVersions.put(new BackupOperation(nodeId, id), backups.get(id).version());
+                            });
+                        }
+                    });
+        }
+
+        // Sends the whole flow tables of the devices in the format of the
+        // nodes predating the delta backups. No version is recorded, so
+        // that these nodes keep being sent the whole flow tables.
+        private void legacyBackupFlowEntries(NodeId nodeId, Set<DeviceId> deviceIds) {
             Map<DeviceId, Map<FlowId, Map<StoredFlowEntry, StoredFlowEntry>>>
-                    deviceFlowEntries = Maps.newConcurrentMap();
+                    deviceFlowEntries = Maps.newHashMap();
             deviceIds.forEach(id -> deviceFlowEntries.put(id, getFlowTableCopy(id)));
-            clusterCommunicator.<Map<DeviceId,
-                                 Map<FlowId, Map<StoredFlowEntry, StoredFlowEntry>>>,
-                                 Set<DeviceId>>
+            clusterCommunicator.<Map<DeviceId, Map<FlowId, Map<StoredFlowEntry, StoredFlowEntry>>>, Set<DeviceId>>
                     sendAndReceive(deviceFlowEntries,
                                    FLOW_TABLE_BACKUP,
                                    serializer::encode,
@@ -752,14 +947,81 @@ public class DistributedFlowRuleStore
                                      devicesNotBackedup, error != null ? error.getMessage() : "none",
                                      nodeId);
                         }
-                        if (backedupDevices != null) {
-                            backedupDevices.forEach(id -> {
-                                lastBackupTimes.put(new BackupOperation(nodeId, id), System.currentTimeMillis());
-                            });
-                        }
                     });
         }
 
+        private Map<FlowId, Map<StoredFlowEntry, StoredFlowEntry>> getFlowTableCopy(DeviceId deviceId) {
+            Map<FlowId, Map<StoredFlowEntry, StoredFlowEntry>> copy = Maps.newHashMap();
+            getFlowEntries(deviceId).forEach(entry -> copy
+                    .computeIfAbsent(entry.id(), flowId -> Maps.newHashMap())
+                    .put((StoredFlowEntry) entry, (StoredFlowEntry) entry));
+            return copy;
+        }
+
+        // Produces the backup of the flow table of a device for the given
+        // node, shipping only the flows changed since the version the node
+        // last acknowledged whenever those changes are still on record.
+        private FlowTableBackup createBackup(NodeId nodeId, DeviceId deviceId) {
+            FlowTableChanges changes = getFlowTableChanges(deviceId);
+            // The version is read first, so that any change made meanwhile
+            // is included in the backup, if not accounted for by its version.
+            long version = changes.version();
+            long backedUp = lastBackupVersions.getOrDefault(new BackupOperation(nodeId, deviceId), NO_VERSION);
+            long[] flowIds = backedUp != NO_VERSION ? changes.changedSince(backedUp) : null;
+
+            FlowTableBackup backup;
+            modeLock.readLock().lock();
+            try {
+                if (flowIds == null) {
+                    CompactFlowTable.Snapshot entries = compactFlowTable ?
+                            getCompactFlowTable(deviceId).snapshot() :
+                            CompactFlowTable.Snapshot.of(getFlowEntriesInternal(deviceId), serializer);
+                    backup = FlowTableBackup.full(changes.epoch(), version, entries);
+                } else {
+                    CompactFlowTable.Snapshot entries = compactFlowTable ?
+                            getCompactFlowTable(deviceId).snapshot(flowIds) :
+                            CompactFlowTable.Snapshot.of(getFlowEntriesInternal(deviceId, flowIds), serializer);
+                    backup = FlowTableBackup.delta(changes.epoch(), backedUp, version, flowIds, entries);
+                }
+            } finally {
+                modeLock.readLock().unlock();
+            }
+
+            BackupMetrics metrics = backupMetrics(deviceId);
+            if (metrics != null) {
+                metrics.backupBytes.mark(backup.entries().dataSize());
+                if (backup.isFull()) {
+                    metrics.fullBackups.inc();
+                }
+            }
+            return backup;
+        }
+
+        private FlowTableChanges getFlowTableChanges(DeviceId deviceId) {
+            return flowTableChanges.computeIfAbsent(deviceId, id -> new FlowTableChanges());
+        }
+
+        private void changed(DeviceId deviceId, FlowId flowId) {
+            FlowTableChanges changes = getFlowTableChanges(deviceId);
+            if (backupEnabled) {
+                changes.changed(flowId);
+            } else {
+                // Nothing prunes the changes while backup is disabled, so
+                // only the version advances and backup nodes are sent the
+                // whole flow table once backup is enabled again.
+                changes.reset();
+            }
+        }
+
+        /**
+         * Forgets the changes on record for all devices and the versions
+         * acknowledged by the backup nodes, once backup is disabled.
+         */
+        private void resetBackups() {
+            flowTableChanges.values().forEach(FlowTableChanges::reset);
+            lastBackupVersions.clear();
+        }
+
         /**
          * Returns the flow table for specified device.
          *
@@ -788,29 +1050,35 @@ public class DistributedFlowRuleStore
             }
         }
 
-        private Map<FlowId, Map<StoredFlowEntry, StoredFlowEntry>> getFlowTableCopy(DeviceId deviceId) {
-            Map<FlowId, Map<StoredFlowEntry, StoredFlowEntry>> copy = Maps.newHashMap();
-            if (persistenceEnabled) {
-                return flowEntries.computeIfAbsent(deviceId, id -> persistenceService
-                        .<FlowId, Map<StoredFlowEntry, StoredFlowEntry>>persistentMapBuilder()
-                        .withName("FlowTable:" + deviceId.toString())
-                        .withSerializer(new Serializer() {
-                            @Override
-                            public <T> byte[] encode(T object) {
-                                return serializer.encode(object);
-                            }
+        private CompactFlowTable getCompactFlowTable(DeviceId deviceId) {
+            return compactFlowEntries.computeIfAbsent(deviceId, id -> new CompactFlowTable(serializer));
+        }
 
-                            @Override
-                            public <T> T decode(byte[] bytes) {
-                                return serializer.decode(bytes);
-                            }
-                        })
-                        .build());
-            } else {
-                flowEntries.computeIfAbsent(deviceId, id -> Maps.newConcurrentMap()).forEach((k, v) -> {
-                    copy.put(k, Maps.newHashMap(v));
-                });
-                return copy;
+        /**
+         * Switches the flow tables to or from compact mode, moving the
+         * entries of every device to the newly selected form. Accesses to
+         * the flow tables wait until all entries have been moved.
+         *
+         * @param compact true to keep the flow entries in serialized form
+         */
+        private void setCompact(boolean compact) {
+            modeLock.writeLock().lock();
+            try {
+                if (compact) {
+                    flowEntries.forEach((deviceId, table) -> {
+                        CompactFlowTable compactTable = getCompactFlowTable(deviceId);
+                        table.values().forEach(entries -> entries.values().forEach(compactTable::put));
+                    });
+                    flowEntries.clear();
+                } else {
+                    compactFlowEntries.forEach((deviceId, compactTable) -> compactTable.getAll()
+                            .forEach(entry -> getFlowEntriesInternal(deviceId, entry.id())
+                                    .put((StoredFlowEntry) entry, (StoredFlowEntry) entry)));
+                    compactFlowEntries.clear();
+                }
+                compactFlowTable = compact;
+            } finally {
+                modeLock.writeLock().unlock();
             }
         }
 
@@ -828,58 +1096,165 @@ public class DistributedFlowRuleStore
                         .collect(Collectors.toSet());
         }
 
+        private List<FlowEntry> getFlowEntriesInternal(DeviceId deviceId, long[] flowIds) {
+            Map<FlowId, Map<StoredFlowEntry, StoredFlowEntry>> flowTable = getFlowTable(deviceId);
+            List<FlowEntry> entries = new ArrayList<>(flowIds.length);
+            for (long flowId : flowIds) {
+                Map<StoredFlowEntry, StoredFlowEntry> flowEntries = flowTable.get(FlowId.valueOf(flowId));
+                if (flowEntries != null) {
+                    entries.addAll(flowEntries.values());
+                }
+            }
+            return entries;
+        }
+
         public StoredFlowEntry getFlowEntry(FlowRule rule) {
-            return getFlowEntryInternal(rule);
+            modeLock.readLock().lock();
+            try {
+                if (compactFlowTable) {
+                    return getCompactFlowTable(rule.deviceId()).get(rule);
+                }
+                return getFlowEntryInternal(rule);
+            } finally {
+                modeLock.readLock().unlock();
+            }
         }
 
         public Set<FlowEntry> getFlowEntries(DeviceId deviceId) {
-            return getFlowEntriesInternal(deviceId);
+            modeLock.readLock().lock();
+            try {
+                if (compactFlowTable) {
+                    return getCompactFlowTable(deviceId).getAll();
+                }
+                return getFlowEntriesInternal(deviceId);
+            } finally {
+                modeLock.readLock().unlock();
+            }
+        }
+
+        /**
+         * Applies the given update to the stored entry matching a flow rule,
+         * atomically with respect to any other update of that entry. In
+         * compact mode the entry is decoded, updated and encoded back while
+         * holding the table of the device.
+         *
+         * @param rule    flow rule
+         * @param updater function modifying the entry and returning a result;
+         *                null if the entry is left unchanged
+         * @param record  whether the change is to be recorded for the backup
+         *                nodes; life and last-seen time changes are not, as
+         *                the backup nodes catch up with them along with the
+         *                next change of the entry
+         * @param <T>     type of the result
+         * @return result of the update; null if no entry matches the rule or
+         * the entry is left unchanged
+         */
+        public <T> T update(FlowRule rule, Function<StoredFlowEntry, T> updater, boolean record) {
+            T result;
+            modeLock.readLock().lock();
+            try {
+                if (compactFlowTable) {
+                    result = getCompactFlowTable(rule.deviceId()).update(rule, updater);
+                } else {
+                    AtomicReference<T> updated = new AtomicReference<>();
+                    Map<StoredFlowEntry, StoredFlowEntry> entries = getFlowTable(rule.deviceId()).get(rule.id());
+                    if (entries != null) {
+                        StoredFlowEntry key = rule instanceof StoredFlowEntry ?
+                                (StoredFlowEntry) rule : new DefaultFlowEntry(rule);
+                        entries.computeIfPresent(key, (k, stored) -> {
+                            updated.set(updater.apply(stored));
+                            return stored;
+                        });
+                    }
+                    result = updated.get();
+                }
+            } finally {
+                modeLock.readLock().unlock();
+            }
+            if (result != null && record) {
+                changed(rule.deviceId(), rule.id());
+            }
+            return result;
         }
 
         public void add(FlowEntry rule) {
-            getFlowEntriesInternal(rule.deviceId(), rule.id())
-                    .compute((StoredFlowEntry) rule, (k, stored) -> {
-                        //TODO compare stored and rule timestamps
-                        //TODO the key is not updated
-                        return (StoredFlowEntry) rule;
-                    });
-            lastUpdateTimes.put(rule.deviceId(), System.currentTimeMillis());
+            modeLock.readLock().lock();
+            try {
+                if (compactFlowTable) {
+                    getCompactFlowTable(rule.deviceId()).put((StoredFlowEntry) rule);
+                } else {
+                    getFlowEntriesInternal(rule.deviceId(), rule.id())
+                            .compute((StoredFlowEntry) rule, (k, stored) -> {
+                                //TODO compare stored and rule timestamps
+                                //TODO the key is not updated
+                                return (StoredFlowEntry) rule;
+                            });
+                }
+            } finally {
+                modeLock.readLock().unlock();
+            }
+            changed(rule.deviceId(), rule.id());
         }
 
         public FlowEntry remove(DeviceId deviceId, FlowEntry rule) {
             final AtomicReference<FlowEntry> removedRule = new AtomicReference<>();
-            getFlowEntriesInternal(rule.deviceId(), rule.id())
-                .computeIfPresent((StoredFlowEntry) rule, (k, stored) -> {
-                    if (rule instanceof DefaultFlowEntry) {
-                        DefaultFlowEntry toRemove = (DefaultFlowEntry) rule;
-                        if (stored instanceof DefaultFlowEntry) {
-                            DefaultFlowEntry storedEntry = (DefaultFlowEntry) stored;
-                            if (toRemove.created() < storedEntry.created()) {
-                                log.debug("Trying to remove more recent flow entry {} (stored: {})",
-                                          toRemove, stored);
+            modeLock.readLock().lock();
+            try {
+                if (compactFlowTable) {
+                    removedRule.set(getCompactFlowTable(rule.deviceId())
+                            .remove(rule, stored -> !isMoreRecent(stored, rule)));
+                } else {
+                    getFlowEntriesInternal(rule.deviceId(), rule.id())
+                        .computeIfPresent((StoredFlowEntry) rule, (k, stored) -> {
+                            if (isMoreRecent(stored, rule)) {
                                 // the key is not updated, removedRule remains null
                                 return stored;
                             }
-                        }
-                    }
-                    removedRule.set(stored);
-                    return null;
-                });
+                            removedRule.set(stored);
+                            return null;
+                        });
+                }
+            } finally {
+                modeLock.readLock().unlock();
+            }
 
             if (removedRule.get() != null) {
-                lastUpdateTimes.put(deviceId, System.currentTimeMillis());
+                changed(deviceId, rule.id());
                 return removedRule.get();
             } else {
                 return null;
             }
         }
 
+        private boolean isMoreRecent(StoredFlowEntry stored, FlowEntry rule) {
+            if (rule instanceof DefaultFlowEntry && stored instanceof DefaultFlowEntry) {
+                DefaultFlowEntry toRemove = (DefaultFlowEntry) rule;
+                DefaultFlowEntry storedEntry = (DefaultFlowEntry) stored;
+                if (toRemove.created() < storedEntry.created()) {
+                    log.debug("Trying to remove more recent flow entry {} (stored: {})",
+                              toRemove, stored);
+                    return true;
+                }
+            }
+            return false;
+        }
+
         public void purgeFlowRule(DeviceId deviceId) {
             flowEntries.remove(deviceId);
+            compactFlowEntries.remove(deviceId);
+            flowTableChanges.remove(deviceId);
+            backupVersions.remove(deviceId);
+            lastBackupVersions.keySet().removeIf(op -> op.deviceId.equals(deviceId));
+            removeBackupMetrics(deviceId);
         }
 
         public void purgeFlowRules() {
             flowEntries.clear();
+            compactFlowEntries.clear();
+            flowTableChanges.clear();
+            backupVersions.clear();
+            lastBackupVersions.clear();
+            backupMetrics.keySet().forEach(DistributedFlowRuleStore.this::removeBackupMetrics);
         }
 
         private List<NodeId> getBackupNodes(DeviceId deviceId) {
@@ -896,15 +1271,25 @@ public class DistributedFlowRuleStore
             try {
                 // compute a mapping from node to the set of devices whose flow entries it should backup
                 Map<NodeId, Set<DeviceId>> devicesToBackupByNode = Maps.newHashMap();
-                flowEntries.keySet().forEach(deviceId -> {
+                flowTableChanges.forEach((deviceId, changes) -> {
+                    long version = changes.version();
+                    long acknowledged = version;
                     List<NodeId> backupNodes = getBackupNodes(deviceId);
-                    backupNodes.forEach(backupNode -> {
-                            if (lastBackupTimes.getOrDefault(new BackupOperation(backupNode, deviceId), 0L)
-                                    < lastUpdateTimes.getOrDefault(deviceId, 0L)) {
-                                devicesToBackupByNode.computeIfAbsent(backupNode,
-                                                                      nodeId -> Sets.newHashSet()).add(deviceId);
-                            }
-                    });
+                    for (NodeId backupNode : backupNodes) {
+                        long backedUp = lastBackupVersions.getOrDefault(
+                                new BackupOperation(backupNode, deviceId), NO_VERSION);
+                        if (backedUp < version) {
+                            devicesToBackupByNode.computeIfAbsent(backupNode,
+                                                                  nodeId -> Sets.newHashSet()).add(deviceId);
+                        }
+                        if (backedUp != NO_VERSION) {
+                            // Nodes without any version are sent the whole
+                            // flow table, so they hold back no pruning.
+                            acknowledged = Math.min(acknowledged, backedUp);
+                        }
+                    }
+                    // Changes acknowledged by all backup nodes are no longer needed.
+                    changes.prune(acknowledged);
                 });
                 // send the device flow entries to their respective backup nodes
                 devicesToBackupByNode.forEach(this::sendBackups);
@@ -913,7 +1298,24 @@ public class DistributedFlowRuleStore
             }
         }
 
-        private Set<DeviceId> onBackupReceipt(Map<DeviceId,
+        private Set<DeviceId> onBackupReceipt(Map<DeviceId, FlowTableBackup> backups) {
+            log.debug("Received flowEntries for {} to backup", backups.keySet());
+            Set<DeviceId> backedupDevices = Sets.newHashSet();
+            try {
+                backups.forEach((deviceId, backup) -> {
+                    // Only process those devices are that not managed by the local node.
+                    if (!Objects.equals(local, mastershipService.getMasterFor(deviceId)) &&
+                            applyBackup(deviceId, backup)) {
+                        backedupDevices.add(deviceId);
+                    }
+                });
+            } catch (Exception e) {
+                log.warn("Failure processing backup request", e);
+            }
+            return backedupDevices;
+        }
+
+        private Set<DeviceId> onLegacyBackupReceipt(Map<DeviceId,
                 Map<FlowId, Map<StoredFlowEntry, StoredFlowEntry>>> flowTables) {
             log.debug("Received flowEntries for {} to backup", flowTables.keySet());
             Set<DeviceId> backedupDevices = Sets.newHashSet();
@@ -921,10 +1323,7 @@ public class DistributedFlowRuleStore
                 flowTables.forEach((deviceId, deviceFlowTable) -> {
                     // Only process those devices are that not managed by the local node.
                     if (!Objects.equals(local, mastershipService.getMasterFor(deviceId))) {
-                        Map<FlowId, Map<StoredFlowEntry, StoredFlowEntry>> backupFlowTable =
-                                getFlowTable(deviceId);
-                        backupFlowTable.clear();
-                        backupFlowTable.putAll(deviceFlowTable);
+                        applyBackup(deviceId, deviceFlowTable);
                         backedupDevices.add(deviceId);
                     }
                 });
@@ -933,6 +1332,84 @@ public class DistributedFlowRuleStore
             }
             return backedupDevices;
         }
+
+        // Applies a whole flow table sent by a node predating the delta
+        // backups, voiding the version of any backup applied before.
+        private void applyBackup(DeviceId deviceId, Map<FlowId, Map<StoredFlowEntry, StoredFlowEntry>> flowTable) {
+            modeLock.readLock().lock();
+            try {
+                backupVersions.compute(deviceId, (id, current) -> {
+                    if (compactFlowTable) {
+                        List<StoredFlowEntry> entries = new ArrayList<>();
+                        flowTable.values().forEach(flowEntries -> entries.addAll(flowEntries.values()));
+                        getCompactFlowTable(deviceId).restore(CompactFlowTable.Snapshot.of(entries, serializer));
+                    } else {
+                        Map<FlowId, Map<StoredFlowEntry, StoredFlowEntry>> backupFlowTable = getFlowTable(deviceId);
+                        backupFlowTable.clear();
+                        flowTable.forEach((flowId, flowEntries) -> getFlowEntriesInternal(deviceId, flowId)
+                                .putAll(flowEntries));
+                    }
+                    return null;
+                });
+            } finally {
+                modeLock.readLock().unlock();
+            }
+        }
+
+        // Applies a backup of the flow table of the given device. A delta
+        // backup is applied only on top of a version it covers the changes
+        // since; otherwise it is rejected, prompting the master to send the
+        // whole flow table instead.
+        private boolean applyBackup(DeviceId deviceId, FlowTableBackup backup) {
+            modeLock.readLock().lock();
+            try {
+                return applyBackupInternal(deviceId, backup);
+            } finally {
+                modeLock.readLock().unlock();
+            }
+        }
+
+        private boolean applyBackupInternal(DeviceId deviceId, FlowTableBackup backup) {
+            AtomicBoolean applied = new AtomicBoolean();
+            backupVersions.compute(deviceId, (id, current) -> {
+                if (!backup.isFull()) {
+                    if (current == null || current.epoch != backup.epoch() ||
+                            current.version < backup.baseVersion()) {
+                        log.debug("Missing flow table changes of {} prior to {}", deviceId, backup);
+                        return current;
+                    }
+                    if (current.version >= backup.version()) {
+                        // Already applied
+                        applied.set(true);
+                        return current;
+                    }
+                }
+                if (compactFlowTable) {
+                    CompactFlowTable backupFlowTable = getCompactFlowTable(deviceId);
+                    if (backup.isFull()) {
+                        backupFlowTable.restore(backup.entries());
+                    } else {
+                        backupFlowTable.apply(backup.flowIds(), backup.entries());
+                    }
+                } else {
+                    Map<FlowId, Map<StoredFlowEntry, StoredFlowEntry>> backupFlowTable =
+                            getFlowTable(deviceId);
+                    if (backup.isFull()) {
+                        backupFlowTable.clear();
+                    } else {
+                        for (long flowId : backup.flowIds()) {
+                            backupFlowTable.remove(FlowId.valueOf(flowId));
+                        }
+                    }
+                    backup.entries().decode(serializer).forEach(entry -> backupFlowTable
+                            .computeIfAbsent(entry.id(), flowId -> Maps.newConcurrentMap())
+                            .put(entry, entry));
+                }
+                applied.set(true);
+                return new BackupVersion(backup.epoch(), backup.version());
+            });
+            return applied.get();
+        }
     }
 
     @Override
@@ -40,4 +40,7 @@ public final class FlowStoreMessageSubjects {
 
     public static final MessageSubject FLOW_TABLE_BACKUP
         = new MessageSubject("peer-flow-table-backup");
+
+    public static final MessageSubject FLOW_TABLE_DELTA_BACKUP
+        = new MessageSubject("peer-flow-table-delta-backup");
 }
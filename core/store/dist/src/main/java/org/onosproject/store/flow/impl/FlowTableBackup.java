@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.store.flow.impl;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+
+/**
+ * Backup of the flow table of a device, carrying either the whole table or
+ * only the flows changed since a version previously backed up.
+ */
+final class FlowTableBackup {
+
+    private final long epoch;
+    private final long baseVersion;
+    private final long version;
+    // Changed flow IDs of a delta backup; null for a full backup
+    private final long[] flowIds;
+    private final CompactFlowTable.Snapshot entries;
+
+    private FlowTableBackup(long epoch, long baseVersion, long version,
+                            long[] flowIds, CompactFlowTable.Snapshot entries) {
+        this.epoch = epoch;
+        this.baseVersion = baseVersion;
+        this.version = version;
+        this.flowIds = flowIds;
+        this.entries = entries;
+    }
+
+    /**
+     * Creates a backup of the whole flow table.
+     *
+     * @param epoch   epoch of the table versions
+     * @param version version of the table
+     * @param entries all entries of the table
+     * @return full backup
+     */
+    static FlowTableBackup full(long epoch, long version, CompactFlowTable.Snapshot entries) {
+        return new FlowTableBackup(epoch, version, version, null, entries);
+    }
+
+    /**
+     * Creates a backup of the flows changed since the given version.
+     *
+     * @param epoch       epoch of the table versions
+     * @param baseVersion version the changes apply to
+     * @param version     version of the table
+     * @param flowIds     values of the changed flow identifiers
+     * @param entries     current entries with those identifiers
+     * @return delta backup
+     */
+    static FlowTableBackup delta(long epoch, long baseVersion, long version,
+                                 long[] flowIds, CompactFlowTable.Snapshot entries) {
+        return new FlowTableBackup(epoch, baseVersion, version, flowIds, entries);
+    }
+
+    /**
+     * Indicates whether the backup carries the whole flow table.
+     *
+     * @return true for a full backup
+     */
+    boolean isFull() {
+        return flowIds == null;
+    }
+
+    /**
+     * Returns the epoch of the table versions.
+     *
+     * @return epoch
+     */
+    long epoch() {
+        return epoch;
+    }
+
+    /**
+     * Returns the version the changes of a delta backup apply to.
+     *
+     * @return base version
+     */
+    long baseVersion() {
+        return baseVersion;
+    }
+
+    /**
+     * Returns the version of the table once the backup is applied.
+     *
+     * @return table version
+     */
+    long version() {
+        return version;
+    }
+
+    /**
+     * Returns the values of the flow identifiers changed, for a delta backup.
+     *
+     * @return changed flow identifier values; null for a full backup
+     */
+    long[] flowIds() {
+        return flowIds;
+    }
+
+    /**
+     * Returns the flow entries carried by the backup.
+     *
+     * @return serialized flow entries
+     */
+    CompactFlowTable.Snapshot entries() {
+        return entries;
+    }
+
+    @Override
+    public String toString() {
+        return toStringHelper(this)
+                .add("full", isFull())
+                .add("baseVersion", baseVersion)
+                .add("version", version)
+                .add("entries", entries.size())
+                .toString();
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.store.flow.impl;
+
+import com.google.common.collect.Maps;
+import org.onosproject.net.flow.FlowId;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+
+/**
+ * Versioned record of the changes made to the flow table of a device, used
+ * to replicate to the backup nodes only the flows changed since the version
+ * they last acknowledged.
+ * <p>
+ * Each change advances the version of the table. Changes are forgotten once
+ * all backup nodes have acknowledged them; a backup node which is behind the
+ * oldest change still on record has to be sent the whole table instead.
+ * </p>
+ */
+final class FlowTableChanges {
+
+    // Distinguishes the versions of this record from those of any record
+    // previously kept for the same device, e.g. by another master.
+    private final long epoch = ThreadLocalRandom.current().nextLong();
+
+    private final Map<FlowId, Long> changes = Maps.newHashMap();
+    private long version;
+    private long floor;
+
+    /**
+     * Returns the epoch of the record.
+     *
+     * @return record epoch
+     */
+    long epoch() {
+        return epoch;
+    }
+
+    /**
+     * Returns the current version of the flow table.
+     *
+     * @return table version
+     */
+    synchronized long version() {
+        return version;
+    }
+
+    /**
+     * Records a change of the entries with the specified flow identifier.
+     *
+     * @param flowId flow identifier
+     */
+    synchronized void changed(FlowId flowId) {
+        changes.put(flowId, ++version);
+    }
+
+    /**
+     * Advances the version of the table without recording any change, so
+     * that all backup nodes are sent the table anew.
+     */
+    synchronized void reset() {
+        changes.clear();
+        floor = ++version;
+    }
+
+    /**
+     * Returns the flow identifiers changed since the specified version.
+     *
+     * @param since version since which the changes are needed
+     * @return flow identifier values; null if the changes are no longer on record
+     */
+    synchronized long[] changedSince(long since) {
+        if (since < floor || since > version) {
+            return null;
+        }
+        return changes.entrySet().stream()
+                .filter(change -> change.getValue() > since)
+                .mapToLong(change -> change.getKey().value())
+                .toArray();
+    }
+
+    /**
+     * Forgets the changes up to the specified version, which all backup
+     * nodes have acknowledged.
+     *
+     * @param acknowledged version acknowledged by all backup nodes
+     */
+    synchronized void prune(long acknowledged) {
+        if (acknowledged > floor) {
+            floor = Math.min(acknowledged, version);
+            changes.values().removeIf(changed -> changed <= floor);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return toStringHelper(this)
+                .add("version", version)
+                .add("floor", floor)
+                .add("changes", changes.size())
+                .toString();
+    }
+}
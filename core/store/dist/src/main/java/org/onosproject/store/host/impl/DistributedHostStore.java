@@ -91,7 +91,7 @@ public class DistributedHostStore
 
         hostsConsistentMap = storageService.<HostId, DefaultHost>consistentMapBuilder()
                 .withName("onos-hosts")
-                .withRelaxedReadConsistency()
+                .withReplicatedReads()
                 .withSerializer(Serializer.using(hostSerializer.build()))
                 .build();
 
@@ -0,0 +1,492 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.store.resource.impl;
+
+import com.google.common.base.MoreObjects;
+import org.onlab.util.ClosedOpenRange;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.PrimitiveIterator;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Immutable compressed bitmap of encoded discrete resource values.
+ * <p>
+ * The values are split into chunks of 65536 values sharing their upper
+ * 16 bits, in the manner of Roaring bitmaps. A chunk holding at most
+ * 4096 values is stored as a sorted array of the lower 16 bits of the
+ * values; a denser chunk is stored as a bitmap of 1024 words. Set algebra
+ * works chunk by chunk, without decoding any value.
+ */
+final class CompressedBitmap {
+    private static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 1024;
+    private static final int SIGN = 0x8000;
+
+    private static final CompressedBitmap EMPTY = new CompressedBitmap(new char[0], new Object[0]);
+
+    // upper 16 bits of the values of each chunk, with the sign bit flipped
+    // so that the chunks are sorted in the order of the values
+    private final char[] keys;
+    // char[] of the lower 16 bits of the values or long[] bitmap of them
+    private final Object[] chunks;
+
+    private CompressedBitmap(char[] keys, Object[] chunks) {
+        this.keys = keys;
+        this.chunks = chunks;
+    }
+
+    /**
+     * Returns the empty bitmap.
+     *
+     * @return empty bitmap
+     */
+    static CompressedBitmap empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Returns a bitmap of the given values.
+     *
+     * @param values values
+     * @return bitmap
+     */
+    static CompressedBitmap of(int... values) {
+        Builder builder = builder();
+        for (int value : values) {
+            builder.add(value);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns a new builder.
+     *
+     * @return builder
+     */
+    static Builder builder() {
+        return new Builder();
+    }
+
+    private static char key(int value) {
+        return (char) ((value >>> 16) ^ SIGN);
+    }
+
+    private static int value(char key, int low) {
+        return ((key ^ SIGN) << 16) | low;
+    }
+
+    /**
+     * Indicates whether the given value is in this bitmap.
+     *
+     * @param value value
+     * @return true if included
+     */
+    boolean contains(int value) {
+        int index = Arrays.binarySearch(keys, key(value));
+        if (index < 0) {
+            return false;
+        }
+        char low = (char) value;
+        Object chunk = chunks[index];
+        if (chunk instanceof char[]) {
+            return Arrays.binarySearch((char[]) chunk, low) >= 0;
+        }
+        return (((long[]) chunk)[low >>> 6] & (1L << low)) != 0;
+    }
+
+    /**
+     * Indicates whether this bitmap is empty.
+     *
+     * @return true if empty
+     */
+    boolean isEmpty() {
+        return keys.length == 0;
+    }
+
+    /**
+     * Returns the number of values in this bitmap.
+     *
+     * @return cardinality
+     */
+    int cardinality() {
+        int cardinality = 0;
+        for (Object chunk : chunks) {
+            cardinality += cardinality(chunk);
+        }
+        return cardinality;
+    }
+
+    private static int cardinality(Object chunk) {
+        if (chunk instanceof char[]) {
+            return ((char[]) chunk).length;
+        }
+        int cardinality = 0;
+        for (long word : (long[]) chunk) {
+            cardinality += Long.bitCount(word);
+        }
+        return cardinality;
+    }
+
+    /**
+     * Returns the smallest value in this bitmap.
+     *
+     * @return smallest value, or empty if this bitmap is empty
+     */
+    OptionalInt first() {
+        return stream().findFirst();
+    }
+
+    /**
+     * Returns the values in this bitmap in ascending order.
+     *
+     * @return stream of the values
+     */
+    IntStream stream() {
+        return IntStream.range(0, keys.length)
+                .flatMap(i -> lows(chunks[i]).map(low -> value(keys[i], low)));
+    }
+
+    private static IntStream lows(Object chunk) {
+        if (chunk instanceof char[]) {
+            char[] array = (char[]) chunk;
+            return IntStream.range(0, array.length).map(i -> array[i]);
+        }
+        return BitSet.valueOf((long[]) chunk).stream();
+    }
+
+    /**
+     * Returns the runs of consecutive values in this bitmap.
+     *
+     * @return ranges in ascending order
+     */
+    List<ClosedOpenRange> ranges() {
+        List<ClosedOpenRange> ranges = new ArrayList<>();
+        PrimitiveIterator.OfInt it = stream().iterator();
+        if (!it.hasNext()) {
+            return ranges;
+        }
+        int lower = it.nextInt();
+        int upper = lower + 1;
+        while (it.hasNext()) {
+            int value = it.nextInt();
+            if (value != upper) {
+                ranges.add(ClosedOpenRange.of(lower, upper));
+                lower = value;
+            }
+            upper = value + 1;
+        }
+        ranges.add(ClosedOpenRange.of(lower, upper));
+        return ranges;
+    }
+
+    /**
+     * Returns the union of this bitmap and the given one.
+     *
+     * @param other other bitmap
+     * @return union
+     */
+    CompressedBitmap or(CompressedBitmap other) {
+        return merge(other, Op.OR);
+    }
+
+    /**
+     * Returns the intersection of this bitmap and the given one.
+     *
+     * @param other other bitmap
+     * @return intersection
+     */
+    CompressedBitmap and(CompressedBitmap other) {
+        return merge(other, Op.AND);
+    }
+
+    /**
+     * Returns the values of this bitmap which are not in the given one.
+     *
+     * @param other other bitmap
+     * @return difference
+     */
+    CompressedBitmap andNot(CompressedBitmap other) {
+        return merge(other, Op.AND_NOT);
+    }
+
+    private enum Op {
+        OR, AND, AND_NOT
+    }
+
+    private CompressedBitmap merge(CompressedBitmap other, Op op) {
+        if (other.isEmpty()) {
+            return op == Op.AND ? EMPTY : this;
+        }
+        if (isEmpty()) {
+            return op == Op.OR ? other : EMPTY;
+        }
+
+        char[] newKeys = new char[keys.length + other.keys.length];
+        Object[] newChunks = new Object[newKeys.length];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < keys.length || j < other.keys.length) {
+            Object chunk;
+            char key;
+            if (j == other.keys.length || (i < keys.length && keys[i] < other.keys[j])) {
+                key = keys[i];
+                chunk = op == Op.AND ? null : chunks[i];
+                i++;
+            } else if (i == keys.length || other.keys[j] < keys[i]) {
+                key = other.keys[j];
+                chunk = op == Op.OR ? other.chunks[j] : null;
+                j++;
+            } else {
+                key = keys[i];
+                chunk = merge(chunks[i], other.chunks[j], op);
+                i++;
+                j++;
+            }
+            if (chunk != null) {
+                newKeys[size] = key;
+                newChunks[size] = chunk;
+                size++;
+            }
+        }
+        if (size == 0) {
+            return EMPTY;
+        }
+        return new CompressedBitmap(Arrays.copyOf(newKeys, size), Arrays.copyOf(newChunks, size));
+    }
+
+    // returns null when the result is empty
+    private static Object merge(Object chunk, Object other, Op op) {
+        if (chunk instanceof char[] && other instanceof char[]) {
+            return merge((char[]) chunk, (char[]) other, op);
+        }
+        if (chunk instanceof char[] && op != Op.OR) {
+            long[] words = (long[]) other;
+            char[] array = (char[]) chunk;
+            char[] result = new char[array.length];
+            int size = 0;
+            for (char low : array) {
+                boolean set = (words[low >>> 6] & (1L << low)) != 0;
+                if (set == (op == Op.AND)) {
+                    result[size++] = low;
+                }
+            }
+            return size == 0 ? null : Arrays.copyOf(result, size);
+        }
+
+        long[] words = words(chunk);
+        long[] otherWords = other instanceof long[] ? (long[]) other : words(other);
+        for (int k = 0; k < WORDS; k++) {
+            switch (op) {
+                case OR:
+                    words[k] |= otherWords[k];
+                    break;
+                case AND:
+                    words[k] &= otherWords[k];
+                    break;
+                default:
+                    words[k] &= ~otherWords[k];
+                    break;
+            }
+        }
+        return compact(words);
+    }
+
+    private static Object merge(char[] array, char[] other, Op op) {
+        char[] result = new char[op == Op.OR ? array.length + other.length : array.length];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < array.length) {
+            if (j == other.length || array[i] < other[j]) {
+                if (op != Op.AND) {
+                    result[size++] = array[i];
+                }
+                i++;
+            } else if (other[j] < array[i]) {
+                if (op == Op.OR) {
+                    result[size++] = other[j];
+                }
+                j++;
+            } else {
+                if (op != Op.AND_NOT) {
+                    result[size++] = array[i];
+                }
+                i++;
+                j++;
+            }
+        }
+        if (op == Op.OR) {
+            while (j < other.length) {
+                result[size++] = other[j++];
+            }
+            if (size > ARRAY_MAX) {
+                return words(Arrays.copyOf(result, size));
+            }
+        }
+        return size == 0 ? null : Arrays.copyOf(result, size);
+    }
+
+    // returns a copy of the chunk as a bitmap
+    private static long[] words(Object chunk) {
+        if (chunk instanceof long[]) {
+            return ((long[]) chunk).clone();
+        }
+        long[] words = new long[WORDS];
+        for (char low : (char[]) chunk) {
+            words[low >>> 6] |= 1L << low;
+        }
+        return words;
+    }
+
+    // returns the chunk in its canonical form, null if empty
+    private static Object compact(long[] words) {
+        int cardinality = cardinality(words);
+        if (cardinality == 0) {
+            return null;
+        }
+        if (cardinality > ARRAY_MAX) {
+            return words;
+        }
+        char[] array = new char[cardinality];
+        int size = 0;
+        for (int k = 0; k < WORDS; k++) {
+            long word = words[k];
+            while (word != 0) {
+                array[size++] = (char) ((k << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return array;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = Arrays.hashCode(keys);
+        for (Object chunk : chunks) {
+            hash = 31 * hash + (chunk instanceof char[] ? Arrays.hashCode((char[]) chunk)
+                    : Arrays.hashCode((long[]) chunk));
+        }
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        final CompressedBitmap other = (CompressedBitmap) obj;
+        if (!Arrays.equals(this.keys, other.keys)) {
+            return false;
+        }
+        // chunks are always in their canonical form
+        for (int i = 0; i < chunks.length; i++) {
+            Object chunk = chunks[i];
+            Object otherChunk = other.chunks[i];
+            boolean equal = chunk instanceof char[]
+                    ? otherChunk instanceof char[] && Arrays.equals((char[]) chunk, (char[]) otherChunk)
+                    : otherChunk instanceof long[] && Arrays.equals((long[]) chunk, (long[]) otherChunk);
+            if (!equal) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("ranges", ranges())
+                .toString();
+    }
+
+    /**
+     * Builder of compressed bitmaps.
+     */
+    static final class Builder {
+        private final TreeMap<Character, long[]> words = new TreeMap<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a value.
+         *
+         * @param value value
+         * @return this builder
+         */
+        Builder add(int value) {
+            long[] chunk = words.computeIfAbsent(key(value), k -> new long[WORDS]);
+            char low = (char) value;
+            chunk[low >>> 6] |= 1L << low;
+            return this;
+        }
+
+        /**
+         * Adds the values of a closed-open range.
+         *
+         * @param lowerBound lower bound (inclusive)
+         * @param upperBound upper bound (exclusive)
+         * @return this builder
+         */
+        Builder add(int lowerBound, int upperBound) {
+            checkArgument(lowerBound <= upperBound, "Lower bound must not exceed upper bound");
+            long value = lowerBound;
+            while (value < upperBound) {
+                long[] chunk = words.computeIfAbsent(key((int) value), k -> new long[WORDS]);
+                // end of the range or of the chunk, whichever comes first
+                long end = Math.min(upperBound, (value | 0xFFFF) + 1);
+                for (; value < end; value++) {
+                    char low = (char) value;
+                    chunk[low >>> 6] |= 1L << low;
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Builds the bitmap of the values added.
+         *
+         * @return bitmap
+         */
+        CompressedBitmap build() {
+            if (words.isEmpty()) {
+                return EMPTY;
+            }
+            char[] keys = new char[words.size()];
+            Object[] chunks = new Object[keys.length];
+            int size = 0;
+            for (Map.Entry<Character, long[]> entry : words.entrySet()) {
+                keys[size] = entry.getKey();
+                chunks[size] = compact(entry.getValue());
+                size++;
+            }
+            return new CompressedBitmap(keys, chunks);
+        }
+    }
+}
@@ -18,27 +18,41 @@ package org.onosproject.store.resource.impl;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import org.onosproject.net.resource.DiscreteResource;
+import org.onosproject.net.resource.DiscreteResourceCodec;
 import org.onosproject.net.resource.DiscreteResourceId;
 import org.onosproject.net.resource.Resource;
 import org.onosproject.net.resource.ResourceAllocation;
 import org.onosproject.net.resource.ResourceConsumerId;
 import org.onosproject.net.resource.Resources;
 import org.onosproject.store.service.ConsistentMap;
+import org.onosproject.store.service.MapEvent;
+import org.onosproject.store.service.MapEventListener;
 import org.onosproject.store.service.StorageService;
 import org.onosproject.store.service.TransactionContext;
 import org.onosproject.store.service.Versioned;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static org.onosproject.store.resource.impl.ConsistentResourceStore.SERIALIZER;
 
 class ConsistentDiscreteResourceSubStore {
+    private static final Codecs CODECS = Codecs.getInstance();
+
     private ConsistentMap<DiscreteResourceId, ResourceConsumerId> consumers;
     private ConsistentMap<DiscreteResourceId, DiscreteResources> childMap;
 
+    // local index of the allocated encodable resources, by parent and type of value
+    private final ConcurrentMap<DiscreteResourceId, ConcurrentMap<Class<?>, CompressedBitmap>> allocated =
+            new ConcurrentHashMap<>();
+    private final MapEventListener<DiscreteResourceId, ResourceConsumerId> listener = new InternalMapListener();
+
     ConsistentDiscreteResourceSubStore(StorageService service) {
         this.consumers = service.<DiscreteResourceId, ResourceConsumerId>consistentMapBuilder()
                 .withName(MapNames.DISCRETE_CONSUMER_MAP)
@@ -50,6 +64,13 @@ class ConsistentDiscreteResourceSubStore {
                 .build();
 
         childMap.put(Resource.ROOT.id(), DiscreteResources.empty());
+
+        consumers.addListener(listener);
+        consumers.keySet().forEach(x -> index(x, true));
+    }
+
+    void close() {
+        consumers.removeListener(listener);
     }
 
     TransactionalDiscreteResourceSubStore transactional(TransactionContext tx) {
@@ -86,6 +107,53 @@ class ConsistentDiscreteResourceSubStore {
         return children.value().valuesOf(cls);
     }
 
+    // the resources whose encoded value is in the given bitmap are regarded as available
+    // even if allocated, because they are allocated to the local node
+    // at most limit resources are returned and only those are decoded
+    // computational complexity: O(c + limit) where c is the number of the chunks of the bitmaps
+    <T> Set<DiscreteResource> getAvailableResources(DiscreteResourceId parent, Class<T> cls,
+                                                    CompressedBitmap local, int limit) {
+        Versioned<DiscreteResources> children = childMap.get(parent);
+
+        if (children == null) {
+            return ImmutableSet.of();
+        }
+
+        Optional<EncodedDiscreteResources> encoded = children.value().encodedValuesOf(cls);
+        if (!encoded.isPresent()) {
+            return children.value().valuesOf(cls).stream()
+                    .filter(x -> !consumers.containsKey(x.id()))
+                    .limit(limit)
+                    .collect(Collectors.toSet());
+        }
+
+        Map<Class<?>, CompressedBitmap> types = allocated.get(parent);
+        CompressedBitmap unavailable = types == null ? CompressedBitmap.empty()
+                : types.getOrDefault(cls, CompressedBitmap.empty()).andNot(local);
+        return new EncodedDiscreteResources(encoded.get().bitmap().andNot(unavailable), encoded.get().codec())
+                .values(parent, limit);
+    }
+
+    // updates the local index of the allocated resources
+    @SuppressWarnings("unchecked")
+    void index(DiscreteResourceId id, boolean isAllocated) {
+        if (!id.parent().isPresent()) {
+            return;
+        }
+        Object value = Resources.discrete(id).resource().valueAs(Object.class).orElse(null);
+        DiscreteResourceCodec codec = value == null ? null : CODECS.getCodec(value.getClass());
+        if (codec == null) {
+            return;
+        }
+        CompressedBitmap bitmap = CompressedBitmap.of(codec.encode(value));
+        allocated.computeIfAbsent(id.parent().get(), k -> new ConcurrentHashMap<>())
+                .compute(value.getClass(), (k, v) -> {
+                    CompressedBitmap current = v == null ? CompressedBitmap.empty() : v;
+                    CompressedBitmap updated = isAllocated ? current.or(bitmap) : current.andNot(bitmap);
+                    return updated.isEmpty() ? null : updated;
+                });
+    }
+
     boolean isAvailable(DiscreteResource resource) {
         return getResourceAllocations(resource.id()).isEmpty();
     }
@@ -107,4 +175,20 @@ class ConsistentDiscreteResourceSubStore {
                 .map(Map.Entry::getKey)
                 .map(x -> Resources.discrete(x).resource());
     }
+
+    private class InternalMapListener implements MapEventListener<DiscreteResourceId, ResourceConsumerId> {
+        @Override
+        public void event(MapEvent<DiscreteResourceId, ResourceConsumerId> event) {
+            switch (event.type()) {
+                case INSERT:
+                    index(event.key(), true);
+                    break;
+                case REMOVE:
+                    index(event.key(), false);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
 }
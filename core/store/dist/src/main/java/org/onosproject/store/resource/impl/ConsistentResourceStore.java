@@ -15,15 +15,31 @@
  */
 package org.onosproject.store.resource.impl;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Timer;
 import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Modified;
+import org.apache.felix.scr.annotations.Property;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.ReferenceCardinality;
 import org.apache.felix.scr.annotations.Service;
+import org.onlab.metrics.MetricsComponent;
+import org.onlab.metrics.MetricsFeature;
+import org.onlab.metrics.MetricsService;
 import org.onlab.util.KryoNamespace;
 import org.onlab.util.Tools;
+import org.onosproject.cfg.ComponentConfigService;
+import org.onosproject.cluster.ClusterEvent;
+import org.onosproject.cluster.ClusterEventListener;
+import org.onosproject.cluster.ClusterService;
+import org.onosproject.cluster.ControllerNode;
+import org.onosproject.cluster.NodeId;
 import org.onosproject.net.resource.ContinuousResource;
 import org.onosproject.net.resource.ContinuousResourceId;
 import org.onosproject.net.resource.DiscreteResource;
@@ -40,12 +56,17 @@ import org.onosproject.net.resource.Resources;
 import org.onosproject.store.AbstractStore;
 import org.onosproject.store.serializers.KryoNamespaces;
 import org.onosproject.store.service.CommitStatus;
+import org.onosproject.store.service.EventuallyConsistentMap;
 import org.onosproject.store.service.Serializer;
 import org.onosproject.store.service.StorageService;
 import org.onosproject.store.service.TransactionContext;
+import org.onosproject.store.service.WallClockTimestamp;
+import org.osgi.service.component.ComponentContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -53,17 +74,29 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static org.onlab.util.Tools.getIntegerProperty;
+import static org.onlab.util.Tools.groupedThreads;
 import static org.onosproject.net.resource.ResourceEvent.Type.RESOURCE_ADDED;
 import static org.onosproject.net.resource.ResourceEvent.Type.RESOURCE_REMOVED;
 
 /**
  * Implementation of ResourceStore using TransactionalMap.
+ * <p>
+ * Optionally, VLAN IDs and MPLS labels are leased in blocks by each node and
+ * allocated locally from the blocks leased, rather than in a transaction
+ * each. The allocations of leased values are shared by all nodes through an
+ * eventually consistent map.
  */
 @Component(immediate = true)
 @Service
@@ -85,20 +118,194 @@ public class ConsistentResourceStore extends AbstractStore<ResourceEvent, Resour
             .register(MplsLabelCodec.class)
             .build());
 
+    private static final String METRICS_COMPONENT = "ResourceStore";
+    private static final String METRICS_FEATURE = "allocations";
+    private static final String ALLOCATE_LATENCY = "allocateLatency";
+    private static final String LEASED_RESOURCES = "leasedResources";
+    private static final String LEASE_UTILIZATION = "leaseUtilization";
+
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
     protected StorageService service;
 
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected ClusterService clusterService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected ComponentConfigService configService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected MetricsService metricsService;
+
+    private static final int DEFAULT_LEASE_BLOCK_SIZE = 0;
+    @Property(name = "leaseBlockSize", intValue = DEFAULT_LEASE_BLOCK_SIZE,
+            label = "Number of VLAN IDs or MPLS labels each node leases at once " +
+                    "to allocate locally; 0 to disable")
+    private int leaseBlockSize = DEFAULT_LEASE_BLOCK_SIZE;
+
     private ConsistentDiscreteResourceSubStore discreteStore;
     private ConsistentContinuousResourceSubStore continuousStore;
+    private EventuallyConsistentMap<DiscreteResourceId, ResourceConsumerId> leaseAllocations;
+    private volatile ResourceLeases leases;
+    // Held for reading while the leases are used to allocate or release, and
+    // for writing while they are replaced and closed
+    private final ReadWriteLock leasesLock = new ReentrantReadWriteLock();
+    private final ClusterEventListener clusterListener = new InternalClusterListener();
+    private ExecutorService reclaimExecutor;
+
+    private MetricsComponent metricsComponent;
+    private Timer allocateLatency;
 
     @Activate
     public void activate() {
+        configService.registerProperties(getClass());
         discreteStore = new ConsistentDiscreteResourceSubStore(service);
         continuousStore = new ConsistentContinuousResourceSubStore(service);
+        leaseAllocations = service.<DiscreteResourceId, ResourceConsumerId>eventuallyConsistentMapBuilder()
+                .withName(MapNames.LEASE_ALLOCATION_MAP)
+                .withSerializer(KryoNamespace.newBuilder().register(KryoNamespaces.API))
+                .withTimestampProvider((k, v) -> new WallClockTimestamp())
+                .withPersistence()
+                .build();
+        reclaimExecutor = newSingleThreadExecutor(groupedThreads("onos/store/resource", "lease-reclaimer", log));
+        returnLeases(clusterService.getLocalNode().id());
+        clusterService.addListener(clusterListener);
+        registerMetrics();
 
         log.info("Started");
     }
 
+    @Deactivate
+    public void deactivate() {
+        configService.unregisterProperties(getClass(), false);
+        clusterService.removeListener(clusterListener);
+        reclaimExecutor.shutdown();
+        unregisterMetrics();
+        replaceLeases(null);
+        leaseAllocations.destroy();
+        discreteStore.close();
+
+        log.info("Stopped");
+    }
+
+    @Modified
+    public void modified(ComponentContext context) {
+        int newLeaseBlockSize = getIntegerProperty(context.getProperties(), "leaseBlockSize",
+                                                   leaseBlockSize);
+        if (newLeaseBlockSize >= 0 && newLeaseBlockSize != leaseBlockSize) {
+            leaseBlockSize = newLeaseBlockSize;
+            replaceLeases(leaseBlockSize > 0 ? newLeases(leaseBlockSize) : null);
+        }
+        log.info("Settings: leaseBlockSize={}", leaseBlockSize);
+    }
+
+    // Closes the current leases once no allocation or release uses them, so
+    // that no value is leased or allocated locally after they are returned
+    private void replaceLeases(ResourceLeases newLeases) {
+        leasesLock.writeLock().lock();
+        try {
+            ResourceLeases current = leases;
+            leases = newLeases;
+            if (current != null) {
+                current.close();
+            }
+        } finally {
+            leasesLock.writeLock().unlock();
+        }
+    }
+
+    private ResourceLeases newLeases(int blockSize) {
+        return new ResourceLeases(service, discreteStore, leaseHolder(clusterService.getLocalNode().id()),
+                                  blockSize, leaseAllocations);
+    }
+
+    private static ResourceConsumerId leaseHolder(NodeId node) {
+        long nodeId = Hashing.murmur3_128()
+                .hashString(node.id(), StandardCharsets.UTF_8)
+                .asLong();
+        return ResourceLeases.holder(nodeId);
+    }
+
+    // Returns to the store the resources leased by the given node, either this
+    // node before it was last started or a node which left the cluster, turning
+    // those still allocated to consumers into allocations. The consistent map
+    // decides which values are still leased: a value reclaimed meanwhile by
+    // another node keeps its allocation, whatever the local copy of the lease
+    // allocations says.
+    private void returnLeases(NodeId node) {
+        ResourceConsumerId holder = leaseHolder(node);
+        List<DiscreteResource> stale = discreteStore.getResources(holder).collect(Collectors.toList());
+        if (stale.isEmpty()) {
+            return;
+        }
+        Map<DiscreteResource, ResourceConsumerId> allocated = new LinkedHashMap<>();
+        int returned = 0;
+        TransactionContext tx = service.transactionContextBuilder().build();
+        tx.begin();
+        TransactionalDiscreteResourceSubStore discreteTxStore = discreteStore.transactional(tx);
+        for (DiscreteResource resource : stale) {
+            ResourceConsumerId consumerId = leaseAllocations.get(resource.id());
+            if (consumerId != null) {
+                if (discreteTxStore.reassign(resource, holder, consumerId)) {
+                    allocated.put(resource, consumerId);
+                }
+            } else if (discreteTxStore.release(resource, holder)) {
+                returned++;
+            }
+        }
+        if (allocated.isEmpty() && returned == 0) {
+            tx.abort();
+            return;
+        }
+        log.info("Returning {} resources leased by {}, {} of them allocated",
+                 allocated.size() + returned, node, allocated.size());
+        if (tx.commit().join() != CommitStatus.SUCCESS) {
+            log.warn("Failed to return the resources leased by {}", node);
+            return;
+        }
+        allocated.forEach((resource, consumerId) -> leaseAllocations.remove(resource.id(), consumerId));
+    }
+
+    // Indicates whether this node is the one returning the leases of the nodes
+    // which leave the cluster: the active node with the lowest ID
+    private boolean isReclaimer() {
+        NodeId local = clusterService.getLocalNode().id();
+        return clusterService.getNodes().stream()
+                .map(ControllerNode::id)
+                .filter(x -> clusterService.getState(x).isActive())
+                .min(NodeId::compareTo)
+                .map(local::equals)
+                .orElse(false);
+    }
+
+    private void registerMetrics() {
+        if (metricsService == null) {
+            return;
+        }
+        metricsComponent = metricsService.registerComponent(METRICS_COMPONENT);
+        MetricsFeature feature = metricsComponent.registerFeature(METRICS_FEATURE);
+        allocateLatency = metricsService.createTimer(metricsComponent, feature, ALLOCATE_LATENCY);
+        metricsService.registerMetric(metricsComponent, feature, LEASED_RESOURCES, (Gauge<Integer>) () -> {
+            ResourceLeases current = leases;
+            return current == null ? 0 : current.leasedCount();
+        });
+        metricsService.registerMetric(metricsComponent, feature, LEASE_UTILIZATION, (Gauge<Double>) () -> {
+            ResourceLeases current = leases;
+            return current == null ? 0 : current.utilization();
+        });
+    }
+
+    private void unregisterMetrics() {
+        if (metricsService == null || metricsComponent == null) {
+            return;
+        }
+        MetricsFeature feature = metricsComponent.registerFeature(METRICS_FEATURE);
+        metricsService.removeMetric(metricsComponent, feature, ALLOCATE_LATENCY);
+        metricsService.removeMetric(metricsComponent, feature, LEASED_RESOURCES);
+        metricsService.removeMetric(metricsComponent, feature, LEASE_UTILIZATION);
+        metricsComponent = null;
+        allocateLatency = null;
+    }
+
     // Computational complexity: O(1) if the resource is discrete type.
     // O(n) if the resource is continuous type where n is the number of the existing allocations for the resource
     @Override
@@ -107,12 +314,34 @@ public class ConsistentResourceStore extends AbstractStore<ResourceEvent, Resour
         checkArgument(id instanceof DiscreteResourceId || id instanceof ContinuousResourceId);
 
         if (id instanceof DiscreteResourceId) {
-            return discreteStore.getResourceAllocations((DiscreteResourceId) id);
+            ResourceLeases current = leases;
+            if (current != null) {
+                DiscreteResource resource = Resources.discrete((DiscreteResourceId) id).resource();
+                ResourceConsumerId consumerId = current.consumer(resource);
+                if (consumerId != null) {
+                    return consumerId.equals(current.consumerId()) ? ImmutableList.of()
+                            : ImmutableList.of(new ResourceAllocation(resource, consumerId));
+                }
+            }
+            return discreteStore.getResourceAllocations((DiscreteResourceId) id).stream()
+                    .map(this::leasedAllocation)
+                    .collect(Collectors.toList());
         } else {
             return continuousStore.getResourceAllocations((ContinuousResourceId) id);
         }
     }
 
+    // Returns the allocation of a value leased by a node to the consumer it is
+    // allocated to, if any
+    private ResourceAllocation leasedAllocation(ResourceAllocation allocation) {
+        if (!ResourceLeases.isHolder(allocation.consumerId())) {
+            return allocation;
+        }
+        DiscreteResource resource = (DiscreteResource) allocation.resource();
+        ResourceConsumerId consumerId = leaseAllocations.get(resource.id());
+        return consumerId == null ? allocation : new ResourceAllocation(resource, consumerId);
+    }
+
     @Override
     public boolean register(List<? extends Resource> resources) {
         checkNotNull(resources);
@@ -159,6 +388,17 @@ public class ConsistentResourceStore extends AbstractStore<ResourceEvent, Resour
     public boolean unregister(List<? extends ResourceId> ids) {
         checkNotNull(ids);
 
+        ResourceLeases current = leases;
+        if (current != null) {
+            // leased values would otherwise appear as allocated
+            current.returnFree(ids.stream()
+                                       .map(ResourceId::parent)
+                                       .flatMap(Tools::stream)
+                                       .filter(x -> x instanceof DiscreteResourceId)
+                                       .map(x -> (DiscreteResourceId) x)
+                                       .collect(Collectors.toSet()));
+        }
+
         TransactionContext tx = service.transactionContextBuilder().build();
         tx.begin();
 
@@ -215,6 +455,37 @@ public class ConsistentResourceStore extends AbstractStore<ResourceEvent, Resour
         checkNotNull(resources);
         checkNotNull(consumer);
 
+        long start = System.nanoTime();
+        leasesLock.readLock().lock();
+        try {
+            ResourceLeases current = leases;
+            if (current == null || resources.stream().noneMatch(ResourceLeases::isLeasable)) {
+                return allocate(resources, consumer.consumerId());
+            }
+
+            List<DiscreteResource> allocated = current.allocate(resources, consumer.consumerId());
+            if (allocated.size() == resources.size()) {
+                return true;
+            }
+            Set<DiscreteResource> local = ImmutableSet.copyOf(allocated);
+            List<Resource> remaining = resources.stream()
+                    .filter(x -> !local.contains(x))
+                    .collect(Collectors.toList());
+            if (allocate(remaining, consumer.consumerId())) {
+                return true;
+            }
+            current.release(allocated, consumer.consumerId());
+            return false;
+        } finally {
+            leasesLock.readLock().unlock();
+            Timer timer = allocateLatency;
+            if (timer != null) {
+                timer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private boolean allocate(List<? extends Resource> resources, ResourceConsumerId consumerId) {
         TransactionContext tx = service.transactionContextBuilder().build();
         tx.begin();
 
@@ -222,23 +493,77 @@ public class ConsistentResourceStore extends AbstractStore<ResourceEvent, Resour
         TransactionalContinuousResourceSubStore continuousTxStore = continuousStore.transactional(tx);
         for (Resource resource : resources) {
             if (resource instanceof DiscreteResource) {
-                if (!discreteTxStore.allocate(consumer.consumerId(), (DiscreteResource) resource)) {
+                if (!discreteTxStore.allocate(consumerId, (DiscreteResource) resource)) {
                     return abortTransaction(tx);
                 }
             } else if (resource instanceof ContinuousResource) {
-                if (!continuousTxStore.allocate(consumer.consumerId(), (ContinuousResource) resource)) {
+                if (!continuousTxStore.allocate(consumerId, (ContinuousResource) resource)) {
                     return abortTransaction(tx);
                 }
             }
         }
 
-        return tx.commit().join() == CommitStatus.SUCCESS;
+        if (tx.commit().join() != CommitStatus.SUCCESS) {
+            return false;
+        }
+        // the index is also updated by the map events, which may arrive later
+        resources.stream()
+                .filter(x -> x instanceof DiscreteResource)
+                .forEach(x -> discreteStore.index(((DiscreteResource) x).id(), true));
+        return true;
     }
 
     @Override
     public boolean release(List<ResourceAllocation> allocations) {
         checkNotNull(allocations);
 
+        leasesLock.readLock().lock();
+        try {
+            return release(allocations, leases);
+        } finally {
+            leasesLock.readLock().unlock();
+        }
+    }
+
+    private boolean release(List<ResourceAllocation> allocations, ResourceLeases current) {
+        List<ResourceAllocation> local = new ArrayList<>();
+        // allocated from the values leased by other nodes
+        List<ResourceAllocation> leased = new ArrayList<>();
+        List<ResourceAllocation> remaining = new ArrayList<>();
+        for (ResourceAllocation allocation : allocations) {
+            if (allocation.resource() instanceof DiscreteResource) {
+                DiscreteResource resource = (DiscreteResource) allocation.resource();
+                if (current != null && current.consumer(resource) != null) {
+                    local.add(allocation);
+                    continue;
+                }
+                if (allocation.consumerId().equals(leaseAllocations.get(resource.id()))) {
+                    leased.add(allocation);
+                    continue;
+                }
+            }
+            remaining.add(allocation);
+        }
+        if (!local.isEmpty() && !current.isAllocated(local)) {
+            return false;
+        }
+        if (!remaining.isEmpty() && !releaseAllocations(remaining)) {
+            return false;
+        }
+        // the nodes holding the values release them once removed from the map
+        leased.forEach(x -> leaseAllocations.remove(((DiscreteResource) x.resource()).id(), x.consumerId()));
+        boolean released = true;
+        Map<ResourceConsumerId, List<DiscreteResource>> byConsumer = local.stream()
+                .collect(Collectors.groupingBy(ResourceAllocation::consumerId,
+                                               Collectors.mapping(x -> (DiscreteResource) x.resource(),
+                                                                  Collectors.toList())));
+        for (Map.Entry<ResourceConsumerId, List<DiscreteResource>> entry : byConsumer.entrySet()) {
+            released &= current != null && current.release(entry.getValue(), entry.getKey());
+        }
+        return released;
+    }
+
+    private boolean releaseAllocations(List<ResourceAllocation> allocations) {
         TransactionContext tx = service.transactionContextBuilder().build();
         tx.begin();
 
@@ -259,7 +584,14 @@ public class ConsistentResourceStore extends AbstractStore<ResourceEvent, Resour
             }
         }
 
-        return tx.commit().join() == CommitStatus.SUCCESS;
+        if (tx.commit().join() != CommitStatus.SUCCESS) {
+            return false;
+        }
+        allocations.stream()
+                .map(ResourceAllocation::resource)
+                .filter(x -> x instanceof DiscreteResource)
+                .forEach(x -> discreteStore.index(((DiscreteResource) x).id(), false));
+        return true;
     }
 
     // computational complexity: O(1) if the resource is discrete type.
@@ -271,6 +603,11 @@ public class ConsistentResourceStore extends AbstractStore<ResourceEvent, Resour
         checkArgument(resource instanceof DiscreteResource || resource instanceof ContinuousResource);
 
         if (resource instanceof DiscreteResource) {
+            ResourceLeases current = leases;
+            ResourceConsumerId consumerId = current == null ? null : current.consumer((DiscreteResource) resource);
+            if (consumerId != null) {
+                return consumerId.equals(current.consumerId());
+            }
             // check if already consumed
             return discreteStore.isAvailable((DiscreteResource) resource);
         } else {
@@ -286,7 +623,11 @@ public class ConsistentResourceStore extends AbstractStore<ResourceEvent, Resour
 
         // NOTE: getting all entries may become performance bottleneck
         // TODO: revisit for better backend data structure
-        Stream<DiscreteResource> discrete = discreteStore.getResources(consumer.consumerId());
+        Stream<DiscreteResource> discrete = Stream.concat(
+                discreteStore.getResources(consumer.consumerId()),
+                leaseAllocations.entrySet().stream()
+                        .filter(e -> e.getValue().equals(consumer.consumerId()))
+                        .map(e -> Resources.discrete(e.getKey()).resource()));
         Stream<ContinuousResource> continuous = continuousStore.getResources(consumer.consumerId());
 
         return Stream.concat(discrete, continuous).collect(Collectors.toList());
@@ -314,6 +655,29 @@ public class ConsistentResourceStore extends AbstractStore<ResourceEvent, Resour
                 .build();
     }
 
+    @Override
+    public <T> Set<Resource> getAvailableResources(DiscreteResourceId parent, Class<T> cls) {
+        return getAvailableResources(parent, cls, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public <T> Set<Resource> getAvailableResources(DiscreteResourceId parent, Class<T> cls, int limit) {
+        checkNotNull(parent);
+        checkNotNull(cls);
+        checkArgument(limit >= 0);
+
+        ResourceLeases current = leases;
+        CompressedBitmap local = current == null ? CompressedBitmap.empty() : current.getFreeValues(parent, cls);
+        Set<DiscreteResource> discrete = discreteStore.getAvailableResources(parent, cls, local, limit);
+        return ImmutableSet.<Resource>builder()
+                .addAll(discrete)
+                .addAll(continuousStore.getChildResources(parent, cls).stream()
+                                .filter(this::isAvailable)
+                                .limit(limit - discrete.size())
+                                .iterator())
+                .build();
+    }
+
     // computational complexity: O(n) where n is the number of the children of the parent
     @Override
     public <T> Collection<Resource> getAllocatedResources(DiscreteResourceId parent, Class<T> cls) {
@@ -321,6 +685,11 @@ public class ConsistentResourceStore extends AbstractStore<ResourceEvent, Resour
         checkNotNull(cls);
 
         Stream<DiscreteResource> discrete = discreteStore.getAllocatedResources(parent, cls);
+        ResourceLeases current = leases;
+        if (current != null) {
+            // leased values not allocated locally are available
+            discrete = discrete.filter(x -> !current.consumerId().equals(current.consumer(x)));
+        }
         Stream<ContinuousResource> continuous = continuousStore.getAllocatedResources(parent, cls);
 
         return Stream.concat(discrete, continuous).collect(Collectors.toList());
@@ -393,4 +762,24 @@ public class ConsistentResourceStore extends AbstractStore<ResourceEvent, Resour
         return discreteTxStore.unregister(parent, discreteResources)
                 && continuousTxStore.unregister(parent, continuousResources);
     }
+
+    // Returns the leases of the nodes which leave the cluster, so that their
+    // values do not stay leased until they come back
+    private class InternalClusterListener implements ClusterEventListener {
+        @Override
+        public void event(ClusterEvent event) {
+            NodeId node = event.subject().id();
+            if (node.equals(clusterService.getLocalNode().id())) {
+                return;
+            }
+            if (event.type() == ClusterEvent.Type.INSTANCE_DEACTIVATED
+                    || event.type() == ClusterEvent.Type.INSTANCE_REMOVED) {
+                reclaimExecutor.execute(() -> {
+                    if (isReclaimer()) {
+                        returnLeases(node);
+                    }
+                });
+            }
+        }
+    }
 }
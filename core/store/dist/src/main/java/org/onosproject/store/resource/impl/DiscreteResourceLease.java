@@ -0,0 +1,241 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.store.resource.impl;
+
+import com.google.common.base.MoreObjects;
+import org.onosproject.net.resource.DiscreteResource;
+import org.onosproject.net.resource.DiscreteResourceCodec;
+import org.onosproject.net.resource.DiscreteResourceId;
+import org.onosproject.net.resource.ResourceConsumerId;
+import org.onosproject.net.resource.Resources;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Block of discrete resources of one type under a parent, allocated in the
+ * consistent store to the local node and allocated locally to consumers.
+ * <p>
+ * The block spans a fixed number of consecutive encoded values; the values
+ * held are tracked with one bitmap and the values allocated locally with
+ * another. Instances are not thread-safe.
+ */
+final class DiscreteResourceLease {
+    private final DiscreteResourceId parent;
+    private final DiscreteResourceCodec codec;
+    private final int first;
+    private final int size;
+
+    private final BitSet held = new BitSet();
+    private final BitSet allocated = new BitSet();
+    private final Map<Integer, ResourceConsumerId> consumers = new HashMap<>();
+
+    /**
+     * Creates an empty lease of the block of values starting at the given one.
+     *
+     * @param parent parent of the resources
+     * @param codec  codec of the resource values
+     * @param first  first encoded value of the block
+     * @param size   number of values in the block
+     */
+    DiscreteResourceLease(DiscreteResourceId parent, DiscreteResourceCodec codec, int first, int size) {
+        checkArgument(first >= 0, "First value must not be negative");
+        checkArgument(size > 0, "Block size must be positive");
+        this.parent = parent;
+        this.codec = codec;
+        this.first = first;
+        this.size = size;
+    }
+
+    /**
+     * Returns the parent of the resources.
+     *
+     * @return parent resource ID
+     */
+    DiscreteResourceId parent() {
+        return parent;
+    }
+
+    /**
+     * Returns the first encoded value of the block.
+     *
+     * @return first value
+     */
+    int first() {
+        return first;
+    }
+
+    /**
+     * Indicates whether the given encoded value belongs to the block.
+     *
+     * @param value encoded value
+     * @return true if in the block
+     */
+    boolean inBlock(int value) {
+        return value >= first && value - first < size;
+    }
+
+    /**
+     * Adds the given encoded value to the values held.
+     *
+     * @param value encoded value
+     */
+    void hold(int value) {
+        checkArgument(inBlock(value), "Value not in block");
+        held.set(value - first);
+    }
+
+    /**
+     * Indicates whether the given encoded value is held.
+     *
+     * @param value encoded value
+     * @return true if held
+     */
+    boolean holds(int value) {
+        return inBlock(value) && held.get(value - first);
+    }
+
+    /**
+     * Returns the consumer the given encoded value is allocated to locally.
+     *
+     * @param value encoded value
+     * @return consumer ID, or null if not allocated
+     */
+    ResourceConsumerId consumer(int value) {
+        return holds(value) ? consumers.get(value - first) : null;
+    }
+
+    /**
+     * Allocates the given held value to a consumer, if not allocated yet.
+     *
+     * @param value      encoded value
+     * @param consumerId consumer ID
+     * @return true if allocated
+     */
+    boolean allocate(int value, ResourceConsumerId consumerId) {
+        if (!holds(value) || allocated.get(value - first)) {
+            return false;
+        }
+        allocated.set(value - first);
+        consumers.put(value - first, consumerId);
+        return true;
+    }
+
+    /**
+     * Releases the given value from a consumer.
+     *
+     * @param value      encoded value
+     * @param consumerId consumer ID
+     * @return true if the value was allocated to the consumer
+     */
+    boolean release(int value, ResourceConsumerId consumerId) {
+        if (!consumerId.equals(consumer(value))) {
+            return false;
+        }
+        allocated.clear(value - first);
+        consumers.remove(value - first);
+        return true;
+    }
+
+    /**
+     * Removes the values not allocated from the values held.
+     *
+     * @return resources no longer held
+     */
+    List<DiscreteResource> dropFree() {
+        BitSet free = (BitSet) held.clone();
+        free.andNot(allocated);
+        held.and(allocated);
+        return free.stream().mapToObj(this::resource).collect(Collectors.toList());
+    }
+
+    /**
+     * Removes all values from the values held.
+     *
+     * @return local allocations of the values formerly held
+     */
+    Map<DiscreteResource, ResourceConsumerId> dropAll() {
+        Map<DiscreteResource, ResourceConsumerId> allocations = consumers.entrySet().stream()
+                .collect(Collectors.toMap(e -> resource(e.getKey()), Map.Entry::getValue));
+        held.clear();
+        allocated.clear();
+        consumers.clear();
+        return allocations;
+    }
+
+    /**
+     * Returns the resources allocated locally to the given consumer.
+     *
+     * @param consumerId consumer ID
+     * @return resources allocated to the consumer
+     */
+    List<DiscreteResource> resources(ResourceConsumerId consumerId) {
+        return consumers.entrySet().stream()
+                .filter(e -> e.getValue().equals(consumerId))
+                .map(e -> resource(e.getKey()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the encoded values held and not allocated locally.
+     *
+     * @return free values in ascending order
+     */
+    IntStream freeValues() {
+        BitSet free = (BitSet) held.clone();
+        free.andNot(allocated);
+        return free.stream().map(x -> first + x);
+    }
+
+    /**
+     * Returns the number of values held.
+     *
+     * @return held count
+     */
+    int heldCount() {
+        return held.cardinality();
+    }
+
+    /**
+     * Returns the number of values allocated locally.
+     *
+     * @return allocated count
+     */
+    int allocatedCount() {
+        return allocated.cardinality();
+    }
+
+    @SuppressWarnings("unchecked")
+    private DiscreteResource resource(int offset) {
+        return Resources.discrete(parent, codec.decode(first + offset)).resource();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("parent", parent)
+                .add("first", first)
+                .add("held", held)
+                .add("allocated", allocated)
+                .toString();
+    }
+}
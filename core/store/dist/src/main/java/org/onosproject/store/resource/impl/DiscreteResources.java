@@ -100,4 +100,14 @@ interface DiscreteResources {
      * @return all of resources this instance holds and filtered by the specified type
      */
     <T> Set<DiscreteResource> valuesOf(Class<T> cls);
+
+    /**
+     * Returns the resources this instance holds and of the specified type,
+     * in their encoded form.
+     *
+     * @param cls class instance of the resource value
+     * @param <T> type of the resource value
+     * @return encoded resources, or empty if no resource of the type is held encoded
+     */
+    <T> Optional<EncodedDiscreteResources> encodedValuesOf(Class<T> cls);
 }
@@ -73,4 +73,9 @@ final class EmptyDiscreteResources implements DiscreteResources {
     public <T> Set<DiscreteResource> valuesOf(Class<T> cls) {
         return ImmutableSet.of();
     }
+
+    @Override
+    public <T> Optional<EncodedDiscreteResources> encodedValuesOf(Class<T> cls) {
+        return Optional.empty();
+    }
 }
@@ -173,6 +173,11 @@ final class EncodableDiscreteResources implements DiscreteResources {
                 .orElse(ImmutableSet.of());
     }
 
+    @Override
+    public <T> Optional<EncodedDiscreteResources> encodedValuesOf(Class<T> cls) {
+        return Optional.ofNullable(map.get(cls));
+    }
+
     DiscreteResource parent() {
         return parent;
     }
@@ -107,6 +107,11 @@ final class GenericDiscreteResources implements DiscreteResources {
                 .collect(Collectors.toCollection(LinkedHashSet::new));
     }
 
+    @Override
+    public <T> Optional<EncodedDiscreteResources> encodedValuesOf(Class<T> cls) {
+        return Optional.empty();
+    }
+
     @Override
     public int hashCode() {
         return Objects.hash(values);
@@ -20,6 +20,7 @@ final class MapNames {
     static final String DISCRETE_CHILD_MAP = "onos-resource-discrete-children";
     static final String CONTINUOUS_CONSUMER_MAP = "onos-continuous-consumers";
     static final String CONTINUOUS_CHILD_MAP = "onos-resource-continuous-children";
+    static final String LEASE_ALLOCATION_MAP = "onos-resource-lease-allocations";
 
     // prohibit contruction
     private MapNames() {}
@@ -0,0 +1,496 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.store.resource.impl;
+
+import com.google.common.collect.ImmutableSet;
+import org.onlab.packet.MplsLabel;
+import org.onlab.packet.VlanId;
+import org.onosproject.net.resource.DiscreteResource;
+import org.onosproject.net.resource.DiscreteResourceCodec;
+import org.onosproject.net.resource.DiscreteResourceId;
+import org.onosproject.net.resource.Resource;
+import org.onosproject.net.resource.ResourceAllocation;
+import org.onosproject.net.resource.ResourceConsumer;
+import org.onosproject.net.resource.ResourceConsumerId;
+import org.onosproject.net.resource.Resources;
+import org.onosproject.store.service.CommitStatus;
+import org.onosproject.store.service.EventuallyConsistentMap;
+import org.onosproject.store.service.EventuallyConsistentMapEvent;
+import org.onosproject.store.service.EventuallyConsistentMapListener;
+import org.onosproject.store.service.StorageService;
+import org.onosproject.store.service.TransactionContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Discrete resources leased in blocks by the local node from the consistent
+ * resource store, so that they can be allocated without a transaction.
+ * <p>
+ * A block of VLAN IDs or MPLS labels is leased by allocating the values
+ * available in it to this node in a single transaction, the first time a
+ * value of the block is requested. Values held by a lease are allocated and
+ * released without a transaction: the allocations are recorded in an
+ * eventually consistent map, through which other nodes see and release them
+ * and which outlives a restart of this node. The values held and not
+ * allocated appear to other nodes as allocated to this node. Once none of
+ * the values of a block is allocated any longer, the block is returned to
+ * the store.
+ */
+final class ResourceLeases implements ResourceConsumer {
+    private static final Logger log = LoggerFactory.getLogger(ResourceLeases.class);
+
+    private static final Codecs CODECS = Codecs.getInstance();
+    private static final Set<Class<?>> LEASABLE = ImmutableSet.of(VlanId.class, MplsLabel.class);
+
+    private final StorageService service;
+    private final ConsistentDiscreteResourceSubStore discreteStore;
+    private final ResourceConsumerId holder;
+    private final int blockSize;
+    private final EventuallyConsistentMap<DiscreteResourceId, ResourceConsumerId> allocations;
+    private final EventuallyConsistentMapListener<DiscreteResourceId, ResourceConsumerId> listener =
+            this::allocationEvent;
+
+    // Guarded by this
+    private final Map<BlockKey, DiscreteResourceLease> leases = new HashMap<>();
+    // Blocks being leased, guarded by this
+    private final Map<BlockKey, CompletableFuture<Void>> acquisitions = new HashMap<>();
+
+    /**
+     * Creates the leases of the local node.
+     *
+     * @param service       storage service
+     * @param discreteStore discrete resource store leasing the resources
+     * @param holder        consumer ID the resources are leased to
+     * @param blockSize     number of values leased at once
+     * @param allocations   allocations of the leased values of all nodes
+     */
+    ResourceLeases(StorageService service, ConsistentDiscreteResourceSubStore discreteStore,
+                   ResourceConsumerId holder, int blockSize,
+                   EventuallyConsistentMap<DiscreteResourceId, ResourceConsumerId> allocations) {
+        this.service = service;
+        this.discreteStore = discreteStore;
+        this.holder = holder;
+        this.blockSize = blockSize;
+        this.allocations = allocations;
+        allocations.addListener(listener);
+    }
+
+    /**
+     * Returns the consumer ID resources are leased to by the given node.
+     *
+     * @param nodeId value unique to the node
+     * @return consumer ID of the leases of the node
+     */
+    static ResourceConsumerId holder(long nodeId) {
+        return ResourceConsumerId.of(nodeId, ResourceLeases.class);
+    }
+
+    @Override
+    public ResourceConsumerId consumerId() {
+        return holder;
+    }
+
+    /**
+     * Indicates whether the given consumer ID is the one of the leases of
+     * a node.
+     *
+     * @param consumerId consumer ID
+     * @return true if resources allocated to the consumer are leased
+     */
+    static boolean isHolder(ResourceConsumerId consumerId) {
+        return consumerId.isClassOf(ResourceLeases.class);
+    }
+
+    /**
+     * Indicates whether the given resource can be leased.
+     *
+     * @param resource resource
+     * @return true if the resource can be leased
+     */
+    static boolean isLeasable(Resource resource) {
+        return resource instanceof DiscreteResource && key((DiscreteResource) resource, 1) != null;
+    }
+
+    // Returns the key of the block of the given resource, or null if the
+    // resource cannot be leased.
+    private static BlockKey key(DiscreteResource resource, int blockSize) {
+        if (!resource.parent().isPresent()) {
+            return null;
+        }
+        Object value = resource.valueAs(Object.class).orElse(null);
+        if (value == null || !LEASABLE.contains(value.getClass())) {
+            return null;
+        }
+        int encoded = encode(value);
+        if (encoded < 0) {
+            return null;
+        }
+        return new BlockKey(resource.parent().get().id(), value.getClass(), encoded - encoded % blockSize);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int encode(Object value) {
+        DiscreteResourceCodec codec = CODECS.getCodec(value.getClass());
+        return codec.encode(value);
+    }
+
+    private static int encode(DiscreteResource resource) {
+        return encode(resource.valueAs(Object.class).get());
+    }
+
+    /**
+     * Allocates the given resources locally, as far as they can be leased.
+     *
+     * @param resources  resources to be allocated
+     * @param consumerId consumer ID
+     * @return resources allocated locally
+     */
+    List<DiscreteResource> allocate(List<? extends Resource> resources, ResourceConsumerId consumerId) {
+        List<DiscreteResource> allocated = new ArrayList<>();
+        for (Resource resource : resources) {
+            if (!(resource instanceof DiscreteResource)) {
+                continue;
+            }
+            DiscreteResource discrete = (DiscreteResource) resource;
+            BlockKey key = key(discrete, blockSize);
+            if (key != null && allocate(key, discrete, consumerId)) {
+                allocated.add(discrete);
+            }
+        }
+        return allocated;
+    }
+
+    // Allocates the given resource from the lease of its block, leasing the
+    // block first if the resource is not held yet. Blocks are leased outside
+    // the lock, one lease of each block at a time.
+    private boolean allocate(BlockKey key, DiscreteResource resource, ResourceConsumerId consumerId) {
+        int value = encode(resource);
+        while (true) {
+            CompletableFuture<Void> acquisition;
+            boolean acquiring = false;
+            synchronized (this) {
+                DiscreteResourceLease lease = leases.get(key);
+                if (lease != null && lease.holds(value)) {
+                    if (!lease.allocate(value, consumerId)) {
+                        return false;
+                    }
+                    allocations.put(resource.id(), consumerId);
+                    return true;
+                }
+                acquisition = acquisitions.get(key);
+                if (acquisition == null) {
+                    acquisition = new CompletableFuture<>();
+                    acquisitions.put(key, acquisition);
+                    acquiring = true;
+                }
+            }
+            if (!acquiring) {
+                // the block may hold the resource once leased
+                acquisition.join();
+                continue;
+            }
+            try {
+                if (!acquire(key, resource)) {
+                    return false;
+                }
+            } finally {
+                synchronized (this) {
+                    acquisitions.remove(key);
+                }
+                acquisition.complete(null);
+            }
+        }
+    }
+
+    /**
+     * Leases the values available in the block of the given resource,
+     * provided the resource itself is available.
+     *
+     * @param key      key of the block
+     * @param resource resource requested
+     * @return true if the resource was leased
+     */
+    private boolean acquire(BlockKey key, DiscreteResource resource) {
+        CompressedBitmap.Builder heldValues = CompressedBitmap.builder();
+        synchronized (this) {
+            DiscreteResourceLease lease = leases.get(key);
+            if (lease != null) {
+                IntStream.range(key.first, key.first + blockSize).filter(lease::holds).forEach(heldValues::add);
+            }
+        }
+        CompressedBitmap held = heldValues.build();
+        List<DiscreteResource> candidates = discreteStore.getChildResources(key.parent, key.cls).stream()
+                .filter(x -> !x.equals(resource))
+                .filter(x -> {
+                    int value = encode(x);
+                    return value >= key.first && value - key.first < blockSize && !held.contains(value);
+                })
+                .collect(Collectors.toList());
+
+        TransactionContext tx = service.transactionContextBuilder().build();
+        tx.begin();
+        TransactionalDiscreteResourceSubStore txStore = discreteStore.transactional(tx);
+        if (!txStore.allocateIfAvailable(holder, resource)) {
+            tx.abort();
+            return false;
+        }
+        List<DiscreteResource> leased = new ArrayList<>();
+        leased.add(resource);
+        candidates.stream()
+                .filter(x -> txStore.allocateIfAvailable(holder, x))
+                .forEach(leased::add);
+        if (tx.commit().join() != CommitStatus.SUCCESS) {
+            log.debug("Failed to lease {} values of {}", key.cls.getSimpleName(), key.parent);
+            return false;
+        }
+
+        synchronized (this) {
+            DiscreteResourceLease lease = leases.computeIfAbsent(
+                    key, k -> new DiscreteResourceLease(k.parent, CODECS.getCodec(k.cls), k.first, blockSize));
+            leased.forEach(x -> lease.hold(encode(x)));
+        }
+        log.trace("Leased {} {} values of {}", leased.size(), key.cls.getSimpleName(), key.parent);
+        return true;
+    }
+
+    /**
+     * Returns the consumer the given resource is allocated to locally.
+     *
+     * @param resource resource
+     * @return consumer ID; the ID of this node if leased and not allocated,
+     * null if not leased
+     */
+    synchronized ResourceConsumerId consumer(DiscreteResource resource) {
+        BlockKey key = key(resource, blockSize);
+        DiscreteResourceLease lease = key == null ? null : leases.get(key);
+        if (lease == null) {
+            return null;
+        }
+        int value = encode(resource);
+        if (!lease.holds(value)) {
+            return null;
+        }
+        ResourceConsumerId consumerId = lease.consumer(value);
+        return consumerId != null ? consumerId : holder;
+    }
+
+    /**
+     * Returns the encoded values of the given type under the given parent
+     * which are leased and not allocated.
+     *
+     * @param parent parent resource ID
+     * @param cls    class instance of the resource value
+     * @return bitmap of the free values
+     */
+    synchronized CompressedBitmap getFreeValues(DiscreteResourceId parent, Class<?> cls) {
+        CompressedBitmap.Builder builder = CompressedBitmap.builder();
+        leases.forEach((key, lease) -> {
+            if (key.parent.equals(parent) && key.cls == cls) {
+                lease.freeValues().forEach(builder::add);
+            }
+        });
+        return builder.build();
+    }
+
+    /**
+     * Indicates whether all the given allocations are local allocations.
+     *
+     * @param allocations allocations of leased resources
+     * @return true if all are allocated locally to their consumer
+     */
+    synchronized boolean isAllocated(Collection<ResourceAllocation> allocations) {
+        return allocations.stream().allMatch(allocation -> {
+            DiscreteResource resource = (DiscreteResource) allocation.resource();
+            return allocation.consumerId().equals(consumer(resource));
+        });
+    }
+
+    /**
+     * Releases the given resources allocated locally, returning the blocks
+     * no longer in use to the store.
+     *
+     * @param resources  resources to be released
+     * @param consumerId consumer ID
+     * @return true if all resources were allocated to the consumer
+     */
+    boolean release(Collection<DiscreteResource> resources, ResourceConsumerId consumerId) {
+        boolean released = true;
+        List<DiscreteResource> unused = new ArrayList<>();
+        synchronized (this) {
+            for (DiscreteResource resource : resources) {
+                BlockKey key = key(resource, blockSize);
+                DiscreteResourceLease lease = key == null ? null : leases.get(key);
+                if (lease == null || !lease.release(encode(resource), consumerId)) {
+                    released = false;
+                    continue;
+                }
+                allocations.remove(resource.id(), consumerId);
+                if (lease.allocatedCount() == 0) {
+                    unused.addAll(lease.dropFree());
+                    leases.remove(key);
+                }
+            }
+        }
+        returnValues(unused);
+        return released;
+    }
+
+    // Releases locally the allocations released by other nodes
+    private void allocationEvent(EventuallyConsistentMapEvent<DiscreteResourceId, ResourceConsumerId> event) {
+        if (event.type() == EventuallyConsistentMapEvent.Type.REMOVE) {
+            DiscreteResource resource = Resources.discrete(event.key()).resource();
+            if (consumer(resource) != null) {
+                release(ImmutableSet.of(resource), event.value());
+            }
+        }
+    }
+
+    /**
+     * Returns to the store the leased values under the given parents that
+     * are not allocated.
+     *
+     * @param parents parent resource IDs
+     */
+    void returnFree(Set<DiscreteResourceId> parents) {
+        List<DiscreteResource> free = new ArrayList<>();
+        synchronized (this) {
+            Iterator<DiscreteResourceLease> it = leases.values().iterator();
+            while (it.hasNext()) {
+                DiscreteResourceLease lease = it.next();
+                if (parents.contains(lease.parent())) {
+                    free.addAll(lease.dropFree());
+                    if (lease.heldCount() == 0) {
+                        it.remove();
+                    }
+                }
+            }
+        }
+        returnValues(free);
+    }
+
+    private void returnValues(List<DiscreteResource> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+        TransactionContext tx = service.transactionContextBuilder().build();
+        tx.begin();
+        TransactionalDiscreteResourceSubStore txStore = discreteStore.transactional(tx);
+        values.forEach(x -> txStore.release(x, holder));
+        if (tx.commit().join() != CommitStatus.SUCCESS) {
+            log.warn("Failed to return {} leased resources", values.size());
+        }
+    }
+
+    /**
+     * Returns all leases to the store, turning the local allocations into
+     * allocations in the store.
+     */
+    void close() {
+        allocations.removeListener(listener);
+        List<DiscreteResource> free = new ArrayList<>();
+        Map<DiscreteResource, ResourceConsumerId> allocated = new HashMap<>();
+        synchronized (this) {
+            leases.values().forEach(lease -> {
+                free.addAll(lease.dropFree());
+                allocated.putAll(lease.dropAll());
+            });
+            leases.clear();
+        }
+        returnValues(free);
+        if (allocated.isEmpty()) {
+            return;
+        }
+        TransactionContext tx = service.transactionContextBuilder().build();
+        tx.begin();
+        TransactionalDiscreteResourceSubStore txStore = discreteStore.transactional(tx);
+        allocated.forEach((resource, consumerId) -> txStore.reassign(resource, holder, consumerId));
+        if (tx.commit().join() != CommitStatus.SUCCESS) {
+            // the allocations are kept in the map, to be turned into
+            // allocations in the store once this node restarts
+            log.warn("Failed to turn {} leased resources into allocations", allocated.size());
+            return;
+        }
+        allocated.forEach((resource, consumerId) -> allocations.remove(resource.id(), consumerId));
+    }
+
+    /**
+     * Returns the number of values leased.
+     *
+     * @return leased count
+     */
+    synchronized int leasedCount() {
+        return leases.values().stream().mapToInt(DiscreteResourceLease::heldCount).sum();
+    }
+
+    /**
+     * Returns the ratio of the values leased that are allocated.
+     *
+     * @return lease utilization between 0 and 1
+     */
+    synchronized double utilization() {
+        int held = 0;
+        int allocated = 0;
+        for (DiscreteResourceLease lease : leases.values()) {
+            held += lease.heldCount();
+            allocated += lease.allocatedCount();
+        }
+        return held == 0 ? 0 : (double) allocated / held;
+    }
+
+    // Identifies a block of values of a type under a parent
+    private static final class BlockKey {
+        private final DiscreteResourceId parent;
+        private final Class<?> cls;
+        private final int first;
+
+        private BlockKey(DiscreteResourceId parent, Class<?> cls, int first) {
+            this.parent = parent;
+            this.cls = cls;
+            this.first = first;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(parent, cls, first);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            final BlockKey other = (BlockKey) obj;
+            return Objects.equals(this.parent, other.parent)
+                    && Objects.equals(this.cls, other.cls)
+                    && this.first == other.first;
+        }
+    }
+}
@@ -122,6 +122,20 @@ class TransactionalDiscreteResourceSubStore {
         return oldValue == null;
     }
 
+    // unlike allocate(), never overwrites an existing allocation,
+    // so that the transaction can go on if the resource is not available
+    boolean allocateIfAvailable(ResourceConsumerId consumerId, DiscreteResource resource) {
+        if (!lookup(resource.id()).isPresent()) {
+            return false;
+        }
+
+        return consumers.putIfAbsent(resource.id(), consumerId) == null;
+    }
+
+    boolean reassign(DiscreteResource resource, ResourceConsumerId oldConsumerId, ResourceConsumerId newConsumerId) {
+        return consumers.replace(resource.id(), oldConsumerId, newConsumerId);
+    }
+
     boolean release(DiscreteResource resource, ResourceConsumerId consumerId) {
         // if this single release fails (because the resource is allocated to another consumer)
         // the whole release fails
@@ -116,6 +116,11 @@ final class UnifiedDiscreteResources implements DiscreteResources {
                 .collect(Collectors.toCollection(LinkedHashSet::new));
     }
 
+    @Override
+    public <T> Optional<EncodedDiscreteResources> encodedValuesOf(Class<T> cls) {
+        return encodables.encodedValuesOf(cls);
+    }
+
     @Override
     public int hashCode() {
         return Objects.hash(generics, encodables);
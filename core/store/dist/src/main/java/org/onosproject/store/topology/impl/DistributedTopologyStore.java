@@ -15,6 +15,8 @@
  */
 package org.onosproject.store.topology.impl;
 
+import com.codahale.metrics.Gauge;
+import com.google.common.cache.CacheStats;
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.Deactivate;
@@ -24,6 +26,9 @@ import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.ReferenceCardinality;
 import org.apache.felix.scr.annotations.Service;
 import org.onlab.graph.GraphPathSearch;
+import org.onlab.metrics.MetricsComponent;
+import org.onlab.metrics.MetricsFeature;
+import org.onlab.metrics.MetricsService;
 import org.onlab.util.KryoNamespace;
 import org.onosproject.cfg.ComponentConfigService;
 import org.onosproject.common.DefaultTopology;
@@ -72,6 +77,7 @@ import java.util.stream.Collectors;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static org.onlab.util.Tools.get;
+import static org.onlab.util.Tools.getIntegerProperty;
 import static org.onlab.util.Tools.isNullOrEmpty;
 import static org.onosproject.net.topology.AdapterLinkWeigher.adapt;
 import static org.onosproject.net.topology.TopologyEvent.Type.TOPOLOGY_CHANGED;
@@ -92,7 +98,13 @@ public class DistributedTopologyStore
 
     private final Logger log = getLogger(getClass());
 
-    private static final String FORMAT = "Settings: linkWeightFunction={}";
+    private static final String FORMAT = "Settings: linkWeightFunction={}, " +
+            "pathCacheSize={}, precomputeClusterSize={}";
+
+    private static final String METRICS_COMPONENT = "TopologyStore";
+    private static final String METRICS_FEATURE = "paths";
+    private static final String PATH_CACHE_HITS = "pathCacheHits";
+    private static final String PATH_CACHE_MISSES = "pathCacheMisses";
 
     private volatile DefaultTopology current =
             new DefaultTopology(ProviderId.NONE,
@@ -115,6 +127,9 @@ public class DistributedTopologyStore
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
     protected DeviceService deviceService;
 
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected MetricsService metricsService;
+
     private static final String HOP_COUNT = "hopCount";
     private static final String LINK_METRIC = "linkMetric";
     private static final String GEO_DISTANCE = "geoDistance";
@@ -124,6 +139,17 @@ public class DistributedTopologyStore
             label = "Default link-weight function: hopCount, linkMetric, geoDistance")
     private String linkWeightFunction = DEFAULT_LINK_WEIGHT_FUNCTION;
 
+    private static final int DEFAULT_PATH_CACHE_SIZE = 10_000;
+    @Property(name = "pathCacheSize", intValue = DEFAULT_PATH_CACHE_SIZE,
+            label = "Maximum number of path sets cached by each topology; 0 to disable")
+    private int pathCacheSize = DEFAULT_PATH_CACHE_SIZE;
+
+    private static final int DEFAULT_PRECOMPUTE_CLUSTER_SIZE = 0;
+    @Property(name = "precomputeClusterSize", intValue = DEFAULT_PRECOMPUTE_CLUSTER_SIZE,
+            label = "Maximum size of clusters for which paths from a device to all " +
+                    "others are computed at once; 0 to disable")
+    private int precomputeClusterSize = DEFAULT_PRECOMPUTE_CLUSTER_SIZE;
+
     // Cluster root to broadcast points bindings to allow convergence to
     // a shared broadcast tree; node that is the master of the cluster root
     // is the primary.
@@ -132,6 +158,10 @@ public class DistributedTopologyStore
     private EventuallyConsistentMapListener<DeviceId, Set<ConnectPoint>> listener =
             new InternalBroadcastPointListener();
 
+    // Path cache statistics of all topologies retired so far
+    private volatile CacheStats retiredPathCacheStats = new CacheStats(0, 0, 0, 0, 0, 0);
+    private MetricsComponent metricsComponent;
+
     @Activate
     protected void activate() {
         configService.registerProperties(getClass());
@@ -144,12 +174,14 @@ public class DistributedTopologyStore
                 .withTimestampProvider((k, v) -> clockService.getTimestamp())
                 .build();
         broadcastPoints.addListener(listener);
+        registerMetrics();
         log.info("Started");
     }
 
     @Deactivate
     protected void deactivate() {
         configService.unregisterProperties(getClass(), false);
+        unregisterMetrics();
         broadcastPoints.removeListener(listener);
         broadcastPoints.destroy();
         log.info("Stopped");
@@ -169,7 +201,22 @@ public class DistributedTopologyStore
                             new GeoDistanceLinkWeight(deviceService) : null;
             setDefaultLinkWeight(weight);
         }
-        log.info(FORMAT, linkWeightFunction);
+
+        int newPathCacheSize = getIntegerProperty(properties, "pathCacheSize",
+                                                  pathCacheSize);
+        if (newPathCacheSize >= 0 && newPathCacheSize != pathCacheSize) {
+            pathCacheSize = newPathCacheSize;
+            DefaultTopology.setPathCacheSize(pathCacheSize);
+        }
+
+        int newPrecomputeClusterSize = getIntegerProperty(properties, "precomputeClusterSize",
+                                                          precomputeClusterSize);
+        if (newPrecomputeClusterSize >= 0 &&
+                newPrecomputeClusterSize != precomputeClusterSize) {
+            precomputeClusterSize = newPrecomputeClusterSize;
+            DefaultTopology.setPrecomputeClusterSize(precomputeClusterSize);
+        }
+        log.info(FORMAT, linkWeightFunction, pathCacheSize, precomputeClusterSize);
     }
 
     @Override
@@ -297,18 +344,50 @@ public class DistributedTopologyStore
             return null;
         }
 
-        // Have the default topology construct self from the description data.
+        // Have the default topology construct self from the description data,
+        // carrying over whatever has not changed since the current topology.
         DefaultTopology newTopology =
-                new DefaultTopology(providerId, graphDescription, this::isBroadcastPoint);
+                new DefaultTopology(providerId, graphDescription, this::isBroadcastPoint,
+                                    current);
         updateBroadcastPoints(newTopology);
 
         // Promote the new topology to current and return a ready-to-send event.
         synchronized (this) {
+            log.debug("Retiring topology with path cache {}", current.pathCacheStats());
+            retiredPathCacheStats = retiredPathCacheStats.plus(current.pathCacheStats());
             current = newTopology;
             return new TopologyEvent(TOPOLOGY_CHANGED, current, reasons);
         }
     }
 
+    // Registers the path cache hit and miss gauges, which cover the current
+    // topology as well as all retired ones.
+    private void registerMetrics() {
+        if (metricsService == null) {
+            return;
+        }
+        metricsComponent = metricsService.registerComponent(METRICS_COMPONENT);
+        MetricsFeature feature = metricsComponent.registerFeature(METRICS_FEATURE);
+        metricsService.registerMetric(metricsComponent, feature, PATH_CACHE_HITS,
+                                      (Gauge<Long>) () -> pathCacheStats().hitCount());
+        metricsService.registerMetric(metricsComponent, feature, PATH_CACHE_MISSES,
+                                      (Gauge<Long>) () -> pathCacheStats().missCount());
+    }
+
+    private void unregisterMetrics() {
+        if (metricsService == null || metricsComponent == null) {
+            return;
+        }
+        MetricsFeature feature = metricsComponent.registerFeature(METRICS_FEATURE);
+        metricsService.removeMetric(metricsComponent, feature, PATH_CACHE_HITS);
+        metricsService.removeMetric(metricsComponent, feature, PATH_CACHE_MISSES);
+        metricsComponent = null;
+    }
+
+    private CacheStats pathCacheStats() {
+        return retiredPathCacheStats.plus(current.pathCacheStats());
+    }
+
     private void updateBroadcastPoints(DefaultTopology topology) {
         // Remove any broadcast trees rooted by devices for which we are master.
         Set<DeviceId> toRemove = broadcastPoints.keySet().stream()
@@ -15,6 +15,8 @@
  */
 package org.onosproject.store.cluster.messaging.impl;
 
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.Uninterruptibles;
@@ -22,7 +24,11 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.onlab.junit.TestUtils;
 import org.onlab.packet.IpAddress;
+import org.onosproject.cfg.ComponentConfigAdapter;
+import org.onosproject.cfg.ComponentConfigService;
+import org.onosproject.cfg.ConfigProperty;
 import org.onosproject.cluster.ClusterMetadata;
 import org.onosproject.cluster.ClusterMetadataEventListener;
 import org.onosproject.cluster.ClusterMetadataService;
@@ -32,18 +38,28 @@ import org.onosproject.core.HybridLogicalClockService;
 import org.onosproject.core.HybridLogicalTime;
 import org.onosproject.net.provider.ProviderId;
 import org.onosproject.store.cluster.messaging.Endpoint;
+import org.osgi.service.component.ComponentContext;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiFunction;
 
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
@@ -84,13 +100,15 @@ public class NettyMessagingManagerTest {
         netty1 = new NettyMessagingManager();
         netty1.clusterMetadataService = dummyMetadataService(DUMMY_NAME, IP_STRING, ep1);
         netty1.clockService = testClockService;
-        netty1.activate();
+        netty1.bindConfigService(new ComponentConfigAdapter());
+        netty1.activate(null);
 
         ep2 = new Endpoint(IpAddress.valueOf("127.0.0.1"), findAvailablePort(5003));
         netty2 = new NettyMessagingManager();
         netty2.clusterMetadataService = dummyMetadataService(DUMMY_NAME, IP_STRING, ep2);
         netty2.clockService = testClockService;
-        netty2.activate();
+        netty2.bindConfigService(new ComponentConfigAdapter());
+        netty2.activate(null);
     }
 
     /**
@@ -105,10 +123,12 @@ public class NettyMessagingManagerTest {
     public void tearDown() throws Exception {
         if (netty1 != null) {
             netty1.deactivate();
+            netty1.unbindConfigService(netty1.configService);
         }
 
         if (netty2 != null) {
             netty2.deactivate();
+            netty2.unbindConfigService(netty2.configService);
         }
     }
 
@@ -132,6 +152,141 @@ public class NettyMessagingManagerTest {
         Uninterruptibles.awaitUninterruptibly(latch2);
     }
 
+    @Test
+    public void testSendAsyncBuffer() {
+        String subject = nextSubject();
+        // Larger than the encoder copy threshold, so that it is written as is
+        byte[] payload = new byte[MessageEncoder.COPY_THRESHOLD * 4];
+        Arrays.fill(payload, (byte) 7);
+        byte[] smallPayload = "hello world".getBytes();
+
+        CountDownLatch latch = new CountDownLatch(2);
+        AtomicReference<byte[]> received = new AtomicReference<>();
+        AtomicReference<byte[]> receivedSmall = new AtomicReference<>();
+        netty2.registerBufferHandler(subject, (ep, buffer) -> {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            if (bytes.length == payload.length) {
+                received.set(bytes);
+            } else {
+                receivedSmall.set(bytes);
+            }
+            latch.countDown();
+        }, MoreExecutors.directExecutor());
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(payload.length + 2);
+        buffer.put((byte) 1).put(payload).put((byte) 1);
+        buffer.position(1).limit(payload.length + 1);
+        netty1.sendAsync(ep2, subject, buffer).join();
+        assertEquals("buffer position must be left untouched", 1, buffer.position());
+        netty1.sendAsync(ep2, subject, ByteBuffer.wrap(smallPayload)).join();
+
+        assertTrue(Uninterruptibles.awaitUninterruptibly(latch, 5, TimeUnit.SECONDS));
+        assertTrue(Arrays.equals(payload, received.get()));
+        assertTrue(Arrays.equals(smallPayload, receivedSmall.get()));
+    }
+
+    @Test
+    public void testSendAsyncBuffers() {
+        String subject = nextSubject();
+        byte[] payload = new byte[MessageEncoder.COPY_THRESHOLD * 4];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) i;
+        }
+
+        CountDownLatch latch = new CountDownLatch(2);
+        List<byte[]> received = Lists.newCopyOnWriteArrayList();
+        netty2.registerBufferHandler(subject, (ep, buffer) -> {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            received.add(bytes);
+            latch.countDown();
+        }, MoreExecutors.directExecutor());
+
+        // Payloads gathered from several buffers, above and below the copy threshold
+        ByteBuffer head = ByteBuffer.wrap(payload, 0, 10);
+        ByteBuffer tail = ByteBuffer.wrap(payload, 10, payload.length - 10);
+        netty1.sendAsync(ep2, subject, head, tail).join();
+        assertEquals("buffer position must be left untouched", 10, tail.position());
+        netty1.sendAsync(ep2, subject, ByteBuffer.wrap(payload, 0, 10), ByteBuffer.wrap(payload, 10, 10)).join();
+
+        assertTrue(Uninterruptibles.awaitUninterruptibly(latch, 5, TimeUnit.SECONDS));
+        assertTrue(received.stream().anyMatch(bytes -> Arrays.equals(payload, bytes)));
+        assertTrue(received.stream().anyMatch(bytes -> Arrays.equals(Arrays.copyOf(payload, 20), bytes)));
+    }
+
+    @Test
+    public void testBindConfigService() throws Exception {
+        ComponentConfigService configService = new ComponentConfigAdapter() {
+            @Override
+            public Set<ConfigProperty> getProperties(String componentName) {
+                ConfigProperty property = ConfigProperty.defineProperty(
+                        "maxCoalescedMessages", ConfigProperty.Type.INTEGER, "64", "");
+                return ImmutableSet.of(ConfigProperty.setProperty(property, "8"));
+            }
+        };
+        ComponentConfigService previous = netty1.configService;
+        netty1.unbindConfigService(previous);
+        assertNull(netty1.configService);
+
+        // Properties already set are applied once the service is bound
+        netty1.bindConfigService(configService);
+        assertEquals(8, (int) TestUtils.getField(netty1, "maxCoalescedMessages"));
+    }
+
+    @Test
+    public void testSendAsyncCoalesced() {
+        Dictionary<String, Object> properties = new Hashtable<>();
+        properties.put("coalesceMessages", "true");
+        properties.put("maxCoalescedMessages", "8");
+        ComponentContext context = createMock(ComponentContext.class);
+        expect(context.getProperties()).andReturn(properties).anyTimes();
+        replay(context);
+        netty1.modified(context);
+
+        String subject = nextSubject();
+        int count = 100;
+        CountDownLatch latch = new CountDownLatch(count);
+        netty2.registerHandler(subject, (Endpoint ep, byte[] data) -> latch.countDown(),
+                              MoreExecutors.directExecutor());
+
+        // Messages are flushed either once enough of them are written or
+        // once the coalescing delay expires.
+        for (int i = 0; i < count; i++) {
+            netty1.sendAsync(ep2, subject, "hello world".getBytes());
+        }
+        assertTrue(Uninterruptibles.awaitUninterruptibly(latch, 5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSendAsyncPriorityLanes() {
+        // Control and bulk messages travel on connections of their own, so a
+        // control message is delivered while the bulk connection is stalled
+        String controlSubject = "onos-copycat-1-" + nextSubject();
+        String bulkSubject = nextSubject();
+        CountDownLatch bulkReceived = new CountDownLatch(1);
+        CountDownLatch controlReceived = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        netty2.registerHandler(bulkSubject, (Endpoint ep, byte[] data) -> {
+            bulkReceived.countDown();
+            // Holds up the event loop reading the bulk connection
+            Uninterruptibles.awaitUninterruptibly(release, 10, TimeUnit.SECONDS);
+        }, MoreExecutors.directExecutor());
+        netty2.registerHandler(controlSubject, (Endpoint ep, byte[] data) -> controlReceived.countDown(),
+                               MoreExecutors.directExecutor());
+
+        try {
+            netty1.sendAsync(ep2, bulkSubject, new byte[64 * 1024]).join();
+            assertTrue(Uninterruptibles.awaitUninterruptibly(bulkReceived, 5, TimeUnit.SECONDS));
+            netty1.sendAsync(ep2, bulkSubject, new byte[64 * 1024]).join();
+            netty1.sendAsync(ep2, controlSubject, "hello world".getBytes()).join();
+            assertTrue("control message held up behind bulk traffic",
+                       Uninterruptibles.awaitUninterruptibly(controlReceived, 5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+        }
+    }
+
     @Test
     @Ignore // FIXME disabled on 9/29/16 due to random failures
     public void testSendAndReceive() {
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.store.flow.impl;
+
+import org.junit.Test;
+import org.onlab.junit.TestUtils;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.flow.DefaultFlowEntry;
+import org.onosproject.net.flow.DefaultFlowRule;
+import org.onosproject.net.flow.DefaultTrafficSelector;
+import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flow.FlowEntry.FlowEntryState;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.StoredFlowEntry;
+import org.onosproject.store.serializers.KryoNamespaces;
+import org.onosproject.store.service.Serializer;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the compact flow table.
+ */
+public class CompactFlowTableTest {
+
+    private static final DeviceId DID = DeviceId.deviceId("of:1");
+
+    private final Serializer serializer = Serializer.using(KryoNamespaces.API);
+
+    private static FlowRule rule(long cookie, int port) {
+        return DefaultFlowRule.builder()
+                .forDevice(DID)
+                .withCookie(cookie)
+                .withPriority(10)
+                .withSelector(DefaultTrafficSelector.builder()
+                                      .matchInPort(PortNumber.portNumber(port)).build())
+                .withTreatment(DefaultTrafficTreatment.builder()
+                                       .setOutput(PortNumber.portNumber(port + 1)).build())
+                .makePermanent()
+                .build();
+    }
+
+    private static StoredFlowEntry entry(long cookie, int port) {
+        return new DefaultFlowEntry(rule(cookie, port));
+    }
+
+    @Test
+    public void basics() {
+        CompactFlowTable table = new CompactFlowTable(serializer);
+        assertNull("no entry expected", table.get(rule(1, 1)));
+
+        table.put(entry(1, 1));
+        table.put(entry(2, 2));
+        assertEquals("incorrect size", 2, table.size());
+
+        StoredFlowEntry stored = table.get(rule(1, 1));
+        assertEquals("incorrect entry", rule(1, 1), stored);
+        assertEquals("incorrect state", FlowEntryState.PENDING_ADD, stored.state());
+
+        // Changes are visible only once written back.
+        stored.setState(FlowEntryState.ADDED);
+        stored.setPackets(42);
+        assertEquals("incorrect state", FlowEntryState.PENDING_ADD, table.get(rule(1, 1)).state());
+        table.put(stored);
+        assertEquals("incorrect size", 2, table.size());
+        assertEquals("incorrect state", FlowEntryState.ADDED, table.get(rule(1, 1)).state());
+        assertEquals("incorrect packets", 42, table.get(rule(1, 1)).packets());
+
+        table.putIfAbsent(entry(1, 1));
+        assertEquals("incorrect state", FlowEntryState.ADDED, table.get(rule(1, 1)).state());
+
+        assertEquals("incorrect entries", 2, table.getAll().size());
+    }
+
+    @Test
+    public void sameFlowId() {
+        CompactFlowTable table = new CompactFlowTable(serializer);
+        table.put(entry(7, 1));
+        table.put(entry(7, 2));
+        table.put(entry(7, 3));
+        assertEquals("incorrect size", 3, table.size());
+        assertEquals("incorrect entry", rule(7, 2), table.get(rule(7, 2)));
+
+        assertEquals("incorrect removal", rule(7, 2), table.remove(rule(7, 2), e -> true));
+        assertNull("entry should be gone", table.get(rule(7, 2)));
+        assertEquals("incorrect entry", rule(7, 3), table.get(rule(7, 3)));
+        assertEquals("incorrect size", 2, table.size());
+    }
+
+    @Test
+    public void removeConditionally() {
+        CompactFlowTable table = new CompactFlowTable(serializer);
+        table.put(entry(1, 1));
+        assertNull("nothing should be removed", table.remove(rule(1, 1), e -> false));
+        assertEquals("incorrect size", 1, table.size());
+        assertNull("nothing should be removed", table.remove(rule(2, 1), e -> true));
+        assertEquals("incorrect removal", rule(1, 1), table.remove(rule(1, 1), e -> true));
+        assertEquals("incorrect size", 0, table.size());
+    }
+
+    @Test
+    public void growAndShrink() throws Exception {
+        CompactFlowTable table = new CompactFlowTable(serializer);
+        int count = 1000;
+        for (int i = 0; i < count; i++) {
+            table.put(entry(i * 31L, i));
+        }
+        assertEquals("incorrect size", count, table.size());
+
+        // Removing every other entry must keep the rest reachable.
+        for (int i = 0; i < count; i += 2) {
+            assertEquals("incorrect removal", rule(i * 31L, i), table.remove(rule(i * 31L, i), e -> true));
+        }
+        for (int i = 0; i < count; i++) {
+            StoredFlowEntry stored = table.get(rule(i * 31L, i));
+            if (i % 2 == 0) {
+                assertNull("entry should be gone", stored);
+            } else {
+                assertEquals("incorrect entry", rule(i * 31L, i), stored);
+            }
+        }
+        assertEquals("incorrect size", count / 2, table.size());
+
+        // Removing the rest must give the slots back.
+        for (int i = 1; i < count; i += 2) {
+            table.remove(rule(i * 31L, i), e -> true);
+        }
+        assertEquals("incorrect size", 0, table.size());
+        Object[] values = TestUtils.getField(table, "values");
+        assertEquals("table should have shrunk", 16, values.length);
+    }
+
+    @Test
+    public void update() {
+        CompactFlowTable table = new CompactFlowTable(serializer);
+        table.put(entry(7, 1));
+        table.put(entry(7, 2));
+
+        assertNull("nothing should be updated", table.update(rule(8, 1), e -> true));
+        assertEquals("incorrect result", FlowEntryState.PENDING_ADD, table.update(rule(7, 2), e -> {
+            FlowEntryState state = e.state();
+            e.setState(FlowEntryState.ADDED);
+            return state;
+        }));
+        assertEquals("incorrect state", FlowEntryState.ADDED, table.get(rule(7, 2)).state());
+        assertEquals("incorrect state", FlowEntryState.PENDING_ADD, table.get(rule(7, 1)).state());
+
+        // Changes are discarded when the updater returns null.
+        assertNull("nothing should be updated", table.update(rule(7, 1), e -> {
+            e.setState(FlowEntryState.PENDING_REMOVE);
+            return null;
+        }));
+        assertEquals("incorrect state", FlowEntryState.PENDING_ADD, table.get(rule(7, 1)).state());
+        assertEquals("incorrect size", 2, table.size());
+    }
+
+    @Test
+    public void snapshot() {
+        CompactFlowTable table = new CompactFlowTable(serializer);
+        Set<FlowRule> rules = new HashSet<>();
+        for (int i = 0; i < 50; i++) {
+            table.put(entry(i % 10, i));
+            rules.add(rule(i % 10, i));
+        }
+
+        Serializer backupSerializer = Serializer.using(KryoNamespaces.API, CompactFlowTable.Snapshot.class);
+        CompactFlowTable.Snapshot snapshot =
+                backupSerializer.decode(backupSerializer.encode(table.snapshot()));
+        assertEquals("incorrect snapshot size", 50, snapshot.size());
+        assertEquals("incorrect decoded entries", rules, new HashSet<>(snapshot.decode(serializer)));
+
+        CompactFlowTable backup = new CompactFlowTable(serializer);
+        backup.put(entry(99, 99));
+        backup.restore(snapshot);
+        assertEquals("incorrect size", 50, backup.size());
+        assertNull("stale entry should be gone", backup.get(rule(99, 99)));
+        assertEquals("incorrect entries", rules, new HashSet<>(backup.getAll()));
+        assertTrue("entry should be present", backup.get(rule(3, 13)) != null);
+    }
+
+    @Test
+    public void delta() {
+        CompactFlowTable table = new CompactFlowTable(serializer);
+        CompactFlowTable backup = new CompactFlowTable(serializer);
+        for (int i = 0; i < 20; i++) {
+            table.put(entry(i, i));
+        }
+        backup.restore(table.snapshot());
+
+        // Change flow 3, add a second entry to flow 5 and remove flow 7.
+        StoredFlowEntry changed = table.get(rule(3, 3));
+        changed.setPackets(10);
+        table.put(changed);
+        table.put(entry(5, 50));
+        table.remove(rule(7, 7), e -> true);
+
+        long[] flowIds = {3, 5, 7};
+        CompactFlowTable.Snapshot delta = table.snapshot(flowIds);
+        assertEquals("incorrect delta size", 3, delta.size());
+        backup.apply(flowIds, delta);
+
+        assertEquals("incorrect size", table.size(), backup.size());
+        assertEquals("incorrect entries", table.getAll(), backup.getAll());
+        assertEquals("incorrect packets", 10, backup.get(rule(3, 3)).packets());
+        assertNull("entry should be gone", backup.get(rule(7, 7)));
+    }
+}
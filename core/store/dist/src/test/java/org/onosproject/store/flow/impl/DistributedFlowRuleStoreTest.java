@@ -0,0 +1,393 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.store.flow.impl;
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.collect.Table;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.onlab.junit.TestUtils;
+import org.onlab.osgi.ComponentContextAdapter;
+import org.onlab.packet.IpAddress;
+import org.onosproject.cfg.ComponentConfigAdapter;
+import org.onosproject.cluster.ClusterServiceAdapter;
+import org.onosproject.cluster.ControllerNode;
+import org.onosproject.cluster.DefaultControllerNode;
+import org.onosproject.cluster.NodeId;
+import org.onosproject.core.CoreServiceAdapter;
+import org.onosproject.mastership.MastershipServiceAdapter;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.MastershipRole;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.device.DeviceServiceAdapter;
+import org.onosproject.net.flow.DefaultFlowEntry;
+import org.onosproject.net.flow.DefaultFlowRule;
+import org.onosproject.net.flow.DefaultTrafficSelector;
+import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flow.FlowEntry;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.store.cluster.messaging.ClusterCommunicationServiceAdapter;
+import org.onosproject.store.cluster.messaging.MessageSubject;
+import org.onosproject.store.cluster.messaging.MessagingException;
+import org.onosproject.store.flow.ReplicaInfo;
+import org.onosproject.store.flow.ReplicaInfoEventListener;
+import org.onosproject.store.flow.ReplicaInfoService;
+import org.onosproject.store.persistence.PersistenceServiceAdapter;
+import org.onosproject.store.service.TestStorageService;
+
+import java.util.Arrays;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.onosproject.store.flow.impl.FlowStoreMessageSubjects.FLOW_TABLE_DELTA_BACKUP;
+
+/**
+ * Unit tests for the replication of flow tables to backup nodes by the
+ * distributed flow rule store.
+ */
+public class DistributedFlowRuleStoreTest {
+
+    private static final DeviceId DID = DeviceId.deviceId("of:1");
+    private static final NodeId NID1 = new NodeId("node1");
+    private static final NodeId NID2 = new NodeId("node2");
+
+    // Message handlers of each node, by subject
+    private final Table<NodeId, MessageSubject, Function<byte[], byte[]>> subscribers = HashBasedTable.create();
+    // Flow table backups sent to the backup node
+    private final List<FlowTableBackup> backups = Lists.newCopyOnWriteArrayList();
+
+    private volatile NodeId master = NID1;
+
+    private DistributedFlowRuleStore store1;
+    private DistributedFlowRuleStore store2;
+
+    @Before
+    public void setUp() throws Exception {
+        store1 = store(NID1);
+        store2 = store(NID2);
+    }
+
+    @After
+    public void tearDown() {
+        store1.deactivate(null);
+        store2.deactivate(null);
+    }
+
+    private DistributedFlowRuleStore store(NodeId nodeId) throws Exception {
+        DistributedFlowRuleStore store = new DistributedFlowRuleStore();
+        store.replicaInfoManager = new TestReplicaInfoService();
+        store.clusterCommunicator = new TestClusterCommunicationService(nodeId);
+        store.clusterService = new TestClusterService(nodeId);
+        store.deviceService = new DeviceServiceAdapter();
+        store.coreService = new CoreServiceAdapter();
+        store.configService = new ComponentConfigAdapter();
+        store.mastershipService = new TestMastershipService(nodeId);
+        store.persistenceService = new PersistenceServiceAdapter();
+        store.storageService = new TestStorageService();
+        // Backups are run explicitly by the tests
+        TestUtils.setField(store, "backupPeriod", (int) TimeUnit.HOURS.toMillis(1));
+        store.activate(null);
+        awaitBackup(store);
+        return store;
+    }
+
+    // Waits for any backup already scheduled by the store to complete.
+    private static void awaitBackup(DistributedFlowRuleStore store) throws Exception {
+        ScheduledExecutorService executor = TestUtils.getField(store, "backupSenderExecutor");
+        executor.submit(() -> { }).get();
+    }
+
+    // Runs a backup of the flow tables mastered by the store.
+    private static void backup(DistributedFlowRuleStore store) throws Exception {
+        ScheduledExecutorService executor = TestUtils.getField(store, "backupSenderExecutor");
+        Object flowTable = TestUtils.getField(store, "flowTable");
+        executor.submit(() -> TestUtils.callMethod(flowTable, "backup", new Class<?>[] {})).get();
+    }
+
+    private static FlowTableChanges changes(DistributedFlowRuleStore store) throws Exception {
+        Object flowTable = TestUtils.getField(store, "flowTable");
+        Map<DeviceId, FlowTableChanges> changes = TestUtils.getField(flowTable, "flowTableChanges");
+        return changes.get(DID);
+    }
+
+    private static void setBackupEnabled(DistributedFlowRuleStore store, boolean enabled) {
+        store.modified(new ComponentContextAdapter() {
+            @Override
+            public Dictionary getProperties() {
+                Hashtable<String, String> props = new Hashtable<>();
+                props.put("backupEnabled", Boolean.toString(enabled));
+                return props;
+            }
+        });
+    }
+
+    private static FlowRule rule(int port) {
+        return DefaultFlowRule.builder()
+                .forDevice(DID)
+                .withCookie(port)
+                .withPriority(10)
+                .withSelector(DefaultTrafficSelector.builder()
+                                      .matchInPort(PortNumber.portNumber(port)).build())
+                .withTreatment(DefaultTrafficTreatment.builder()
+                                       .setOutput(PortNumber.portNumber(port + 1)).build())
+                .makePermanent()
+                .build();
+    }
+
+    private static Set<FlowRule> rules(Iterable<FlowEntry> entries) {
+        return ImmutableSet.copyOf(entries);
+    }
+
+    private static long[] sorted(long[] flowIds) {
+        long[] copy = flowIds.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+
+    /**
+     * Tests that only the flows changed since the version acknowledged by
+     * the backup node are replicated to it.
+     */
+    @Test
+    public void deltaBackups() throws Exception {
+        store1.addOrUpdateFlowRule(new DefaultFlowEntry(rule(1)));
+        store1.addOrUpdateFlowRule(new DefaultFlowEntry(rule(2)));
+        store1.addOrUpdateFlowRule(new DefaultFlowEntry(rule(3)));
+
+        backup(store1);
+        assertEquals("incorrect backups", 1, backups.size());
+        FlowTableBackup full = backups.get(0);
+        assertTrue("full backup expected", full.isFull());
+        assertEquals("incorrect version", 3, full.version());
+
+        store1.removeFlowRule(new DefaultFlowEntry(rule(2)));
+        store1.addOrUpdateFlowRule(new DefaultFlowEntry(rule(4)));
+
+        backup(store1);
+        assertEquals("incorrect backups", 2, backups.size());
+        FlowTableBackup delta = backups.get(1);
+        assertFalse("delta backup expected", delta.isFull());
+        assertEquals("incorrect base version", 3, delta.baseVersion());
+        assertEquals("incorrect version", 5, delta.version());
+        long[] changed = {rule(2).id().value(), rule(4).id().value()};
+        assertArrayEquals("incorrect changes", sorted(changed), sorted(delta.flowIds()));
+
+        // Nothing left to replicate; the acknowledged changes are pruned.
+        backup(store1);
+        assertEquals("incorrect backups", 2, backups.size());
+        assertNull("acknowledged changes kept", changes(store1).changedSince(3));
+        assertArrayEquals("incorrect changes", new long[] {}, changes(store1).changedSince(5));
+
+        // The backup node holds the flow table once it becomes the master.
+        master = NID2;
+        assertEquals("incorrect backed up flows",
+                     ImmutableSet.of(rule(1), rule(3), rule(4)), rules(store2.getFlowEntries(DID)));
+    }
+
+    /**
+     * Tests that no changes are kept on record while backup is disabled, and
+     * that the whole flow table is replicated once it is enabled again.
+     */
+    @Test
+    public void backupDisabled() throws Exception {
+        store1.addOrUpdateFlowRule(new DefaultFlowEntry(rule(1)));
+        backup(store1);
+        assertEquals("incorrect backups", 1, backups.size());
+
+        setBackupEnabled(store1, false);
+        store1.addOrUpdateFlowRule(new DefaultFlowEntry(rule(2)));
+        store1.addOrUpdateFlowRule(new DefaultFlowEntry(rule(3)));
+        FlowTableChanges changes = changes(store1);
+        assertNull("changes kept while backup is disabled", changes.changedSince(changes.version() - 1));
+        assertArrayEquals("incorrect changes", new long[] {}, changes.changedSince(changes.version()));
+
+        backup(store1);
+        assertEquals("backup while disabled", 1, backups.size());
+
+        setBackupEnabled(store1, true);
+        backup(store1);
+        assertEquals("incorrect backups", 2, backups.size());
+        assertTrue("full backup expected", backups.get(1).isFull());
+
+        master = NID2;
+        assertEquals("incorrect backed up flows",
+                     ImmutableSet.of(rule(1), rule(2), rule(3)), rules(store2.getFlowEntries(DID)));
+    }
+
+    /**
+     * Tests that a delta the backup node cannot apply leads to the whole flow
+     * table being replicated to it.
+     */
+    @Test
+    public void rejectedDelta() throws Exception {
+        store1.addOrUpdateFlowRule(new DefaultFlowEntry(rule(1)));
+        backup(store1);
+
+        // The backup node loses its copy of the flow table.
+        Object flowTable = TestUtils.getField(store2, "flowTable");
+        Map<DeviceId, ?> backupVersions = TestUtils.getField(flowTable, "backupVersions");
+        backupVersions.clear();
+
+        store1.addOrUpdateFlowRule(new DefaultFlowEntry(rule(2)));
+        backup(store1);
+        assertFalse("delta backup expected", backups.get(1).isFull());
+
+        backup(store1);
+        assertEquals("incorrect backups", 3, backups.size());
+        assertTrue("full backup expected", backups.get(2).isFull());
+
+        master = NID2;
+        assertEquals("incorrect backed up flows",
+                     ImmutableSet.of(rule(1), rule(2)), rules(store2.getFlowEntries(DID)));
+    }
+
+    /**
+     * Tests that the whole flow table is replicated in the former format to
+     * a backup node unaware of the delta backups.
+     */
+    @Test
+    public void legacyBackup() throws Exception {
+        synchronized (subscribers) {
+            subscribers.remove(NID2, FLOW_TABLE_DELTA_BACKUP);
+        }
+        store1.addOrUpdateFlowRule(new DefaultFlowEntry(rule(1)));
+        store1.addOrUpdateFlowRule(new DefaultFlowEntry(rule(2)));
+        backup(store1);
+        store1.removeFlowRule(new DefaultFlowEntry(rule(1)));
+        store1.addOrUpdateFlowRule(new DefaultFlowEntry(rule(3)));
+        backup(store1);
+
+        master = NID2;
+        assertEquals("incorrect backed up flows",
+                     ImmutableSet.of(rule(2), rule(3)), rules(store2.getFlowEntries(DID)));
+    }
+
+    private class TestClusterCommunicationService extends ClusterCommunicationServiceAdapter {
+        private final NodeId nodeId;
+
+        TestClusterCommunicationService(NodeId nodeId) {
+            this.nodeId = nodeId;
+        }
+
+        @Override
+        public <M, R> void addSubscriber(MessageSubject subject,
+                                         Function<byte[], M> decoder, Function<M, R> handler,
+                                         Function<R, byte[]> encoder, Executor executor) {
+            synchronized (subscribers) {
+                subscribers.put(nodeId, subject, decoder.andThen(handler).andThen(encoder));
+            }
+        }
+
+        @Override
+        public void removeSubscriber(MessageSubject subject) {
+            synchronized (subscribers) {
+                subscribers.remove(nodeId, subject);
+            }
+        }
+
+        @Override
+        public <M, R> CompletableFuture<R> sendAndReceive(M message,
+                                                          MessageSubject subject, Function<M, byte[]> encoder,
+                                                          Function<byte[], R> decoder, NodeId toNodeId) {
+            byte[] payload = encoder.apply(message);
+            if (subject.equals(FLOW_TABLE_DELTA_BACKUP)) {
+                Map<DeviceId, FlowTableBackup> sent = store1.backupSerializer.decode(payload);
+                backups.add(sent.get(DID));
+            }
+            Function<byte[], byte[]> subscriber;
+            synchronized (subscribers) {
+                subscriber = subscribers.get(toNodeId, subject);
+            }
+            if (subscriber == null) {
+                CompletableFuture<R> future = new CompletableFuture<>();
+                future.completeExceptionally(new MessagingException.NoRemoteHandler());
+                return future;
+            }
+            return CompletableFuture.completedFuture(decoder.apply(subscriber.apply(payload)));
+        }
+    }
+
+    private static class TestClusterService extends ClusterServiceAdapter {
+        private final ControllerNode node;
+
+        TestClusterService(NodeId nodeId) {
+            node = new DefaultControllerNode(nodeId, IpAddress.valueOf("127.0.0.1"));
+        }
+
+        @Override
+        public ControllerNode getLocalNode() {
+            return node;
+        }
+    }
+
+    private class TestMastershipService extends MastershipServiceAdapter {
+        private final NodeId nodeId;
+
+        TestMastershipService(NodeId nodeId) {
+            this.nodeId = nodeId;
+        }
+
+        @Override
+        public NodeId getMasterFor(DeviceId deviceId) {
+            return master;
+        }
+
+        @Override
+        public boolean isLocalMaster(DeviceId deviceId) {
+            return nodeId.equals(master);
+        }
+
+        @Override
+        public MastershipRole getLocalRole(DeviceId deviceId) {
+            return nodeId.equals(master) ? MastershipRole.MASTER : MastershipRole.STANDBY;
+        }
+    }
+
+    private class TestReplicaInfoService implements ReplicaInfoService {
+        @Override
+        public ReplicaInfo getReplicaInfoFor(DeviceId deviceId) {
+            NodeId current = master;
+            return new ReplicaInfo(current, ImmutableList.copyOf(
+                    Sets.difference(ImmutableSet.of(NID1, NID2), ImmutableSet.of(current))));
+        }
+
+        @Override
+        public void addListener(ReplicaInfoEventListener listener) {
+        }
+
+        @Override
+        public void removeListener(ReplicaInfoEventListener listener) {
+        }
+    }
+}
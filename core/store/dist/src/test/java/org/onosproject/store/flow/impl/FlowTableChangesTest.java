@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.store.flow.impl;
+
+import org.junit.Test;
+import org.onosproject.net.flow.FlowId;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Unit tests for the flow table change record.
+ */
+public class FlowTableChangesTest {
+
+    private static long[] sorted(long[] flowIds) {
+        long[] copy = flowIds.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+
+    @Test
+    public void changedSince() {
+        FlowTableChanges changes = new FlowTableChanges();
+        assertEquals("incorrect version", 0, changes.version());
+
+        changes.changed(FlowId.valueOf(1));
+        changes.changed(FlowId.valueOf(2));
+        changes.changed(FlowId.valueOf(1));
+        assertEquals("incorrect version", 3, changes.version());
+
+        assertArrayEquals("incorrect changes", new long[] {1, 2}, sorted(changes.changedSince(0)));
+        assertArrayEquals("incorrect changes", new long[] {1}, sorted(changes.changedSince(2)));
+        assertArrayEquals("incorrect changes", new long[] {}, changes.changedSince(3));
+        assertNull("unknown version", changes.changedSince(4));
+    }
+
+    @Test
+    public void prune() {
+        FlowTableChanges changes = new FlowTableChanges();
+        changes.changed(FlowId.valueOf(1));
+        changes.changed(FlowId.valueOf(2));
+        changes.changed(FlowId.valueOf(3));
+
+        changes.prune(2);
+        assertNull("pruned changes", changes.changedSince(1));
+        assertArrayEquals("incorrect changes", new long[] {3}, changes.changedSince(2));
+
+        changes.prune(1);
+        assertArrayEquals("incorrect changes", new long[] {3}, changes.changedSince(2));
+    }
+
+    @Test
+    public void reset() {
+        FlowTableChanges changes = new FlowTableChanges();
+        changes.changed(FlowId.valueOf(1));
+        changes.reset();
+        assertEquals("incorrect version", 2, changes.version());
+        assertNull("changes prior to reset", changes.changedSince(1));
+        assertArrayEquals("incorrect changes", new long[] {}, changes.changedSince(2));
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.store.resource.impl;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import org.onlab.util.ClosedOpenRange;
+
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class CompressedBitmapTest {
+    // more values than a sparse chunk can hold
+    private static final int DENSE = 5000;
+
+    private static CompressedBitmap range(int lowerBound, int upperBound) {
+        return CompressedBitmap.builder().add(lowerBound, upperBound).build();
+    }
+
+    @Test
+    public void testContains() {
+        CompressedBitmap sut = CompressedBitmap.of(1, 70000, -2);
+
+        assertThat(sut.contains(1), is(true));
+        assertThat(sut.contains(70000), is(true));
+        assertThat(sut.contains(-2), is(true));
+        assertThat(sut.contains(2), is(false));
+        assertThat(sut.contains(65536 + 1), is(false));
+        assertThat(sut.cardinality(), is(3));
+    }
+
+    @Test
+    public void testStreamInOrder() {
+        CompressedBitmap sut = CompressedBitmap.of(70000, 5, -2, Integer.MIN_VALUE);
+
+        assertThat(sut.stream().boxed().collect(Collectors.toList()),
+                is(ImmutableList.of(Integer.MIN_VALUE, -2, 5, 70000)));
+        assertThat(sut.first().getAsInt(), is(Integer.MIN_VALUE));
+    }
+
+    @Test
+    public void testRanges() {
+        CompressedBitmap sut = range(65530, 65540).or(CompressedBitmap.of(1, 2, 3, 7));
+
+        assertThat(sut.ranges(), is(ImmutableList.of(
+                ClosedOpenRange.of(1, 4), ClosedOpenRange.of(7, 8), ClosedOpenRange.of(65530, 65540))));
+    }
+
+    @Test
+    public void testOr() {
+        assertThat(CompressedBitmap.of(1, 2).or(CompressedBitmap.of(2, 3)), is(CompressedBitmap.of(1, 2, 3)));
+        assertThat(range(0, 4000).or(range(3000, DENSE)), is(range(0, DENSE)));
+        assertThat(range(0, DENSE).or(CompressedBitmap.of(70000)).cardinality(), is(DENSE + 1));
+    }
+
+    @Test
+    public void testAnd() {
+        assertThat(CompressedBitmap.of(1, 2).and(CompressedBitmap.of(2, 3)), is(CompressedBitmap.of(2)));
+        assertThat(range(0, DENSE).and(CompressedBitmap.of(10, 6000)), is(CompressedBitmap.of(10)));
+        assertThat(range(0, DENSE).and(range(DENSE - 1, 2 * DENSE)), is(CompressedBitmap.of(DENSE - 1)));
+        assertThat(CompressedBitmap.of(1).and(CompressedBitmap.of(70000)).isEmpty(), is(true));
+    }
+
+    @Test
+    public void testAndNot() {
+        assertThat(CompressedBitmap.of(1, 2).andNot(CompressedBitmap.of(2, 3)), is(CompressedBitmap.of(1)));
+        assertThat(CompressedBitmap.of(10, 6000).andNot(range(0, DENSE)), is(CompressedBitmap.of(6000)));
+        assertThat(range(0, DENSE).andNot(range(1, DENSE)), is(CompressedBitmap.of(0)));
+        assertThat(range(0, DENSE).andNot(range(0, DENSE)), is(CompressedBitmap.empty()));
+    }
+}
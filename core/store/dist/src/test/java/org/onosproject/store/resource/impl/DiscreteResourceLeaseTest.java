@@ -0,0 +1,105 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.store.resource.impl;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.onlab.packet.VlanId;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.intent.IntentId;
+import org.onosproject.net.resource.DiscreteResource;
+import org.onosproject.net.resource.DiscreteResourceId;
+import org.onosproject.net.resource.ResourceConsumerId;
+import org.onosproject.net.resource.Resources;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class DiscreteResourceLeaseTest {
+    private static final DeviceId DID = DeviceId.deviceId("device1");
+    private static final PortNumber PN = PortNumber.portNumber(1);
+    private static final DiscreteResourceId PARENT = Resources.discrete(DID, PN).id();
+    private static final ResourceConsumerId CONSUMER1 = IntentId.valueOf(1).consumerId();
+    private static final ResourceConsumerId CONSUMER2 = IntentId.valueOf(2).consumerId();
+
+    private DiscreteResourceLease sut;
+
+    @Before
+    public void setUp() {
+        sut = new DiscreteResourceLease(PARENT, new VlanIdCodec(), 64, 64);
+        sut.hold(64);
+        sut.hold(65);
+        sut.hold(100);
+    }
+
+    private static DiscreteResource vlan(int id) {
+        return Resources.discrete(PARENT, VlanId.vlanId((short) id)).resource();
+    }
+
+    @Test
+    public void testHold() {
+        assertThat(sut.inBlock(63), is(false));
+        assertThat(sut.inBlock(127), is(true));
+        assertThat(sut.inBlock(128), is(false));
+        assertThat(sut.holds(65), is(true));
+        assertThat(sut.holds(66), is(false));
+        assertThat(sut.heldCount(), is(3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testHoldOutsideBlock() {
+        sut.hold(128);
+    }
+
+    @Test
+    public void testAllocate() {
+        assertThat(sut.allocate(64, CONSUMER1), is(true));
+        assertThat(sut.allocate(64, CONSUMER2), is(false));
+        assertThat(sut.allocate(66, CONSUMER2), is(false));
+        assertThat(sut.allocate(100, CONSUMER2), is(true));
+
+        assertThat(sut.consumer(64), is(CONSUMER1));
+        assertThat(sut.consumer(65), is(nullValue()));
+        assertThat(sut.allocatedCount(), is(2));
+        assertThat(sut.resources(CONSUMER2), is(ImmutableList.of(vlan(100))));
+    }
+
+    @Test
+    public void testRelease() {
+        sut.allocate(64, CONSUMER1);
+
+        assertThat(sut.release(64, CONSUMER2), is(false));
+        assertThat(sut.release(64, CONSUMER1), is(true));
+        assertThat(sut.release(64, CONSUMER1), is(false));
+        assertThat(sut.allocatedCount(), is(0));
+        assertThat(sut.allocate(64, CONSUMER2), is(true));
+    }
+
+    @Test
+    public void testDropFree() {
+        sut.allocate(65, CONSUMER1);
+
+        assertThat(sut.dropFree(), is(ImmutableList.of(vlan(64), vlan(100))));
+        assertThat(sut.heldCount(), is(1));
+        assertThat(sut.holds(65), is(true));
+        assertThat(sut.dropAll(), is(ImmutableMap.of(vlan(65), CONSUMER1)));
+        assertThat(sut.heldCount(), is(0));
+    }
+}
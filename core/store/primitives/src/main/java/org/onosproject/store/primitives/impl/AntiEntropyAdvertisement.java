@@ -62,11 +62,21 @@ public class AntiEntropyAdvertisement<K> {
         return digest;
     }
 
+    /**
+     * Returns the buckets of the map covered by the digest.
+     *
+     * @return buckets covered; null for the whole map
+     */
+    public int[] buckets() {
+        return null;
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(getClass())
                 .add("sender", sender)
                 .add("totalEntries", digest.size())
+                .add("buckets", buckets() == null ? "all" : buckets().length)
                 .toString();
     }
 }
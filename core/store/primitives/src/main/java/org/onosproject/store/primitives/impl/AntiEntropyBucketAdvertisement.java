@@ -0,0 +1,50 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.store.primitives.impl;
+
+import org.onosproject.cluster.NodeId;
+
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Anti-entropy advertisement message for eventually consistent map, covering
+ * only the entries in some buckets of the map's anti-entropy tree.
+ */
+public class AntiEntropyBucketAdvertisement<K> extends AntiEntropyAdvertisement<K> {
+
+    private final int[] buckets;
+
+    /**
+     * Creates a new anti entropy advertisement message.
+     *
+     * @param sender  the sender's node ID
+     * @param digest  for map entries in those buckets
+     * @param buckets buckets covered
+     */
+    public AntiEntropyBucketAdvertisement(NodeId sender,
+                                          Map<K, MapValue.Digest> digest,
+                                          int[] buckets) {
+        super(sender, digest);
+        this.buckets = checkNotNull(buckets);
+    }
+
+    @Override
+    public int[] buckets() {
+        return buckets;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.store.primitives.impl;
+
+import com.google.common.base.MoreObjects;
+import org.onosproject.cluster.NodeId;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Anti-entropy advertisement carrying only the root hash of the map, sent
+ * ahead of the digests of any entries.
+ */
+final class AntiEntropyHashAdvertisement {
+
+    private final NodeId sender;
+    private final long root;
+
+    /**
+     * Creates a new root hash advertisement.
+     *
+     * @param sender the sender's node ID
+     * @param root   root hash of the sender's map
+     */
+    public AntiEntropyHashAdvertisement(NodeId sender, long root) {
+        this.sender = checkNotNull(sender);
+        this.root = root;
+    }
+
+    /**
+     * Returns the sender's node ID.
+     *
+     * @return the sender's node ID
+     */
+    public NodeId sender() {
+        return sender;
+    }
+
+    /**
+     * Returns the root hash of the sender's map.
+     *
+     * @return root hash
+     */
+    public long root() {
+        return root;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(getClass())
+                .add("sender", sender)
+                .add("root", root)
+                .toString();
+    }
+}
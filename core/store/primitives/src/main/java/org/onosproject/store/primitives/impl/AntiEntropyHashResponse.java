@@ -0,0 +1,68 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.store.primitives.impl;
+
+import com.google.common.base.MoreObjects;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Response to a root hash advertisement, carrying the bucket hashes of the
+ * receiver's map when the root hashes differ.
+ */
+final class AntiEntropyHashResponse {
+
+    private final AntiEntropyResponse status;
+    private final long[] buckets;
+
+    /**
+     * Creates a new root hash advertisement response.
+     *
+     * @param status  status of the exchange
+     * @param buckets bucket hashes of the receiver's map; null if the root
+     *                hashes match or the advertisement was not processed
+     */
+    public AntiEntropyHashResponse(AntiEntropyResponse status, long[] buckets) {
+        this.status = checkNotNull(status);
+        this.buckets = buckets;
+    }
+
+    /**
+     * Returns the status of the exchange.
+     *
+     * @return exchange status
+     */
+    public AntiEntropyResponse status() {
+        return status;
+    }
+
+    /**
+     * Returns the bucket hashes of the receiver's map.
+     *
+     * @return bucket hashes; null if the maps are in sync
+     */
+    public long[] buckets() {
+        return buckets;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(getClass())
+                .add("status", status)
+                .add("inSync", buckets == null)
+                .toString();
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.store.primitives.impl;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Two level hash tree summarizing the entries of an eventually consistent
+ * map, used to find the parts of the map in which two replicas differ
+ * without exchanging the digest of every entry.
+ * <p>
+ * Keys are spread across a fixed number of buckets. The hash of a bucket
+ * combines the hashes of its entries, each covering the key, the timestamp
+ * and whether the entry is a tombstone, while the root hash combines those
+ * of all entries. Hashes are combined with XOR so that the tree can be
+ * updated incrementally, in any order, as entries change.
+ * </p>
+ * <p>
+ * Entry hashes are 64-bit MurmurHash3 hashes of the serialized key and
+ * timestamp, so that they agree across instances and two distinct entries
+ * are unlikely to cancel each other out. Buckets derive from the hash codes
+ * of keys instead, which are cheaper to compute; keys whose hash codes are
+ * not consistent across instances make their buckets appear to diverge,
+ * falling back to exchanging the digests of all entries in those buckets.
+ * </p>
+ */
+final class AntiEntropyTree {
+
+    /**
+     * Number of buckets keys are spread across; a power of two.
+     */
+    static final int BUCKETS = 1024;
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final Function<Object, byte[]> encoder;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong root = new AtomicLong();
+
+    /**
+     * Creates an empty tree.
+     *
+     * @param encoder encoder of the keys and timestamps of entries
+     */
+    AntiEntropyTree(Function<Object, byte[]> encoder) {
+        this.encoder = checkNotNull(encoder);
+    }
+
+    /**
+     * Returns the bucket of the specified key.
+     *
+     * @param key key
+     * @return bucket index
+     */
+    static int bucket(Object key) {
+        return mix(key.hashCode()) & (BUCKETS - 1);
+    }
+
+    /**
+     * Returns the hash of an entry.
+     *
+     * @param key   entry key
+     * @param value entry value; may be null for no entry
+     * @return entry hash; 0 for no entry
+     */
+    long hash(Object key, MapValue<?> value) {
+        if (value == null) {
+            return 0;
+        }
+        return HASH_FUNCTION.newHasher()
+                .putBytes(encoder.apply(key))
+                .putBytes(encoder.apply(value.timestamp()))
+                .putBoolean(value.isTombstone())
+                .hash()
+                .asLong();
+    }
+
+    /**
+     * Records the change of the entry of a key.
+     *
+     * @param key      entry key
+     * @param oldValue previous value; null if there was no entry
+     * @param newValue new value; null if the entry is gone
+     */
+    void update(Object key, MapValue<?> oldValue, MapValue<?> newValue) {
+        long delta = hash(key, oldValue) ^ hash(key, newValue);
+        if (delta != 0) {
+            buckets.accumulateAndGet(bucket(key), delta, (a, b) -> a ^ b);
+            root.accumulateAndGet(delta, (a, b) -> a ^ b);
+        }
+    }
+
+    /**
+     * Returns the root hash of the tree.
+     *
+     * @return root hash
+     */
+    long root() {
+        return root.get();
+    }
+
+    /**
+     * Returns the hashes of all buckets.
+     *
+     * @return bucket hashes, indexed by bucket
+     */
+    long[] buckets() {
+        long[] hashes = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            hashes[i] = buckets.get(i);
+        }
+        return hashes;
+    }
+
+    /**
+     * Returns the buckets whose hashes differ between two trees.
+     *
+     * @param local  local bucket hashes
+     * @param remote remote bucket hashes
+     * @return indexes of the divergent buckets
+     */
+    static int[] divergentBuckets(long[] local, long[] remote) {
+        if (local.length != remote.length) {
+            return IntStream.range(0, local.length).toArray();
+        }
+        return IntStream.range(0, local.length)
+                .filter(i -> local[i] != remote[i])
+                .toArray();
+    }
+
+    // Finalization mix of MurmurHash3, spreading all input bits
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
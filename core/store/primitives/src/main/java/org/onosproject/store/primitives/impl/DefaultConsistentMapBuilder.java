@@ -15,6 +15,8 @@
  */
 package org.onosproject.store.primitives.impl;
 
+import org.onlab.metrics.MetricsService;
+import org.onlab.osgi.DefaultServiceDirectory;
 import org.onosproject.store.primitives.DistributedPrimitiveCreator;
 import org.onosproject.store.service.AsyncConsistentMap;
 import org.onosproject.store.service.ConsistentMap;
@@ -42,7 +44,12 @@ public class DefaultConsistentMapBuilder<K, V> extends ConsistentMapBuilder<K, V
     @Override
     public AsyncConsistentMap<K, V> buildAsyncMap() {
         AsyncConsistentMap<K, V> map = primitiveCreator.newAsyncConsistentMap(name(), serializer());
-        map = relaxedReadConsistency() ? DistributedPrimitives.newCachingMap(map) : map;
+        if (replicatedReads()) {
+            map = DistributedPrimitives.newReplicatedMap(map, replicaMaxEntries(), replicaMaxStalenessMillis(),
+                    meteringEnabled() ? DefaultServiceDirectory.getService(MetricsService.class) : null);
+        } else {
+            map = relaxedReadConsistency() ? DistributedPrimitives.newCachingMap(map) : map;
+        }
         map = readOnly() ? DistributedPrimitives.newUnmodifiableMap(map) : map;
         return meteringEnabled() ? DistributedPrimitives.newMeteredMap(map) : map;
     }
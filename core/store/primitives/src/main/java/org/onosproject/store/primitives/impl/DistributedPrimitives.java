@@ -17,6 +17,7 @@ package org.onosproject.store.primitives.impl;
 
 import java.util.function.Function;
 
+import org.onlab.metrics.MetricsService;
 import org.onosproject.store.service.AsyncConsistentMap;
 import org.onosproject.store.service.AsyncConsistentMultimap;
 import org.onosproject.store.service.AsyncConsistentTreeMap;
@@ -64,6 +65,24 @@ public final class DistributedPrimitives {
         return new CachingAsyncConsistentMap<>(map);
     }
 
+    /**
+     * Creates an instance of {@code AsyncConsistentMap} that serves reads from a local replica of all entries.
+     *
+     * @param map backing map
+     * @param maxEntries maximum number of entries to replicate
+     * @param maxStalenessMillis maximum time for which reads from the replica may be stale
+     * @param metricsService metrics service; may be null
+     * @return replicated map
+     * @param <K> map key type
+     * @param <V> map value type
+     */
+    public static <K, V> AsyncConsistentMap<K, V> newReplicatedMap(AsyncConsistentMap<K, V> map,
+            int maxEntries,
+            long maxStalenessMillis,
+            MetricsService metricsService) {
+        return new ReplicatedAsyncConsistentMap<>(map, maxEntries, maxStalenessMillis, metricsService);
+    }
+
     /**
      * Creates an instance of {@code AsyncConsistentMap} that disallows updates.
      *
@@ -15,6 +15,7 @@
  */
 package org.onosproject.store.primitives.impl;
 
+import org.onlab.metrics.MetricsService;
 import org.onlab.util.KryoNamespace;
 import org.onosproject.cluster.ClusterService;
 import org.onosproject.cluster.NodeId;
@@ -53,9 +54,11 @@ public class EventuallyConsistentMapBuilderImpl<K, V>
     private long antiEntropyPeriod = 5;
     private TimeUnit antiEntropyTimeUnit = TimeUnit.SECONDS;
     private boolean convergeFaster = false;
+    private int gossipFanout = 0;
     private boolean persistent = false;
     private boolean persistentMap = false;
     private final PersistenceService persistenceService;
+    private final MetricsService metricsService;
 
     /**
      * Creates a new eventually consistent map builder.
@@ -67,7 +70,23 @@ public class EventuallyConsistentMapBuilderImpl<K, V>
     public EventuallyConsistentMapBuilderImpl(ClusterService clusterService,
                                               ClusterCommunicationService clusterCommunicator,
                                               PersistenceService persistenceService) {
+        this(clusterService, clusterCommunicator, persistenceService, null);
+    }
+
+    /**
+     * Creates a new eventually consistent map builder.
+     *
+     * @param clusterService cluster service
+     * @param clusterCommunicator cluster communication service
+     * @param persistenceService persistence service
+     * @param metricsService metrics service used to track anti-entropy; may be null
+     */
+    public EventuallyConsistentMapBuilderImpl(ClusterService clusterService,
+                                              ClusterCommunicationService clusterCommunicator,
+                                              PersistenceService persistenceService,
+                                              MetricsService metricsService) {
         this.persistenceService = persistenceService;
+        this.metricsService = metricsService;
         this.clusterService = checkNotNull(clusterService);
         this.clusterCommunicator = checkNotNull(clusterCommunicator);
     }
@@ -144,6 +163,13 @@ public class EventuallyConsistentMapBuilderImpl<K, V>
         return this;
     }
 
+    @Override
+    public EventuallyConsistentMapBuilder<K, V> withGossip(int fanout) {
+        checkArgument(fanout > 0, "gossip fanout must be greater than 0");
+        gossipFanout = fanout;
+        return this;
+    }
+
     @Override
     public EventuallyConsistentMapBuilder<K, V> withPersistence() {
         checkNotNull(this.persistenceService);
@@ -173,7 +199,9 @@ public class EventuallyConsistentMapBuilderImpl<K, V>
                                                  antiEntropyPeriod,
                                                  antiEntropyTimeUnit,
                                                  convergeFaster,
+                                                 gossipFanout,
                                                  persistent,
-                                                 persistenceService);
+                                                 persistenceService,
+                                                 metricsService);
     }
 }
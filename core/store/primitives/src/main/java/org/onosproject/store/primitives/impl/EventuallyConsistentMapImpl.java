@@ -15,14 +15,20 @@
  */
 package org.onosproject.store.primitives.impl;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import org.apache.commons.lang3.tuple.Pair;
-import org.onlab.util.AbstractAccumulator;
+import org.onlab.metrics.MetricsComponent;
+import org.onlab.metrics.MetricsFeature;
+import org.onlab.metrics.MetricsService;
+import org.onlab.util.AbstractLockFreeAccumulator;
 import org.onlab.util.KryoNamespace;
 import org.onlab.util.SlidingWindowCounter;
 import org.onosproject.cluster.ClusterService;
@@ -42,6 +48,7 @@ import org.onosproject.store.service.WallClockTimestamp;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -55,8 +62,10 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiFunction;
 import java.util.stream.Collectors;
@@ -90,6 +99,7 @@ public class EventuallyConsistentMapImpl<K, V>
 
     private final MessageSubject updateMessageSubject;
     private final MessageSubject antiEntropyAdvertisementSubject;
+    private final MessageSubject antiEntropyHashSubject;
     private final MessageSubject updateRequestSubject;
 
     private final Set<EventuallyConsistentMapListener<K, V>> listeners
@@ -100,11 +110,35 @@ public class EventuallyConsistentMapImpl<K, V>
     private final BiFunction<K, V, Collection<NodeId>> peerUpdateFunction;
 
     private final ExecutorService communicationExecutor;
-    private final Map<NodeId, EventAccumulator> senderPending;
+    private final EventAccumulator senderPending;
+    // Number of peers updates are gossiped to; 0 to send them to all peers
+    private final int gossipFanout;
 
     private long previousTombstonePurgeTime;
     private final Map<NodeId, Long> antiEntropyTimes = Maps.newConcurrentMap();
 
+    // Hashes of the entries, kept current as they change
+    private final AntiEntropyTree tree;
+
+    private static final String METRICS_COMPONENT = "eventuallyConsistentMap";
+    // Numbers the map instances, so that each has metrics of its own
+    private static final AtomicInteger METRICS_INSTANCES = new AtomicInteger();
+    private static final String ANTI_ENTROPY_ROUNDS = "antiEntropyRounds";
+    private static final String DIVERGENT_ROUNDS = "antiEntropyDivergentRounds";
+    private static final String DIVERGENT_BUCKETS = "antiEntropyDivergentBuckets";
+    private static final String ADVERTISEMENT_SIZE = "antiEntropyAdvertisementSize";
+    private static final String SENDER_THROUGHPUT = "senderThroughput";
+    private static final String SENDER_LATENCY = "senderLatencyMillis";
+
+    private final MetricsService metricsService;
+    private final MetricsComponent metricsComponent;
+    // Unique to the map instance, as maps may share a name
+    private final MetricsFeature metricsFeature;
+    private final Counter antiEntropyRounds;
+    private final Counter divergentRounds;
+    private final Histogram divergentBuckets;
+    private final Histogram advertisementSize;
+
     private final String mapName;
 
     private volatile boolean destroyed = false;
@@ -150,8 +184,12 @@ public class EventuallyConsistentMapImpl<K, V>
      * @param antiEntropyPeriod     period that the anti-entropy task should run
      * @param antiEntropyTimeUnit   time unit for anti-entropy period
      * @param convergeFaster        make anti-entropy try to converge faster
+     * @param gossipFanout          number of random peers each update is pushed
+     *                              to, and forwarded to by peers learning of it;
+     *                              0 to send updates to all peers
      * @param persistent            persist data to disk
      * @param persistenceService    persistence service
+     * @param metricsService        metrics service; may be null
      */
     EventuallyConsistentMapImpl(String mapName,
                                 ClusterService clusterService,
@@ -166,10 +204,13 @@ public class EventuallyConsistentMapImpl<K, V>
                                 long antiEntropyPeriod,
                                 TimeUnit antiEntropyTimeUnit,
                                 boolean convergeFaster,
+                                int gossipFanout,
                                 boolean persistent,
-                                PersistenceService persistenceService) {
+                                PersistenceService persistenceService,
+                                MetricsService metricsService) {
         this.mapName = mapName;
         this.serializer = createSerializer(ns);
+        this.tree = new AntiEntropyTree(serializer::encode);
         this.persistenceService = persistenceService;
         this.persistent =
                 persistent;
@@ -178,16 +219,39 @@ public class EventuallyConsistentMapImpl<K, V>
                     .withName(mapName)
                     .withSerializer(this.serializer)
                     .build();
+            items.forEach((key, value) -> tree.update(key, null, value));
         } else {
             items = Maps.newConcurrentMap();
         }
-        senderPending = Maps.newConcurrentMap();
+        senderPending = new EventAccumulator();
+        this.gossipFanout = gossipFanout;
         destroyedMessage = mapName + ERROR_DESTROYED;
 
         this.clusterService = clusterService;
         this.clusterCommunicator = clusterCommunicator;
         this.localNodeId = clusterService.getLocalNode().id();
 
+        this.metricsService = metricsService;
+        if (metricsService != null) {
+            MetricsComponent component = metricsService.registerComponent(METRICS_COMPONENT);
+            MetricsFeature feature = component.registerFeature(mapName + "-" + METRICS_INSTANCES.incrementAndGet());
+            metricsComponent = component;
+            metricsFeature = feature;
+            antiEntropyRounds = metricsService.createCounter(component, feature, ANTI_ENTROPY_ROUNDS);
+            divergentRounds = metricsService.createCounter(component, feature, DIVERGENT_ROUNDS);
+            divergentBuckets = metricsService.createHistogram(component, feature, DIVERGENT_BUCKETS);
+            advertisementSize = metricsService.createHistogram(component, feature, ADVERTISEMENT_SIZE);
+            metricsService.registerMetric(component, feature, SENDER_THROUGHPUT, senderPending.throughput());
+            metricsService.registerMetric(component, feature, SENDER_LATENCY, senderPending.latency());
+        } else {
+            metricsComponent = null;
+            metricsFeature = null;
+            antiEntropyRounds = null;
+            divergentRounds = null;
+            divergentBuckets = null;
+            advertisementSize = null;
+        }
+
         this.timestampProvider = timestampProvider;
 
         if (peerUpdateFunction != null) {
@@ -242,6 +306,13 @@ public class EventuallyConsistentMapImpl<K, V>
                                           serializer::encode,
                                           this.backgroundExecutor);
 
+        antiEntropyHashSubject = new MessageSubject("ecm-" + mapName + "-anti-entropy-hash");
+        clusterCommunicator.addSubscriber(antiEntropyHashSubject,
+                                          serializer::decode,
+                                          this::handleAntiEntropyHashAdvertisement,
+                                          serializer::encode,
+                                          this.backgroundExecutor);
+
         updateRequestSubject = new MessageSubject("ecm-" + mapName + "-update-request");
         clusterCommunicator.addSubscriber(updateRequestSubject,
                                           serializer::decode,
@@ -278,6 +349,9 @@ public class EventuallyConsistentMapImpl<K, V>
                          .register(MapValue.class)
                          .register(MapValue.Digest.class)
                          .register(UpdateRequest.class)
+                         .register(AntiEntropyHashAdvertisement.class)
+                         .register(AntiEntropyHashResponse.class)
+                         .register(AntiEntropyBucketAdvertisement.class)
                          .build(name() + "-ecmap"));
     }
 
@@ -394,6 +468,7 @@ public class EventuallyConsistentMapImpl<K, V>
             }
             if (updated.get()) {
                 previousValue.set(existing);
+                tree.update(k, existing, tombstone.orElse(null));
                 return tombstone.orElse(null);
             } else {
                 return existing;
@@ -422,7 +497,9 @@ public class EventuallyConsistentMapImpl<K, V>
                 updated.set(true);
                 // We return a copy to ensure updates to peers can be serialized.
                 // This prevents replica divergence due to serialization failures.
-                return serializer.copy(newValue);
+                MapValue<V> copy = serializer.copy(newValue);
+                tree.update(k, mv, copy);
+                return copy;
             } else {
                 return mv;
             }
@@ -493,6 +570,7 @@ public class EventuallyConsistentMapImpl<K, V>
         items.compute(key, (k, existing) -> {
             if (existing == null || newValue.isNewerThan(existing)) {
                 updated.set(true);
+                tree.update(k, existing, newValue);
                 return newValue;
             }
             return existing;
@@ -527,6 +605,8 @@ public class EventuallyConsistentMapImpl<K, V>
         clusterCommunicator.removeSubscriber(updateMessageSubject);
         clusterCommunicator.removeSubscriber(updateRequestSubject);
         clusterCommunicator.removeSubscriber(antiEntropyAdvertisementSubject);
+        clusterCommunicator.removeSubscriber(antiEntropyHashSubject);
+        removeMetrics();
         return CompletableFuture.completedFuture(null);
     }
 
@@ -539,13 +619,24 @@ public class EventuallyConsistentMapImpl<K, V>
     }
 
     private void queueUpdate(UpdateEntry<K, V> event, Collection<NodeId> peers) {
-        if (peers == null) {
+        if (peers == null || peers.isEmpty()) {
             // we have no friends :(
             return;
         }
-        peers.forEach(node ->
-                        senderPending.computeIfAbsent(node, unusedKey -> new EventAccumulator(node)).add(event)
-        );
+        senderPending.add(Pair.of(event, peers));
+    }
+
+    /**
+     * Returns the peers to send a batch of updates to, out of those the
+     * updates are meant for; in gossip mode, these are a few random peers.
+     */
+    private Set<NodeId> pickPeers(Set<NodeId> peers) {
+        if (gossipFanout <= 0 || peers.size() <= gossipFanout) {
+            return peers;
+        }
+        List<NodeId> candidates = Lists.newArrayList(peers);
+        Collections.shuffle(candidates, ThreadLocalRandom.current());
+        return ImmutableSet.copyOf(candidates.subList(0, gossipFanout));
     }
 
     private boolean underHighLoad() {
@@ -575,9 +666,67 @@ public class EventuallyConsistentMapImpl<K, V>
         return activePeers.isEmpty() ? Optional.empty() : Optional.of(activePeers.get(0));
     }
 
+    private void removeMetrics() {
+        if (metricsService != null) {
+            MetricsComponent component = metricsComponent;
+            MetricsFeature feature = metricsFeature;
+            metricsService.removeMetric(component, feature, ANTI_ENTROPY_ROUNDS);
+            metricsService.removeMetric(component, feature, DIVERGENT_ROUNDS);
+            metricsService.removeMetric(component, feature, DIVERGENT_BUCKETS);
+            metricsService.removeMetric(component, feature, ADVERTISEMENT_SIZE);
+            metricsService.removeMetric(component, feature, SENDER_THROUGHPUT);
+            metricsService.removeMetric(component, feature, SENDER_LATENCY);
+        }
+    }
+
+    /**
+     * Starts an anti-entropy round with a peer by advertising the root hash
+     * of the map; the digests of entries are only sent for the buckets in
+     * which the peer's map is found to differ.
+     */
     private void sendAdvertisementToPeer(NodeId peer) {
         long adCreationTime = System.currentTimeMillis();
-        AntiEntropyAdvertisement<K> ad = createAdvertisement();
+        if (antiEntropyRounds != null) {
+            antiEntropyRounds.inc();
+        }
+        clusterCommunicator.<AntiEntropyHashAdvertisement, AntiEntropyHashResponse>sendAndReceive(
+                new AntiEntropyHashAdvertisement(localNodeId, tree.root()),
+                antiEntropyHashSubject,
+                serializer::encode,
+                serializer::decode,
+                peer)
+                .whenCompleteAsync((response, error) -> {
+                    if (error != null) {
+                        // The peer may predate the hash advertisements
+                        log.debug("Failed to send anti-entropy hash advertisement to {}: {}",
+                                peer, error.getMessage());
+                        sendAdvertisementToPeer(peer, null, adCreationTime);
+                    } else if (response.status() == AntiEntropyResponse.PROCESSED) {
+                        int[] buckets = response.buckets() == null ? new int[0]
+                                : AntiEntropyTree.divergentBuckets(tree.buckets(), response.buckets());
+                        if (buckets.length == 0) {
+                            // The peer is in sync up to the start of the round
+                            antiEntropyTimes.put(peer, adCreationTime);
+                        } else {
+                            if (divergentRounds != null) {
+                                divergentRounds.inc();
+                                divergentBuckets.update(buckets.length);
+                            }
+                            sendAdvertisementToPeer(peer, buckets, adCreationTime);
+                        }
+                    }
+                }, backgroundExecutor);
+    }
+
+    // Sends the digests of the entries in the given buckets; of all entries if null.
+    private void sendAdvertisementToPeer(NodeId peer, int[] buckets, long adCreationTime) {
+        if (destroyed) {
+            return;
+        }
+        AntiEntropyAdvertisement<K> ad = createAdvertisement(buckets);
+        if (advertisementSize != null) {
+            advertisementSize.update(ad.digest().size());
+        }
         clusterCommunicator.sendAndReceive(ad,
                 antiEntropyAdvertisementSubject,
                 serializer::encode,
@@ -607,9 +756,34 @@ public class EventuallyConsistentMapImpl<K, V>
                 });
     }
 
-    private AntiEntropyAdvertisement<K> createAdvertisement() {
-        return new AntiEntropyAdvertisement<>(localNodeId,
-                ImmutableMap.copyOf(Maps.transformValues(items, MapValue::digest)));
+    private AntiEntropyAdvertisement<K> createAdvertisement(int[] buckets) {
+        if (buckets == null) {
+            return new AntiEntropyAdvertisement<>(localNodeId,
+                    ImmutableMap.copyOf(Maps.transformValues(items, MapValue::digest)));
+        }
+        BitSet scope = toBitSet(buckets);
+        return new AntiEntropyBucketAdvertisement<>(localNodeId,
+                ImmutableMap.copyOf(Maps.transformValues(
+                        Maps.filterKeys(items, key -> scope.get(AntiEntropyTree.bucket(key))),
+                        MapValue::digest)),
+                buckets);
+    }
+
+    private static BitSet toBitSet(int[] buckets) {
+        BitSet bits = new BitSet(AntiEntropyTree.BUCKETS);
+        for (int bucket : buckets) {
+            bits.set(bucket);
+        }
+        return bits;
+    }
+
+    private AntiEntropyHashResponse handleAntiEntropyHashAdvertisement(AntiEntropyHashAdvertisement ad) {
+        if (destroyed || underHighLoad()) {
+            return new AntiEntropyHashResponse(AntiEntropyResponse.IGNORED, null);
+        }
+        // Bucket hashes are only sent back when the maps differ
+        return new AntiEntropyHashResponse(AntiEntropyResponse.PROCESSED,
+                                           ad.root() == tree.root() ? null : tree.buckets());
     }
 
     private AntiEntropyResponse handleAntiEntropyAdvertisement(AntiEntropyAdvertisement<K> ad) {
@@ -634,6 +808,7 @@ public class EventuallyConsistentMapImpl<K, V>
      * 1. If peer has an old entry, updates peer.
      * 2. If peer indicates an entry is removed and has a more recent
      * timestamp than the local entry, update local state.
+     * Only the local entries in the buckets covered by the ad are considered.
      */
     private List<EventuallyConsistentMapEvent<K, V>> antiEntropyCheckLocalItems(
             AntiEntropyAdvertisement<K> ad) {
@@ -642,8 +817,13 @@ public class EventuallyConsistentMapImpl<K, V>
         final List<NodeId> peers = ImmutableList.of(sender);
         Set<K> staleOrMissing = new HashSet<>();
         Set<K> locallyUnknown = new HashSet<>(ad.digest().keySet());
+        BitSet scope = ad.buckets() == null ? null : toBitSet(ad.buckets());
 
         items.forEach((key, localValue) -> {
+            if (scope != null && !scope.get(AntiEntropyTree.bucket(key)) && !ad.digest().containsKey(key)) {
+                // outside of the buckets the peer found to differ
+                return;
+            }
             locallyUnknown.remove(key);
             MapValue.Digest remoteValueDigest = ad.digest().get(key);
             if (remoteValueDigest == null || localValue.isNewerThan(remoteValueDigest.timestamp())) {
@@ -706,7 +886,11 @@ public class EventuallyConsistentMapImpl<K, V>
                                           .filter(e -> e.getValue().creationTime() <= currentSafeTombstonePurgeTime)
                                           .collect(Collectors.toList());
         previousTombstonePurgeTime = currentSafeTombstonePurgeTime;
-        tombStonesToDelete.forEach(entry -> items.remove(entry.getKey(), entry.getValue()));
+        tombStonesToDelete.forEach(entry -> {
+            if (items.remove(entry.getKey(), entry.getValue())) {
+                tree.update(entry.getKey(), entry.getValue(), null);
+            }
+        });
     }
 
     private void processUpdates(Collection<UpdateEntry<K, V>> updates) {
@@ -721,12 +905,28 @@ public class EventuallyConsistentMapImpl<K, V>
                 if (previousValue != null && previousValue.isAlive()) {
                     notifyListeners(new EventuallyConsistentMapEvent<>(mapName, REMOVE, key, previousValue.get()));
                 }
+                // The tombstone is new to this node if it replaced a value or got stored
+                if (previousValue != null || (value != null && items.get(key) == value)) {
+                    gossip(update, previousValue != null ? previousValue.get() : null);
+                }
             } else if (putInternal(key, value)) {
                 notifyListeners(new EventuallyConsistentMapEvent<>(mapName, PUT, key, value.get()));
+                gossip(update, value.get());
             }
         });
     }
 
+    /**
+     * Spreads further an update received from a peer which was news to this
+     * node; updates already known are not forwarded, so that each update
+     * stops spreading once most nodes have it.
+     */
+    private void gossip(UpdateEntry<K, V> update, V value) {
+        if (gossipFanout > 0) {
+            queueUpdate(update, peerUpdateFunction.apply(update.key(), value));
+        }
+    }
+
     private void bootstrap() {
         /*
          * Attempt to get in sync with the cluster when a map is created. This is to help avoid a new node
@@ -762,31 +962,40 @@ public class EventuallyConsistentMapImpl<K, V>
     private static final int DEFAULT_MAX_BATCH_MS = 50;
     private static final Timer TIMER = new Timer("onos-ecm-sender-events");
 
-    private final class EventAccumulator extends AbstractAccumulator<UpdateEntry<K, V>> {
-
-        private final NodeId peer;
+    /**
+     * Batches the updates for all peers, so that each batch of updates
+     * bound for the same peers is encoded once and multicast to them.
+     */
+    private final class EventAccumulator
+            extends AbstractLockFreeAccumulator<Pair<UpdateEntry<K, V>, Collection<NodeId>>> {
 
-        private EventAccumulator(NodeId peer) {
+        private EventAccumulator() {
             super(TIMER, DEFAULT_MAX_EVENTS, DEFAULT_MAX_BATCH_MS, DEFAULT_MAX_IDLE_MS);
-            this.peer = peer;
         }
 
         @Override
-        public void processItems(List<UpdateEntry<K, V>> items) {
-            Map<K, UpdateEntry<K, V>> map = Maps.newHashMap();
-            items.forEach(item -> map.compute(item.key(), (key, existing) ->
-                    item.isNewerThan(existing) ? item : existing));
-            communicationExecutor.execute(() -> {
-                clusterCommunicator.unicast(ImmutableList.copyOf(map.values()),
-                                            updateMessageSubject,
-                                            serializer::encode,
-                                            peer)
-                                   .whenComplete((result, error) -> {
-                                       if (error != null) {
-                                           log.debug("Failed to send to {}", peer, error);
-                                       }
-                                   });
+        public void processItems(List<Pair<UpdateEntry<K, V>, Collection<NodeId>>> items) {
+            Map<K, UpdateEntry<K, V>> latest = Maps.newHashMap();
+            Map<K, Set<NodeId>> peers = Maps.newHashMap();
+            items.forEach(item -> {
+                UpdateEntry<K, V> update = item.getLeft();
+                latest.compute(update.key(), (key, existing) ->
+                        update.isNewerThan(existing) ? update : existing);
+                peers.computeIfAbsent(update.key(), key -> Sets.newHashSet()).addAll(item.getRight());
             });
+
+            Map<Set<NodeId>, List<UpdateEntry<K, V>>> batches = Maps.newHashMap();
+            latest.forEach((key, update) ->
+                    batches.computeIfAbsent(peers.get(key), nodes -> Lists.newArrayList()).add(update));
+            communicationExecutor.execute(() -> batches.forEach((nodes, updates) -> {
+                Set<NodeId> targets = pickPeers(nodes);
+                if (!targets.isEmpty()) {
+                    clusterCommunicator.multicast(updates,
+                                                  updateMessageSubject,
+                                                  serializer::encode,
+                                                  targets);
+                }
+            }));
         }
     }
 }
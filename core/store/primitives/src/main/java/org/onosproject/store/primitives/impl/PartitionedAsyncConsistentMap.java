@@ -41,9 +41,11 @@ import org.onosproject.store.service.MapTransaction;
 import org.onosproject.store.service.Versioned;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 /**
  * {@link AsyncConsistentMap} that has its entries partitioned horizontally across
@@ -99,6 +101,16 @@ public class PartitionedAsyncConsistentMap<K, V> implements AsyncConsistentMap<K
         return getMap(key).get(key);
     }
 
+    @Override
+    public CompletableFuture<Map<K, Versioned<V>>> getAll(Set<K> keys) {
+        return Tools.allOf(groupByMap(keys).entrySet()
+                                           .stream()
+                                           .map(e -> e.getKey().getAll(e.getValue()))
+                                           .collect(Collectors.toList()),
+                (m1, m2) -> ImmutableMap.<K, Versioned<V>>builder().putAll(m1).putAll(m2).build(),
+                ImmutableMap.of());
+    }
+
     @Override
     public CompletableFuture<Versioned<V>> computeIf(K key,
             Predicate<? super V> condition,
@@ -121,6 +133,25 @@ public class PartitionedAsyncConsistentMap<K, V> implements AsyncConsistentMap<K
         return getMap(key).remove(key);
     }
 
+    @Override
+    public CompletableFuture<Void> putAll(Map<K, V> entries) {
+        Map<AsyncConsistentMap<K, V>, Map<K, V>> entriesGroupedByMap = Maps.newIdentityHashMap();
+        entries.forEach((key, value) ->
+                entriesGroupedByMap.computeIfAbsent(getMap(key), k -> Maps.newHashMap()).put(key, value));
+        return CompletableFuture.allOf(entriesGroupedByMap.entrySet()
+                                                          .stream()
+                                                          .map(e -> e.getKey().putAll(e.getValue()))
+                                                          .toArray(CompletableFuture[]::new));
+    }
+
+    @Override
+    public CompletableFuture<Void> removeAll(Set<K> keys) {
+        return CompletableFuture.allOf(groupByMap(keys).entrySet()
+                                                       .stream()
+                                                       .map(e -> e.getKey().removeAll(e.getValue()))
+                                                       .toArray(CompletableFuture[]::new));
+    }
+
     @Override
     public CompletableFuture<Void> clear() {
         return CompletableFuture.allOf(getMaps().stream()
@@ -268,6 +299,17 @@ public class PartitionedAsyncConsistentMap<K, V> implements AsyncConsistentMap<K
         return partitions.get(keyHasher.hash(key));
     }
 
+    /**
+     * Groups keys by the map (partition) to which they map.
+     * @param keys keys
+     * @return keys grouped by map
+     */
+    private Map<AsyncConsistentMap<K, V>, Set<K>> groupByMap(Set<K> keys) {
+        Map<AsyncConsistentMap<K, V>, Set<K>> keysGroupedByMap = Maps.newIdentityHashMap();
+        keys.forEach(key -> keysGroupedByMap.computeIfAbsent(getMap(key), k -> Sets.newHashSet()).add(key));
+        return keysGroupedByMap;
+    }
+
     /**
      * Returns all the constituent maps.
      * @return collection of maps.
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.store.primitives.impl;
+
+import static org.onosproject.store.service.DistributedPrimitive.Status.ACTIVE;
+import static org.onosproject.store.service.DistributedPrimitive.Status.INACTIVE;
+import static org.onosproject.store.service.DistributedPrimitive.Status.SUSPENDED;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import org.onlab.metrics.MetricsComponent;
+import org.onlab.metrics.MetricsFeature;
+import org.onlab.metrics.MetricsService;
+import org.onosproject.store.service.AsyncConsistentMap;
+import org.onosproject.store.service.MapEvent;
+import org.onosproject.store.service.MapEventListener;
+import org.onosproject.store.service.Versioned;
+import org.slf4j.Logger;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * {@code AsyncConsistentMap} that serves reads from a local replica of all the
+ * entries of the backing map.
+ * <p>
+ * The replica is loaded from the backing map and kept current by the map
+ * events, applying an update to an entry only if it carries a more recent
+ * version than the one replicated. Reads of single entries as well as of the
+ * whole map are served from the replica as long as it is known to be in sync;
+ * once the backing map gets suspended, the replica is still read for up to
+ * the configured staleness bound, after which reads go to the backing map
+ * until the replica is loaded anew. Maps with more entries than the configured
+ * limit are not replicated.
+ * <p>
+ * Updates always go to the backing map; since events are delivered before the
+ * updates that caused them complete, reads from the replica reflect the
+ * updates made locally.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class ReplicatedAsyncConsistentMap<K, V> extends DelegatingAsyncConsistentMap<K, V> {
+
+    private static final String PRIMITIVE_NAME = "consistentMap";
+    private static final String HITS = "replicaHits";
+    private static final String MISSES = "replicaMisses";
+    private static final String STALENESS = "replicaStalenessMillis";
+
+    private final Logger log = getLogger(getClass());
+
+    private final int maxEntries;
+    private final long maxStalenessMillis;
+
+    private final Map<K, Versioned<V>> replica = Maps.newConcurrentMap();
+    // Events received while the replica is being loaded; null otherwise
+    private List<MapEvent<K, V>> pendingEvents;
+    private volatile boolean synced = false;
+    // Time the backing map got suspended at; 0 while in sync
+    private volatile long suspendedSince = 0;
+
+    private final MapEventListener<K, V> replicaUpdater = this::update;
+    private final Consumer<Status> statusListener;
+
+    private final MetricsService metricsService;
+    private final Counter hits;
+    private final Counter misses;
+    private final Histogram staleness;
+
+    /**
+     * Creates a map replicating the entries of a backing map.
+     *
+     * @param backingMap a distributed, strongly consistent map for backing
+     * @param maxEntries maximum number of entries to replicate
+     * @param maxStalenessMillis maximum time after the backing map gets
+     *                           suspended for which the replica is read
+     * @param metricsService metrics service; may be null
+     */
+    public ReplicatedAsyncConsistentMap(AsyncConsistentMap<K, V> backingMap,
+                                        int maxEntries,
+                                        long maxStalenessMillis,
+                                        MetricsService metricsService) {
+        super(backingMap);
+        this.maxEntries = maxEntries;
+        this.maxStalenessMillis = maxStalenessMillis;
+        this.metricsService = metricsService;
+        if (metricsService != null) {
+            MetricsComponent component = metricsService.registerComponent(PRIMITIVE_NAME);
+            MetricsFeature feature = component.registerFeature(backingMap.name());
+            hits = metricsService.createCounter(component, feature, HITS);
+            misses = metricsService.createCounter(component, feature, MISSES);
+            staleness = metricsService.createHistogram(component, feature, STALENESS);
+        } else {
+            hits = null;
+            misses = null;
+            staleness = null;
+        }
+        statusListener = status -> {
+            log.debug("{} status changed to {}", this.name(), status);
+            if (status == SUSPENDED) {
+                if (suspendedSince == 0) {
+                    suspendedSince = System.currentTimeMillis();
+                }
+            } else if (status == INACTIVE) {
+                synced = false;
+            } else if (status == ACTIVE && (suspendedSince != 0 || !synced)) {
+                // Events may have been missed meanwhile
+                load();
+            }
+        };
+        super.addStatusChangeListener(statusListener);
+        super.addListener(replicaUpdater).thenRun(this::load);
+    }
+
+    @Override
+    public CompletableFuture<Void> destroy() {
+        super.removeStatusChangeListener(statusListener);
+        removeMetrics();
+        return super.destroy().thenCompose(v -> removeListener(replicaUpdater));
+    }
+
+    private void removeMetrics() {
+        if (metricsService != null) {
+            MetricsComponent component = metricsService.registerComponent(PRIMITIVE_NAME);
+            MetricsFeature feature = component.registerFeature(name());
+            metricsService.removeMetric(component, feature, HITS);
+            metricsService.removeMetric(component, feature, MISSES);
+            metricsService.removeMetric(component, feature, STALENESS);
+        }
+    }
+
+    /**
+     * Loads the replica from the backing map, applying the events received
+     * meanwhile once it is loaded.
+     */
+    private synchronized void load() {
+        if (pendingEvents != null) {
+            return;
+        }
+        synced = false;
+        pendingEvents = Lists.newArrayList();
+        super.entrySet().whenComplete((entries, error) -> {
+            synchronized (this) {
+                List<MapEvent<K, V>> events = pendingEvents;
+                pendingEvents = null;
+                replica.clear();
+                if (error != null) {
+                    log.warn("Failed to load replica of {}", name(), error);
+                    return;
+                }
+                if (entries.size() > maxEntries) {
+                    log.warn("Not replicating {}, as its {} entries exceed the limit of {}",
+                             name(), entries.size(), maxEntries);
+                    return;
+                }
+                entries.forEach(entry -> replica.put(entry.getKey(), entry.getValue()));
+                events.forEach(this::apply);
+                suspendedSince = 0;
+                synced = replica.size() <= maxEntries;
+            }
+        });
+    }
+
+    private synchronized void update(MapEvent<K, V> event) {
+        if (pendingEvents != null) {
+            pendingEvents.add(event);
+        } else if (synced) {
+            apply(event);
+            if (replica.size() > maxEntries) {
+                log.warn("No longer replicating {}, as it exceeds the limit of {} entries", name(), maxEntries);
+                synced = false;
+                replica.clear();
+            }
+        }
+    }
+
+    private void apply(MapEvent<K, V> event) {
+        Versioned<V> newValue = event.newValue();
+        if (newValue != null) {
+            replica.merge(event.key(), newValue,
+                          (current, value) -> value.version() > current.version() ? value : current);
+        } else {
+            Versioned<V> oldValue = event.oldValue();
+            replica.computeIfPresent(event.key(), (key, current) ->
+                    oldValue == null || current.version() <= oldValue.version() ? null : current);
+        }
+    }
+
+    /**
+     * Indicates whether reads can be served from the replica, recording the
+     * outcome.
+     *
+     * @return true if the replica is to be read
+     */
+    private boolean readReplica() {
+        boolean read = synced;
+        long since = suspendedSince;
+        long age = since == 0 ? 0 : System.currentTimeMillis() - since;
+        if (read && age > maxStalenessMillis) {
+            read = false;
+        }
+        if (hits != null) {
+            if (read) {
+                hits.inc();
+                staleness.update(age);
+            } else {
+                misses.inc();
+            }
+        }
+        return read;
+    }
+
+    @Override
+    public CompletableFuture<Integer> size() {
+        return readReplica() ? CompletableFuture.completedFuture(replica.size()) : super.size();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> isEmpty() {
+        return readReplica() ? CompletableFuture.completedFuture(replica.isEmpty()) : super.isEmpty();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> containsKey(K key) {
+        return readReplica() ? CompletableFuture.completedFuture(replica.containsKey(key)) : super.containsKey(key);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> containsValue(V value) {
+        if (readReplica()) {
+            return CompletableFuture.completedFuture(replica.values().stream()
+                    .anyMatch(versioned -> Objects.equals(versioned.value(), value)));
+        }
+        return super.containsValue(value);
+    }
+
+    @Override
+    public CompletableFuture<Versioned<V>> get(K key) {
+        return readReplica() ? CompletableFuture.completedFuture(replica.get(key)) : super.get(key);
+    }
+
+    @Override
+    public CompletableFuture<Map<K, Versioned<V>>> getAll(Set<K> keys) {
+        if (readReplica()) {
+            Map<K, Versioned<V>> values = Maps.newHashMap();
+            keys.forEach(key -> {
+                Versioned<V> value = replica.get(key);
+                if (value != null) {
+                    values.put(key, value);
+                }
+            });
+            return CompletableFuture.completedFuture(values);
+        }
+        return super.getAll(keys);
+    }
+
+    @Override
+    public CompletableFuture<Set<K>> keySet() {
+        return readReplica() ? CompletableFuture.completedFuture(ImmutableSet.copyOf(replica.keySet()))
+                : super.keySet();
+    }
+
+    @Override
+    public CompletableFuture<Collection<Versioned<V>>> values() {
+        return readReplica() ? CompletableFuture.completedFuture(ImmutableList.copyOf(replica.values()))
+                : super.values();
+    }
+
+    @Override
+    public CompletableFuture<Set<Entry<K, Versioned<V>>>> entrySet() {
+        if (readReplica()) {
+            ImmutableSet.Builder<Entry<K, Versioned<V>>> entries = ImmutableSet.builder();
+            replica.forEach((key, value) -> entries.add(Maps.immutableEntry(key, value)));
+            return CompletableFuture.completedFuture(entries.build());
+        }
+        return super.entrySet();
+    }
+}
@@ -35,6 +35,8 @@ import org.onosproject.store.service.MapTransaction;
 import org.onosproject.store.service.Versioned;
 
 import com.google.common.base.MoreObjects;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 /**
  * {@link AtomixConsistentMap} resource state machine operations.
@@ -438,6 +440,142 @@ public final class AtomixConsistentMapCommands {
         }
     }
 
+    /**
+     * Get all query.
+     */
+    @SuppressWarnings("serial")
+    public static class GetAll extends MapQuery<Map<String, Versioned<byte[]>>> {
+        private Set<String> keys;
+
+        public GetAll() {
+        }
+
+        public GetAll(Set<String> keys) {
+            this.keys = Sets.newHashSet(Assert.notNull(keys, "keys"));
+        }
+
+        /**
+         * Returns the keys.
+         * @return keys
+         */
+        public Set<String> keys() {
+            return keys;
+        }
+
+        @Override
+        public void writeObject(BufferOutput<?> buffer, Serializer serializer) {
+            super.writeObject(buffer, serializer);
+            serializer.writeObject(keys, buffer);
+        }
+
+        @Override
+        public void readObject(BufferInput<?> buffer, Serializer serializer) {
+            super.readObject(buffer, serializer);
+            keys = serializer.readObject(buffer);
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(getClass())
+                    .add("keys", keys)
+                    .toString();
+        }
+    }
+
+    /**
+     * Put all command.
+     */
+    @SuppressWarnings("serial")
+    public static class PutAll extends MapCommand<MapEntryUpdateResult.Status> {
+        private Map<String, byte[]> entries;
+
+        public PutAll() {
+        }
+
+        public PutAll(Map<String, byte[]> entries) {
+            this.entries = Maps.newHashMap(Assert.notNull(entries, "entries"));
+        }
+
+        /**
+         * Returns the entries.
+         * @return entries
+         */
+        public Map<String, byte[]> entries() {
+            return entries;
+        }
+
+        @Override
+        public CompactionMode compaction() {
+          return CompactionMode.QUORUM;
+        }
+
+        @Override
+        public void writeObject(BufferOutput<?> buffer, Serializer serializer) {
+            super.writeObject(buffer, serializer);
+            serializer.writeObject(entries, buffer);
+        }
+
+        @Override
+        public void readObject(BufferInput<?> buffer, Serializer serializer) {
+            super.readObject(buffer, serializer);
+            entries = serializer.readObject(buffer);
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(getClass())
+                    .add("keys", entries.keySet())
+                    .toString();
+        }
+    }
+
+    /**
+     * Remove all command.
+     */
+    @SuppressWarnings("serial")
+    public static class RemoveAll extends MapCommand<MapEntryUpdateResult.Status> {
+        private Set<String> keys;
+
+        public RemoveAll() {
+        }
+
+        public RemoveAll(Set<String> keys) {
+            this.keys = Sets.newHashSet(Assert.notNull(keys, "keys"));
+        }
+
+        /**
+         * Returns the keys.
+         * @return keys
+         */
+        public Set<String> keys() {
+            return keys;
+        }
+
+        @Override
+        public CompactionMode compaction() {
+          return CompactionMode.FULL;
+        }
+
+        @Override
+        public void writeObject(BufferOutput<?> buffer, Serializer serializer) {
+            super.writeObject(buffer, serializer);
+            serializer.writeObject(keys, buffer);
+        }
+
+        @Override
+        public void readObject(BufferInput<?> buffer, Serializer serializer) {
+            super.readObject(buffer, serializer);
+            keys = serializer.readObject(buffer);
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(getClass())
+                    .add("keys", keys)
+                    .toString();
+        }
+    }
+
     /**
      * Is empty query.
      */
@@ -535,6 +673,9 @@ public final class AtomixConsistentMapCommands {
             registry.register(TransactionRollback.class, -774);
             registry.register(TransactionPrepareAndCommit.class, -775);
             registry.register(UpdateAndGet.class, -776);
+            registry.register(GetAll.class, -777);
+            registry.register(PutAll.class, -778);
+            registry.register(RemoveAll.class, -779);
         }
     }
 }
@@ -48,9 +48,12 @@ import org.onosproject.store.primitives.resources.impl.AtomixConsistentMapComman
 import org.onosproject.store.primitives.resources.impl.AtomixConsistentMapCommands.ContainsValue;
 import org.onosproject.store.primitives.resources.impl.AtomixConsistentMapCommands.EntrySet;
 import org.onosproject.store.primitives.resources.impl.AtomixConsistentMapCommands.Get;
+import org.onosproject.store.primitives.resources.impl.AtomixConsistentMapCommands.GetAll;
 import org.onosproject.store.primitives.resources.impl.AtomixConsistentMapCommands.IsEmpty;
 import org.onosproject.store.primitives.resources.impl.AtomixConsistentMapCommands.KeySet;
 import org.onosproject.store.primitives.resources.impl.AtomixConsistentMapCommands.Listen;
+import org.onosproject.store.primitives.resources.impl.AtomixConsistentMapCommands.PutAll;
+import org.onosproject.store.primitives.resources.impl.AtomixConsistentMapCommands.RemoveAll;
 import org.onosproject.store.primitives.resources.impl.AtomixConsistentMapCommands.Size;
 import org.onosproject.store.primitives.resources.impl.AtomixConsistentMapCommands.TransactionCommit;
 import org.onosproject.store.primitives.resources.impl.AtomixConsistentMapCommands.TransactionPrepare;
@@ -105,12 +108,15 @@ public class AtomixConsistentMapState extends ResourceStateMachine implements Se
         executor.register(ContainsValue.class, this::containsValue);
         executor.register(EntrySet.class, this::entrySet);
         executor.register(Get.class, this::get);
+        executor.register(GetAll.class, this::getAll);
         executor.register(IsEmpty.class, this::isEmpty);
         executor.register(KeySet.class, this::keySet);
         executor.register(Size.class, this::size);
         executor.register(Values.class, this::values);
         // Commands
         executor.register(UpdateAndGet.class, this::updateAndGet);
+        executor.register(PutAll.class, this::putAll);
+        executor.register(RemoveAll.class, this::removeAll);
         executor.register(AtomixConsistentMapCommands.Clear.class, this::clear);
         executor.register(TransactionPrepare.class, this::prepare);
         executor.register(TransactionCommit.class, this::commit);
@@ -175,6 +181,27 @@ public class AtomixConsistentMapState extends ResourceStateMachine implements Se
         }
     }
 
+    /**
+     * Handles a get all commit.
+     *
+     * @param commit getAll commit
+     * @return values mapped to the keys that are present
+     */
+    protected Map<String, Versioned<byte[]>> getAll(Commit<? extends GetAll> commit) {
+        try {
+            Map<String, Versioned<byte[]>> values = new HashMap<>();
+            commit.operation().keys().forEach(key -> {
+                Versioned<byte[]> value = toVersioned(mapEntries.get(key));
+                if (value != null) {
+                    values.put(key, value);
+                }
+            });
+            return values;
+        } finally {
+            commit.close();
+        }
+    }
+
     /**
      * Handles a count commit.
      *
@@ -295,6 +322,75 @@ public class AtomixConsistentMapState extends ResourceStateMachine implements Se
         }
     }
 
+    /**
+     * Handles a put all commit.
+     * <p>
+     * The entries are put only if none of their keys is locked by a
+     * transaction; all the entries refer to the commit, which is released
+     * once they have all been replaced or removed.
+     *
+     * @param commit putAll commit
+     * @return update status
+     */
+    protected MapEntryUpdateResult.Status putAll(Commit<? extends PutAll> commit) {
+        try {
+            Map<String, byte[]> entries = commit.operation().entries();
+            if (entries.keySet().stream().anyMatch(preparedKeys::contains)) {
+                commit.close();
+                return MapEntryUpdateResult.Status.WRITE_LOCK;
+            }
+            CountDownCompleter<Commit<? extends PutAll>> completer =
+                    new CountDownCompleter<>(commit, entries.size(), Commit::close);
+            List<MapEvent<String, byte[]>> eventsToPublish = Lists.newArrayList();
+            entries.keySet().forEach(key -> {
+                MapEntryValue newValue = new BatchCommit(key, versionCounter.incrementAndGet(), completer);
+                MapEntryValue previousValue = mapEntries.put(key, newValue);
+                eventsToPublish.add(new MapEvent<>("", key, toVersioned(newValue), toVersioned(previousValue)));
+                if (previousValue != null) {
+                    previousValue.discard();
+                }
+            });
+            if (!eventsToPublish.isEmpty()) {
+                publish(eventsToPublish);
+            }
+            return MapEntryUpdateResult.Status.OK;
+        } catch (Exception e) {
+            log.error("State machine operation failed", e);
+            throw Throwables.propagate(e);
+        }
+    }
+
+    /**
+     * Handles a remove all commit.
+     * <p>
+     * The keys are removed only if none of them is locked by a transaction.
+     *
+     * @param commit removeAll commit
+     * @return update status
+     */
+    protected MapEntryUpdateResult.Status removeAll(Commit<? extends RemoveAll> commit) {
+        try {
+            Set<String> keys = commit.operation().keys();
+            if (keys.stream().anyMatch(preparedKeys::contains)) {
+                return MapEntryUpdateResult.Status.WRITE_LOCK;
+            }
+            List<MapEvent<String, byte[]>> eventsToPublish = Lists.newArrayList();
+            keys.forEach(key -> {
+                MapEntryValue previousValue = mapEntries.remove(key);
+                if (previousValue != null) {
+                    eventsToPublish.add(new MapEvent<>("", key, null, toVersioned(previousValue)));
+                    previousValue.discard();
+                }
+            });
+            if (!eventsToPublish.isEmpty()) {
+                publish(eventsToPublish);
+            }
+            return MapEntryUpdateResult.Status.OK;
+        } finally {
+            commit.close();
+        }
+    }
+
     /**
      * Handles a clear commit.
      *
@@ -616,6 +712,36 @@ public class AtomixConsistentMapState extends ResourceStateMachine implements Se
         }
     }
 
+    /**
+     * A {@code MapEntryValue} that is derived from a put all command.
+     */
+    private class BatchCommit implements MapEntryValue {
+        private final String key;
+        private final long version;
+        private final CountDownCompleter<Commit<? extends PutAll>> completer;
+
+        public BatchCommit(String key, long version, CountDownCompleter<Commit<? extends PutAll>> completer) {
+            this.key = key;
+            this.version = version;
+            this.completer = completer;
+        }
+
+        @Override
+        public byte[] value() {
+            return completer.object().operation().entries().get(key);
+        }
+
+        @Override
+        public long version() {
+            return version;
+        }
+
+        @Override
+        public void discard() {
+            completer.countDown();
+        }
+    }
+
     /**
      * A {@code MapEntryValue} that is derived from updates submitted via a
      * transaction.
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.store.primitives.impl;
+
+import org.junit.Test;
+import org.onlab.util.KryoNamespace;
+import org.onosproject.store.LogicalTimestamp;
+import org.onosproject.store.serializers.KryoNamespaces;
+import org.onosproject.store.serializers.StoreSerializer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the anti-entropy hash tree.
+ */
+public class AntiEntropyTreeTest {
+
+    private static final StoreSerializer SERIALIZER = StoreSerializer.using(KryoNamespace.newBuilder()
+            .register(KryoNamespaces.BASIC)
+            .register(LogicalTimestamp.class)
+            .build());
+
+    private static AntiEntropyTree tree() {
+        return new AntiEntropyTree(SERIALIZER::encode);
+    }
+
+    private static MapValue<String> value(String value, long timestamp) {
+        return new MapValue<>(value, new LogicalTimestamp(timestamp));
+    }
+
+    @Test
+    public void updates() {
+        AntiEntropyTree tree = tree();
+        assertEquals("incorrect root", 0, tree.root());
+
+        MapValue<String> v1 = value("a", 1);
+        tree.update("key", null, v1);
+        long root = tree.root();
+        assertNotEquals("root should change", 0, root);
+        assertEquals("incorrect bucket hash", root, tree.buckets()[AntiEntropyTree.bucket("key")]);
+
+        // A newer value or a tombstone changes the hash of the entry
+        MapValue<String> v2 = value("a", 2);
+        tree.update("key", v1, v2);
+        assertNotEquals("root should change", root, tree.root());
+        MapValue<String> tombstone = MapValue.tombstone(new LogicalTimestamp(2));
+        tree.update("key", v2, tombstone);
+        assertNotEquals("tombstone should differ", tree.hash("key", v2), tree.root());
+        assertEquals("incorrect root", tree.hash("key", tombstone), tree.root());
+
+        tree.update("key", tombstone, null);
+        assertEquals("incorrect root", 0, tree.root());
+        assertArrayEquals("incorrect buckets", new long[AntiEntropyTree.BUCKETS], tree.buckets());
+    }
+
+    @Test
+    public void sameHashCodes() {
+        // Keys with equal hash codes and values with equal timestamps
+        // must not cancel each other out.
+        AntiEntropyTree tree = tree();
+        assertEquals("keys should share hash codes", "Aa".hashCode(), "BB".hashCode());
+        tree.update("Aa", null, value("v", 1));
+        tree.update("BB", null, value("v", 1));
+        assertNotEquals("entries cancelled out", 0, tree.root());
+    }
+
+    @Test
+    public void orderIndependent() {
+        AntiEntropyTree first = tree();
+        AntiEntropyTree second = tree();
+        for (int i = 0; i < 100; i++) {
+            first.update("key" + i, null, value("v", i));
+        }
+        for (int i = 99; i >= 0; i--) {
+            second.update("key" + i, null, value("v", i));
+        }
+        assertEquals("roots should match", first.root(), second.root());
+        assertEquals("no bucket should diverge", 0,
+                     AntiEntropyTree.divergentBuckets(first.buckets(), second.buckets()).length);
+    }
+
+    @Test
+    public void divergence() {
+        AntiEntropyTree local = tree();
+        AntiEntropyTree remote = tree();
+        for (int i = 0; i < 100; i++) {
+            local.update("key" + i, null, value("v", 1));
+            remote.update("key" + i, null, value("v", 1));
+        }
+        remote.update("key7", value("v", 1), value("v", 2));
+        remote.update("extra", null, value("v", 1));
+
+        int[] divergent = AntiEntropyTree.divergentBuckets(local.buckets(), remote.buckets());
+        int bucket7 = AntiEntropyTree.bucket("key7");
+        int extraBucket = AntiEntropyTree.bucket("extra");
+        assertEquals("incorrect divergent buckets", bucket7 == extraBucket ? 1 : 2, divergent.length);
+        for (int bucket : divergent) {
+            assertTrue("unexpected bucket", bucket == bucket7 || bucket == extraBucket);
+        }
+    }
+}
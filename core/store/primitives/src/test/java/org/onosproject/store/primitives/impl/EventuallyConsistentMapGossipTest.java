@@ -0,0 +1,373 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.store.primitives.impl;
+
+import com.google.common.collect.Maps;
+import org.junit.After;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.onlab.packet.IpAddress;
+import org.onlab.util.KryoNamespace;
+import org.onosproject.cluster.ClusterServiceAdapter;
+import org.onosproject.cluster.ControllerNode;
+import org.onosproject.cluster.DefaultControllerNode;
+import org.onosproject.cluster.NodeId;
+import org.onosproject.store.LogicalTimestamp;
+import org.onosproject.store.cluster.messaging.ClusterCommunicationServiceAdapter;
+import org.onosproject.store.cluster.messaging.MessageSubject;
+import org.onosproject.store.serializers.KryoNamespaces;
+import org.onosproject.store.service.EventuallyConsistentMap;
+import org.onosproject.store.service.EventuallyConsistentMapBuilder;
+import org.slf4j.Logger;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Tests the replication of updates across a simulated cluster of eventually
+ * consistent maps, both multicasting them to all peers and gossiping them.
+ */
+public class EventuallyConsistentMapGossipTest {
+
+    private static final String MAP_NAME = "gossip-test";
+    private static final int KEYS_PER_NODE = 100;
+
+    private final Logger log = getLogger(getClass());
+
+    private final AtomicLong clock = new AtomicLong();
+    private SimulatedCluster cluster;
+
+    @After
+    public void tearDown() {
+        if (cluster != null) {
+            cluster.destroy();
+        }
+    }
+
+    @Test
+    public void multicastConvergence() throws Exception {
+        cluster = new SimulatedCluster(3, 0);
+        cluster.putAll(KEYS_PER_NODE);
+        assertTrue("maps should converge", cluster.awaitConvergence(10, TimeUnit.SECONDS));
+
+        // Each batch of updates is encoded once and sent to all peers
+        assertEquals("incorrect fanout", 2, cluster.maxFanout.get());
+        assertEquals("incorrect messages", cluster.multicasts.sum() * 2, cluster.updateMessages.sum());
+    }
+
+    @Test
+    public void gossipSpread() throws Exception {
+        // Anti-entropy traffic is dropped, so updates only spread by gossip
+        cluster = new SimulatedCluster(7, 2, false);
+        cluster.putAll(KEYS_PER_NODE);
+        cluster.awaitQuiescence(200, TimeUnit.MILLISECONDS);
+        assertTrue("incorrect fanout", cluster.maxFanout.get() <= 2);
+
+        // Each update reaches the peers it is sent to, which forward it further
+        Map<String, Integer> replicas = cluster.replicas();
+        assertEquals("missing updates", cluster.expected.keySet(), replicas.keySet());
+        assertTrue("update not sent to enough peers", replicas.values().stream().allMatch(n -> n >= 1 + 2));
+        assertTrue("updates not forwarded",
+                   replicas.values().stream().mapToInt(n -> n).sum() > replicas.size() * (1 + 2));
+    }
+
+    @Test
+    public void gossipConvergence() throws Exception {
+        cluster = new SimulatedCluster(7, 2);
+        cluster.putAll(KEYS_PER_NODE);
+        // The few updates missed by the gossip are recovered by anti-entropy
+        assertTrue("maps should converge", cluster.awaitConvergence(30, TimeUnit.SECONDS));
+        assertTrue("incorrect fanout", cluster.maxFanout.get() <= 2);
+    }
+
+    @Test
+    public void peersWithoutHashTrees() throws Exception {
+        cluster = new SimulatedCluster(3, 0);
+        // Peers predating the hash trees do not answer hash advertisements
+        cluster.nodes.values().forEach(node -> node.responders.remove(cluster.antiEntropyHashSubject));
+        cluster.putAll(KEYS_PER_NODE);
+        assertTrue("maps should converge", cluster.awaitConvergence(10, TimeUnit.SECONDS));
+
+        // Anti-entropy falls back to advertising the digests of all entries
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (cluster.fullAdvertisements.sum() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue("no full advertisement sent", cluster.fullAdvertisements.sum() > 0);
+    }
+
+    /**
+     * Compares the messages sent, the CPU used and the time taken for
+     * clusters of several sizes to converge, multicasting and gossiping.
+     */
+    @Test
+    @Ignore("benchmark")
+    public void benchmark() throws Exception {
+        log.info(String.format("%5s %7s %10s %12s %10s %12s",
+                               "nodes", "fanout", "messages", "messages/s", "cpu ms", "converged ms"));
+        for (int nodes : new int[]{3, 7, 15}) {
+            for (int fanout : new int[]{0, 3}) {
+                cluster = new SimulatedCluster(nodes, fanout);
+                long cpu = cpuTime();
+                long start = System.nanoTime();
+                cluster.putAll(KEYS_PER_NODE * 10);
+                boolean converged = cluster.awaitConvergence(60, TimeUnit.SECONDS);
+                long elapsed = System.nanoTime() - start;
+                cpu = cpuTime() - cpu;
+                long messages = cluster.updateMessages.sum();
+                log.info(String.format("%5d %7d %10d %12.0f %10d %12s",
+                                       nodes, fanout, messages,
+                                       messages * 1e9 / elapsed,
+                                       TimeUnit.NANOSECONDS.toMillis(cpu),
+                                       converged ? TimeUnit.NANOSECONDS.toMillis(elapsed) : "-"));
+                cluster.destroy();
+                cluster = null;
+            }
+        }
+    }
+
+    // Returns the CPU time used so far by the live threads, in nanoseconds.
+    private static long cpuTime() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        return Arrays.stream(threads.getAllThreadIds())
+                .map(threads::getThreadCpuTime)
+                .filter(time -> time > 0)
+                .sum();
+    }
+
+    /**
+     * Cluster of eventually consistent maps exchanging messages in memory.
+     */
+    private final class SimulatedCluster {
+
+        private final Map<NodeId, SimulatedNode> nodes = Maps.newConcurrentMap();
+        private final Set<ControllerNode> controllerNodes;
+        private final MessageSubject updateSubject = new MessageSubject("ecm-" + MAP_NAME + "-update");
+        private final MessageSubject antiEntropySubject = new MessageSubject("ecm-" + MAP_NAME + "-anti-entropy");
+        private final MessageSubject antiEntropyHashSubject =
+                new MessageSubject("ecm-" + MAP_NAME + "-anti-entropy-hash");
+        private final Map<String, String> expected = Maps.newConcurrentMap();
+
+        private final LongAdder multicasts = new LongAdder();
+        private final LongAdder updateMessages = new LongAdder();
+        private final LongAdder fullAdvertisements = new LongAdder();
+        private final AtomicInteger maxFanout = new AtomicInteger();
+
+        private final boolean antiEntropy;
+
+        private SimulatedCluster(int size, int gossipFanout) {
+            this(size, gossipFanout, true);
+        }
+
+        /**
+         * Creates a cluster; without anti-entropy, all anti-entropy messages
+         * are dropped, so that updates only spread through update messages.
+         */
+        private SimulatedCluster(int size, int gossipFanout, boolean antiEntropy) {
+            this.antiEntropy = antiEntropy;
+            controllerNodes = IntStream.range(0, size)
+                    .mapToObj(i -> new DefaultControllerNode(new NodeId("node" + i), IpAddress.valueOf(i + 1)))
+                    .collect(Collectors.toSet());
+            controllerNodes.forEach(node -> nodes.put(node.id(), new SimulatedNode(node)));
+            nodes.values().forEach(node -> node.createMap(gossipFanout));
+        }
+
+        /**
+         * Puts distinct keys into the map of every node.
+         */
+        private void putAll(int keysPerNode) {
+            nodes.values().forEach(node -> {
+                for (int i = 0; i < keysPerNode; i++) {
+                    String key = node.controllerNode.id() + "-" + i;
+                    expected.put(key, key);
+                    node.map.put(key, key);
+                }
+            });
+        }
+
+        private boolean awaitConvergence(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (System.nanoTime() < deadline) {
+                if (nodes.values().stream().allMatch(node -> expected.equals(node.snapshot()))) {
+                    return true;
+                }
+                Thread.sleep(10);
+            }
+            return false;
+        }
+
+        private void destroy() {
+            nodes.values().forEach(node -> node.map.destroy());
+        }
+
+        /**
+         * Waits until no update message has been sent for the given period.
+         */
+        private void awaitQuiescence(long period, TimeUnit unit) throws InterruptedException {
+            long messages;
+            do {
+                messages = updateMessages.sum();
+                unit.sleep(period);
+            } while (messages != updateMessages.sum());
+        }
+
+        /**
+         * Returns the number of nodes holding each of the expected keys.
+         */
+        private Map<String, Integer> replicas() {
+            Map<String, Integer> replicas = Maps.newHashMap();
+            nodes.values().forEach(node -> node.snapshot().forEach((key, value) -> {
+                if (value.equals(expected.get(key))) {
+                    replicas.merge(key, 1, Integer::sum);
+                }
+            }));
+            return replicas;
+        }
+
+        private void deliver(MessageSubject subject, byte[] payload, NodeId nodeId) {
+            if (subject.equals(updateSubject)) {
+                updateMessages.increment();
+            } else if (!antiEntropy) {
+                return;
+            }
+            Consumer<byte[]> subscriber = nodes.get(nodeId).subscribers.get(subject);
+            if (subscriber != null) {
+                subscriber.accept(payload);
+            }
+        }
+
+        /**
+         * Cluster node, hosting a map and the means for it to communicate.
+         */
+        private final class SimulatedNode extends ClusterCommunicationServiceAdapter {
+
+            private final ControllerNode controllerNode;
+            private final Map<MessageSubject, Consumer<byte[]>> subscribers = Maps.newConcurrentMap();
+            private final Map<MessageSubject, Function<byte[], CompletableFuture<byte[]>>> responders =
+                    Maps.newConcurrentMap();
+            private EventuallyConsistentMap<String, String> map;
+
+            private SimulatedNode(ControllerNode controllerNode) {
+                this.controllerNode = controllerNode;
+            }
+
+            private void createMap(int gossipFanout) {
+                ClusterServiceAdapter clusterService = new ClusterServiceAdapter() {
+                    @Override
+                    public ControllerNode getLocalNode() {
+                        return controllerNode;
+                    }
+
+                    @Override
+                    public Set<ControllerNode> getNodes() {
+                        return controllerNodes;
+                    }
+
+                    @Override
+                    public ControllerNode.State getState(NodeId nodeId) {
+                        return ControllerNode.State.READY;
+                    }
+                };
+                EventuallyConsistentMapBuilder<String, String> builder =
+                        new EventuallyConsistentMapBuilderImpl<String, String>(clusterService, this, null)
+                                .withName(MAP_NAME)
+                                .withSerializer(KryoNamespace.newBuilder().register(KryoNamespaces.API))
+                                .withTimestampProvider((k, v) -> new LogicalTimestamp(clock.incrementAndGet()))
+                                .withAntiEntropyPeriod(1, TimeUnit.SECONDS);
+                if (gossipFanout > 0) {
+                    builder.withGossip(gossipFanout);
+                }
+                map = builder.build();
+            }
+
+            private Map<String, String> snapshot() {
+                Map<String, String> snapshot = Maps.newHashMap();
+                map.entrySet().forEach(entry -> snapshot.put(entry.getKey(), entry.getValue()));
+                return snapshot;
+            }
+
+            @Override
+            public <M> void addSubscriber(MessageSubject subject, Function<byte[], M> decoder,
+                                          Consumer<M> handler, Executor executor) {
+                subscribers.put(subject, payload -> executor.execute(() -> handler.accept(decoder.apply(payload))));
+            }
+
+            @Override
+            public <M, R> void addSubscriber(MessageSubject subject, Function<byte[], M> decoder,
+                                             Function<M, R> handler, Function<R, byte[]> encoder,
+                                             Executor executor) {
+                responders.put(subject, payload -> CompletableFuture.supplyAsync(
+                        () -> encoder.apply(handler.apply(decoder.apply(payload))), executor));
+            }
+
+            @Override
+            public void removeSubscriber(MessageSubject subject) {
+                subscribers.remove(subject);
+                responders.remove(subject);
+            }
+
+            @Override
+            public <M> void multicast(M message, MessageSubject subject,
+                                      Function<M, byte[]> encoder, Set<NodeId> nodeIds) {
+                byte[] payload = encoder.apply(message);
+                multicasts.increment();
+                maxFanout.accumulateAndGet(nodeIds.size(), Math::max);
+                nodeIds.forEach(nodeId -> deliver(subject, payload, nodeId));
+            }
+
+            @Override
+            public <M> CompletableFuture<Void> unicast(M message, MessageSubject subject,
+                                                       Function<M, byte[]> encoder, NodeId toNodeId) {
+                deliver(subject, encoder.apply(message), toNodeId);
+                return CompletableFuture.completedFuture(null);
+            }
+
+            @Override
+            public <M, R> CompletableFuture<R> sendAndReceive(M message, MessageSubject subject,
+                                                              Function<M, byte[]> encoder,
+                                                              Function<byte[], R> decoder,
+                                                              NodeId toNodeId) {
+                Function<byte[], CompletableFuture<byte[]>> responder = nodes.get(toNodeId).responders.get(subject);
+                if (responder == null || !antiEntropy) {
+                    CompletableFuture<R> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(new IllegalStateException("No responder for " + subject));
+                    return failed;
+                }
+                if (subject.equals(antiEntropySubject) && ((AntiEntropyAdvertisement<?>) message).buckets() == null) {
+                    fullAdvertisements.increment();
+                }
+                return responder.apply(encoder.apply(message)).thenApply(decoder);
+            }
+        }
+    }
+}
@@ -49,6 +49,8 @@ import java.util.function.Function;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.onlab.metrics.MetricsManager;
+import org.onlab.metrics.MetricsService;
 import org.onlab.packet.IpAddress;
 import org.onlab.util.KryoNamespace;
 import org.onosproject.cluster.ClusterService;
@@ -88,6 +90,8 @@ public class EventuallyConsistentMapImplTest {
             = new MessageSubject("ecm-" + MAP_NAME + "-update");
     private static final MessageSubject ANTI_ENTROPY_MESSAGE_SUBJECT
             = new MessageSubject("ecm-" + MAP_NAME + "-anti-entropy");
+    private static final MessageSubject ANTI_ENTROPY_HASH_SUBJECT
+            = new MessageSubject("ecm-" + MAP_NAME + "-anti-entropy-hash");
     private static final MessageSubject UPDATE_REQUEST_SUBJECT
             = new MessageSubject("ecm-" + MAP_NAME + "-update-request");
 
@@ -102,6 +106,7 @@ public class EventuallyConsistentMapImplTest {
     private Consumer<Collection<UpdateEntry<String, String>>> updateHandler;
     private Consumer<Collection<UpdateRequest<String>>> requestHandler;
     private Function<AntiEntropyAdvertisement<String>, AntiEntropyResponse> antiEntropyHandler;
+    private Function<AntiEntropyHashAdvertisement, AntiEntropyHashResponse> antiEntropyHashHandler;
 
     @Before
     public void setUp() throws Exception {
@@ -125,7 +130,7 @@ public class EventuallyConsistentMapImplTest {
                                                           anyObject(Function.class),
                                                           anyObject(Function.class),
                                                           anyObject(Executor.class));
-        expectLastCall().andDelegateTo(new TestClusterCommunicationService()).times(1);
+        expectLastCall().andDelegateTo(new TestClusterCommunicationService()).times(2);
         clusterCommunicator.<Object>addSubscriber(anyObject(MessageSubject.class),
                 anyObject(Function.class), anyObject(Consumer.class), anyObject(Executor.class));
         expectLastCall().andDelegateTo(new TestClusterCommunicationService()).times(1);
@@ -630,11 +635,38 @@ public class EventuallyConsistentMapImplTest {
         return true;
     }
 
+    @Test
+    public void testAntiEntropyHash() throws Exception {
+        expectPeerMessage(clusterCommunicator);
+
+        NodeId peer = new NodeId("peer");
+        AntiEntropyHashResponse response =
+                antiEntropyHashHandler.apply(new AntiEntropyHashAdvertisement(peer, 0L));
+        assertEquals(AntiEntropyResponse.PROCESSED, response.status());
+        assertNull(response.buckets());
+
+        ecMap.put(KEY1, VALUE1);
+        response = antiEntropyHashHandler.apply(new AntiEntropyHashAdvertisement(peer, 0L));
+        assertEquals(AntiEntropyResponse.PROCESSED, response.status());
+        assertEquals(AntiEntropyTree.BUCKETS, response.buckets().length);
+
+        // Only the bucket holding the new entry differs from an empty map
+        int[] divergent = AntiEntropyTree.divergentBuckets(new long[AntiEntropyTree.BUCKETS], response.buckets());
+        assertEquals(1, divergent.length);
+        assertEquals(AntiEntropyTree.bucket(KEY1), divergent[0]);
+
+        // The removal leaves a tombstone behind, which still differs
+        ecMap.remove(KEY1);
+        response = antiEntropyHashHandler.apply(new AntiEntropyHashAdvertisement(peer, 0L));
+        assertEquals(AntiEntropyTree.BUCKETS, response.buckets().length);
+    }
+
     @Test
     public void testDestroy() throws Exception {
         clusterCommunicator.removeSubscriber(UPDATE_MESSAGE_SUBJECT);
         clusterCommunicator.removeSubscriber(UPDATE_REQUEST_SUBJECT);
         clusterCommunicator.removeSubscriber(ANTI_ENTROPY_MESSAGE_SUBJECT);
+        clusterCommunicator.removeSubscriber(ANTI_ENTROPY_HASH_SUBJECT);
 
         replay(clusterCommunicator);
 
@@ -657,6 +689,32 @@ public class EventuallyConsistentMapImplTest {
         }
     }
 
+    @Test
+    public void testMetrics() throws Exception {
+        MetricsManager metricsService = new MetricsManager();
+        EventuallyConsistentMap<String, String> map1 = buildMetricsMap(metricsService);
+        int metrics = metricsService.getMetrics().size();
+        assertTrue(metrics > 0);
+        // Maps sharing a name each have metrics of their own
+        EventuallyConsistentMap<String, String> map2 = buildMetricsMap(metricsService);
+        assertEquals(2 * metrics, metricsService.getMetrics().size());
+
+        map1.destroy();
+        assertEquals(metrics, metricsService.getMetrics().size());
+        map2.destroy();
+        assertTrue(metricsService.getMetrics().isEmpty());
+    }
+
+    private EventuallyConsistentMap<String, String> buildMetricsMap(MetricsService metricsService) {
+        return new EventuallyConsistentMapBuilderImpl<String, String>(
+                        clusterService, new ClusterCommunicationServiceAdapter(),
+                        persistenceService, metricsService)
+                .withName(MAP_NAME)
+                .withSerializer(KryoNamespace.newBuilder().register(KryoNamespaces.API))
+                .withTimestampProvider((k, v) -> clockService.getTimestamp(k, v))
+                .build();
+    }
+
     private UpdateEntry<String, String> generatePutMessage(String key, String value, Timestamp timestamp) {
         return new UpdateEntry<>(key, new MapValue<>(value, timestamp));
     }
@@ -745,6 +803,12 @@ public class EventuallyConsistentMapImplTest {
                     anyObject(NodeId.class)))
                 .andReturn(CompletableFuture.completedFuture(null))
                 .anyTimes();
+        clusterCommunicator.<T>multicast(
+                    anyObject(),
+                    anyObject(MessageSubject.class),
+                    anyObject(Function.class),
+                    anyObject(Set.class));
+        expectLastCall().anyTimes();
         replay(clusterCommunicator);
     }
 
@@ -793,6 +857,8 @@ public class EventuallyConsistentMapImplTest {
                 Function<byte[], M> decoder, Function<M, R> handler, Function<R, byte[]> encoder, Executor executor) {
             if (subject.equals(ANTI_ENTROPY_MESSAGE_SUBJECT)) {
                 antiEntropyHandler = (Function<AntiEntropyAdvertisement<String>, AntiEntropyResponse>) handler;
+            } else if (subject.equals(ANTI_ENTROPY_HASH_SUBJECT)) {
+                antiEntropyHashHandler = (Function<AntiEntropyHashAdvertisement, AntiEntropyHashResponse>) handler;
             } else {
                 throw new RuntimeException("Unexpected message subject " + subject.toString());
             }
@@ -0,0 +1,378 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.store.primitives.impl;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.junit.Before;
+import org.junit.Test;
+import org.onosproject.store.primitives.TransactionId;
+import org.onosproject.store.service.AsyncConsistentMap;
+import org.onosproject.store.service.DistributedPrimitive;
+import org.onosproject.store.service.MapEvent;
+import org.onosproject.store.service.MapEventListener;
+import org.onosproject.store.service.MapTransaction;
+import org.onosproject.store.service.Versioned;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the replicated consistent map.
+ */
+public class ReplicatedAsyncConsistentMapTest {
+
+    private TestBackingMap backingMap;
+
+    @Before
+    public void setUp() {
+        backingMap = new TestBackingMap();
+    }
+
+    private Versioned<String> get(AsyncConsistentMap<String, String> map, String key) {
+        return map.get(key).join();
+    }
+
+    @Test
+    public void readsFromReplica() {
+        backingMap.put("a", "1").join();
+        backingMap.put("b", "2").join();
+        ReplicatedAsyncConsistentMap<String, String> map =
+                new ReplicatedAsyncConsistentMap<>(backingMap, 100, 1000, null);
+
+        int reads = backingMap.reads;
+        assertEquals("1", get(map, "a").value());
+        assertTrue(map.containsKey("b").join());
+        assertTrue(map.containsValue("2").join());
+        assertEquals(2, (int) map.size().join());
+        assertEquals(ImmutableSet.of("a", "b"), map.keySet().join());
+        assertEquals(2, map.values().join().size());
+        assertEquals(2, map.entrySet().join().size());
+        assertEquals("reads should be served locally", reads, backingMap.reads);
+
+        // Updates are reflected once their events are received
+        map.put("c", "3").join();
+        map.remove("a").join();
+        assertEquals("3", get(map, "c").value());
+        assertNull(get(map, "a"));
+        assertEquals(ImmutableSet.of("b", "c"), map.keySet().join());
+        assertEquals("reads should be served locally", reads, backingMap.reads);
+    }
+
+    @Test
+    public void versions() {
+        backingMap.put("a", "1").join();
+        backingMap.deferEvents = true;
+        ReplicatedAsyncConsistentMap<String, String> map =
+                new ReplicatedAsyncConsistentMap<>(backingMap, 100, 1000, null);
+        backingMap.put("a", "2").join();
+        backingMap.put("a", "3").join();
+
+        // Events older than the replicated entries are not applied
+        List<MapEvent<String, String>> events = backingMap.takeEvents();
+        assertEquals("1", get(map, "a").value());
+        backingMap.deliver(events.get(1));
+        assertEquals("3", get(map, "a").value());
+        backingMap.deliver(events.get(0));
+        assertEquals("3", get(map, "a").value());
+
+        // Nor are removals of older versions
+        backingMap.deliver(new MapEvent<>("test", "a", null, new Versioned<>("1", 1)));
+        assertEquals("3", get(map, "a").value());
+        backingMap.deliver(new MapEvent<>("test", "a", null, get(map, "a")));
+        assertNull(get(map, "a"));
+    }
+
+    @Test
+    public void staleness() throws Exception {
+        backingMap.put("a", "1").join();
+        ReplicatedAsyncConsistentMap<String, String> map =
+                new ReplicatedAsyncConsistentMap<>(backingMap, 100, 50, null);
+
+        int reads = backingMap.reads;
+        backingMap.changeStatus(DistributedPrimitive.Status.SUSPENDED);
+        assertEquals("1", get(map, "a").value());
+        assertEquals("stale reads should be served locally", reads, backingMap.reads);
+
+        Thread.sleep(100);
+        assertEquals("1", get(map, "a").value());
+        assertEquals("reads should go to the backing map", reads + 1, backingMap.reads);
+
+        // The replica is loaded anew once the backing map is back
+        backingMap.changeStatus(DistributedPrimitive.Status.ACTIVE);
+        reads = backingMap.reads;
+        assertEquals("1", get(map, "a").value());
+        assertEquals("reads should be served locally", reads, backingMap.reads);
+    }
+
+    @Test
+    public void maxEntries() {
+        backingMap.put("a", "1").join();
+        backingMap.put("b", "2").join();
+        ReplicatedAsyncConsistentMap<String, String> map =
+                new ReplicatedAsyncConsistentMap<>(backingMap, 2, 1000, null);
+
+        int reads = backingMap.reads;
+        assertEquals(2, (int) map.size().join());
+        assertEquals(reads, backingMap.reads);
+
+        // Growing beyond the limit drops the replica
+        map.put("c", "3").join();
+        assertEquals(3, (int) map.size().join());
+        assertEquals(reads + 1, backingMap.reads);
+        assertFalse(map.containsKey("d").join());
+        assertEquals(reads + 2, backingMap.reads);
+    }
+
+    /**
+     * In-memory map delivering its events before updates complete, and
+     * counting the reads made.
+     */
+    private static final class TestBackingMap implements AsyncConsistentMap<String, String> {
+
+        private final Map<String, Versioned<String>> entries = Maps.newHashMap();
+        private final List<MapEventListener<String, String>> listeners = Lists.newArrayList();
+        private final List<Consumer<Status>> statusListeners = Lists.newArrayList();
+        private final List<MapEvent<String, String>> deferred = Lists.newArrayList();
+        private boolean deferEvents = false;
+        private long version = 0;
+        private int reads = 0;
+
+        private void changeStatus(Status status) {
+            statusListeners.forEach(listener -> listener.accept(status));
+        }
+
+        private List<MapEvent<String, String>> takeEvents() {
+            List<MapEvent<String, String>> events = ImmutableList.copyOf(deferred);
+            deferred.clear();
+            return events;
+        }
+
+        private void deliver(MapEvent<String, String> event) {
+            listeners.forEach(listener -> listener.event(event));
+        }
+
+        private Versioned<String> update(String key, String value) {
+            Versioned<String> previous = value == null ? entries.remove(key)
+                    : entries.put(key, new Versioned<>(value, ++version));
+            MapEvent<String, String> event = new MapEvent<>("test", key, entries.get(key), previous);
+            if (deferEvents) {
+                deferred.add(event);
+            } else {
+                deliver(event);
+            }
+            return previous;
+        }
+
+        @Override
+        public String name() {
+            return "test";
+        }
+
+        @Override
+        public CompletableFuture<Integer> size() {
+            reads++;
+            return CompletableFuture.completedFuture(entries.size());
+        }
+
+        @Override
+        public CompletableFuture<Boolean> containsKey(String key) {
+            reads++;
+            return CompletableFuture.completedFuture(entries.containsKey(key));
+        }
+
+        @Override
+        public CompletableFuture<Boolean> containsValue(String value) {
+            reads++;
+            return CompletableFuture.completedFuture(
+                    entries.values().stream().anyMatch(v -> Objects.equals(v.value(), value)));
+        }
+
+        @Override
+        public CompletableFuture<Versioned<String>> get(String key) {
+            reads++;
+            return CompletableFuture.completedFuture(entries.get(key));
+        }
+
+        @Override
+        public CompletableFuture<Versioned<String>> computeIf(String key,
+                Predicate<? super String> condition,
+                BiFunction<? super String, ? super String, ? extends String> remappingFunction) {
+            Versioned<String> current = entries.get(key);
+            String value = current == null ? null : current.value();
+            if (condition.test(value)) {
+                update(key, remappingFunction.apply(key, value));
+            }
+            return CompletableFuture.completedFuture(entries.get(key));
+        }
+
+        @Override
+        public CompletableFuture<Versioned<String>> put(String key, String value) {
+            return CompletableFuture.completedFuture(update(key, value));
+        }
+
+        @Override
+        public CompletableFuture<Versioned<String>> putAndGet(String key, String value) {
+            update(key, value);
+            return CompletableFuture.completedFuture(entries.get(key));
+        }
+
+        @Override
+        public CompletableFuture<Versioned<String>> remove(String key) {
+            return CompletableFuture.completedFuture(update(key, null));
+        }
+
+        @Override
+        public CompletableFuture<Void> clear() {
+            ImmutableSet.copyOf(entries.keySet()).forEach(key -> update(key, null));
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletableFuture<Set<String>> keySet() {
+            reads++;
+            return CompletableFuture.completedFuture(ImmutableSet.copyOf(entries.keySet()));
+        }
+
+        @Override
+        public CompletableFuture<Collection<Versioned<String>>> values() {
+            reads++;
+            return CompletableFuture.completedFuture(ImmutableList.copyOf(entries.values()));
+        }
+
+        @Override
+        public CompletableFuture<Set<Entry<String, Versioned<String>>>> entrySet() {
+            reads++;
+            return CompletableFuture.completedFuture(ImmutableSet.copyOf(entries.entrySet()));
+        }
+
+        @Override
+        public CompletableFuture<Versioned<String>> putIfAbsent(String key, String value) {
+            Versioned<String> current = entries.get(key);
+            if (current == null) {
+                update(key, value);
+            }
+            return CompletableFuture.completedFuture(current);
+        }
+
+        @Override
+        public CompletableFuture<Boolean> remove(String key, String value) {
+            Versioned<String> current = entries.get(key);
+            boolean removed = current != null && Objects.equals(current.value(), value);
+            if (removed) {
+                update(key, null);
+            }
+            return CompletableFuture.completedFuture(removed);
+        }
+
+        @Override
+        public CompletableFuture<Boolean> remove(String key, long version) {
+            Versioned<String> current = entries.get(key);
+            boolean removed = current != null && current.version() == version;
+            if (removed) {
+                update(key, null);
+            }
+            return CompletableFuture.completedFuture(removed);
+        }
+
+        @Override
+        public CompletableFuture<Versioned<String>> replace(String key, String value) {
+            Versioned<String> current = entries.get(key);
+            if (current != null) {
+                update(key, value);
+            }
+            return CompletableFuture.completedFuture(current);
+        }
+
+        @Override
+        public CompletableFuture<Boolean> replace(String key, String oldValue, String newValue) {
+            Versioned<String> current = entries.get(key);
+            boolean replaced = current != null && Objects.equals(current.value(), oldValue);
+            if (replaced) {
+                update(key, newValue);
+            }
+            return CompletableFuture.completedFuture(replaced);
+        }
+
+        @Override
+        public CompletableFuture<Boolean> replace(String key, long oldVersion, String newValue) {
+            Versioned<String> current = entries.get(key);
+            boolean replaced = current != null && current.version() == oldVersion;
+            if (replaced) {
+                update(key, newValue);
+            }
+            return CompletableFuture.completedFuture(replaced);
+        }
+
+        @Override
+        public CompletableFuture<Void> addListener(MapEventListener<String, String> listener, Executor executor) {
+            listeners.add(listener);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletableFuture<Void> removeListener(MapEventListener<String, String> listener) {
+            listeners.remove(listener);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public void addStatusChangeListener(Consumer<Status> listener) {
+            statusListeners.add(listener);
+        }
+
+        @Override
+        public void removeStatusChangeListener(Consumer<Status> listener) {
+            statusListeners.remove(listener);
+        }
+
+        @Override
+        public CompletableFuture<Boolean> prepare(MapTransaction<String, String> transaction) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<Void> commit(TransactionId transactionId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<Void> rollback(TransactionId transactionId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<Boolean> prepareAndCommit(MapTransaction<String, String> transaction) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
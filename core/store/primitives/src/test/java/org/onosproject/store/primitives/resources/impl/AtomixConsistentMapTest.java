@@ -16,6 +16,8 @@
 package org.onosproject.store.primitives.resources.impl;
 
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import io.atomix.resource.ResourceType;
 import org.junit.AfterClass;
@@ -32,6 +34,7 @@ import org.onosproject.store.service.Versioned;
 import java.util.Arrays;
 import java.util.ConcurrentModificationException;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletionException;
@@ -82,6 +85,14 @@ public class AtomixConsistentMapTest extends AtomixTestBase {
         mapComputeOperationTests();
     }
 
+    /**
+     * Tests map getAll/putAll/removeAll operations.
+     */
+    @Test
+    public void testMapBatchOperations() throws Throwable {
+        mapBatchOperationTests();
+    }
+
     /**
      * Tests map event notifications.
      */
@@ -333,6 +344,52 @@ public class AtomixConsistentMapTest extends AtomixTestBase {
         map.removeListener(listener).join();
     }
 
+    protected void mapBatchOperationTests() throws Throwable {
+        final byte[] value1 = Tools.getBytesUtf8("value1");
+        final byte[] value2 = Tools.getBytesUtf8("value2");
+
+        AtomixConsistentMap map = createAtomixClient().getResource("testMapBatchOperationsMap",
+                                                                   AtomixConsistentMap.class).join();
+        TestMapEventListener listener = new TestMapEventListener();
+        map.addListener(listener).join();
+
+        map.put("foo", value1).join();
+        assertEquals(MapEvent.Type.INSERT, listener.event().type());
+
+        Map<String, byte[]> entries = ImmutableMap.of("foo", value2, "bar", value2);
+        map.putAll(entries).join();
+        Map<String, MapEvent<String, byte[]>> events = Maps.newHashMap();
+        for (int i = 0; i < entries.size(); i++) {
+            MapEvent<String, byte[]> event = listener.event();
+            events.put(event.key(), event);
+        }
+        assertEquals(MapEvent.Type.UPDATE, events.get("foo").type());
+        assertArrayEquals(value1, events.get("foo").oldValue().value());
+        assertEquals(MapEvent.Type.INSERT, events.get("bar").type());
+        assertArrayEquals(value2, events.get("bar").newValue().value());
+
+        map.getAll(Sets.newHashSet("foo", "bar", "baz")).thenAccept(result -> {
+            assertEquals(2, result.size());
+            assertArrayEquals(value2, result.get("foo").value());
+            assertArrayEquals(value2, result.get("bar").value());
+            assertFalse(result.containsKey("baz"));
+        }).join();
+
+        // values put together are released independently of each other
+        map.put("foo", value1).join();
+        assertEquals(MapEvent.Type.UPDATE, listener.event().type());
+        map.get("bar").thenAccept(result -> assertArrayEquals(value2, result.value())).join();
+
+        map.removeAll(Sets.newHashSet("foo", "baz")).join();
+        MapEvent<String, byte[]> event = listener.event();
+        assertEquals(MapEvent.Type.REMOVE, event.type());
+        assertEquals("foo", event.key());
+        assertFalse(listener.eventReceived());
+        map.keySet().thenAccept(result -> assertEquals(Sets.newHashSet("bar"), result)).join();
+
+        map.removeListener(listener).join();
+    }
+
     protected void transactionCommitTests() throws Throwable {
         final byte[] value1 = Tools.getBytesUtf8("value1");
         final byte[] value2 = Tools.getBytesUtf8("value2");
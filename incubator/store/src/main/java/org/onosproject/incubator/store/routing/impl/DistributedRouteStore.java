@@ -16,12 +16,15 @@
 
 package org.onosproject.incubator.store.routing.impl;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.googlecode.concurrenttrees.radix.node.concrete.DefaultByteArrayNodeFactory;
 import com.googlecode.concurrenttrees.radixinverted.ConcurrentInvertedRadixTree;
 import com.googlecode.concurrenttrees.radixinverted.InvertedRadixTree;
 import org.onlab.packet.IpAddress;
 import org.onlab.packet.IpPrefix;
+import org.onlab.util.AbstractLockFreeAccumulator;
 import org.onlab.util.KryoNamespace;
 import org.onosproject.incubator.net.routing.NextHopData;
 import org.onosproject.incubator.net.routing.ResolvedRoute;
@@ -44,17 +47,30 @@ import org.slf4j.LoggerFactory;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.Timer;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static org.onlab.util.Tools.groupedThreads;
 import static org.onosproject.incubator.net.routing.RouteEvent.Type.ROUTE_ADDED;
 import static org.onosproject.incubator.net.routing.RouteEvent.Type.ROUTE_REMOVED;
 
 /**
  * Route store based on distributed storage.
+ * <p>
+ * Routes are kept in a consistent map per route table, which shards the
+ * prefixes across the storage partitions. Route updates and withdrawals are
+ * accumulated and written in batches, at most one command per partition for
+ * each batch. Every instance keeps a local copy of the route tables, updated
+ * from the map events, indexed by prefix in a radix tree for longest prefix
+ * matching and by next hop; all reads are served locally. The routes waiting
+ * to be written are indexed by next hop as soon as they are updated, so that
+ * their next hop can be resolved before they are written.
  */
 public class DistributedRouteStore extends AbstractStore<RouteEvent, RouteStoreDelegate>
         implements RouteStore {
@@ -63,16 +79,19 @@ public class DistributedRouteStore extends AbstractStore<RouteEvent, RouteStoreD
     private static final RouteTableId IPV4 = new RouteTableId("ipv4");
     private static final RouteTableId IPV6 = new RouteTableId("ipv6");
     private static final Logger log = LoggerFactory.getLogger(DistributedRouteStore.class);
-    private final MapEventListener<IpPrefix, Route> routeTableListener = new RouteTableListener();
+
+    private static final int MAX_BATCH_SIZE = 10000;
+    private static final int MAX_BATCH_MS = 100;
+    private static final int MAX_IDLE_MS = 10;
+
     private final MapEventListener<IpAddress, NextHopData> nextHopListener = new NextHopListener();
 
-    // TODO: ConsistentMap may not scale with high frequency route update
-    private final Map<RouteTableId, ConsistentMap<IpPrefix, Route>> routeTables =
-            Maps.newHashMap();
-    // NOTE: We cache local route tables with InvertedRadixTree for longest prefix matching
-    private final Map<RouteTableId, InvertedRadixTree<Route>> localRouteTables =
-            Maps.newHashMap();
+    private final Map<RouteTableId, RouteTable> routeTables = Maps.newHashMap();
     private ConsistentMap<IpAddress, NextHopData> nextHops;
+    private ExecutorService nextHopExecutor;
+
+    private Timer timer;
+    private RouteUpdateAccumulator accumulator;
 
     /**
      * Constructs a distributed route store.
@@ -87,19 +106,17 @@ public class DistributedRouteStore extends AbstractStore<RouteEvent, RouteStoreD
      * Sets up distributed route store.
      */
     public void activate() {
-        // Creates and stores maps
-        ConsistentMap<IpPrefix, Route> ipv4RouteTable = createRouteTable(IPV4);
-        ConsistentMap<IpPrefix, Route> ipv6RouteTable = createRouteTable(IPV6);
-        routeTables.put(IPV4, ipv4RouteTable);
-        routeTables.put(IPV6, ipv6RouteTable);
-        localRouteTables.put(IPV4, createLocalRouteTable());
-        localRouteTables.put(IPV6, createLocalRouteTable());
+        routeTables.put(IPV4, new RouteTable(IPV4));
+        routeTables.put(IPV6, new RouteTable(IPV6));
         nextHops = createNextHopTable();
 
         // Adds map listeners
-        routeTables.values().forEach(routeTable ->
-                routeTable.addListener(routeTableListener, Executors.newSingleThreadExecutor()));
-        nextHops.addListener(nextHopListener, Executors.newSingleThreadExecutor());
+        nextHopExecutor = Executors.newSingleThreadExecutor(groupedThreads("onos/route", "next-hops", log));
+        nextHops.addListener(nextHopListener, nextHopExecutor);
+        routeTables.values().forEach(RouteTable::activate);
+
+        timer = new Timer("onos-route-store-batching");
+        accumulator = new RouteUpdateAccumulator(timer);
 
         log.info("Started");
     }
@@ -108,15 +125,14 @@ public class DistributedRouteStore extends AbstractStore<RouteEvent, RouteStoreD
      * Cleans up distributed route store.
      */
     public void deactivate() {
-        routeTables.values().forEach(routeTable -> {
-            routeTable.removeListener(routeTableListener);
-            routeTable.destroy();
-        });
+        accumulator.flush();
+        timer.cancel();
+        routeTables.values().forEach(RouteTable::deactivate);
         nextHops.removeListener(nextHopListener);
         nextHops.destroy();
+        nextHopExecutor.shutdown();
 
         routeTables.clear();
-        localRouteTables.clear();
         nextHops.clear();
 
         log.info("Stopped");
@@ -124,16 +140,15 @@ public class DistributedRouteStore extends AbstractStore<RouteEvent, RouteStoreD
 
     @Override
     public void updateRoute(Route route) {
-        getDefaultRouteTable(route).put(route.prefix(), route);
+        getDefaultRouteTable(route.prefix().address()).addPending(route);
+        accumulator.add(new RouteUpdate(route, false));
     }
 
     @Override
     public void removeRoute(Route route) {
-        getDefaultRouteTable(route).remove(route.prefix());
-
-        if (getRoutesForNextHop(route.nextHop()).isEmpty()) {
-            nextHops.remove(route.nextHop());
-        }
+        // The next hop is cleaned up once the last route through it is removed
+        getDefaultRouteTable(route.prefix().address()).withdrawPending(route.prefix());
+        accumulator.add(new RouteUpdate(route, true));
     }
 
     @Override
@@ -143,31 +158,18 @@ public class DistributedRouteStore extends AbstractStore<RouteEvent, RouteStoreD
 
     @Override
     public Collection<Route> getRoutes(RouteTableId table) {
-        ConsistentMap<IpPrefix, Route> routeTable = routeTables.get(table);
-        return (routeTable != null) ?
-                routeTable.values().stream().map(Versioned::value).collect(Collectors.toSet()) :
-                Collections.emptySet();
+        RouteTable routeTable = routeTables.get(table);
+        return (routeTable != null) ? routeTable.getRoutes() : Collections.emptySet();
     }
 
     @Override
     public Route longestPrefixMatch(IpAddress ip) {
-        Iterable<Route> prefixes = getDefaultLocalRouteTable(ip)
-                .getValuesForKeysPrefixing(createBinaryString(ip.toIpPrefix()));
-        Iterator<Route> it = prefixes.iterator();
-
-        Route route = null;
-        while (it.hasNext()) {
-            route = it.next();
-        }
-
-        return route;
+        return getDefaultRouteTable(ip).longestPrefixMatch(ip);
     }
 
     @Override
     public Collection<Route> getRoutesForNextHop(IpAddress ip) {
-        return getDefaultRouteTable(ip).values().stream()
-                .filter(route -> route.nextHop().equals(ip))
-                .collect(Collectors.toList());
+        return getDefaultRouteTable(ip).getRoutesForNextHop(ip);
     }
 
     @Override
@@ -197,23 +199,6 @@ public class DistributedRouteStore extends AbstractStore<RouteEvent, RouteStoreD
         return nextHops.asJavaMap();
     }
 
-    private ConsistentMap<IpPrefix, Route> createRouteTable(RouteTableId tableId) {
-        KryoNamespace routeTableSerializer = KryoNamespace.newBuilder()
-                .register(KryoNamespaces.API)
-                .register(Route.class)
-                .register(Route.Source.class)
-                .build();
-        return storageService.<IpPrefix, Route>consistentMapBuilder()
-                .withName("onos-routes-" + tableId.name())
-                .withRelaxedReadConsistency()
-                .withSerializer(Serializer.using(routeTableSerializer))
-                .build();
-    }
-
-    private ConcurrentInvertedRadixTree<Route> createLocalRouteTable() {
-        return new ConcurrentInvertedRadixTree<>(new DefaultByteArrayNodeFactory());
-    }
-
     private ConsistentMap<IpAddress, NextHopData> createNextHopTable() {
         KryoNamespace.Builder nextHopSerializer = KryoNamespace.newBuilder()
                 .register(KryoNamespaces.API)
@@ -225,18 +210,9 @@ public class DistributedRouteStore extends AbstractStore<RouteEvent, RouteStoreD
                 .build();
     }
 
-    private Map<IpPrefix, Route> getDefaultRouteTable(Route route) {
-        return getDefaultRouteTable(route.prefix().address());
-    }
-
-    private Map<IpPrefix, Route> getDefaultRouteTable(IpAddress ip) {
+    private RouteTable getDefaultRouteTable(IpAddress ip) {
         RouteTableId routeTableId = (ip.isIp4()) ? IPV4 : IPV6;
-        return routeTables.get(routeTableId).asJavaMap();
-    }
-
-    private InvertedRadixTree<Route> getDefaultLocalRouteTable(IpAddress ip) {
-        RouteTableId routeTableId = (ip.isIp4()) ? IPV4 : IPV6;
-        return localRouteTables.get(routeTableId);
+        return routeTables.get(routeTableId);
     }
 
     private static String createBinaryString(IpPrefix ipPrefix) {
@@ -254,9 +230,266 @@ public class DistributedRouteStore extends AbstractStore<RouteEvent, RouteStoreD
         return result.toString();
     }
 
-    private class RouteTableListener implements MapEventListener<IpPrefix, Route> {
+    /**
+     * Removes the next hops no route refers to any more. This is done by the
+     * instance which wrote the routes through them away only, and the local
+     * copies of the route tables, which may lag behind, are checked against
+     * the route tables themselves before any next hop is removed.
+     */
+    private void cleanupNextHops(Set<IpAddress> ips) {
+        Set<IpAddress> unused = ips.stream()
+                .filter(ip -> routeTables.values().stream().noneMatch(table -> table.hasRoutesForNextHop(ip)))
+                .collect(Collectors.toSet());
+        if (unused.isEmpty()) {
+            return;
+        }
+        routeTables.values().forEach(table -> table.routes.values()
+                .forEach(route -> unused.remove(route.value().nextHop())));
+        unused.forEach(nextHops::remove);
+    }
+
+    /**
+     * Route update or withdrawal waiting to be written to a route table.
+     */
+    private static final class RouteUpdate {
+        private final Route route;
+        private final boolean withdrawn;
+
+        private RouteUpdate(Route route, boolean withdrawn) {
+            this.route = checkNotNull(route);
+            this.withdrawn = withdrawn;
+        }
+    }
+
+    /**
+     * Accumulates route updates and writes them to the route tables in batches.
+     * <p>
+     * Only the last update of each prefix in a batch is written. Batches are
+     * written one at a time, so updates accumulate into larger batches while
+     * the storage is busy.
+     */
+    private final class RouteUpdateAccumulator extends AbstractLockFreeAccumulator<RouteUpdate> {
+
+        private RouteUpdateAccumulator(Timer timer) {
+            super(timer, MAX_BATCH_SIZE, MAX_BATCH_MS, MAX_IDLE_MS);
+        }
+
         @Override
-        public void event(MapEvent<IpPrefix, Route> event) {
+        public void processItems(List<RouteUpdate> items) {
+            Map<RouteTable, Map<IpPrefix, RouteUpdate>> updates = Maps.newHashMap();
+            items.forEach(update -> updates
+                    .computeIfAbsent(getDefaultRouteTable(update.route.prefix().address()),
+                                     table -> Maps.newHashMap())
+                    .put(update.route.prefix(), update));
+            updates.forEach((table, tableUpdates) -> table.write(tableUpdates.values()));
+        }
+    }
+
+    /**
+     * Route table, backed by a consistent map and replicated locally.
+     */
+    private final class RouteTable {
+        private final ConsistentMap<IpPrefix, Route> routes;
+        private final ExecutorService executor;
+        private final MapEventListener<IpPrefix, Route> listener = this::event;
+
+        // Local copy of the routes, indexed for longest prefix matching and by next hop
+        private final Map<IpPrefix, Route> localRoutes = Maps.newConcurrentMap();
+        private final InvertedRadixTree<Route> localRadixTree =
+                new ConcurrentInvertedRadixTree<>(new DefaultByteArrayNodeFactory());
+        private final Map<IpAddress, Set<IpPrefix>> nextHopIndex = Maps.newConcurrentMap();
+        // Routes updated and not yet received back from the map
+        private final Map<IpPrefix, Route> pendingRoutes = Maps.newConcurrentMap();
+
+        private RouteTable(RouteTableId tableId) {
+            KryoNamespace routeTableSerializer = KryoNamespace.newBuilder()
+                    .register(KryoNamespaces.API)
+                    .register(Route.class)
+                    .register(Route.Source.class)
+                    .build();
+            routes = storageService.<IpPrefix, Route>consistentMapBuilder()
+                    .withName("onos-routes-" + tableId.name())
+                    .withSerializer(Serializer.using(routeTableSerializer))
+                    .build();
+            executor = Executors.newSingleThreadExecutor(groupedThreads("onos/route", tableId.name(), log));
+        }
+
+        /**
+         * Starts listening for route updates and loads the existing routes.
+         * The routes are loaded by the thread handling the events, so that
+         * the updates made meanwhile are applied after them.
+         */
+        private void activate() {
+            routes.addListener(listener, executor);
+            executor.execute(() -> routes.entrySet().forEach(entry -> put(entry.getValue().value())));
+        }
+
+        private void deactivate() {
+            routes.removeListener(listener);
+            routes.destroy();
+            executor.shutdown();
+        }
+
+        private void write(Collection<RouteUpdate> updates) {
+            Map<IpPrefix, Route> updated = Maps.newHashMap();
+            Set<IpPrefix> withdrawn = Sets.newHashSet();
+            // Next hops of the routes replaced or withdrawn
+            Set<IpAddress> prevNextHops = Sets.newHashSet();
+            updates.forEach(update -> {
+                Route prevRoute = localRoutes.get(update.route.prefix());
+                if (prevRoute != null) {
+                    prevNextHops.add(prevRoute.nextHop());
+                }
+                if (update.withdrawn) {
+                    withdrawn.add(update.route.prefix());
+                    prevNextHops.add(update.route.nextHop());
+                } else {
+                    updated.put(update.route.prefix(), update.route);
+                }
+            });
+            try {
+                if (!withdrawn.isEmpty()) {
+                    routes.removeAll(withdrawn);
+                }
+                if (!updated.isEmpty()) {
+                    routes.putAll(updated);
+                }
+            } catch (Exception e) {
+                log.error("Failed to write {} route updates", updates.size(), e);
+                updated.values().forEach(this::removePending);
+                return;
+            }
+            // The routes written are known locally once their events, which
+            // are handled by the same executor, have been
+            executor.execute(() -> {
+                updated.values().forEach(this::removePending);
+                cleanupNextHops(prevNextHops);
+            });
+        }
+
+        /**
+         * Indexes a route by next hop until it is written.
+         */
+        private void addPending(Route route) {
+            Route prevRoute = pendingRoutes.put(route.prefix(), route);
+            index(route);
+            if (prevRoute != null && !prevRoute.nextHop().equals(route.nextHop())) {
+                unindex(prevRoute);
+            }
+        }
+
+        /**
+         * Stops indexing a route once written, withdrawn or failed to be written.
+         */
+        private void removePending(Route route) {
+            if (pendingRoutes.remove(route.prefix(), route)) {
+                unindex(route);
+            }
+        }
+
+        /**
+         * Stops indexing the route of a prefix being withdrawn, whatever the
+         * route pending.
+         */
+        private void withdrawPending(IpPrefix prefix) {
+            Route route = pendingRoutes.remove(prefix);
+            if (route != null) {
+                unindex(route);
+            }
+        }
+
+        private Collection<Route> getRoutes() {
+            return ImmutableSet.copyOf(localRoutes.values());
+        }
+
+        private Route longestPrefixMatch(IpAddress ip) {
+            Iterable<Route> prefixes = localRadixTree
+                    .getValuesForKeysPrefixing(createBinaryString(ip.toIpPrefix()));
+            Iterator<Route> it = prefixes.iterator();
+
+            Route route = null;
+            while (it.hasNext()) {
+                route = it.next();
+            }
+
+            return route;
+        }
+
+        private Collection<Route> getLocalRoutesForNextHop(IpAddress ip) {
+            Set<IpPrefix> prefixes = nextHopIndex.get(ip);
+            if (prefixes == null) {
+                return Collections.emptyList();
+            }
+            return prefixes.stream()
+                    .map(localRoutes::get)
+                    .filter(route -> isRoutedThrough(route, ip))
+                    .collect(Collectors.toList());
+        }
+
+        private Collection<Route> getRoutesForNextHop(IpAddress ip) {
+            Set<IpPrefix> prefixes = nextHopIndex.get(ip);
+            if (prefixes == null) {
+                return Collections.emptyList();
+            }
+            return prefixes.stream()
+                    .map(prefix -> {
+                        Route route = pendingRoutes.get(prefix);
+                        return route != null ? route : localRoutes.get(prefix);
+                    })
+                    .filter(route -> isRoutedThrough(route, ip))
+                    .collect(Collectors.toList());
+        }
+
+        private boolean hasRoutesForNextHop(IpAddress ip) {
+            return nextHopIndex.containsKey(ip);
+        }
+
+        private void put(Route route) {
+            // The radix tree is updated first, so that the routes listed can be matched
+            localRadixTree.put(createBinaryString(route.prefix()), route);
+            Route prevRoute = localRoutes.put(route.prefix(), route);
+            if (prevRoute != null) {
+                unindex(prevRoute);
+            }
+            index(route);
+            pendingRoutes.remove(route.prefix(), route);
+        }
+
+        private void remove(IpPrefix prefix) {
+            localRadixTree.remove(createBinaryString(prefix));
+            Route prevRoute = localRoutes.remove(prefix);
+            if (prevRoute != null) {
+                unindex(prevRoute);
+            }
+        }
+
+        private void index(Route route) {
+            nextHopIndex.compute(route.nextHop(), (ip, prefixes) -> {
+                Set<IpPrefix> indexed = prefixes != null ? prefixes : Sets.newConcurrentHashSet();
+                indexed.add(route.prefix());
+                return indexed;
+            });
+        }
+
+        /**
+         * Removes a route from the next hop index, unless its prefix is still
+         * routed through the same next hop, locally or pending.
+         */
+        private void unindex(Route route) {
+            nextHopIndex.computeIfPresent(route.nextHop(), (ip, prefixes) -> {
+                if (!isRoutedThrough(localRoutes.get(route.prefix()), ip)
+                        && !isRoutedThrough(pendingRoutes.get(route.prefix()), ip)) {
+                    prefixes.remove(route.prefix());
+                }
+                return prefixes.isEmpty() ? null : prefixes;
+            });
+        }
+
+        private boolean isRoutedThrough(Route route, IpAddress ip) {
+            return route != null && route.nextHop().equals(ip);
+        }
+
+        private void event(MapEvent<IpPrefix, Route> event) {
             Route route, prevRoute;
             NextHopData nextHopData, prevNextHopData;
             switch (event.type()) {
@@ -265,8 +498,7 @@ public class DistributedRouteStore extends AbstractStore<RouteEvent, RouteStoreD
                     nextHopData = getNextHop(route.nextHop());
 
                     // Update local cache
-                    getDefaultLocalRouteTable(route.nextHop())
-                            .put(createBinaryString(route.prefix()), route);
+                    put(route);
 
                     // Send ROUTE_ADDED only when the next hop is resolved
                     if (nextHopData != null) {
@@ -282,8 +514,7 @@ public class DistributedRouteStore extends AbstractStore<RouteEvent, RouteStoreD
                     prevNextHopData = getNextHop(prevRoute.nextHop());
 
                     // Update local cache
-                    getDefaultLocalRouteTable(route.nextHop())
-                            .put(createBinaryString(route.prefix()), route);
+                    put(route);
 
                     if (nextHopData == null && prevNextHopData != null) {
                         notifyDelegate(new RouteEvent(RouteEvent.Type.ROUTE_REMOVED,
@@ -296,16 +527,13 @@ public class DistributedRouteStore extends AbstractStore<RouteEvent, RouteStoreD
                                 new ResolvedRoute(prevRoute,
                                         prevNextHopData.mac(), prevNextHopData.location())));
                     }
-
-                    cleanupNextHop(prevRoute.nextHop());
                     break;
                 case REMOVE:
                     prevRoute = checkNotNull(event.oldValue().value());
                     prevNextHopData = getNextHop(prevRoute.nextHop());
 
                     // Update local cache
-                    getDefaultLocalRouteTable(prevRoute.nextHop())
-                            .remove(createBinaryString(prevRoute.prefix()));
+                    remove(prevRoute.prefix());
 
                     // Send ROUTE_REMOVED only when the next hop is resolved
                     if (prevNextHopData != null) {
@@ -313,30 +541,19 @@ public class DistributedRouteStore extends AbstractStore<RouteEvent, RouteStoreD
                                new ResolvedRoute(prevRoute,
                                        prevNextHopData.mac(), prevNextHopData.location())));
                     }
-
-                    cleanupNextHop(prevRoute.nextHop());
                     break;
                 default:
                     log.warn("Unknown MapEvent type: {}", event.type());
             }
         }
-
-        /**
-         * Cleanup a nexthop when there is no routes reference to it.
-         */
-        private void cleanupNextHop(IpAddress ip) {
-            if (getDefaultRouteTable(ip).values().stream().noneMatch(route ->
-                    route.nextHop().equals(ip))) {
-                nextHops.remove(ip);
-            }
-        }
     }
 
     private class NextHopListener implements MapEventListener<IpAddress, NextHopData> {
         @Override
         public void event(MapEvent<IpAddress, NextHopData> event) {
             NextHopData nextHopData, oldNextHopData;
-            Collection<Route> routes = getRoutesForNextHop(event.key());
+            // Pending routes are announced once received back from their table
+            Collection<Route> routes = getDefaultRouteTable(event.key()).getLocalRoutesForNextHop(event.key());
 
             switch (event.type()) {
                 case INSERT:
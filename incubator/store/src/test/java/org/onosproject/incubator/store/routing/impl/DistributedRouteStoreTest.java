@@ -0,0 +1,365 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.incubator.store.routing.impl;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.onlab.junit.TestUtils;
+import org.onlab.packet.Ip4Address;
+import org.onlab.packet.IpAddress;
+import org.onlab.packet.IpPrefix;
+import org.onlab.packet.MacAddress;
+import org.onosproject.incubator.net.routing.NextHopData;
+import org.onosproject.incubator.net.routing.Route;
+import org.onosproject.incubator.net.routing.RouteEvent;
+import org.onosproject.incubator.net.routing.RouteTableId;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.store.service.AsyncConsistentMap;
+import org.onosproject.store.service.ConsistentMap;
+import org.onosproject.store.service.ConsistentMapAdapter;
+import org.onosproject.store.service.ConsistentMapBuilder;
+import org.onosproject.store.service.MapEvent;
+import org.onosproject.store.service.MapEventListener;
+import org.onosproject.store.service.StorageServiceAdapter;
+import org.onosproject.store.service.Versioned;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the distributed route store.
+ */
+public class DistributedRouteStoreTest {
+
+    private static final RouteTableId IPV4 = new RouteTableId("ipv4");
+    private static final RouteTableId IPV6 = new RouteTableId("ipv6");
+    private static final IpAddress NEXT_HOP1 = IpAddress.valueOf("192.168.1.1");
+    private static final IpAddress NEXT_HOP2 = IpAddress.valueOf("192.168.1.2");
+    private static final NextHopData NEXT_HOP_DATA =
+            new NextHopData(MacAddress.valueOf("00:00:00:00:00:01"), ConnectPoint.deviceConnectPoint("of:1/1"));
+
+    private final AtomicInteger writes = new AtomicInteger();
+    private volatile boolean failWrites = false;
+    private final List<RouteEvent> events = new CopyOnWriteArrayList<>();
+    private DistributedRouteStore store;
+
+    @Before
+    public void setUp() {
+        store = new DistributedRouteStore(new TestStorageService());
+        store.activate();
+        store.setDelegate(events::add);
+    }
+
+    @After
+    public void tearDown() {
+        store.deactivate();
+    }
+
+    private static Route route(String prefix, IpAddress nextHop) {
+        return new Route(Route.Source.STATIC, IpPrefix.valueOf(prefix), nextHop);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue("condition not met in time", condition.getAsBoolean());
+    }
+
+    @Test
+    public void routes() throws Exception {
+        Route route1 = route("10.0.0.0/8", NEXT_HOP1);
+        Route route2 = route("10.1.0.0/16", NEXT_HOP2);
+        Route route3 = route("2001::/16", IpAddress.valueOf("2001::1"));
+        store.updateRoute(route1);
+        store.updateRoute(route2);
+        store.updateRoute(route3);
+        await(() -> store.getRoutes(IPV4).size() == 2 && store.getRoutes(IPV6).size() == 1);
+
+        assertEquals(ImmutableSet.of(route1, route2), ImmutableSet.copyOf(store.getRoutes(IPV4)));
+        assertEquals(route2, store.longestPrefixMatch(IpAddress.valueOf("10.1.2.3")));
+        assertEquals(route1, store.longestPrefixMatch(IpAddress.valueOf("10.2.0.1")));
+        assertNull(store.longestPrefixMatch(IpAddress.valueOf("11.0.0.1")));
+        assertEquals(route3, store.longestPrefixMatch(IpAddress.valueOf("2001::2")));
+        assertEquals(ImmutableSet.of(route2), ImmutableSet.copyOf(store.getRoutesForNextHop(NEXT_HOP2)));
+
+        // Moving a route to another next hop updates the next hop index
+        Route route2b = route("10.1.0.0/16", NEXT_HOP1);
+        store.updateRoute(route2b);
+        await(() -> store.getRoutesForNextHop(NEXT_HOP2).isEmpty());
+        assertEquals(ImmutableSet.of(route1, route2b), ImmutableSet.copyOf(store.getRoutesForNextHop(NEXT_HOP1)));
+
+        store.removeRoute(route2b);
+        await(() -> store.getRoutes(IPV4).size() == 1);
+        assertEquals(route1, store.longestPrefixMatch(IpAddress.valueOf("10.1.2.3")));
+    }
+
+    @Test
+    public void nextHops() throws Exception {
+        Route route = route("10.0.0.0/8", NEXT_HOP1);
+        store.updateRoute(route);
+
+        // The next hop of a route can be resolved before the route is written
+        assertEquals(ImmutableSet.of(route), ImmutableSet.copyOf(store.getRoutesForNextHop(NEXT_HOP1)));
+        store.updateNextHop(NEXT_HOP1, NEXT_HOP_DATA);
+        assertEquals(NEXT_HOP_DATA, store.getNextHop(NEXT_HOP1));
+
+        // Routes are announced once, when both them and their next hop are known
+        await(() -> store.getRoutes(IPV4).size() == 1);
+        await(() -> events.size() == 1);
+        assertEquals(RouteEvent.Type.ROUTE_ADDED, events.get(0).type());
+        Thread.sleep(50);
+        assertEquals(1, events.size());
+
+        // The next hop is dropped with its last route
+        store.removeRoute(route);
+        await(() -> store.getNextHop(NEXT_HOP1) == null);
+        assertEquals(RouteEvent.Type.ROUTE_REMOVED, events.get(events.size() - 1).type());
+    }
+
+    @Test
+    public void withdrawPending() throws Exception {
+        store.updateRoute(route("10.0.0.0/8", NEXT_HOP1));
+        // A withdrawal clears the pending route of its prefix, whatever its next hop
+        store.removeRoute(new Route(Route.Source.BGP, IpPrefix.valueOf("10.0.0.0/8"), NEXT_HOP2));
+        assertTrue(store.getRoutesForNextHop(NEXT_HOP1).isEmpty());
+        Thread.sleep(50);
+        assertTrue(store.getRoutesForNextHop(NEXT_HOP1).isEmpty());
+        assertTrue(store.getRoutes(IPV4).isEmpty());
+    }
+
+    @Test
+    public void nextHopOfUnknownRoute() throws Exception {
+        Route route = route("10.0.0.0/8", NEXT_HOP1);
+        store.updateRoute(route);
+        store.updateNextHop(NEXT_HOP1, NEXT_HOP_DATA);
+        await(() -> store.getRoutes(IPV4).size() == 1);
+
+        // A route through the same next hop not yet known locally, as if
+        // just written by another instance
+        Map<RouteTableId, ?> routeTables = TestUtils.getField(store, "routeTables");
+        TestConsistentMap<IpPrefix, Route> routes = TestUtils.getField(routeTables.get(IPV4), "routes");
+        Route other = route("11.0.0.0/8", NEXT_HOP1);
+        routes.entries.put(other.prefix(), new Versioned<>(other, 0));
+
+        store.removeRoute(route);
+        await(() -> store.getRoutes(IPV4).isEmpty());
+        Thread.sleep(50);
+        assertEquals("next hop still in use", NEXT_HOP_DATA, store.getNextHop(NEXT_HOP1));
+    }
+
+    @Test
+    public void failedWrites() throws Exception {
+        failWrites = true;
+        Route route = route("10.0.0.0/8", NEXT_HOP1);
+        store.updateRoute(route);
+        assertEquals(1, store.getRoutesForNextHop(NEXT_HOP1).size());
+
+        // Routes failed to be written are no longer indexed
+        await(() -> store.getRoutesForNextHop(NEXT_HOP1).isEmpty());
+        assertTrue(store.getRoutes(IPV4).isEmpty());
+    }
+
+    @Test
+    public void deactivateFlushes() throws Exception {
+        store.updateRoute(route("10.0.0.0/8", NEXT_HOP1));
+        store.deactivate();
+        assertEquals("pending updates should be written", 1, writes.get());
+
+        store = new DistributedRouteStore(new TestStorageService());
+        store.activate();
+    }
+
+    @Test
+    public void batches() throws Exception {
+        int count = 1000;
+        for (int i = 0; i < count; i++) {
+            store.updateRoute(route("10." + (i / 256) + "." + (i % 256) + ".0/24", NEXT_HOP1));
+        }
+        // Only the last update of a prefix is written
+        store.updateRoute(route("10.0.0.0/24", NEXT_HOP2));
+        await(() -> store.getRoutes(IPV4).size() == count);
+        assertTrue("updates should be written in batches", writes.get() < count / 10);
+        assertEquals(route("10.0.0.0/24", NEXT_HOP2), store.longestPrefixMatch(IpAddress.valueOf("10.0.0.1")));
+    }
+
+    /**
+     * Measures the time taken to ingest a full IPv4 Internet routing table,
+     * until it can be looked up locally.
+     */
+    @Test
+    @Ignore("benchmark")
+    public void benchmark() throws Exception {
+        int count = 700000;
+        Random random = new Random(0);
+        Set<IpPrefix> prefixes = Sets.newHashSetWithExpectedSize(count);
+        while (prefixes.size() < count) {
+            int length = 8 + random.nextInt(17);
+            prefixes.add(IpPrefix.valueOf(Ip4Address.valueOf(random.nextInt()), length));
+        }
+        List<Route> routes = Lists.newArrayListWithCapacity(count);
+        prefixes.forEach(prefix -> routes.add(
+                new Route(Route.Source.BGP, prefix, random.nextBoolean() ? NEXT_HOP1 : NEXT_HOP2)));
+
+        long start = System.nanoTime();
+        routes.forEach(store::updateRoute);
+        long queued = System.nanoTime();
+        await(() -> store.getRoutes(IPV4).size() == count);
+        long converged = System.nanoTime();
+        System.out.printf("%d routes: queued in %d ms, converged in %d ms, %d writes%n",
+                          count, TimeUnit.NANOSECONDS.toMillis(queued - start),
+                          TimeUnit.NANOSECONDS.toMillis(converged - start), writes.get());
+    }
+
+    /**
+     * Storage service providing in-memory consistent maps.
+     */
+    private final class TestStorageService extends StorageServiceAdapter {
+        @Override
+        public <K, V> ConsistentMapBuilder<K, V> consistentMapBuilder() {
+            return new ConsistentMapBuilder<K, V>() {
+                @Override
+                public ConsistentMap<K, V> build() {
+                    return new TestConsistentMap<>(name());
+                }
+
+                @Override
+                public AsyncConsistentMap<K, V> buildAsyncMap() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+
+    /**
+     * In-memory consistent map notifying its listeners synchronously and
+     * counting the writes made.
+     */
+    private final class TestConsistentMap<K, V> extends ConsistentMapAdapter<K, V> {
+        private final String name;
+        private final Map<K, Versioned<V>> entries = Maps.newConcurrentMap();
+        private final List<MapEventListener<K, V>> listeners = new CopyOnWriteArrayList<>();
+        private long version = 0;
+
+        private TestConsistentMap(String name) {
+            this.name = name;
+        }
+
+        private synchronized Versioned<V> update(K key, V value) {
+            Versioned<V> previous = value == null ? entries.remove(key)
+                    : entries.put(key, new Versioned<>(value, ++version));
+            if (previous != null || value != null) {
+                MapEvent<K, V> event = new MapEvent<>(name, key, entries.get(key), previous);
+                listeners.forEach(listener -> listener.event(event));
+            }
+            return previous;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public Versioned<V> get(K key) {
+            return entries.get(key);
+        }
+
+        @Override
+        public Versioned<V> put(K key, V value) {
+            writes.incrementAndGet();
+            return update(key, value);
+        }
+
+        @Override
+        public Versioned<V> remove(K key) {
+            writes.incrementAndGet();
+            return update(key, null);
+        }
+
+        @Override
+        public boolean remove(K key, V value) {
+            writes.incrementAndGet();
+            Versioned<V> current = entries.get(key);
+            if (current != null && Objects.equals(current.value(), value)) {
+                update(key, null);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void putAll(Map<K, V> values) {
+            writes.incrementAndGet();
+            if (failWrites) {
+                throw new IllegalStateException("write failed");
+            }
+            values.forEach(this::update);
+        }
+
+        @Override
+        public void removeAll(Set<K> keys) {
+            writes.incrementAndGet();
+            keys.forEach(key -> update(key, null));
+        }
+
+        @Override
+        public Collection<Versioned<V>> values() {
+            return ImmutableList.copyOf(entries.values());
+        }
+
+        @Override
+        public Set<Map.Entry<K, Versioned<V>>> entrySet() {
+            return ImmutableSet.copyOf(entries.entrySet());
+        }
+
+        @Override
+        public void clear() {
+            entries.clear();
+        }
+
+        @Override
+        public void addListener(MapEventListener<K, V> listener, Executor executor) {
+            listeners.add(listener);
+        }
+
+        @Override
+        public void removeListener(MapEventListener<K, V> listener) {
+            listeners.remove(listener);
+        }
+    }
+}
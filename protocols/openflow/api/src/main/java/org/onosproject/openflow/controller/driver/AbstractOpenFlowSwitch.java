@@ -17,7 +17,8 @@
 package org.onosproject.openflow.controller.driver;
 
 import com.google.common.collect.Lists;
-import org.jboss.netty.channel.Channel;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
 import org.onlab.packet.IpAddress;
 import org.onosproject.net.Device;
 import org.onosproject.net.driver.AbstractHandlerBehaviour;
@@ -61,6 +62,8 @@ public abstract class AbstractOpenFlowSwitch extends AbstractHandlerBehaviour
 
     protected final Logger log = LoggerFactory.getLogger(getClass());
 
+    private static final long MAX_SEND_BLOCK_MILLIS = 1000;
+
     private Channel channel;
     protected String channelId;
 
@@ -127,10 +130,11 @@ public abstract class AbstractOpenFlowSwitch extends AbstractHandlerBehaviour
 
         if (role == RoleState.MASTER) {
             // fast path send when we are master
-            sendMsgsOnChannel(msgs);
+            awaitWritable(sendMsgsOnChannel(msgs));
             return;
         }
         // check to see if mastership transition is in progress
+        ChannelFuture future;
         synchronized (messagesPendingMastership) {
             /*
                messagesPendingMastership is used as synchronization variable for
@@ -139,31 +143,49 @@ public abstract class AbstractOpenFlowSwitch extends AbstractHandlerBehaviour
             */
             if (role == RoleState.MASTER) {
                 // transition to MASTER complete, send messages
-                sendMsgsOnChannel(msgs);
-                return;
-            }
-
-            List<OFMessage> messages = messagesPendingMastership.get();
-            if (messages != null) {
-                // we are transitioning to MASTER, so add messages to queue
-                messages.addAll(msgs);
-                log.debug("Enqueue message for switch {}. queue size after is {}",
-                          dpid, messages.size());
+                future = sendMsgsOnChannel(msgs);
             } else {
-                // not transitioning to MASTER
-                log.warn("Dropping message for switch {} (role: {}, connected: {}): {}",
-                         dpid, role, channel.isConnected(), msgs);
+                future = null;
+                List<OFMessage> messages = messagesPendingMastership.get();
+                if (messages != null) {
+                    // we are transitioning to MASTER, so add messages to queue
+                    messages.addAll(msgs);
+                    log.debug("Enqueue message for switch {}. queue size after is {}",
+                              dpid, messages.size());
+                } else {
+                    // not transitioning to MASTER
+                    log.warn("Dropping message for switch {} (role: {}, connected: {}): {}",
+                             dpid, role, channel.isActive(), msgs);
+                }
             }
         }
+        // slows the sender down outside the lock, not to hold up the
+        // mastership changes
+        awaitWritable(future);
     }
 
-    private void sendMsgsOnChannel(List<OFMessage> msgs) {
-        if (channel.isConnected()) {
-            channel.write(msgs);
+    private ChannelFuture sendMsgsOnChannel(List<OFMessage> msgs) {
+        if (channel.isActive()) {
+            ChannelFuture future = channel.writeAndFlush(msgs);
+            future.addListener(written -> {
+                if (!written.isSuccess() && channel.isActive()) {
+                    log.warn("Failed to send messages to switch {}: {}", dpid, written.cause().getMessage());
+                }
+            });
             agent.processDownstreamMessage(dpid, msgs);
+            return future;
         } else {
             log.warn("Dropping messages for switch {} because channel is not connected: {}",
                      dpid, msgs);
+            return null;
+        }
+    }
+
+    // Slows the sender down while the switch is not keeping up, for a bounded
+    // time and unless on the I/O thread of the switch, which drains the channel
+    private void awaitWritable(ChannelFuture future) {
+        if (future != null && !channel.isWritable() && !channel.eventLoop().inEventLoop()) {
+            future.awaitUninterruptibly(MAX_SEND_BLOCK_MILLIS);
         }
     }
 
@@ -199,7 +221,7 @@ public abstract class AbstractOpenFlowSwitch extends AbstractHandlerBehaviour
     @Override
     public final void setChannel(Channel channel) {
         this.channel = channel;
-        final SocketAddress address = channel.getRemoteAddress();
+        final SocketAddress address = channel.remoteAddress();
         if (address instanceof InetSocketAddress) {
             final InetSocketAddress inetAddress = (InetSocketAddress) address;
             final IpAddress ipAddress = IpAddress.valueOf(inetAddress.getAddress());
@@ -514,7 +536,7 @@ public abstract class AbstractOpenFlowSwitch extends AbstractHandlerBehaviour
     @Override
     public String toString() {
         return this.getClass().getName() + " [" + ((channel != null)
-                ? channel.getRemoteAddress() : "?")
+                ? channel.remoteAddress() : "?")
                 + " DPID[" + ((getStringId() != null) ? getStringId() : "?") + "]]";
     }
 }
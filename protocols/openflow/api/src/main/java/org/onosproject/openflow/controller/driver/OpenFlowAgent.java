@@ -101,6 +101,15 @@ public interface OpenFlowAgent {
      */
     void processMessage(Dpid dpid, OFMessage m);
 
+    /**
+     * Process a change of the writability of the channel to a switch, as the
+     * switch falls behind or catches up with the messages sent to it.
+     *
+     * @param dpid the dpid of the switch
+     * @param writable whether the channel is writable
+     */
+    void processWritabilityChange(Dpid dpid, boolean writable);
+
     /**
      * Notifies the controller that role assertion has failed.
      *
@@ -16,14 +16,25 @@
 
 package org.onosproject.openflow.controller.impl;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
-import org.jboss.netty.bootstrap.ServerBootstrap;
-import org.jboss.netty.channel.ChannelPipelineFactory;
-import org.jboss.netty.channel.group.ChannelGroup;
-import org.jboss.netty.channel.group.DefaultChannelGroup;
-import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
-
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import org.onlab.metrics.MetricsComponent;
+import org.onlab.metrics.MetricsFeature;
+import org.onlab.metrics.MetricsService;
 import org.onlab.util.ItemNotFoundException;
 import org.onosproject.net.DeviceId;
 import org.onosproject.net.driver.DefaultDriverData;
@@ -52,7 +63,6 @@ import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -82,12 +92,26 @@ public class Controller {
     protected List<Integer> openFlowPorts = ImmutableList.of(6633, 6653);
     protected int workerThreads = 0;
 
+    static final int DEFAULT_WRITE_BATCH_SIZE = 64 * 1024;
+    static final int DEFAULT_WRITE_BATCH_DELAY = 500;
+    static final int DEFAULT_MAX_PENDING_WRITE_BYTES = 4 * 1024 * 1024;
+
+    // Coalescing of the writes to the switches; batch size in bytes, 0 if
+    // disabled, and batch delay in microseconds
+    protected int writeBatchSize = DEFAULT_WRITE_BATCH_SIZE;
+    protected int writeBatchDelay = DEFAULT_WRITE_BATCH_DELAY;
+    protected int maxPendingWriteBytes = DEFAULT_MAX_PENDING_WRITE_BYTES;
+    protected Histogram writeBatchSizes;
+    protected Counter pendingWriteBytes;
+
     // Start time of the controller
     protected long systemStartTime;
 
     private OpenFlowAgent agent;
 
-    private NioServerSocketChannelFactory execFactory;
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+    private Class<? extends ServerChannel> serverChannelClass;
 
     protected String ksLocation;
     protected String tsLocation;
@@ -97,6 +121,7 @@ public class Controller {
 
     // Perf. related configuration
     protected static final int SEND_BUFFER_SIZE = 4 * 1024 * 1024;
+    private static final int MIN_HIGH_WATER_MARK = 64 * 1024;
     private DriverService driverService;
     private boolean enableOfTls = TLS_DISABLED;
 
@@ -113,6 +138,18 @@ public class Controller {
         return FACTORY13;
     }
 
+    /**
+     * Sets the metrics service used to report on the write batches.
+     *
+     * @param metricsService metrics service
+     */
+    public void setMetricsService(MetricsService metricsService) {
+        MetricsComponent component = metricsService.registerComponent("OpenFlowController");
+        MetricsFeature feature = component.registerFeature("writes");
+        writeBatchSizes = metricsService.createHistogram(component, feature, "writeBatchSize");
+        pendingWriteBytes = metricsService.createCounter(component, feature, "pendingWriteBytes");
+    }
+
     // **************
     // Initialization
     // **************
@@ -125,18 +162,21 @@ public class Controller {
         try {
             final ServerBootstrap bootstrap = createServerBootStrap();
 
-            bootstrap.setOption("reuseAddr", true);
-            bootstrap.setOption("child.keepAlive", true);
-            bootstrap.setOption("child.tcpNoDelay", true);
-            bootstrap.setOption("child.sendBufferSize", Controller.SEND_BUFFER_SIZE);
-
-            ChannelPipelineFactory pfact =
-                    new OpenflowPipelineFactory(this, null, sslContext);
-            bootstrap.setPipelineFactory(pfact);
-            cg = new DefaultChannelGroup();
+            bootstrap.option(ChannelOption.SO_REUSEADDR, true);
+            bootstrap.childOption(ChannelOption.SO_KEEPALIVE, true);
+            bootstrap.childOption(ChannelOption.TCP_NODELAY, true);
+            bootstrap.childOption(ChannelOption.SO_SNDBUF, Controller.SEND_BUFFER_SIZE);
+            bootstrap.childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
+            // Channels to switches not keeping up are reported as not writable
+            int highWaterMark = Math.max(maxPendingWriteBytes, MIN_HIGH_WATER_MARK);
+            bootstrap.childOption(ChannelOption.WRITE_BUFFER_HIGH_WATER_MARK, highWaterMark);
+            bootstrap.childOption(ChannelOption.WRITE_BUFFER_LOW_WATER_MARK, highWaterMark / 2);
+
+            bootstrap.childHandler(new OFChannelInitializer(this, sslContext));
+            cg = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
             openFlowPorts.forEach(port -> {
                 InetSocketAddress sa = new InetSocketAddress(port);
-                cg.add(bootstrap.bind(sa));
+                cg.add(bootstrap.bind(sa).syncUninterruptibly().channel());
                 log.info("Listening for switch connections on {}", sa);
             });
 
@@ -147,18 +187,26 @@ public class Controller {
     }
 
     private ServerBootstrap createServerBootStrap() {
-
-        if (workerThreads == 0) {
-            execFactory = new NioServerSocketChannelFactory(
-                    Executors.newCachedThreadPool(groupedThreads("onos/of", "boss-%d", log)),
-                    Executors.newCachedThreadPool(groupedThreads("onos/of", "worker-%d", log)));
-            return new ServerBootstrap(execFactory);
-        } else {
-            execFactory = new NioServerSocketChannelFactory(
-                    Executors.newCachedThreadPool(groupedThreads("onos/of", "boss-%d", log)),
-                    Executors.newCachedThreadPool(groupedThreads("onos/of", "worker-%d", log)), workerThreads);
-            return new ServerBootstrap(execFactory);
+        // Use the native epoll transport if possible, nio otherwise; 0
+        // worker threads lets netty size the worker group after the cores
+        try {
+            bossGroup = new EpollEventLoopGroup(1, groupedThreads("onos/of", "boss-%d", log));
+            workerGroup = new EpollEventLoopGroup(workerThreads, groupedThreads("onos/of", "worker-%d", log));
+            serverChannelClass = EpollServerSocketChannel.class;
+        } catch (Throwable e) {
+            log.debug("Failed to initialize native (epoll) transport. "
+                              + "Reason: {}. Proceeding with nio.", e.getMessage());
+            if (bossGroup != null) {
+                bossGroup.shutdownGracefully();
+            }
+            bossGroup = new NioEventLoopGroup(1, groupedThreads("onos/of", "boss-%d", log));
+            workerGroup = new NioEventLoopGroup(workerThreads, groupedThreads("onos/of", "worker-%d", log));
+            serverChannelClass = NioServerSocketChannel.class;
         }
+        log.info("Using {} for switch connections", serverChannelClass.getSimpleName());
+        return new ServerBootstrap()
+                .group(bossGroup, workerGroup)
+                .channel(serverChannelClass);
     }
 
     public void setConfigParams(Dictionary<?, ?> properties) {
@@ -175,6 +223,21 @@ public class Controller {
             this.workerThreads = Integer.parseInt(threads);
         }
         log.debug("Number of worker threads set to {}", this.workerThreads);
+
+        String batchSize = get(properties, "writeBatchSize");
+        if (!Strings.isNullOrEmpty(batchSize)) {
+            this.writeBatchSize = Integer.parseInt(batchSize);
+        }
+        String batchDelay = get(properties, "writeBatchDelay");
+        if (!Strings.isNullOrEmpty(batchDelay)) {
+            this.writeBatchDelay = Integer.parseInt(batchDelay);
+        }
+        String maxPending = get(properties, "maxPendingWriteBytes");
+        if (!Strings.isNullOrEmpty(maxPending)) {
+            this.maxPendingWriteBytes = Integer.parseInt(maxPending);
+        }
+        log.debug("Write batches set to {} bytes, {} us, {} max pending bytes",
+                  this.writeBatchSize, this.writeBatchDelay, this.maxPendingWriteBytes);
     }
 
     /**
@@ -305,6 +368,11 @@ public class Controller {
         return ofSwitchDriver;
     }
 
+    // Notifies the agent that a switch fell behind or caught up
+    void processWritabilityChange(Dpid dpid, boolean writable) {
+        agent.processWritabilityChange(dpid, writable);
+    }
+
     public void start(OpenFlowAgent ag, DriverService driverService) {
         log.info("Starting OpenFlow IO");
         this.agent = ag;
@@ -316,8 +384,9 @@ public class Controller {
 
     public void stop() {
         log.info("Stopping OpenFlow IO");
-        cg.close();
-        execFactory.shutdown();
+        cg.close().awaitUninterruptibly();
+        bossGroup.shutdownGracefully();
+        workerGroup.shutdownGracefully();
     }
 
 }
@@ -16,59 +16,41 @@
 
 package org.onosproject.openflow.controller.impl;
 
-import org.jboss.netty.channel.ChannelPipeline;
-import org.jboss.netty.channel.ChannelPipelineFactory;
-import org.jboss.netty.channel.Channels;
-import org.jboss.netty.handler.execution.ExecutionHandler;
-import org.jboss.netty.handler.ssl.SslHandler;
-import org.jboss.netty.handler.timeout.IdleStateHandler;
-import org.jboss.netty.handler.timeout.ReadTimeoutHandler;
-import org.jboss.netty.util.ExternalResourceReleasable;
-import org.jboss.netty.util.HashedWheelTimer;
-import org.jboss.netty.util.Timer;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.handler.timeout.ReadTimeoutHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
 
-import static org.onlab.util.Tools.groupedThreads;
-
-import java.util.concurrent.ThreadPoolExecutor;
-
 /**
- * Creates a ChannelPipeline for a server-side openflow channel.
+ * Initializes the pipeline of a server-side openflow channel.
  */
-public class OpenflowPipelineFactory
-    implements ChannelPipelineFactory, ExternalResourceReleasable {
+public class OFChannelInitializer extends ChannelInitializer<SocketChannel> {
 
     private final Logger log = LoggerFactory.getLogger(getClass());
 
 
     private final SSLContext sslContext;
     protected Controller controller;
-    protected ThreadPoolExecutor pipelineExecutor;
-    protected Timer timer;
-    protected IdleStateHandler idleHandler;
-    protected ReadTimeoutHandler readTimeoutHandler;
 
-    public OpenflowPipelineFactory(Controller controller,
-                                   ThreadPoolExecutor pipelineExecutor,
-                                   SSLContext sslContext) {
+    public OFChannelInitializer(Controller controller,
+                                SSLContext sslContext) {
         super();
         this.controller = controller;
-        this.pipelineExecutor = pipelineExecutor;
-        this.timer = new HashedWheelTimer(groupedThreads("OpenflowPipelineFactory", "timer-%d", log));
-        this.idleHandler = new IdleStateHandler(timer, 20, 25, 0);
-        this.readTimeoutHandler = new ReadTimeoutHandler(timer, 30);
         this.sslContext = sslContext;
     }
 
     @Override
-    public ChannelPipeline getPipeline() throws Exception {
+    protected void initChannel(SocketChannel channel) throws Exception {
         OFChannelHandler handler = new OFChannelHandler(controller);
 
-        ChannelPipeline pipeline = Channels.pipeline();
+        ChannelPipeline pipeline = channel.pipeline();
         if (sslContext != null) {
             log.debug("OpenFlow SSL enabled.");
             SSLEngine sslEngine = sslContext.createSSLEngine();
@@ -86,21 +68,17 @@ public class OpenflowPipelineFactory
         }
         pipeline.addLast("ofmessagedecoder", new OFMessageDecoder());
         pipeline.addLast("ofmessageencoder", new OFMessageEncoder());
-        pipeline.addLast("idle", idleHandler);
-        pipeline.addLast("timeout", readTimeoutHandler);
+        if (controller.writeBatchSize > 0) {
+            pipeline.addLast("ofmessagebatcher",
+                             new OFMessageBatcher(controller.writeBatchSize, controller.writeBatchDelay,
+                                                  controller.maxPendingWriteBytes,
+                                                  controller.writeBatchSizes, controller.pendingWriteBytes));
+        }
+        pipeline.addLast("idle", new IdleStateHandler(20, 25, 0));
+        pipeline.addLast("timeout", new ReadTimeoutHandler(30));
         // XXX S ONOS: was 15 increased it to fix Issue #296
         pipeline.addLast("handshaketimeout",
-                         new HandshakeTimeoutHandler(handler, timer, 60));
-        if (pipelineExecutor != null) {
-            pipeline.addLast("pipelineExecutor",
-                             new ExecutionHandler(pipelineExecutor));
-        }
+                         new HandshakeTimeoutHandler(handler, 60));
         pipeline.addLast("handler", handler);
-        return pipeline;
-    }
-
-    @Override
-    public void releaseExternalResources() {
-        timer.stop();
     }
 }
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.openflow.controller.impl;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelException;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFType;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces the messages written to a switch into large buffers, so that
+ * installing many flows takes a few large writes instead of one write per
+ * flow.
+ * <p>
+ * Flow mods, group mods and barrier requests are held until the buffer
+ * reaches the batch size or until the batch delay has elapsed; any other
+ * message is written right away, along with the messages held before it.
+ * While the channel is not writable the buffer is held, so that it is
+ * handed to the socket in one piece once the switch catches up; the writes
+ * which would make it hold more than the maximum pending bytes fail instead.
+ */
+final class OFMessageBatcher extends ChannelDuplexHandler {
+
+    private static final Set<OFType> BATCHED =
+            EnumSet.of(OFType.FLOW_MOD, OFType.GROUP_MOD, OFType.BARRIER_REQUEST);
+
+    private final int batchSize;
+    private final long batchDelayMicros;
+    private final int maxPendingBytes;
+    private final Histogram batchSizes;
+    private final Counter pendingBytes;
+
+    // Only ever accessed from the event loop of the channel
+    private ByteBuf batch;
+    private List<ChannelPromise> promises = new ArrayList<>();
+    private int messages;
+    private ScheduledFuture<?> pendingFlush;
+
+    /**
+     * Creates a batcher for a channel.
+     *
+     * @param batchSize number of bytes triggering a write
+     * @param batchDelayMicros maximum time messages are held, in microseconds
+     * @param maxPendingBytes number of bytes held while the channel is not
+     *                        writable above which writes fail
+     * @param batchSizes histogram of the number of messages per write; may be null
+     * @param pendingBytes counter of the bytes held; may be null
+     */
+    OFMessageBatcher(int batchSize, long batchDelayMicros, int maxPendingBytes,
+                     Histogram batchSizes, Counter pendingBytes) {
+        this.batchSize = batchSize;
+        this.batchDelayMicros = batchDelayMicros;
+        this.maxPendingBytes = maxPendingBytes;
+        this.batchSizes = batchSizes;
+        this.pendingBytes = pendingBytes;
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (!isBatched(msg) || !ctx.channel().isActive()) {
+            writeBatch(ctx);
+            ctx.write(msg, promise);
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        List<OFMessage> msgs = (List<OFMessage>) msg;
+        if (batch != null && batch.readableBytes() >= maxPendingBytes && !ctx.channel().isWritable()) {
+            // the switch is not keeping up; let the senders know rather than
+            // holding their messages without bound
+            promise.setFailure(new ChannelException("More than " + maxPendingBytes
+                                                            + " bytes pending for the switch"));
+            return;
+        }
+        if (batch == null) {
+            batch = ctx.alloc().ioBuffer(batchSize);
+        }
+        int start = batch.writerIndex();
+        try {
+            OFMessageEncoder.encode(msgs, batch);
+        } catch (RuntimeException e) {
+            batch.writerIndex(start);
+            promise.setFailure(e);
+            return;
+        }
+        for (OFMessage m : msgs) {
+            if (m != null) {
+                messages++;
+            }
+        }
+        if (pendingBytes != null) {
+            pendingBytes.inc(batch.writerIndex() - start);
+        }
+        promises.add(promise);
+
+        if (batch.readableBytes() >= batchSize && ctx.channel().isWritable()) {
+            writeBatch(ctx);
+            ctx.flush();
+        } else if (pendingFlush == null) {
+            pendingFlush = ctx.executor().schedule(() -> flushOnDelay(ctx),
+                                                   batchDelayMicros, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (ctx.channel().isWritable() && batch != null) {
+            writeBatch(ctx);
+            ctx.flush();
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        discardBatch();
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        discardBatch();
+    }
+
+    private static boolean isBatched(Object msg) {
+        if (!(msg instanceof List)) {
+            return false;
+        }
+        for (Object m : (List<?>) msg) {
+            if (m != null && !(m instanceof OFMessage && BATCHED.contains(((OFMessage) m).getType()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void flushOnDelay(ChannelHandlerContext ctx) {
+        pendingFlush = null;
+        if (ctx.channel().isWritable()) {
+            writeBatch(ctx);
+            ctx.flush();
+        }
+    }
+
+    // Writes the messages held, in a single buffer, ahead of any message
+    // written after them
+    private void writeBatch(ChannelHandlerContext ctx) {
+        if (pendingFlush != null) {
+            pendingFlush.cancel(false);
+            pendingFlush = null;
+        }
+        if (batch == null) {
+            return;
+        }
+        ByteBuf out = batch;
+        List<ChannelPromise> done = promises;
+        if (batchSizes != null) {
+            batchSizes.update(messages);
+        }
+        if (pendingBytes != null) {
+            pendingBytes.dec(out.readableBytes());
+        }
+        batch = null;
+        promises = new ArrayList<>();
+        messages = 0;
+
+        ctx.write(out).addListener(written -> done.forEach(p -> {
+            if (written.isSuccess()) {
+                p.trySuccess();
+            } else {
+                p.tryFailure(written.cause());
+            }
+        }));
+    }
+
+    // Releases the messages held, failing their writes
+    private void discardBatch() {
+        if (pendingFlush != null) {
+            pendingFlush.cancel(false);
+            pendingFlush = null;
+        }
+        if (batch == null) {
+            return;
+        }
+        if (pendingBytes != null) {
+            pendingBytes.dec(batch.readableBytes());
+        }
+        batch.release();
+        ClosedChannelException cause = new ClosedChannelException();
+        promises.forEach(p -> p.tryFailure(cause));
+        batch = null;
+        promises = new ArrayList<>();
+        messages = 0;
+    }
+}
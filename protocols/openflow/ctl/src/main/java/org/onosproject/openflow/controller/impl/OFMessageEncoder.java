@@ -16,44 +16,57 @@
 
 package org.onosproject.openflow.controller.impl;
 
-import java.util.List;
-
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.util.concurrent.FastThreadLocal;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
-import org.jboss.netty.channel.Channel;
-import org.jboss.netty.channel.ChannelHandlerContext;
-import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
 import org.projectfloodlight.openflow.protocol.OFMessage;
 
 /**
- * Encode an openflow message for output into a ChannelBuffer, for use in a
- * netty pipeline.
+ * Encode a list of openflow messages for output into a ByteBuf, for use in
+ * a netty pipeline. Other objects are passed through.
  */
-public class OFMessageEncoder extends OneToOneEncoder {
+public class OFMessageEncoder extends MessageToByteEncoder<Iterable<OFMessage>> {
 
-    @Override
-    protected Object encode(ChannelHandlerContext ctx, Channel channel,
-                            Object msg) throws Exception {
-        if (!(msg instanceof List)) {
-            return msg;
-        }
+    private static final int INITIAL_SCRATCH_CAPACITY = 64 * 1024;
+    private static final int MAX_SCRATCH_CAPACITY = 1024 * 1024;
 
-        @SuppressWarnings("unchecked")
-        List<OFMessage> msglist = (List<OFMessage>) msg;
-        /* XXX S can't get length of OFMessage in loxigen's openflowj??
-        int size = 0;
-        for (OFMessage ofm : msglist) {
-            size += ofm.getLengthU();
-        }*/
+    // openflowj still writes to Netty 3 buffers; messages are serialized
+    // into a scratch buffer of the I/O thread, reused from one write to the
+    // next, and copied out into the pooled buffer of the channel
+    private static final FastThreadLocal<ChannelBuffer> SCRATCH = new FastThreadLocal<ChannelBuffer>() {
+        @Override
+        protected ChannelBuffer initialValue() {
+            return ChannelBuffers.dynamicBuffer(INITIAL_SCRATCH_CAPACITY);
+        }
+    };
 
-        ChannelBuffer buf = ChannelBuffers.dynamicBuffer();
+    @Override
+    protected void encode(ChannelHandlerContext ctx, Iterable<OFMessage> msgs,
+                          ByteBuf out) throws Exception {
+        encode(msgs, out);
+    }
 
-        for (OFMessage ofm : msglist) {
+    /**
+     * Writes a list of openflow messages to a buffer.
+     *
+     * @param msgs messages; null entries are skipped
+     * @param out buffer to write to
+     */
+    static void encode(Iterable<? extends OFMessage> msgs, ByteBuf out) {
+        ChannelBuffer buf = SCRATCH.get();
+        buf.clear();
+        for (OFMessage ofm : msgs) {
             if (ofm != null) {
                 ofm.writeTo(buf);
             }
         }
-        return buf;
+        out.writeBytes(buf.toByteBuffer());
+        if (buf.capacity() > MAX_SCRATCH_CAPACITY) {
+            SCRATCH.remove();
+        }
     }
 
 }
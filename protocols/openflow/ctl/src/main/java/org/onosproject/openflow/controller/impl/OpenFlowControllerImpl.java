@@ -15,6 +15,7 @@
  */
 package org.onosproject.openflow.controller.impl;
 
+import com.google.common.base.Strings;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
@@ -26,6 +27,7 @@ import org.apache.felix.scr.annotations.Property;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.ReferenceCardinality;
 import org.apache.felix.scr.annotations.Service;
+import org.onlab.metrics.MetricsService;
 import org.onosproject.cfg.ComponentConfigService;
 import org.onosproject.core.CoreService;
 import org.onosproject.net.device.DeviceEvent;
@@ -71,10 +73,14 @@ import org.projectfloodlight.openflow.protocol.instruction.OFInstruction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.net.URI;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Dictionary;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -85,6 +91,8 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+import static org.onlab.util.Tools.get;
+import static org.onlab.util.Tools.getIntegerProperty;
 import static org.onlab.util.Tools.groupedThreads;
 import static org.onosproject.net.Device.Type.CONTROLLER;
 import static org.onosproject.net.device.DeviceEvent.Type.DEVICE_REMOVED;
@@ -96,6 +104,7 @@ public class OpenFlowControllerImpl implements OpenFlowController {
     private static final String APP_ID = "org.onosproject.openflow-base";
     private static final String DEFAULT_OFPORT = "6633,6653";
     private static final int DEFAULT_WORKER_THREADS = 0;
+    private static final String DEFAULT_OVERLOAD_POLICY = "DROP_NEWEST";
 
     private static final Logger log =
             LoggerFactory.getLogger(OpenFlowControllerImpl.class);
@@ -116,15 +125,61 @@ public class OpenFlowControllerImpl implements OpenFlowController {
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
     protected DeviceService deviceService;
 
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected MetricsService metricsService;
+
 
     @Property(name = "openflowPorts", value = DEFAULT_OFPORT,
             label = "Port numbers (comma separated) used by OpenFlow protocol; default is 6633,6653")
     private String openflowPorts = DEFAULT_OFPORT;
 
     @Property(name = "workerThreads", intValue = DEFAULT_WORKER_THREADS,
-            label = "Number of controller worker threads")
+            label = "Number of controller worker threads; 0 to size the event loops " +
+                    "after the number of cores")
     private int workerThreads = DEFAULT_WORKER_THREADS;
 
+    @Property(name = "writeBatchSize", intValue = Controller.DEFAULT_WRITE_BATCH_SIZE,
+            label = "Number of bytes of flow mods, group mods and barriers coalesced " +
+                    "into a write to a switch; 0 to disable coalescing")
+    private int writeBatchSize = Controller.DEFAULT_WRITE_BATCH_SIZE;
+
+    @Property(name = "writeBatchDelay", intValue = Controller.DEFAULT_WRITE_BATCH_DELAY,
+            label = "Maximum time, in microseconds, messages are held for coalescing")
+    private int writeBatchDelay = Controller.DEFAULT_WRITE_BATCH_DELAY;
+
+    @Property(name = "maxPendingWriteBytes", intValue = Controller.DEFAULT_MAX_PENDING_WRITE_BYTES,
+            label = "Number of bytes queued for a switch not keeping up beyond which " +
+                    "its channel is not writable and its packet-ins are held; " +
+                    "flow mods held beyond as many bytes fail")
+    private int maxPendingWriteBytes = Controller.DEFAULT_MAX_PENDING_WRITE_BYTES;
+
+    @Property(name = "packetInWorkers", intValue = PacketInDispatcher.DEFAULT_WORKERS,
+            label = "Number of threads handling packet-ins")
+    private int packetInWorkers = PacketInDispatcher.DEFAULT_WORKERS;
+
+    @Property(name = "packetInQueueSize", intValue = PacketInDispatcher.DEFAULT_QUEUE_SIZE,
+            label = "Maximum number of pending packet-ins per switch")
+    private int packetInQueueSize = PacketInDispatcher.DEFAULT_QUEUE_SIZE;
+
+    @Property(name = "packetInOverloadPolicy", value = DEFAULT_OVERLOAD_POLICY,
+            label = "Policy applied to packet-ins of a switch with a full queue: " +
+                    "DROP_NEWEST, DROP_OLDEST or SAMPLE")
+    private String packetInOverloadPolicy = DEFAULT_OVERLOAD_POLICY;
+
+    @Property(name = "packetInSampleRate", intValue = PacketInDispatcher.DEFAULT_SAMPLE_RATE,
+            label = "One out of how many packet-ins is admitted by the SAMPLE policy " +
+                    "once the queue of a switch is half full")
+    private int packetInSampleRate = PacketInDispatcher.DEFAULT_SAMPLE_RATE;
+
+    @Property(name = "packetInQuantum", intValue = PacketInDispatcher.DEFAULT_QUANTUM,
+            label = "Number of packet-ins of a switch handled in a turn, times its weight")
+    private int packetInQuantum = PacketInDispatcher.DEFAULT_QUANTUM;
+
+    @Property(name = "packetInWeights", value = "",
+            label = "Weights of switches in packet-in handling (comma separated " +
+                    "dpid=weight); the other switches have weight 1")
+    private String packetInWeights = "";
+
     protected ExecutorService executorMsgs =
         Executors.newFixedThreadPool(32, groupedThreads("onos/of", "event-stats-%d", log));
 
@@ -171,6 +226,8 @@ public class OpenFlowControllerImpl implements OpenFlowController {
     protected Multimap<Dpid, OFPortStatsEntry> fullPortStats =
             ArrayListMultimap.create();
 
+    protected PacketInDispatcher packetInDispatcher = new PacketInDispatcher(this::handlePacketIn);
+
     private final Controller ctrl = new Controller();
     private InternalDeviceListener listener = new InternalDeviceListener();
 
@@ -179,6 +236,9 @@ public class OpenFlowControllerImpl implements OpenFlowController {
         coreService.registerApplication(APP_ID, this::cleanup);
         cfgService.registerProperties(getClass());
         deviceService.addListener(listener);
+        setPacketInParams(context.getProperties());
+        packetInDispatcher.registerMetrics(metricsService);
+        ctrl.setMetricsService(metricsService);
         ctrl.setConfigParams(context.getProperties());
         ctrl.start(agent, driverService);
     }
@@ -197,16 +257,65 @@ public class OpenFlowControllerImpl implements OpenFlowController {
     public void deactivate() {
         deviceService.removeListener(listener);
         cleanup();
+        packetInDispatcher.unregisterMetrics();
+        packetInDispatcher.shutdown();
         cfgService.unregisterProperties(getClass(), false);
     }
 
     @Modified
     public void modified(ComponentContext context) {
+        setPacketInParams(context.getProperties());
         ctrl.stop();
         ctrl.setConfigParams(context.getProperties());
         ctrl.start(agent, driverService);
     }
 
+    private void setPacketInParams(Dictionary<?, ?> properties) {
+        packetInWorkers = getIntegerProperty(properties, "packetInWorkers", packetInWorkers);
+        packetInQueueSize = getIntegerProperty(properties, "packetInQueueSize", packetInQueueSize);
+        packetInSampleRate = getIntegerProperty(properties, "packetInSampleRate", packetInSampleRate);
+        packetInQuantum = getIntegerProperty(properties, "packetInQuantum", packetInQuantum);
+        String policy = get(properties, "packetInOverloadPolicy");
+        if (!Strings.isNullOrEmpty(policy)) {
+            packetInOverloadPolicy = policy.trim();
+        }
+        String weights = get(properties, "packetInWeights");
+        if (weights != null) {
+            packetInWeights = weights.trim();
+        }
+
+        try {
+            packetInDispatcher.setWorkers(packetInWorkers);
+            packetInDispatcher.setQueueSize(packetInQueueSize);
+            packetInDispatcher.setQuantum(packetInQuantum);
+            packetInDispatcher.setOverloadPolicy(
+                    PacketInDispatcher.OverloadPolicy.valueOf(packetInOverloadPolicy),
+                    packetInSampleRate);
+            packetInDispatcher.setWeights(parseWeights(packetInWeights));
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid packet-in settings: {}", e.getMessage());
+        }
+        log.info("Settings: packetInWorkers={}, packetInQueueSize={}, packetInOverloadPolicy={}, " +
+                         "packetInSampleRate={}, packetInQuantum={}, packetInWeights={}",
+                 packetInWorkers, packetInQueueSize, packetInOverloadPolicy,
+                 packetInSampleRate, packetInQuantum, packetInWeights);
+    }
+
+    private static Map<Dpid, Integer> parseWeights(String weights) {
+        Map<Dpid, Integer> parsed = new HashMap<>();
+        if (weights.isEmpty()) {
+            return parsed;
+        }
+        for (String entry : weights.split(",")) {
+            String[] pair = entry.trim().split("=");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Malformed weight " + entry);
+            }
+            parsed.put(Dpid.dpid(URI.create(pair[0].trim())), Integer.parseInt(pair[1].trim()));
+        }
+        return parsed;
+    }
+
     @Override
     public Iterable<OpenFlowSwitch> getSwitches() {
         return connectedSwitches.values();
@@ -312,9 +421,7 @@ public class OpenFlowControllerImpl implements OpenFlowController {
             }
             OpenFlowPacketContext pktCtx = DefaultOpenFlowPacketContext
             .packetContextFromPacketIn(sw, (OFPacketIn) msg);
-            for (PacketListener p : ofPacketListener.values()) {
-                p.handlePacket(pktCtx);
-            }
+            packetInDispatcher.dispatch(dpid, pktCtx);
             break;
         // TODO: Consider using separate threadpool for sensitive messages.
         //    ie. Back to back error could cause us to starve.
@@ -476,6 +583,13 @@ public class OpenFlowControllerImpl implements OpenFlowController {
         }
     }
 
+    // Invoked by the packet-in dispatcher workers
+    private void handlePacketIn(OpenFlowPacketContext pktCtx) {
+        for (PacketListener p : ofPacketListener.values()) {
+            p.handlePacket(pktCtx);
+        }
+    }
+
     private synchronized Collection<OFFlowStatsEntry> publishFlowStats(Dpid dpid,
                                                                        OFFlowStatsReply reply) {
         //TODO: Get rid of synchronized
@@ -704,6 +818,7 @@ public class OpenFlowControllerImpl implements OpenFlowController {
         @Override
         public void removeConnectedSwitch(Dpid dpid) {
             connectedSwitches.remove(dpid);
+            packetInDispatcher.remove(dpid);
             OpenFlowSwitch sw = activeMasterSwitches.remove(dpid);
             if (sw == null) {
                 log.debug("sw was null for {}", dpid);
@@ -731,6 +846,16 @@ public class OpenFlowControllerImpl implements OpenFlowController {
             }
         }
 
+        @Override
+        public void processWritabilityChange(Dpid dpid, boolean writable) {
+            if (connectedSwitches.get(dpid) == null) {
+                return;
+            }
+            // hold the packet-ins of a switch falling behind, so that the
+            // responses to them do not pile up on its channel
+            packetInDispatcher.setPaused(dpid, !writable);
+        }
+
         @Override
         public void returnRoleReply(Dpid dpid, RoleState requested, RoleState response) {
             for (OpenFlowSwitchListener l : ofSwitchListener) {
@@ -0,0 +1,399 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.openflow.controller.impl;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import com.google.common.collect.ImmutableMap;
+import org.onlab.metrics.MetricsComponent;
+import org.onlab.metrics.MetricsFeature;
+import org.onlab.metrics.MetricsService;
+import org.onosproject.openflow.controller.Dpid;
+import org.onosproject.openflow.controller.OpenFlowPacketContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.onlab.util.Tools.groupedThreads;
+
+/**
+ * Hands the packet-ins received from the switches over to the packet
+ * listeners on a pool of worker threads, away from the I/O threads.
+ * <p>
+ * Each switch has a bounded queue of pending packet-ins. The switches with
+ * pending packet-ins take turns on the workers, each turn handling as many
+ * packet-ins as the weight of the switch times the quantum, so a switch
+ * flooding the controller delays the packet-ins of the others by at most
+ * a round. The packet-ins of a switch are handled one at a time, in order.
+ * <p>
+ * The packet-ins of a switch that is not keeping up with the messages sent
+ * to it are held until it catches up, so that the listeners stop adding to
+ * its backlog; meanwhile its queue fills up and the overload policy applies.
+ */
+final class PacketInDispatcher {
+
+    /**
+     * Policies applied to the packet-ins of a switch whose queue is full.
+     */
+    enum OverloadPolicy {
+        /**
+         * Drops the packet-ins arriving to a full queue.
+         */
+        DROP_NEWEST,
+
+        /**
+         * Drops the oldest packet-in of a full queue to admit the new one.
+         */
+        DROP_OLDEST,
+
+        /**
+         * Admits one packet-in out of the sample rate once the queue is half
+         * full, and drops the packet-ins arriving to a full queue.
+         */
+        SAMPLE
+    }
+
+    static final int DEFAULT_WORKERS = 4;
+    static final int DEFAULT_QUEUE_SIZE = 1000;
+    static final int DEFAULT_QUANTUM = 16;
+    static final int DEFAULT_SAMPLE_RATE = 10;
+
+    private static final String METRICS_COMPONENT = "OpenFlowController";
+    private static final String PACKET_IN_RATE = "packetInRate";
+    private static final String PACKET_IN_DROPS = "packetInDrops";
+    private static final String PACKET_IN_LATENCY = "packetInLatency";
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final Consumer<OpenFlowPacketContext> handler;
+    private final ConcurrentMap<Dpid, SwitchQueue> queues = new ConcurrentHashMap<>();
+
+    private volatile ExecutorService workers;
+    private int workerCount;
+    private volatile int queueSize = DEFAULT_QUEUE_SIZE;
+    private volatile int quantum = DEFAULT_QUANTUM;
+    private volatile int sampleRate = DEFAULT_SAMPLE_RATE;
+    private volatile OverloadPolicy policy = OverloadPolicy.DROP_NEWEST;
+    private volatile Map<Dpid, Integer> weights = ImmutableMap.of();
+
+    private MetricsService metricsService;
+    private volatile MetricsComponent metricsComponent;
+
+    /**
+     * Creates a dispatcher with the default settings.
+     *
+     * @param handler handler of the packet-ins, invoked on the workers
+     */
+    PacketInDispatcher(Consumer<OpenFlowPacketContext> handler) {
+        this.handler = checkNotNull(handler);
+        setWorkers(DEFAULT_WORKERS);
+    }
+
+    /**
+     * Sets the number of worker threads; the packet-ins already scheduled on
+     * the former workers are handled before they terminate.
+     *
+     * @param count number of workers
+     */
+    synchronized void setWorkers(int count) {
+        checkArgument(count > 0, "Number of workers must be positive");
+        if (count == workerCount) {
+            return;
+        }
+        ExecutorService old = workers;
+        workers = Executors.newFixedThreadPool(count, groupedThreads("onos/of", "packet-in-%d", log));
+        workerCount = count;
+        if (old != null) {
+            old.shutdown();
+        }
+    }
+
+    /**
+     * Stops the workers once the packet-ins already scheduled are handled.
+     */
+    synchronized void shutdown() {
+        workers.shutdown();
+    }
+
+    /**
+     * Sets the maximum number of pending packet-ins of a switch.
+     *
+     * @param size queue size
+     */
+    void setQueueSize(int size) {
+        checkArgument(size > 0, "Queue size must be positive");
+        queueSize = size;
+    }
+
+    /**
+     * Sets the number of packet-ins handled in a turn of a switch of weight 1.
+     *
+     * @param quantum packet-ins per turn
+     */
+    void setQuantum(int quantum) {
+        checkArgument(quantum > 0, "Quantum must be positive");
+        this.quantum = quantum;
+    }
+
+    /**
+     * Sets the policy applied to the packet-ins of switches whose queue is full.
+     *
+     * @param policy overload policy
+     * @param sampleRate one out of how many packet-ins is admitted when sampling
+     */
+    void setOverloadPolicy(OverloadPolicy policy, int sampleRate) {
+        checkArgument(sampleRate > 0, "Sample rate must be positive");
+        this.policy = checkNotNull(policy);
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Sets the weights of the switches; the switches not given have weight 1.
+     *
+     * @param weights weights by switch
+     */
+    void setWeights(Map<Dpid, Integer> weights) {
+        this.weights = ImmutableMap.copyOf(weights);
+    }
+
+    /**
+     * Starts collecting the packet-in metrics of each switch.
+     *
+     * @param metricsService metrics service
+     */
+    void registerMetrics(MetricsService metricsService) {
+        this.metricsService = metricsService;
+        this.metricsComponent = metricsService.registerComponent(METRICS_COMPONENT);
+    }
+
+    /**
+     * Stops collecting the packet-in metrics and removes those collected.
+     */
+    void unregisterMetrics() {
+        queues.keySet().forEach(this::removeMetrics);
+        metricsComponent = null;
+    }
+
+    /**
+     * Queues a packet-in received from a switch.
+     *
+     * @param dpid switch the packet-in is received from
+     * @param context packet-in context
+     */
+    void dispatch(Dpid dpid, OpenFlowPacketContext context) {
+        queues.computeIfAbsent(dpid, SwitchQueue::new).offer(context);
+    }
+
+    /**
+     * Holds or resumes the handling of the packet-ins of a switch.
+     *
+     * @param dpid switch
+     * @param paused true to hold the packet-ins, false to resume handling them
+     */
+    void setPaused(Dpid dpid, boolean paused) {
+        SwitchQueue queue = paused ? queues.computeIfAbsent(dpid, SwitchQueue::new) : queues.get(dpid);
+        if (queue != null) {
+            queue.setPaused(paused);
+        }
+    }
+
+    /**
+     * Drops the pending packet-ins and the metrics of a switch.
+     *
+     * @param dpid switch removed
+     */
+    void remove(Dpid dpid) {
+        SwitchQueue queue = queues.remove(dpid);
+        if (queue != null) {
+            queue.clear();
+            removeMetrics(dpid);
+        }
+    }
+
+    private void removeMetrics(Dpid dpid) {
+        MetricsComponent component = metricsComponent;
+        if (component == null) {
+            return;
+        }
+        MetricsFeature feature = component.registerFeature(dpid.toString());
+        metricsService.removeMetric(component, feature, PACKET_IN_RATE);
+        metricsService.removeMetric(component, feature, PACKET_IN_DROPS);
+        metricsService.removeMetric(component, feature, PACKET_IN_LATENCY);
+    }
+
+    private void schedule(SwitchQueue queue) {
+        try {
+            workers.execute(queue::drain);
+        } catch (RejectedExecutionException e) {
+            // the workers have been replaced in the meantime
+            workers.execute(queue::drain);
+        }
+    }
+
+    // Pending packet-ins of a switch
+    private final class SwitchQueue {
+        private final Dpid dpid;
+        // Guarded by this
+        private final Deque<Pending> pending = new ArrayDeque<>();
+        private boolean scheduled;
+        private boolean paused;
+        private long admitted;
+
+        private volatile Meter rate;
+        private volatile Meter drops;
+        private volatile Timer latency;
+        private volatile MetricsComponent metricsOf;
+
+        private SwitchQueue(Dpid dpid) {
+            this.dpid = dpid;
+        }
+
+        void offer(OpenFlowPacketContext context) {
+            updateMetrics();
+            mark(rate);
+            boolean schedule = false;
+            boolean dropped = false;
+            synchronized (this) {
+                int size = pending.size();
+                if (size >= queueSize) {
+                    if (policy == OverloadPolicy.DROP_OLDEST) {
+                        pending.poll();
+                        pending.add(new Pending(context));
+                    }
+                    dropped = true;
+                } else if (policy == OverloadPolicy.SAMPLE && size >= queueSize / 2 &&
+                        admitted++ % sampleRate != 0) {
+                    dropped = true;
+                } else {
+                    pending.add(new Pending(context));
+                    if (!scheduled && !paused) {
+                        scheduled = true;
+                        schedule = true;
+                    }
+                }
+            }
+            if (dropped) {
+                mark(drops);
+                log.trace("Dropped a packet-in from {}", dpid);
+            }
+            if (schedule) {
+                schedule(this);
+            }
+        }
+
+        void setPaused(boolean paused) {
+            boolean schedule = false;
+            synchronized (this) {
+                this.paused = paused;
+                if (!paused && !scheduled && !pending.isEmpty()) {
+                    scheduled = true;
+                    schedule = true;
+                }
+            }
+            log.debug("{} the packet-ins of {}", paused ? "Holding" : "Resuming", dpid);
+            if (schedule) {
+                schedule(this);
+            }
+        }
+
+        // Handles the packet-ins of a turn and, if any is left, takes
+        // another turn after the switches already waiting
+        void drain() {
+            int budget = weights.getOrDefault(dpid, 1) * quantum;
+            for (int i = 0; i < budget; i++) {
+                Pending next;
+                synchronized (this) {
+                    next = paused ? null : pending.poll();
+                    if (next == null) {
+                        scheduled = false;
+                        return;
+                    }
+                }
+                handle(next);
+            }
+            synchronized (this) {
+                if (pending.isEmpty() || paused) {
+                    scheduled = false;
+                    return;
+                }
+            }
+            schedule(this);
+        }
+
+        private void handle(Pending next) {
+            try {
+                handler.accept(next.context);
+            } catch (Exception e) {
+                log.warn("Unable to handle a packet-in from {}", dpid, e);
+            }
+            Timer timer = latency;
+            if (timer != null) {
+                timer.update(System.nanoTime() - next.received, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        synchronized void clear() {
+            pending.clear();
+        }
+
+        private void mark(Meter meter) {
+            if (meter != null) {
+                meter.mark();
+            }
+        }
+
+        // Creates or drops the metrics as metrics collection is turned on or off
+        private void updateMetrics() {
+            MetricsComponent component = metricsComponent;
+            if (component == metricsOf) {
+                return;
+            }
+            metricsOf = component;
+            if (component == null) {
+                rate = null;
+                drops = null;
+                latency = null;
+                return;
+            }
+            MetricsFeature feature = component.registerFeature(dpid.toString());
+            rate = metricsService.createMeter(component, feature, PACKET_IN_RATE);
+            drops = metricsService.createMeter(component, feature, PACKET_IN_DROPS);
+            latency = metricsService.createTimer(component, feature, PACKET_IN_LATENCY);
+        }
+    }
+
+    // Packet-in waiting to be handled
+    private static final class Pending {
+        private final OpenFlowPacketContext context;
+        private final long received = System.nanoTime();
+
+        private Pending(OpenFlowPacketContext context) {
+            this.context = context;
+        }
+    }
+}
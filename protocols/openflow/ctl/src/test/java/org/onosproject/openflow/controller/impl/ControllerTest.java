@@ -17,13 +17,35 @@ package org.onosproject.openflow.controller.impl;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Collections;
 import java.util.Dictionary;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.IntStream;
 
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
 import org.junit.Before;
 import org.junit.ClassRule;
+import org.junit.Ignore;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.onlab.junit.TestTools;
@@ -38,6 +60,12 @@ import org.onosproject.openflow.OFDescStatsReplyAdapter;
 import org.onosproject.openflow.OpenflowSwitchDriverAdapter;
 import org.onosproject.openflow.controller.driver.OpenFlowSwitchDriver;
 import org.projectfloodlight.openflow.protocol.OFDescStatsReply;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFStatsRequest;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.types.DatapathId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,6 +78,7 @@ import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Unit tests for the OpenFlow controller class.
@@ -178,11 +207,17 @@ public class ControllerTest {
         Dictionary<String, String> properties = new Hashtable<>();
         properties.put("openflowPorts", "1,2,3,4,5");
         properties.put("workerThreads", "5");
+        properties.put("writeBatchSize", "1024");
+        properties.put("writeBatchDelay", "100");
+        properties.put("maxPendingWriteBytes", "4096");
 
         controller.setConfigParams(properties);
         IntStream.rangeClosed(1, 5)
                 .forEach(i -> assertThat(controller.openFlowPorts, hasItem(i)));
         assertThat(controller.workerThreads, is(5));
+        assertThat(controller.writeBatchSize, is(1024));
+        assertThat(controller.writeBatchDelay, is(100));
+        assertThat(controller.maxPendingWriteBytes, is(4096));
     }
 
     /**
@@ -231,4 +266,193 @@ public class ControllerTest {
         long upTime = controller.getSystemUptime();
         assertThat(upTime, lessThan(30L * 1000));
     }
+
+    /**
+     * Switch simulated for the benchmarks, answering the handshake of the
+     * controller up to its request for the description of the switch and
+     * counting the flow mods it receives.
+     */
+    private static final class SimulatedSwitch extends ChannelInboundHandlerAdapter {
+        private static final OFFactory FACTORY = OFFactories.getFactory(OFVersion.OF_13);
+
+        private final long dpid;
+        private final CountDownLatch handshakes;
+        private final CountDownLatch flowMods;
+
+        private SimulatedSwitch(long dpid, CountDownLatch handshakes, CountDownLatch flowMods) {
+            this.dpid = dpid;
+            this.handshakes = handshakes;
+            this.flowMods = flowMods;
+        }
+
+        private static Channel connect(EventLoopGroup group, int port, SimulatedSwitch sw) {
+            return new Bootstrap()
+                    .group(group)
+                    .channel(NioSocketChannel.class)
+                    .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                    .option(ChannelOption.TCP_NODELAY, true)
+                    .handler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel channel) {
+                            channel.pipeline().addLast(new OFMessageDecoder(), new OFMessageEncoder(), sw);
+                        }
+                    })
+                    .connect(new InetSocketAddress("127.0.0.1", port))
+                    .syncUninterruptibly()
+                    .channel();
+        }
+
+        private void reply(ChannelHandlerContext ctx, OFMessage msg) {
+            ctx.writeAndFlush(Collections.singletonList(msg));
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) {
+            if (handshakes != null) {
+                reply(ctx, FACTORY.buildHello().build());
+            }
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            OFMessage m = (OFMessage) msg;
+            switch (m.getType()) {
+                case FEATURES_REQUEST:
+                    reply(ctx, FACTORY.buildFeaturesReply().setXid(m.getXid())
+                            .setDatapathId(DatapathId.of(dpid)).build());
+                    break;
+                case GET_CONFIG_REQUEST:
+                    reply(ctx, FACTORY.buildGetConfigReply().setXid(m.getXid())
+                            .setMissSendLen(0xffff).build());
+                    break;
+                case BARRIER_REQUEST:
+                    reply(ctx, FACTORY.buildBarrierReply().setXid(m.getXid()).build());
+                    break;
+                case ECHO_REQUEST:
+                    reply(ctx, FACTORY.buildEchoReply().setXid(m.getXid()).build());
+                    break;
+                case STATS_REQUEST:
+                    statsRequest(ctx, (OFStatsRequest<?>) m);
+                    break;
+                case FLOW_MOD:
+                    flowMods.countDown();
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void statsRequest(ChannelHandlerContext ctx, OFStatsRequest<?> m) {
+            switch (m.getStatsType()) {
+                case PORT_DESC:
+                    reply(ctx, FACTORY.buildPortDescStatsReply().setXid(m.getXid())
+                            .setEntries(Collections.emptyList()).build());
+                    break;
+                case METER_FEATURES:
+                    reply(ctx, FACTORY.buildMeterFeaturesStatsReply().setXid(m.getXid())
+                            .setFeatures(FACTORY.buildMeterFeatures().build()).build());
+                    break;
+                case DESC:
+                    handshakes.countDown();
+                    ctx.close();
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Measures the rate at which the controller goes through the handshake
+     * with simulated switches, up to the request of their description.
+     */
+    @Test
+    @Ignore("benchmark")
+    public void benchmarkHandshakes() throws Exception {
+        int switches = 1000;
+        EventLoopGroup group = new NioEventLoopGroup();
+        controller.start(null, new MockDriverService());
+        try {
+            for (int round = 0; round < 3; round++) {
+                CountDownLatch handshakes = new CountDownLatch(switches);
+                long start = System.nanoTime();
+                for (int i = 0; i < switches; i++) {
+                    SimulatedSwitch.connect(group, controller.openFlowPorts.get(0),
+                                            new SimulatedSwitch(i + 1, handshakes, null));
+                }
+                assertTrue(handshakes.await(60, TimeUnit.SECONDS));
+                long elapsed = System.nanoTime() - start;
+                System.out.printf("%d handshakes in %d ms: %d handshakes/s%n", switches,
+                                  TimeUnit.NANOSECONDS.toMillis(elapsed),
+                                  switches * TimeUnit.SECONDS.toNanos(1) / elapsed);
+            }
+        } finally {
+            group.shutdownGracefully();
+            controller.stop();
+        }
+    }
+
+    /**
+     * Measures the rate at which flow mods are sent one by one to a simulated
+     * switch, through the encoder and with and without write coalescing.
+     */
+    @Test
+    @Ignore("benchmark")
+    public void benchmarkFlowMods() throws Exception {
+        int flowMods = 1_000_000;
+        List<OFMessage> flowMod = Collections.singletonList(
+                OFFactories.getFactory(OFVersion.OF_13).buildFlowAdd().build());
+        EventLoopGroup group = new NioEventLoopGroup();
+        try {
+            for (int batchSize : new int[]{0, Controller.DEFAULT_WRITE_BATCH_SIZE}) {
+                BlockingQueue<Channel> accepted = new LinkedBlockingQueue<>();
+                Channel server = new ServerBootstrap()
+                        .group(group)
+                        .channel(NioServerSocketChannel.class)
+                        .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                        .childOption(ChannelOption.TCP_NODELAY, true)
+                        .childHandler(new ChannelInitializer<SocketChannel>() {
+                            @Override
+                            protected void initChannel(SocketChannel channel) {
+                                channel.pipeline().addLast(new OFMessageEncoder());
+                                if (batchSize > 0) {
+                                    channel.pipeline().addLast(new OFMessageBatcher(
+                                            batchSize, Controller.DEFAULT_WRITE_BATCH_DELAY, Integer.MAX_VALUE,
+                                            null, null));
+                                }
+                                accepted.add(channel);
+                            }
+                        })
+                        .bind(new InetSocketAddress("127.0.0.1", 0))
+                        .syncUninterruptibly()
+                        .channel();
+                int port = ((InetSocketAddress) server.localAddress()).getPort();
+
+                for (int round = 0; round < 3; round++) {
+                    CountDownLatch received = new CountDownLatch(flowMods);
+                    Channel sw = SimulatedSwitch.connect(group, port, new SimulatedSwitch(1, null, received));
+                    Channel channel = accepted.poll(10, TimeUnit.SECONDS);
+                    long start = System.nanoTime();
+                    for (int i = 0; i < flowMods; i++) {
+                        // Slow down while the switch is not keeping up, as
+                        // AbstractOpenFlowSwitch does
+                        ChannelFuture future = channel.writeAndFlush(flowMod);
+                        if (!channel.isWritable()) {
+                            future.awaitUninterruptibly(1000);
+                        }
+                    }
+                    assertTrue(received.await(60, TimeUnit.SECONDS));
+                    long elapsed = System.nanoTime() - start;
+                    System.out.printf("batch size %d: %d flow mods in %d ms: %d flow mods/s%n",
+                                      batchSize, flowMods, TimeUnit.NANOSECONDS.toMillis(elapsed),
+                                      flowMods * TimeUnit.SECONDS.toNanos(1) / elapsed);
+                    sw.close().syncUninterruptibly();
+                    channel.close().syncUninterruptibly();
+                }
+                server.close().syncUninterruptibly();
+            }
+        } finally {
+            group.shutdownGracefully();
+        }
+    }
 }
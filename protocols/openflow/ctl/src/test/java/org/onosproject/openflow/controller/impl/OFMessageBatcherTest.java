@@ -0,0 +1,168 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.openflow.controller.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelException;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Tests the coalescing of the messages written to a switch.
+ */
+public class OFMessageBatcherTest {
+    private static final OFFactory FACTORY = OFFactories.getFactory(OFVersion.OF_13);
+    private static final OFMessage FLOW_MOD = FACTORY.buildFlowAdd().build();
+    private static final OFMessage ECHO = FACTORY.buildEchoRequest().build();
+    private static final long LONG_DELAY = 60_000_000;
+
+    private EmbeddedChannel channel;
+
+    private void setUp(int batchSize, long batchDelayMicros) {
+        setUp(batchSize, batchDelayMicros, Integer.MAX_VALUE);
+    }
+
+    private void setUp(int batchSize, long batchDelayMicros, int maxPendingBytes) {
+        channel = new EmbeddedChannel(new OFMessageEncoder(),
+                                      new OFMessageBatcher(batchSize, batchDelayMicros, maxPendingBytes, null, null));
+    }
+
+    private void write(OFMessage msg) {
+        channel.writeOutbound(Collections.singletonList(msg));
+    }
+
+    // Returns the length of the next buffer written out
+    private int nextWrite() {
+        ByteBuf buf = channel.readOutbound();
+        int length = buf.readableBytes();
+        buf.release();
+        return length;
+    }
+
+    private static int length(OFMessage msg) {
+        ChannelBuffer buf = ChannelBuffers.dynamicBuffer();
+        msg.writeTo(buf);
+        return buf.readableBytes();
+    }
+
+    /**
+     * Tests that flow mods are held until another message is written.
+     */
+    @Test
+    public void testFlushOnOtherMessage() {
+        setUp(64 * 1024, LONG_DELAY);
+
+        write(FLOW_MOD);
+        write(FLOW_MOD);
+        write(FLOW_MOD);
+        assertThat(channel.outboundMessages().size(), is(0));
+
+        write(ECHO);
+        assertThat(channel.outboundMessages().size(), is(2));
+        assertThat(nextWrite(), is(3 * length(FLOW_MOD)));
+        assertThat(nextWrite(), is(length(ECHO)));
+    }
+
+    /**
+     * Tests that flow mods are written once they fill a batch.
+     */
+    @Test
+    public void testFlushOnSize() {
+        setUp(2 * length(FLOW_MOD), LONG_DELAY);
+
+        write(FLOW_MOD);
+        assertThat(channel.outboundMessages().size(), is(0));
+        write(FLOW_MOD);
+        assertThat(channel.outboundMessages().size(), is(1));
+        assertThat(nextWrite(), is(2 * length(FLOW_MOD)));
+    }
+
+    /**
+     * Tests that flow mods are written once the batch delay has elapsed.
+     */
+    @Test
+    public void testFlushOnDelay() throws Exception {
+        setUp(64 * 1024, 1000);
+
+        write(FLOW_MOD);
+        assertThat(channel.outboundMessages().size(), is(0));
+        for (int i = 0; i < 500 && channel.outboundMessages().isEmpty(); i++) {
+            Thread.sleep(10);
+            channel.runPendingTasks();
+        }
+        assertThat(channel.outboundMessages().size(), is(1));
+        assertThat(nextWrite(), is(length(FLOW_MOD)));
+    }
+
+    /**
+     * Tests that the writes of the flow mods held fail once the channel is
+     * closed.
+     */
+    @Test
+    public void testClose() {
+        setUp(64 * 1024, LONG_DELAY);
+
+        ChannelFuture future = channel.writeAndFlush(Collections.singletonList(FLOW_MOD));
+        assertThat(future.isDone(), is(false));
+        channel.close();
+        assertThat(future.cause(), instanceOf(ClosedChannelException.class));
+    }
+
+    /**
+     * Tests that the flow mods are held while the channel is not writable,
+     * up to the maximum pending bytes, and written once it is writable again.
+     */
+    @Test
+    public void testMaxPendingBytes() {
+        setUp(length(FLOW_MOD), LONG_DELAY, 2 * length(FLOW_MOD));
+        channel.config().setWriteBufferLowWaterMark(8);
+        channel.config().setWriteBufferHighWaterMark(16);
+
+        // fills the outbound buffer of the channel without flushing it
+        channel.write(Unpooled.wrappedBuffer(new byte[32]));
+        assertThat(channel.isWritable(), is(false));
+
+        ChannelFuture first = channel.write(Collections.singletonList(FLOW_MOD));
+        ChannelFuture second = channel.write(Collections.singletonList(FLOW_MOD));
+        ChannelFuture third = channel.write(Collections.singletonList(FLOW_MOD));
+        assertThat(first.isDone(), is(false));
+        assertThat(second.isDone(), is(false));
+        assertThat(third.cause(), instanceOf(ChannelException.class));
+
+        channel.flush();
+        assertThat(channel.isWritable(), is(true));
+        channel.runPendingTasks();
+        assertThat(first.isSuccess(), is(true));
+        assertThat(second.isSuccess(), is(true));
+        assertThat(nextWrite(), is(32));
+        assertThat(nextWrite(), is(2 * length(FLOW_MOD)));
+    }
+}
@@ -16,16 +16,14 @@
 package org.onosproject.openflow.controller.impl;
 
 
-import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBuffers;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
 import org.junit.Test;
-import org.onosproject.core.netty.ChannelAdapter;
-import org.onosproject.openflow.ChannelHandlerContextAdapter;
 import org.projectfloodlight.openflow.protocol.OFHello;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.instanceOf;
-import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 
 /**
@@ -33,35 +31,33 @@ import static org.hamcrest.Matchers.nullValue;
  */
 public class OFMessageDecoderTest {
 
-    static class ConnectedChannel extends ChannelAdapter {
-        @Override
-        public boolean isConnected() {
-            return true;
-        }
-    }
+    // OFHello, OF version 1, xid of 0, total of 8 bytes
+    private static final byte[] HELLO = {0x1, 0x0, 0x0, 0x8, 0x0, 0x0, 0x0, 0x0};
 
-    private ChannelBuffer getHelloMessageBuffer() {
-        // OFHello, OF version 1, xid of 0, total of 8 bytes
-        byte[] messageData = {0x1, 0x0, 0x0, 0x8, 0x0, 0x0, 0x0, 0x0};
-        ChannelBuffer channelBuffer = ChannelBuffers.dynamicBuffer();
-        channelBuffer.writeBytes(messageData);
-        return channelBuffer;
+    private ByteBuf getHelloMessageBuffer(int count) {
+        ByteBuf buffer = Unpooled.buffer();
+        for (int i = 0; i < count; i++) {
+            buffer.writeBytes(HELLO);
+        }
+        return buffer;
     }
 
     /**
-     * Tests decoding a message on a closed channel.
+     * Tests decoding a message that has not been fully received.
      *
      * @throws Exception when an exception is thrown from the decoder
      */
     @Test
-    public void testDecodeNoChannel() throws Exception {
-        OFMessageDecoder decoder = new OFMessageDecoder();
-        ChannelBuffer channelBuffer = getHelloMessageBuffer();
-        Object message =
-                decoder.decode(new ChannelHandlerContextAdapter(),
-                               new ChannelAdapter(),
-                               channelBuffer);
-        assertThat(message, nullValue());
+    public void testDecodePartial() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel(new OFMessageDecoder());
+        ByteBuf buffer = getHelloMessageBuffer(1);
+
+        channel.writeInbound(buffer.readRetainedSlice(5));
+        assertThat(channel.readInbound(), nullValue());
+
+        channel.writeInbound(buffer);
+        assertThat(channel.readInbound(), instanceOf(OFHello.class));
+        assertThat(channel.readInbound(), nullValue());
     }
 
     /**
@@ -71,14 +67,25 @@ public class OFMessageDecoderTest {
      */
     @Test
     public void testDecode() throws Exception {
-        OFMessageDecoder decoder = new OFMessageDecoder();
-        ChannelBuffer channelBuffer = getHelloMessageBuffer();
-        Object message =
-                decoder.decode(new ChannelHandlerContextAdapter(),
-                               new ConnectedChannel(),
-                               channelBuffer);
-        assertThat(message, notNullValue());
-        assertThat(message, instanceOf(OFHello.class));
+        EmbeddedChannel channel = new EmbeddedChannel(new OFMessageDecoder());
+        channel.writeInbound(getHelloMessageBuffer(1));
+        assertThat(channel.readInbound(), instanceOf(OFHello.class));
+        assertThat(channel.readInbound(), nullValue());
+    }
+
+    /**
+     * Tests decoding several messages received at once.
+     *
+     * @throws Exception when an exception is thrown from the decoder
+     */
+    @Test
+    public void testDecodeSeveral() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel(new OFMessageDecoder());
+        channel.writeInbound(getHelloMessageBuffer(3));
+        for (int i = 0; i < 3; i++) {
+            assertThat(channel.readInbound(), instanceOf(OFHello.class));
+        }
+        assertThat(channel.readInbound(), nullValue());
     }
 
 }
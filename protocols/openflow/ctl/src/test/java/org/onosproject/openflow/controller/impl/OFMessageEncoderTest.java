@@ -18,10 +18,11 @@ package org.onosproject.openflow.controller.impl;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.junit.Test;
 import org.onosproject.openflow.OfMessageAdapter;
-import org.projectfloodlight.openflow.protocol.OFMessage;
 import org.projectfloodlight.openflow.protocol.OFType;
 
 import com.google.common.collect.ImmutableList;
@@ -46,8 +47,12 @@ public class OFMessageEncoderTest {
 
         @Override
         public void writeTo(ChannelBuffer channelBuffer) {
-            String message = "message" + Integer.toString(id) + " ";
-            channelBuffer.writeBytes(message.getBytes(StandardCharsets.UTF_8));
+            channelBuffer.writeBytes(toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public String toString() {
+            return "message" + Integer.toString(id) + " ";
         }
     }
 
@@ -58,11 +63,11 @@ public class OFMessageEncoderTest {
      */
     @Test
     public void testNoList() throws Exception {
-        OFMessageEncoder encoder = new OFMessageEncoder();
+        EmbeddedChannel channel = new EmbeddedChannel(new OFMessageEncoder());
         MockOfMessage message = new MockOfMessage();
-        OFMessage returnedMessage =
-                (OFMessage) encoder.encode(null, null, message);
-        assertThat(message, is(returnedMessage));
+        channel.writeOutbound(message);
+        Object returnedMessage = channel.readOutbound();
+        assertThat(returnedMessage, is(message));
     }
 
     /**
@@ -72,19 +77,17 @@ public class OFMessageEncoderTest {
      */
     @Test
     public void testList() throws Exception {
-        OFMessageEncoder encoder = new OFMessageEncoder();
+        EmbeddedChannel channel = new EmbeddedChannel(new OFMessageEncoder());
         MockOfMessage message1 = new MockOfMessage();
         MockOfMessage message2 = new MockOfMessage();
         MockOfMessage message3 = new MockOfMessage();
         List<MockOfMessage> messages = ImmutableList.of(message1, message2, message3);
-        ChannelBuffer returnedChannel =
-                (ChannelBuffer) encoder.encode(null, null, messages);
-        assertThat(returnedChannel, notNullValue());
-        byte[] channelBytes = returnedChannel.array();
-        String expectedListMessage = "message1 message2 message3 ";
-        String listMessage =
-                (new String(channelBytes, StandardCharsets.UTF_8))
-                        .substring(0, expectedListMessage.length());
+        channel.writeOutbound(messages);
+        ByteBuf returnedBuffer = channel.readOutbound();
+        assertThat(returnedBuffer, notNullValue());
+        String expectedListMessage = message1.toString() + message2 + message3;
+        String listMessage = returnedBuffer.toString(StandardCharsets.UTF_8);
+        returnedBuffer.release();
         assertThat(listMessage, is(expectedListMessage));
     }
 }
@@ -30,6 +30,7 @@ import org.easymock.EasyMock;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.onlab.metrics.MetricsManager;
 import org.onosproject.cfg.ComponentConfigService;
 import org.onosproject.core.CoreService;
 import org.onosproject.net.device.DeviceServiceAdapter;
@@ -151,12 +152,13 @@ public class OpenFlowControllerImplTest {
         replay(mockConfigService);
 
         controller.deviceService = new DeviceServiceAdapter();
+        controller.metricsService = new MetricsManager();
 
         ComponentContext mockContext = EasyMock.createMock(ComponentContext.class);
         Dictionary<String, Object> properties = new Hashtable<>();
         properties.put("openflowPorts",
                        Integer.toString(EPHEMERAL_PORT));
-        expect(mockContext.getProperties()).andReturn(properties);
+        expect(mockContext.getProperties()).andReturn(properties).anyTimes();
         replay(mockContext);
         controller.activate(mockContext);
     }
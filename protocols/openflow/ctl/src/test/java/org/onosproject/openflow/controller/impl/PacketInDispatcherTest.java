@@ -0,0 +1,217 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.openflow.controller.impl;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.onosproject.openflow.OpenflowSwitchDriverAdapter;
+import org.onosproject.openflow.controller.DefaultOpenFlowPacketContext;
+import org.onosproject.openflow.controller.Dpid;
+import org.onosproject.openflow.controller.OpenFlowPacketContext;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFPacketInReason;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.types.OFBufferId;
+import org.projectfloodlight.openflow.types.OFPort;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the dispatching of packet-ins to the workers.
+ */
+public class PacketInDispatcherTest {
+    private static final Dpid DPID1 = new Dpid(1);
+    private static final Dpid DPID2 = new Dpid(2);
+
+    private final List<OpenFlowPacketContext> handled = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private CountDownLatch done;
+    private PacketInDispatcher dispatcher;
+
+    @Before
+    public void setUp() {
+        dispatcher = new PacketInDispatcher(context -> {
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            handled.add(context);
+            done.countDown();
+        });
+        dispatcher.setWorkers(1);
+        dispatcher.setQuantum(1);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        dispatcher.shutdown();
+    }
+
+    private static List<OpenFlowPacketContext> packetIns(int count) {
+        List<OpenFlowPacketContext> contexts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            contexts.add(DefaultOpenFlowPacketContext.packetContextFromPacketIn(
+                    new OpenflowSwitchDriverAdapter(),
+                    OFFactories.getFactory(OFVersion.OF_10).buildPacketIn()
+                            .setXid(i)
+                            .setBufferId(OFBufferId.NO_BUFFER)
+                            .setInPort(OFPort.of(1))
+                            .setReason(OFPacketInReason.NO_MATCH)
+                            .setData(new byte[0])
+                            .build()));
+        }
+        return contexts;
+    }
+
+    // Dispatches the first packet-in and waits for the worker to be busy
+    // with it, so that the following ones queue up
+    private void dispatchWhileBusy(Dpid first, List<OpenFlowPacketContext> firstPacketIns) throws Exception {
+        dispatcher.dispatch(first, firstPacketIns.get(0));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        firstPacketIns.stream().skip(1).forEach(context -> dispatcher.dispatch(first, context));
+    }
+
+    private void awaitHandled() throws Exception {
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Tests that switches take turns and that the packet-ins of a switch
+     * are handled in order.
+     */
+    @Test
+    public void testFairness() throws Exception {
+        List<OpenFlowPacketContext> flood = packetIns(5);
+        List<OpenFlowPacketContext> other = packetIns(2);
+        done = new CountDownLatch(7);
+
+        dispatchWhileBusy(DPID1, flood);
+        other.forEach(context -> dispatcher.dispatch(DPID2, context));
+        awaitHandled();
+
+        assertThat(handled, is(ImmutableList.of(flood.get(0), other.get(0), flood.get(1), other.get(1),
+                                                flood.get(2), flood.get(3), flood.get(4))));
+    }
+
+    /**
+     * Tests that a switch of higher weight takes longer turns.
+     */
+    @Test
+    public void testWeights() throws Exception {
+        dispatcher.setWeights(ImmutableMap.of(DPID2, 2));
+        List<OpenFlowPacketContext> flood = packetIns(3);
+        List<OpenFlowPacketContext> other = packetIns(3);
+        done = new CountDownLatch(6);
+
+        dispatchWhileBusy(DPID1, flood);
+        other.forEach(context -> dispatcher.dispatch(DPID2, context));
+        awaitHandled();
+
+        assertThat(handled, is(ImmutableList.of(flood.get(0), other.get(0), other.get(1), flood.get(1),
+                                                other.get(2), flood.get(2))));
+    }
+
+    /**
+     * Tests that the packet-ins arriving to a full queue are dropped.
+     */
+    @Test
+    public void testDropNewest() throws Exception {
+        dispatcher.setQueueSize(2);
+        List<OpenFlowPacketContext> flood = packetIns(5);
+        done = new CountDownLatch(3);
+
+        dispatchWhileBusy(DPID1, flood);
+        awaitHandled();
+
+        assertThat(handled, is(flood.subList(0, 3)));
+    }
+
+    /**
+     * Tests that the oldest packet-ins of a full queue make room for new ones.
+     */
+    @Test
+    public void testDropOldest() throws Exception {
+        dispatcher.setQueueSize(2);
+        dispatcher.setOverloadPolicy(PacketInDispatcher.OverloadPolicy.DROP_OLDEST, 1);
+        List<OpenFlowPacketContext> flood = packetIns(5);
+        done = new CountDownLatch(3);
+
+        dispatchWhileBusy(DPID1, flood);
+        awaitHandled();
+
+        assertThat(handled, is(ImmutableList.of(flood.get(0), flood.get(3), flood.get(4))));
+    }
+
+    /**
+     * Tests that only a sample of the packet-ins is admitted once the queue
+     * is half full.
+     */
+    @Test
+    public void testSample() throws Exception {
+        dispatcher.setQueueSize(4);
+        dispatcher.setOverloadPolicy(PacketInDispatcher.OverloadPolicy.SAMPLE, 3);
+        List<OpenFlowPacketContext> flood = packetIns(9);
+        done = new CountDownLatch(5);
+
+        dispatchWhileBusy(DPID1, flood);
+        awaitHandled();
+
+        // the second and third fill half of the queue, then one out of 3
+        // is admitted until the queue is full
+        assertThat(handled, is(ImmutableList.of(flood.get(0), flood.get(1), flood.get(2),
+                                                flood.get(3), flood.get(6))));
+    }
+
+    /**
+     * Tests that the packet-ins of a paused switch are held, subject to the
+     * overload policy, until it is resumed.
+     */
+    @Test
+    public void testPause() throws Exception {
+        dispatcher.setQueueSize(2);
+        List<OpenFlowPacketContext> held = packetIns(3);
+        List<OpenFlowPacketContext> other = packetIns(1);
+        release.countDown();
+        done = new CountDownLatch(1);
+
+        dispatcher.setPaused(DPID1, true);
+        held.forEach(context -> dispatcher.dispatch(DPID1, context));
+        other.forEach(context -> dispatcher.dispatch(DPID2, context));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertThat(handled, is(other));
+
+        done = new CountDownLatch(2);
+        dispatcher.setPaused(DPID1, false);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertThat(handled, is(ImmutableList.of(other.get(0), held.get(0), held.get(1))));
+    }
+}
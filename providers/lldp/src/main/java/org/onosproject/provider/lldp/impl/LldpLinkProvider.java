@@ -32,7 +32,6 @@ import org.apache.felix.scr.annotations.Modified;
 import org.apache.felix.scr.annotations.Property;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.ReferenceCardinality;
-import org.onlab.packet.Ethernet;
 import org.onosproject.cfg.ComponentConfigService;
 import org.onosproject.cluster.ClusterMetadataService;
 import org.onosproject.cluster.ClusterService;
@@ -337,7 +336,9 @@ public class LldpLinkProvider extends AbstractProvider implements ProbedLinkProv
         providerService = providerRegistry.register(this);
         masterService.addListener(roleListener);
         deviceService.addListener(deviceListener);
-        packetService.addProcessor(packetProcessor, PacketProcessor.advisor(0));
+        packetService.addProcessor(packetProcessor, PacketProcessor.advisor(0),
+                                   ImmutableSet.of(DefaultTrafficSelector.builder().matchEthType(TYPE_LLDP).build(),
+                                                   DefaultTrafficSelector.builder().matchEthType(TYPE_BSN).build()));
 
         loadDevices();
 
@@ -649,8 +650,8 @@ public class LldpLinkProvider extends AbstractProvider implements ProbedLinkProv
                 return;
             }
 
-            Ethernet eth = context.inPacket().parsed();
-            if (eth == null || (eth.getEtherType() != TYPE_LLDP && eth.getEtherType() != TYPE_BSN)) {
+            short etherType = context.inPacket().view().etherType();
+            if (etherType != TYPE_LLDP && etherType != TYPE_BSN) {
                 return;
             }
 
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onlab.graph;
+
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Immutable, array-based form of a graph in which vertexes and edges are
+ * identified by dense integer indexes and adjacency is kept in compressed
+ * sparse row arrays, both for the egress and for the ingress edges of each
+ * vertex.
+ * <p>
+ * The conversion is meant to be done once per graph, after which the graph
+ * can be searched repeatedly by {@link CompactPathSearch} without allocating
+ * any per-vertex or per-edge objects. Edge weights are kept apart from the
+ * structure as plain double arrays produced by {@link #weights}, which can
+ * be reused by all searches using the same weigher.
+ * </p>
+ *
+ * @param <V> vertex type
+ * @param <E> edge type
+ */
+public class CompactGraph<V extends Vertex, E extends Edge<V>> {
+
+    private final Object[] vertexes;
+    private final Object[] edges;
+    private final Map<V, Integer> indexes;
+
+    // Source and destination vertex of each edge
+    final int[] edgeSrc;
+    final int[] edgeDst;
+
+    // Egress edges of vertex v are outEdges[outOffsets[v] .. outOffsets[v + 1])
+    final int[] outOffsets;
+    final int[] outEdges;
+
+    // Ingress edges of vertex v are inEdges[inOffsets[v] .. inOffsets[v + 1])
+    final int[] inOffsets;
+    final int[] inEdges;
+
+    /**
+     * Creates a compact form of the specified graph.
+     *
+     * @param graph graph to be converted
+     */
+    public CompactGraph(Graph<V, E> graph) {
+        checkNotNull(graph, "Graph cannot be null");
+        int vertexCount = graph.getVertexes().size();
+        int edgeCount = graph.getEdges().size();
+
+        vertexes = new Object[vertexCount];
+        indexes = Maps.newHashMapWithExpectedSize(vertexCount);
+        int v = 0;
+        for (V vertex : graph.getVertexes()) {
+            vertexes[v] = vertex;
+            indexes.put(vertex, v++);
+        }
+
+        edges = new Object[edgeCount];
+        edgeSrc = new int[edgeCount];
+        edgeDst = new int[edgeCount];
+        outOffsets = new int[vertexCount + 1];
+        inOffsets = new int[vertexCount + 1];
+        int e = 0;
+        for (E edge : graph.getEdges()) {
+            edges[e] = edge;
+            edgeSrc[e] = indexes.get(edge.src());
+            edgeDst[e] = indexes.get(edge.dst());
+            outOffsets[edgeSrc[e] + 1]++;
+            inOffsets[edgeDst[e] + 1]++;
+            e++;
+        }
+
+        // Turn the degree counts into offsets and then fill in the rows.
+        for (v = 0; v < vertexCount; v++) {
+            outOffsets[v + 1] += outOffsets[v];
+            inOffsets[v + 1] += inOffsets[v];
+        }
+        outEdges = new int[edgeCount];
+        inEdges = new int[edgeCount];
+        int[] outFill = new int[vertexCount];
+        int[] inFill = new int[vertexCount];
+        for (e = 0; e < edgeCount; e++) {
+            outEdges[outOffsets[edgeSrc[e]] + outFill[edgeSrc[e]]++] = e;
+            inEdges[inOffsets[edgeDst[e]] + inFill[edgeDst[e]]++] = e;
+        }
+    }
+
+    /**
+     * Returns the number of vertexes in the graph.
+     *
+     * @return vertex count
+     */
+    public int vertexCount() {
+        return vertexes.length;
+    }
+
+    /**
+     * Returns the number of edges in the graph.
+     *
+     * @return edge count
+     */
+    public int edgeCount() {
+        return edges.length;
+    }
+
+    /**
+     * Returns the index of the specified vertex.
+     *
+     * @param vertex vertex
+     * @return vertex index; -1 if the vertex is not part of the graph
+     */
+    public int index(V vertex) {
+        Integer index = indexes.get(vertex);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * Returns the vertex with the specified index.
+     *
+     * @param index vertex index
+     * @return vertex
+     */
+    @SuppressWarnings("unchecked")
+    public V vertex(int index) {
+        return (V) vertexes[index];
+    }
+
+    /**
+     * Returns the edge with the specified index.
+     *
+     * @param index edge index
+     * @return edge
+     */
+    @SuppressWarnings("unchecked")
+    public E edge(int index) {
+        return (E) edges[index];
+    }
+
+    /**
+     * Weighs all edges of the graph using the specified weigher. Edges which
+     * are not viable, or carry a negative weight, are given an infinite
+     * weight as none of the searches would traverse them.
+     *
+     * @param weigher edge weigher; null for hop count
+     * @return edge weights indexed by edge index, or null if the weigher
+     * produces weights other than {@link ScalarWeight}
+     */
+    public double[] weights(EdgeWeigher<V, E> weigher) {
+        double[] weights = new double[edges.length];
+        for (int e = 0; e < edges.length; e++) {
+            weights[e] = weight(weigher, e);
+            if (Double.isNaN(weights[e])) {
+                return null;
+            }
+        }
+        return weights;
+    }
+
+    // Weighs the given edge in the same manner as all edges are weighed by
+    // weights(); NaN if the weigher does not produce a scalar weight.
+    double weight(EdgeWeigher<V, E> weigher, int e) {
+        if (weigher == null) {
+            return 1.0;
+        }
+        Weight weight = weigher.weight(edge(e));
+        if (!(weight instanceof ScalarWeight)) {
+            return Double.NaN;
+        }
+        return !weight.isViable() || weight.isNegative() ?
+                Double.POSITIVE_INFINITY : ((ScalarWeight) weight).value();
+    }
+
+    @Override
+    public String toString() {
+        return toStringHelper(this)
+                .add("vertexCount", vertexes.length)
+                .add("edgeCount", edges.length)
+                .toString();
+    }
+}
@@ -0,0 +1,724 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onlab.graph;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.math.DoubleMath;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.onlab.graph.GraphPathSearch.ALL_PATHS;
+
+/**
+ * Shortest path searches over a {@link CompactGraph}: Dijkstra,
+ * breadth-first, Suurballe disjoint pair and Yen K-shortest paths.
+ * <p>
+ * All working state is kept in primitive arrays sized for the graph when
+ * the search is created and reused by every subsequent search, so that the
+ * searches themselves do not allocate; only the resulting paths are
+ * materialized as objects. Costs are plain sums of the edge weights, as with
+ * {@link ScalarWeight}, starting from zero at the source.
+ * </p>
+ * <p>
+ * This class is not thread-safe; each thread should use its own instance.
+ * </p>
+ *
+ * @param <V> vertex type
+ * @param <E> edge type
+ */
+public class CompactPathSearch<V extends Vertex, E extends Edge<V>> {
+
+    private static final double NON_VIABLE = Double.POSITIVE_INFINITY;
+    private static final int NONE = -1;
+
+    private static final byte FORWARD = 0;
+    private static final byte REVERSED = 1;
+    private static final byte INTERNAL = 2;
+
+    private final CompactGraph<V, E> graph;
+    private final int n;
+
+    // Per-search state of the search nodes; node state is valid only if
+    // the node is stamped with the current epoch. Disjoint path search uses
+    // nodes n .. 2n - 1 for the egress halves of split vertexes.
+    private final int[] stamp;
+    private int epoch;
+    private final double[] cost;
+    private final int[] heap;
+    private final int[] heapPos;
+    private int heapSize;
+
+    // Equal-cost parent edges of each vertex as linked lists threaded through
+    // the edge indexes; the head is always the shortest path tree edge.
+    private final int[] predHead;
+    private final int[] predNext;
+
+    // Single parent of each node for the residual disjoint path search
+    private final int[] predNode;
+    private final int[] predEdge;
+    private final byte[] predKind;
+
+    // Vertexes and edges excluded from the search, or marked as being part
+    // of a path, when stamped with the current mark.
+    private final int[] vertexMark;
+    private final int[] edgeMark;
+    private int mark;
+
+    // Scratch space for walking and recording paths
+    private final double[] potential;
+    private final int[] pathIn;
+    private final int[] stackEdge;
+    private final int[] stackVertex;
+    private final int[] stackCursor;
+    private final boolean[] onPath;
+
+    // Weigher of edges reached by the current search, if not given weights
+    private EdgeWeigher<V, E> weigher;
+    private boolean nonScalar;
+
+    /**
+     * Creates a search over the specified graph.
+     *
+     * @param graph compact graph to search
+     */
+    public CompactPathSearch(CompactGraph<V, E> graph) {
+        this.graph = checkNotNull(graph, "Graph cannot be null");
+        this.n = graph.vertexCount();
+        int m = graph.edgeCount();
+
+        stamp = new int[2 * n];
+        cost = new double[2 * n];
+        heap = new int[2 * n];
+        heapPos = new int[2 * n];
+        predHead = new int[n];
+        predNext = new int[m];
+        predNode = new int[2 * n];
+        predEdge = new int[2 * n];
+        predKind = new byte[2 * n];
+        vertexMark = new int[n];
+        edgeMark = new int[m];
+        potential = new double[n];
+        pathIn = new int[n];
+        stackEdge = new int[n];
+        stackVertex = new int[n + 1];
+        stackCursor = new int[n + 1];
+        onPath = new boolean[n];
+    }
+
+    /**
+     * Searches for all lowest-cost paths from the source to the destination,
+     * or to all reachable vertexes if no destination is given, in the same
+     * manner as {@link DijkstraGraphSearch}.
+     *
+     * @param src      source vertex
+     * @param dst      optional destination vertex; null for all destinations
+     * @param weights  edge weights as produced by {@link CompactGraph#weights}
+     * @param maxPaths limit on the number of paths returned;
+     *                 {@link GraphPathSearch#ALL_PATHS} if no limit
+     * @return set of lowest-cost paths
+     */
+    public Set<Path<V, E>> search(V src, V dst, double[] weights, int maxPaths) {
+        int s = checkSource(src);
+        int d = checkDestination(dst);
+        checkWeights(weights);
+        mark++;
+        dijkstra(s, d, weights);
+        return buildPaths(s, d, maxPaths);
+    }
+
+    /**
+     * Searches for all lowest-cost paths from the source to the destination,
+     * or to all reachable vertexes if no destination is given, weighing only
+     * the edges which the search reaches. This is cheaper than weighing the
+     * whole graph when the weights are not going to be reused, as a search
+     * for a single destination stops as soon as the destination is reached.
+     *
+     * @param src      source vertex
+     * @param dst      optional destination vertex; null for all destinations
+     * @param weigher  edge weigher; null for hop count
+     * @param maxPaths limit on the number of paths returned;
+     *                 {@link GraphPathSearch#ALL_PATHS} if no limit
+     * @return set of lowest-cost paths, or null if the weigher produces
+     * weights other than {@link ScalarWeight}
+     */
+    public Set<Path<V, E>> search(V src, V dst, EdgeWeigher<V, E> weigher, int maxPaths) {
+        int s = checkSource(src);
+        int d = checkDestination(dst);
+        mark++;
+        this.weigher = weigher;
+        try {
+            dijkstra(s, d, null);
+            return nonScalar ? null : buildPaths(s, d, maxPaths);
+        } finally {
+            this.weigher = null;
+            nonScalar = false;
+        }
+    }
+
+    /**
+     * Searches for all paths with the least number of hops from the source
+     * to the destination, or to all reachable vertexes if no destination is
+     * given.
+     *
+     * @param src      source vertex
+     * @param dst      optional destination vertex; null for all destinations
+     * @param maxPaths limit on the number of paths returned;
+     *                 {@link GraphPathSearch#ALL_PATHS} if no limit
+     * @return set of least-hop paths
+     */
+    public Set<Path<V, E>> breadthFirstSearch(V src, V dst, int maxPaths) {
+        int s = checkSource(src);
+        int d = checkDestination(dst);
+        mark++;
+        breadthFirst(s, d);
+        return buildPaths(s, d, maxPaths);
+    }
+
+    /**
+     * Searches for a pair of vertex-disjoint paths between the source and
+     * the destination with the least combined cost, using the Suurballe
+     * algorithm.
+     *
+     * @param src     source vertex
+     * @param dst     destination vertex
+     * @param weights edge weights as produced by {@link CompactGraph#weights}
+     * @return disjoint path pair, with no secondary path if there is no
+     * disjoint alternative; null if the destination is not reachable
+     */
+    public DisjointPathPair<V, E> disjointPaths(V src, V dst, double[] weights) {
+        int s = checkSource(src);
+        int d = checkDestination(checkNotNull(dst, "Destination cannot be null"));
+        checkWeights(weights);
+        mark++;
+
+        // Find the shortest path tree and keep its costs as vertex potentials.
+        dijkstra(s, NONE, weights);
+        if (!reached(d) || s == d) {
+            return null;
+        }
+        for (int v = 0; v < n; v++) {
+            potential[v] = reached(v) ? cost[v] : NON_VIABLE;
+        }
+
+        // Mark the shortest path to the destination, its vertexes and edges.
+        int primaryLength = 0;
+        for (int v = d; v != s; v = graph.edgeSrc[predHead[v]]) {
+            int e = predHead[v];
+            pathIn[v] = e;
+            vertexMark[v] = mark;
+            edgeMark[e] = mark;
+            primaryLength++;
+        }
+        vertexMark[s] = mark;
+
+        if (!residualSearch(s, d, weights)) {
+            return new DisjointPathPair<>(recordPath(s, d, weights, primaryLength), null);
+        }
+
+        // Combine both paths, cancelling any edges traversed in reverse; the
+        // edges which remain marked form the two disjoint paths.
+        for (int node = d; node != s; node = predNode[node]) {
+            if (predKind[node] == FORWARD) {
+                edgeMark[predEdge[node]] = mark;
+            } else if (predKind[node] == REVERSED) {
+                edgeMark[predEdge[node]] = mark - 1;
+            }
+        }
+        Path<V, E> first = recordPath(s, d, weights, n);
+        Path<V, E> second = recordPath(s, d, weights, n);
+        return first.cost().compareTo(second.cost()) <= 0 ?
+                new DisjointPathPair<>(first, second) :
+                new DisjointPathPair<>(second, first);
+    }
+
+    /**
+     * Searches for up to the given number of loop-free paths from the source
+     * to the destination in the order of increasing cost, using the Yen
+     * algorithm.
+     *
+     * @param src      source vertex
+     * @param dst      destination vertex
+     * @param weights  edge weights as produced by {@link CompactGraph#weights}
+     * @param maxPaths maximum number of paths to find; must be positive
+     * @return list of paths ordered by cost
+     */
+    public List<Path<V, E>> kShortestPaths(V src, V dst, double[] weights, int maxPaths) {
+        int s = checkSource(src);
+        int d = checkDestination(checkNotNull(dst, "Destination cannot be null"));
+        checkWeights(weights);
+        checkArgument(maxPaths > 0, "The max number of paths must be greater than 0");
+        mark++;
+
+        dijkstra(s, d, weights);
+        if (!reached(d) || s == d) {
+            return ImmutableList.of();
+        }
+
+        List<int[]> found = new ArrayList<>(maxPaths);
+        List<int[]> candidates = new ArrayList<>();
+        found.add(treePath(new int[0], 0, s, d));
+
+        while (found.size() < maxPaths) {
+            int[] last = found.get(found.size() - 1);
+            for (int i = 0; i < last.length; i++) {
+                // Exclude the next edges of the paths sharing the root path,
+                // as well as the root path vertexes before the spur vertex.
+                mark++;
+                for (int[] path : found) {
+                    if (path.length > i && sameRoot(path, last, i)) {
+                        edgeMark[path[i]] = mark;
+                    }
+                }
+                for (int j = 0; j < i; j++) {
+                    vertexMark[graph.edgeSrc[last[j]]] = mark;
+                }
+
+                int spur = graph.edgeSrc[last[i]];
+                dijkstra(spur, d, weights);
+                if (reached(d)) {
+                    int[] path = treePath(last, i, spur, d);
+                    if (!contains(found, path) && !contains(candidates, path)) {
+                        candidates.add(path);
+                    }
+                }
+            }
+            if (candidates.isEmpty()) {
+                break;
+            }
+
+            int best = 0;
+            for (int i = 1; i < candidates.size(); i++) {
+                if (pathCost(candidates.get(i), weights) <
+                        pathCost(candidates.get(best), weights)) {
+                    best = i;
+                }
+            }
+            found.add(candidates.remove(best));
+        }
+
+        ImmutableList.Builder<Path<V, E>> paths = ImmutableList.builder();
+        for (int[] path : found) {
+            paths.add(path(path, path.length, pathCost(path, weights)));
+        }
+        return paths.build();
+    }
+
+    // Runs Dijkstra from the source until the destination is settled, or
+    // until all reachable vertexes are, if no destination is given; vertexes
+    // and edges stamped with the current mark are skipped. Without weights,
+    // edges are weighed by the current weigher as they are reached, which
+    // happens at most once per edge.
+    private void dijkstra(int src, int dst, double[] weights) {
+        start(src);
+        offer(src);
+        while (heapSize > 0) {
+            int u = poll();
+            if (u == dst) {
+                break;
+            }
+            double base = cost[u];
+            for (int i = graph.outOffsets[u]; i < graph.outOffsets[u + 1]; i++) {
+                int e = graph.outEdges[i];
+                int v = graph.edgeDst[e];
+                if (edgeMark[e] == mark || vertexMark[v] == mark) {
+                    continue;
+                }
+                double weight = weights != null ? weights[e] : weigh(e);
+                if (weight != NON_VIABLE) {
+                    relax(e, v, base + weight);
+                }
+            }
+            if (nonScalar) {
+                return;
+            }
+        }
+    }
+
+    private double weigh(int e) {
+        double weight = graph.weight(weigher, e);
+        if (Double.isNaN(weight)) {
+            nonScalar = true;
+            return NON_VIABLE;
+        }
+        return weight;
+    }
+
+    // Runs a breadth-first search from the source, using the heap array as
+    // the queue since entries are visited in the order of their hop count.
+    private void breadthFirst(int src, int dst) {
+        start(src);
+        int head = 0;
+        int tail = 0;
+        heap[tail++] = src;
+        while (head < tail) {
+            int u = heap[head++];
+            if (u == dst) {
+                break;
+            }
+            double hops = cost[u] + 1;
+            for (int i = graph.outOffsets[u]; i < graph.outOffsets[u + 1]; i++) {
+                int e = graph.outEdges[i];
+                int v = graph.edgeDst[e];
+                if (stamp[v] != epoch) {
+                    reach(v, hops, e);
+                    heap[tail++] = v;
+                } else if (cost[v] == hops) {
+                    addParent(v, e);
+                }
+            }
+        }
+    }
+
+    // Runs Dijkstra over the residual graph of the marked shortest path,
+    // using reduced edge costs and splitting each intermediate vertex of the
+    // path in two so that the paths found may share no vertexes; returns
+    // true if the destination was reached.
+    private boolean residualSearch(int src, int dst, double[] weights) {
+        epoch++;
+        heapSize = 0;
+        stamp[src] = epoch;
+        cost[src] = 0;
+        predNode[src] = NONE;
+        offer(src);
+
+        while (heapSize > 0) {
+            int node = poll();
+            if (node == dst) {
+                return true;
+            }
+            int v = node < n ? node : node - n;
+            boolean split = vertexMark[v] == mark && v != src && v != dst;
+            double base = cost[node];
+
+            if (split && node == v) {
+                // Ingress half may only go back along the shortest path.
+                int e = pathIn[v];
+                int u = graph.edgeSrc[e];
+                if (u != src) {
+                    relaxNode(node, u + n, base, e, REVERSED);
+                }
+                continue;
+            }
+
+            for (int i = graph.outOffsets[v]; i < graph.outOffsets[v + 1]; i++) {
+                int e = graph.outEdges[i];
+                int x = graph.edgeDst[e];
+                if (weights[e] == NON_VIABLE || edgeMark[e] == mark || x == src) {
+                    continue;
+                }
+                double reduced = Math.max(0, weights[e] + potential[v] - potential[x]);
+                relaxNode(node, x, base + reduced, e, FORWARD);
+            }
+            if (split) {
+                relaxNode(node, v, base, NONE, INTERNAL);
+            }
+        }
+        return false;
+    }
+
+    // Follows the marked edges from the source to the destination, unmarking
+    // them as it goes, and produces the corresponding path.
+    private Path<V, E> recordPath(int src, int dst, double[] weights, int maxLength) {
+        int length = 0;
+        double total = 0;
+        int v = src;
+        while (v != dst && length < maxLength) {
+            int next = NONE;
+            for (int i = graph.outOffsets[v]; i < graph.outOffsets[v + 1]; i++) {
+                int e = graph.outEdges[i];
+                if (edgeMark[e] == mark) {
+                    next = e;
+                    break;
+                }
+            }
+            checkArgument(next != NONE, "Disjoint paths are broken");
+            edgeMark[next] = mark - 1;
+            stackEdge[length++] = next;
+            total += weights[next];
+            v = graph.edgeDst[next];
+        }
+        return path(stackEdge, length, total);
+    }
+
+    // Prepares the search state for a new search from the given source.
+    private void start(int src) {
+        epoch++;
+        heapSize = 0;
+        reach(src, 0, NONE);
+    }
+
+    // Records the first path found to the vertex.
+    private void reach(int v, double c, int e) {
+        stamp[v] = epoch;
+        cost[v] = c;
+        predHead[v] = e;
+        if (e != NONE) {
+            predNext[e] = NONE;
+        }
+    }
+
+    // Appends an equal-cost parent edge, keeping the tree edge at the head.
+    private void addParent(int v, int e) {
+        int head = predHead[v];
+        if (head == NONE) {
+            return;
+        }
+        predNext[e] = predNext[head];
+        predNext[head] = e;
+    }
+
+    private void relax(int e, int v, double c) {
+        if (stamp[v] != epoch) {
+            reach(v, c, e);
+            offer(v);
+        } else if (DoubleMath.fuzzyEquals(c, cost[v], ScalarWeight.samenessThreshold())) {
+            addParent(v, e);
+        } else if (c < cost[v]) {
+            reach(v, c, e);
+            if (heapPos[v] >= 0) {
+                siftUp(heapPos[v]);
+            } else {
+                offer(v);
+            }
+        }
+    }
+
+    private void relaxNode(int from, int node, double c, int e, byte kind) {
+        if (stamp[node] == epoch && c >= cost[node]) {
+            return;
+        }
+        boolean queued = stamp[node] == epoch && heapPos[node] >= 0;
+        stamp[node] = epoch;
+        cost[node] = c;
+        predNode[node] = from;
+        predEdge[node] = e;
+        predKind[node] = kind;
+        if (queued) {
+            siftUp(heapPos[node]);
+        } else {
+            offer(node);
+        }
+    }
+
+    private boolean reached(int v) {
+        return stamp[v] == epoch;
+    }
+
+    // Builds all loop-free paths through the parent edges recorded by the
+    // last search from the source, walking backwards from each destination.
+    private Set<Path<V, E>> buildPaths(int src, int dst, int maxPaths) {
+        ImmutableSet.Builder<Path<V, E>> paths = ImmutableSet.builder();
+        int count = 0;
+        if (dst != NONE) {
+            if (dst != src && reached(dst)) {
+                buildPaths(src, dst, maxPaths, paths, count);
+            }
+            return paths.build();
+        }
+        for (int v = 0; v < n && (maxPaths == ALL_PATHS || count < maxPaths); v++) {
+            if (v != src && reached(v)) {
+                count = buildPaths(src, v, maxPaths, paths, count);
+            }
+        }
+        return paths.build();
+    }
+
+    private int buildPaths(int src, int dst, int maxPaths,
+                           ImmutableSet.Builder<Path<V, E>> paths, int count) {
+        int depth = 0;
+        stackVertex[0] = dst;
+        stackCursor[0] = predHead[dst];
+        onPath[dst] = true;
+
+        while (depth >= 0 && (maxPaths == ALL_PATHS || count < maxPaths)) {
+            int e = stackCursor[depth];
+            if (e == NONE) {
+                // Exhausted all parents of this vertex, so back off.
+                onPath[stackVertex[depth]] = false;
+                depth--;
+                if (depth >= 0) {
+                    stackCursor[depth] = predNext[stackEdge[depth]];
+                }
+                continue;
+            }
+
+            int u = graph.edgeSrc[e];
+            if (onPath[u]) {
+                stackCursor[depth] = predNext[e];
+                continue;
+            }
+            stackEdge[depth] = e;
+            if (u == src) {
+                paths.add(reversePath(depth + 1, cost[dst]));
+                count++;
+                stackCursor[depth] = predNext[e];
+                continue;
+            }
+            depth++;
+            stackVertex[depth] = u;
+            stackCursor[depth] = predHead[u];
+            onPath[u] = true;
+        }
+
+        // Clear any vertexes left marked when the limit was reached.
+        for (; depth >= 0; depth--) {
+            onPath[stackVertex[depth]] = false;
+        }
+        return count;
+    }
+
+    // Produces a path from the edges on the stack, last edge first.
+    private Path<V, E> reversePath(int length, double total) {
+        List<E> edges = new ArrayList<>(length);
+        for (int i = length - 1; i >= 0; i--) {
+            edges.add(graph.edge(stackEdge[i]));
+        }
+        return new DefaultPath<>(edges, new ScalarWeight(total));
+    }
+
+    // Produces a path from the given edge indexes.
+    private Path<V, E> path(int[] path, int length, double total) {
+        List<E> edges = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            edges.add(graph.edge(path[i]));
+        }
+        return new DefaultPath<>(edges, new ScalarWeight(total));
+    }
+
+    // Joins the first edges of the root path with the shortest path tree
+    // path from the spur vertex to the destination.
+    private int[] treePath(int[] root, int rootLength, int spur, int dst) {
+        int length = rootLength;
+        for (int v = dst; v != spur; v = graph.edgeSrc[predHead[v]]) {
+            length++;
+        }
+        int[] path = Arrays.copyOf(root, length);
+        for (int v = dst, i = length - 1; v != spur; v = graph.edgeSrc[predHead[v]]) {
+            path[i--] = predHead[v];
+        }
+        return path;
+    }
+
+    private double pathCost(int[] path, double[] weights) {
+        double total = 0;
+        for (int e : path) {
+            total += weights[e];
+        }
+        return total;
+    }
+
+    private static boolean sameRoot(int[] a, int[] b, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean contains(List<int[]> paths, int[] path) {
+        for (int[] p : paths) {
+            if (Arrays.equals(p, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int checkSource(V src) {
+        checkNotNull(src, "Source cannot be null");
+        int s = graph.index(src);
+        checkArgument(s >= 0, "Source not in the graph");
+        return s;
+    }
+
+    private int checkDestination(V dst) {
+        if (dst == null) {
+            return NONE;
+        }
+        int d = graph.index(dst);
+        checkArgument(d >= 0, "Destination not in graph");
+        return d;
+    }
+
+    private void checkWeights(double[] weights) {
+        checkNotNull(weights, "Weights cannot be null");
+        checkArgument(weights.length == graph.edgeCount(), "Weights do not match the graph");
+    }
+
+    // Binary min-heap of search nodes ordered by their current cost.
+
+    private void offer(int node) {
+        heap[heapSize] = node;
+        heapPos[node] = heapSize;
+        siftUp(heapSize++);
+    }
+
+    private int poll() {
+        int node = heap[0];
+        heapPos[node] = NONE;
+        int last = heap[--heapSize];
+        if (heapSize > 0) {
+            heap[0] = last;
+            heapPos[last] = 0;
+            siftDown(0);
+        }
+        return node;
+    }
+
+    private void siftUp(int i) {
+        int node = heap[i];
+        double c = cost[node];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (cost[heap[parent]] <= c) {
+                break;
+            }
+            heap[i] = heap[parent];
+            heapPos[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = node;
+        heapPos[node] = i;
+    }
+
+    private void siftDown(int i) {
+        int node = heap[i];
+        double c = cost[node];
+        int half = heapSize >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < heapSize && cost[heap[right]] < cost[heap[child]]) {
+                child = right;
+            }
+            if (c <= cost[heap[child]]) {
+                break;
+            }
+            heap[i] = heap[child];
+            heapPos[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = node;
+        heapPos[node] = i;
+    }
+}
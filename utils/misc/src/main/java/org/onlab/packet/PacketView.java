@@ -0,0 +1,289 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onlab.packet;
+
+import java.nio.ByteBuffer;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Read-only view of an Ethernet frame, decoding the header fields from the
+ * raw bytes only when they are accessed.
+ * <p>
+ * Unlike {@link Ethernet#deserializer()}, which builds the whole tree of
+ * packets and copies the payloads, a view does not copy the frame; it is
+ * meant for the packet processors that only look at a few header fields
+ * to decide whether a packet is of interest to them. The frame must not be
+ * modified while the view is in use.
+ */
+public final class PacketView {
+
+    private static final int IPV4_HEADER_LENGTH = 20;
+    private static final int IPV4_SOURCE_OFFSET = 12;
+    private static final int IPV4_DESTINATION_OFFSET = 16;
+    private static final int IPV6_NEXT_HEADER_OFFSET = 6;
+    private static final int L4_PORTS_LENGTH = 4;
+    private static final byte PROTOCOL_SCTP = (byte) 0x84;
+    private static final int NONE = -1;
+
+    private final ByteBuffer frame;
+    private final int length;
+    private final short etherType;
+    private final short vlanId;
+    private final int l3Offset;
+
+    // Decoded on demand; l4Offset is written last, so that reading it first
+    // makes ipProtocol visible as well
+    private int ipProtocol;
+    private volatile int l4Offset = Integer.MIN_VALUE;
+
+    private PacketView(ByteBuffer frame) {
+        this.frame = frame;
+        this.length = frame.limit();
+        if (length < Ethernet.ETHERNET_HEADER_LENGTH) {
+            etherType = 0;
+            vlanId = Ethernet.VLAN_UNTAGGED;
+            l3Offset = length;
+            return;
+        }
+        int offset = 2 * Ethernet.DATALAYER_ADDRESS_LENGTH;
+        short type = frame.getShort(offset);
+        if (type == Ethernet.TYPE_VLAN && length >= Ethernet.ETHERNET_HEADER_LENGTH + Ethernet.VLAN_HEADER_LENGTH) {
+            vlanId = (short) (frame.getShort(offset + 2) & 0x0fff);
+            type = frame.getShort(offset + Ethernet.VLAN_HEADER_LENGTH);
+            offset += Ethernet.VLAN_HEADER_LENGTH;
+        } else {
+            vlanId = Ethernet.VLAN_UNTAGGED;
+        }
+        etherType = type;
+        l3Offset = offset + 2;
+    }
+
+    /**
+     * Returns a view of the remaining bytes of a buffer, sharing its content.
+     * The position and limit of the given buffer are left untouched.
+     *
+     * @param buffer buffer holding an Ethernet frame
+     * @return packet view
+     */
+    public static PacketView wrap(ByteBuffer buffer) {
+        return new PacketView(checkNotNull(buffer).slice());
+    }
+
+    /**
+     * Returns a view of a range of a byte array, sharing its content.
+     *
+     * @param data byte array holding an Ethernet frame
+     * @param offset offset of the frame in the array
+     * @param length length of the frame
+     * @return packet view
+     */
+    public static PacketView wrap(byte[] data, int offset, int length) {
+        return wrap(ByteBuffer.wrap(data, offset, length));
+    }
+
+    /**
+     * Returns the length of the frame.
+     *
+     * @return length in bytes
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Returns whether the frame is long enough to hold an Ethernet header.
+     *
+     * @return true if the frame holds an Ethernet header
+     */
+    public boolean isEthernet() {
+        return length >= Ethernet.ETHERNET_HEADER_LENGTH;
+    }
+
+    /**
+     * Returns the destination MAC address.
+     *
+     * @return destination MAC address; null if the frame is too short
+     */
+    public MacAddress destinationMac() {
+        return mac(0);
+    }
+
+    /**
+     * Returns the source MAC address.
+     *
+     * @return source MAC address; null if the frame is too short
+     */
+    public MacAddress sourceMac() {
+        return mac(Ethernet.DATALAYER_ADDRESS_LENGTH);
+    }
+
+    private MacAddress mac(int offset) {
+        if (!isEthernet()) {
+            return null;
+        }
+        long address = (frame.getShort(offset) & 0xffffL) << 32 | frame.getInt(offset + 2) & 0xffffffffL;
+        return MacAddress.valueOf(address);
+    }
+
+    /**
+     * Returns the EtherType of the frame, after the VLAN tag if any.
+     *
+     * @return EtherType; 0 if the frame is too short
+     */
+    public short etherType() {
+        return etherType;
+    }
+
+    /**
+     * Returns the VLAN ID of the frame.
+     *
+     * @return VLAN ID; {@link Ethernet#VLAN_UNTAGGED} if the frame is untagged
+     */
+    public short vlanId() {
+        return vlanId;
+    }
+
+    /**
+     * Returns the payload of the frame, that is the bytes following the
+     * Ethernet header, without copying them.
+     *
+     * @return read-only buffer sharing the content of the frame
+     */
+    public ByteBuffer payload() {
+        ByteBuffer payload = frame.asReadOnlyBuffer();
+        payload.position(l3Offset);
+        return payload.slice();
+    }
+
+    /**
+     * Returns the IP protocol number of an IPv4 packet, or the next header of
+     * an IPv6 packet.
+     *
+     * @return protocol number; -1 if the frame does not carry an IP packet
+     */
+    public int ipProtocol() {
+        decodeIp();
+        return ipProtocol;
+    }
+
+    /**
+     * Returns the source address of an IPv4 packet.
+     *
+     * @return source address; null if the frame does not carry an IPv4 packet
+     */
+    public Ip4Address ip4Source() {
+        return ip4(IPV4_SOURCE_OFFSET);
+    }
+
+    /**
+     * Returns the destination address of an IPv4 packet.
+     *
+     * @return destination address; null if the frame does not carry an IPv4
+     * packet
+     */
+    public Ip4Address ip4Destination() {
+        return ip4(IPV4_DESTINATION_OFFSET);
+    }
+
+    private Ip4Address ip4(int offset) {
+        if (etherType != Ethernet.TYPE_IPV4 || l3Offset + IPV4_HEADER_LENGTH > length) {
+            return null;
+        }
+        return Ip4Address.valueOf(frame.getInt(l3Offset + offset));
+    }
+
+    /**
+     * Returns the source port of a TCP, UDP or SCTP segment.
+     *
+     * @return source port; -1 if the frame does not carry such a segment
+     */
+    public int sourcePort() {
+        return port(0);
+    }
+
+    /**
+     * Returns the destination port of a TCP, UDP or SCTP segment.
+     *
+     * @return destination port; -1 if the frame does not carry such a segment
+     */
+    public int destinationPort() {
+        return port(2);
+    }
+
+    private int port(int offset) {
+        int l4 = decodeIp();
+        if (l4 == NONE) {
+            return NONE;
+        }
+        return frame.getShort(l4 + offset) & 0xffff;
+    }
+
+    // Decodes the IP header, returning the offset of the ports of the
+    // transport header or NONE if there is no such header
+    private int decodeIp() {
+        int l4 = l4Offset;
+        if (l4 != Integer.MIN_VALUE) {
+            return l4;
+        }
+        int protocol = NONE;
+        l4 = NONE;
+        if (etherType == Ethernet.TYPE_IPV4 && l3Offset + IPV4_HEADER_LENGTH <= length) {
+            protocol = frame.get(l3Offset + 9) & 0xff;
+            int headerLength = (frame.get(l3Offset) & 0x0f) * 4;
+            boolean firstFragment = (frame.getShort(l3Offset + 6) & 0x1fff) == 0;
+            if (firstFragment && headerLength >= IPV4_HEADER_LENGTH) {
+                l4 = l3Offset + headerLength;
+            }
+        } else if (etherType == Ethernet.TYPE_IPV6 && l3Offset + IPv6.FIXED_HEADER_LENGTH <= length) {
+            protocol = frame.get(l3Offset + IPV6_NEXT_HEADER_OFFSET) & 0xff;
+            l4 = l3Offset + IPv6.FIXED_HEADER_LENGTH;
+        }
+        boolean hasPorts = protocol == (IPv4.PROTOCOL_TCP & 0xff) || protocol == (IPv4.PROTOCOL_UDP & 0xff) ||
+                protocol == (PROTOCOL_SCTP & 0xff);
+        if (!hasPorts || l4 + L4_PORTS_LENGTH > length) {
+            l4 = NONE;
+        }
+        ipProtocol = protocol;
+        l4Offset = l4;
+        return l4;
+    }
+
+    /**
+     * Deserializes the whole frame, as {@link Ethernet#deserializer()} does.
+     *
+     * @return Ethernet frame
+     * @throws DeserializationException if the frame is malformed
+     */
+    public Ethernet ethernet() throws DeserializationException {
+        if (frame.hasArray()) {
+            return Ethernet.deserializer().deserialize(frame.array(), frame.arrayOffset(), length);
+        }
+        byte[] data = new byte[length];
+        frame.duplicate().get(data);
+        return Ethernet.deserializer().deserialize(data, 0, length);
+    }
+
+    @Override
+    public String toString() {
+        return toStringHelper(this)
+                .add("length", length)
+                .add("etherType", String.format("0x%04x", etherType & 0xffff))
+                .add("vlanId", vlanId)
+                .toString();
+    }
+}
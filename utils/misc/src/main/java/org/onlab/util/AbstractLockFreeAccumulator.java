@@ -0,0 +1,325 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onlab.util;
+
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.google.common.collect.ImmutableList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Item accumulator for high-rate producers, triggering on the same thresholds
+ * as {@link AbstractAccumulator} without locking on the producer path.
+ * <p>
+ * Items are added to a non-blocking queue, keeping the order they were added
+ * in, and counted with a single atomic counter. Rather than rescheduling the
+ * timer tasks on every item, which locks the timer queue, the tasks are only
+ * scheduled for the first item of a batch and once the maximum number of
+ * items is reached; the idle task checks the time of the last item added
+ * when it runs and reschedules itself if the batch has not been idle long
+ * enough. Items are taken by the timer thread only.
+ * <p>
+ * The rate of the items processed and the latency of the batches, from their
+ * first item being added to their processing, are tracked and can be
+ * registered with the metrics service.
+ */
+public abstract class AbstractLockFreeAccumulator<T> implements Accumulator<T> {
+
+    private final Logger log = LoggerFactory.getLogger(AbstractLockFreeAccumulator.class);
+
+    private final Timer timer;
+    private final int maxItems;
+    private final int maxBatchMillis;
+    private final int maxIdleMillis;
+
+    private final Queue<T> items = new ConcurrentLinkedQueue<>();
+    // Items added and not yet taken; counted before being queued
+    private final AtomicInteger pending = new AtomicInteger();
+    // Incremented whenever items are taken, voiding the tasks already scheduled
+    private volatile long batchId = 0;
+    private volatile long batchStartMillis;
+    private volatile long lastAddMillis;
+    // Whether a task is checking periodically for the accumulator to be ready
+    private volatile boolean retrying = false;
+    // Whether processing has been triggered by the number of items
+    private final AtomicBoolean maxItemsScheduled = new AtomicBoolean();
+
+    private final Meter throughput = new Meter();
+    private final Histogram latency = new Histogram(new ExponentiallyDecayingReservoir());
+
+    /**
+     * Creates an item accumulator capable of triggering on the specified
+     * thresholds.
+     *
+     * @param timer          timer to use for scheduling check-points
+     * @param maxItems       maximum number of items to accumulate before
+     *                       processing is triggered
+     *                       <p>
+     *                       NB: It is possible that processItems will contain
+     *                       more than maxItems under high load or if isReady()
+     *                       can return false.
+     *                       </p>
+     * @param maxBatchMillis maximum number of millis allowed since the first
+     *                       item before processing is triggered
+     * @param maxIdleMillis  maximum number millis between items before
+     *                       processing is triggered
+     */
+    protected AbstractLockFreeAccumulator(Timer timer, int maxItems,
+                                          int maxBatchMillis, int maxIdleMillis) {
+        this.timer = checkNotNull(timer, "Timer cannot be null");
+
+        checkArgument(maxItems > 1, "Maximum number of items must be > 1");
+        checkArgument(maxBatchMillis > 0, "Maximum millis must be positive");
+        checkArgument(maxIdleMillis > 0, "Maximum idle millis must be positive");
+
+        this.maxItems = maxItems;
+        this.maxBatchMillis = maxBatchMillis;
+        this.maxIdleMillis = maxIdleMillis;
+    }
+
+    @Override
+    public void add(T item) {
+        int size = pending.incrementAndGet();
+        long now = currentTimeMillis();
+        if (lastAddMillis != now) {
+            lastAddMillis = now;
+        }
+        items.add(item);
+
+        if (size == 1) {
+            // First item of a batch; it cannot have been taken before the
+            // count was incremented, so the batch id read is current
+            batchStartMillis = now;
+            scheduleBatch();
+        } else if (size >= maxItems && !maxItemsScheduled.get() && maxItemsScheduled.compareAndSet(false, true)) {
+            schedule(new ProcessorTask(batchId, Trigger.MAX_ITEMS), 0);
+        }
+    }
+
+    /**
+     * Schedules the tasks triggering processing of the current batch.
+     */
+    private void scheduleBatch() {
+        long id = batchId;
+        schedule(new ProcessorTask(id, Trigger.MAX_BATCH), maxBatchMillis);
+        if (maxIdleMillis < maxBatchMillis) {
+            schedule(new ProcessorTask(id, Trigger.IDLE), maxIdleMillis);
+        }
+    }
+
+    private void schedule(TimerTask task, long millis) {
+        try {
+            timer.schedule(task, millis);
+        } catch (IllegalStateException e) {
+            log.warn("Unable to schedule batch processing", e);
+        }
+    }
+
+    private enum Trigger {
+        MAX_BATCH, IDLE, MAX_ITEMS, RETRY
+    }
+
+    // Task for triggering processing of accumulated items
+    private class ProcessorTask extends TimerTask {
+        private final long id;
+        private final Trigger trigger;
+
+        ProcessorTask(long id, Trigger trigger) {
+            this.id = id;
+            this.trigger = trigger;
+        }
+
+        @Override
+        public void run() {
+            if (trigger == Trigger.MAX_ITEMS) {
+                // Let items added from now on trigger processing again
+                maxItemsScheduled.set(false);
+            }
+            if (id != batchId) {
+                // The batch has already been processed
+                return;
+            }
+            try {
+                if (trigger == Trigger.IDLE) {
+                    long idleMillis = currentTimeMillis() - lastAddMillis;
+                    if (idleMillis < maxIdleMillis) {
+                        schedule(new ProcessorTask(id, Trigger.IDLE), maxIdleMillis - idleMillis);
+                        return;
+                    }
+                }
+                if (isReady()) {
+                    long start = batchStartMillis;
+                    List<T> batch = takeItems();
+                    if (!batch.isEmpty()) {
+                        throughput.mark(batch.size());
+                        latency.update(currentTimeMillis() - start);
+                        processItems(batch);
+                    }
+                } else if (trigger == Trigger.RETRY || !retrying) {
+                    // Check again later, keeping a single task doing so
+                    retrying = true;
+                    schedule(new ProcessorTask(id, Trigger.RETRY), maxIdleMillis);
+                }
+            } catch (Exception e) {
+                log.warn("Unable to process batch due to", e);
+            }
+        }
+    }
+
+    /**
+     * Processes the items accumulated so far, regardless of the accumulator
+     * being ready, and waits for them to be processed. The items are taken
+     * and processed by the timer thread, so this must not be called from it.
+     * Returns immediately if the timer has been cancelled.
+     */
+    public void flush() {
+        CompletableFuture<Void> flushed = new CompletableFuture<>();
+        try {
+            timer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    try {
+                        List<T> batch = takeItems();
+                        if (!batch.isEmpty()) {
+                            throughput.mark(batch.size());
+                            processItems(batch);
+                        }
+                    } catch (Exception e) {
+                        log.warn("Unable to process batch due to", e);
+                    } finally {
+                        flushed.complete(null);
+                    }
+                }
+            }, 0);
+        } catch (IllegalStateException e) {
+            log.warn("Unable to flush accumulated items", e);
+            return;
+        }
+        flushed.join();
+    }
+
+    /**
+     * Takes the items accumulated so far, scheduling the processing of those
+     * added meanwhile if any.
+     *
+     * @return list of existing items
+     */
+    private List<T> takeItems() {
+        ImmutableList.Builder<T> batch = ImmutableList.builder();
+        int count = 0;
+        T item;
+        while ((item = items.poll()) != null) {
+            batch.add(item);
+            count++;
+        }
+        batchId++;
+        retrying = false;
+        int remaining = pending.addAndGet(-count);
+        if (remaining > 0) {
+            // Items were counted but not yet queued as they were taken
+            batchStartMillis = currentTimeMillis();
+            scheduleBatch();
+        }
+        return batch.build();
+    }
+
+    @Override
+    public boolean isReady() {
+        return true;
+    }
+
+    /**
+     * Returns the current time in millis, as used for the idle and latency
+     * measurements.
+     *
+     * @return current time in millis
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the backing timer.
+     *
+     * @return backing timer
+     */
+    public Timer timer() {
+        return timer;
+    }
+
+    /**
+     * Returns the maximum number of items allowed to accumulate before
+     * processing is triggered.
+     *
+     * @return max number of items
+     */
+    public int maxItems() {
+        return maxItems;
+    }
+
+    /**
+     * Returns the maximum number of millis allowed to expire since the first
+     * item before processing is triggered.
+     *
+     * @return max number of millis a batch is allowed to last
+     */
+    public int maxBatchMillis() {
+        return maxBatchMillis;
+    }
+
+    /**
+     * Returns the maximum number of millis allowed to expire since the last
+     * item arrival before processing is triggered.
+     *
+     * @return max number of millis since the last item
+     */
+    public int maxIdleMillis() {
+        return maxIdleMillis;
+    }
+
+    /**
+     * Returns the meter of the items processed.
+     *
+     * @return items throughput
+     */
+    public Meter throughput() {
+        return throughput;
+    }
+
+    /**
+     * Returns the histogram of the millis elapsed between the first item of
+     * a batch being added and the batch being processed.
+     *
+     * @return batch latency
+     */
+    public Histogram latency() {
+        return latency;
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onlab.graph;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static com.google.common.collect.ImmutableSet.of;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.onlab.graph.GraphPathSearch.ALL_PATHS;
+
+/**
+ * Test of the compact graph searches, mostly against the results of the
+ * object-based graph searches.
+ */
+public class CompactPathSearchTest extends GraphTest {
+
+    private static final ScalarWeight S1 = new ScalarWeight(1);
+    private static final ScalarWeight S2 = new ScalarWeight(2);
+    private static final ScalarWeight S3 = new ScalarWeight(3);
+
+    private final EdgeWeigher<TestVertex, TestEdge> scalarWeigher =
+            new EdgeWeigher<TestVertex, TestEdge>() {
+                @Override
+                public Weight weight(TestEdge edge) {
+                    return edge.weight();
+                }
+
+                @Override
+                public Weight getInitialWeight() {
+                    return new ScalarWeight(0);
+                }
+
+                @Override
+                public Weight getNonViableWeight() {
+                    return ScalarWeight.NON_VIABLE_WEIGHT;
+                }
+            };
+
+    private CompactGraph<TestVertex, TestEdge> compact;
+    private CompactPathSearch<TestVertex, TestEdge> search;
+    private double[] weights;
+
+    @Before
+    public void setUp() {
+        graph = new AdjacencyListsGraph<>(vertexes(), scalarEdges());
+        compact = new CompactGraph<>(graph);
+        search = new CompactPathSearch<>(compact);
+        weights = compact.weights(scalarWeigher);
+    }
+
+    // Same graph as the default test graph, with scalar weights.
+    private Set<TestEdge> scalarEdges() {
+        return of(new TestEdge(A, B, S1),
+                  new TestEdge(A, C, S3),
+                  new TestEdge(B, D, S2),
+                  new TestEdge(B, C, S1),
+                  new TestEdge(B, E, new ScalarWeight(4)),
+                  new TestEdge(C, E, S1),
+                  new TestEdge(D, H, new ScalarWeight(5)),
+                  new TestEdge(D, E, S1),
+                  new TestEdge(E, F, S1),
+                  new TestEdge(F, D, S1),
+                  new TestEdge(F, G, S1),
+                  new TestEdge(F, H, S1));
+    }
+
+    @Test
+    public void compactGraph() {
+        assertEquals("incorrect vertex count", 8, compact.vertexCount());
+        assertEquals("incorrect edge count", 12, compact.edgeCount());
+        assertEquals("incorrect vertex", A, compact.vertex(compact.index(A)));
+        assertEquals("unexpected index", -1, compact.index(Z));
+        assertEquals("incorrect hop count weight", 1.0, compact.weights(null)[0], 0);
+        assertNull("non-scalar weights expected",
+                   new CompactGraph<>(new AdjacencyListsGraph<>(vertexes(), edges()))
+                           .weights(weigher));
+    }
+
+    @Test
+    public void sameAsDijkstra() {
+        DijkstraGraphSearch<TestVertex, TestEdge> dijkstra = new DijkstraGraphSearch<>();
+        for (TestVertex src : vertexes()) {
+            for (TestVertex dst : vertexes()) {
+                assertEquals("incorrect paths " + src + "->" + dst,
+                             dijkstra.search(graph, src, dst, scalarWeigher, ALL_PATHS).paths(),
+                             search.search(src, dst, weights, ALL_PATHS));
+            }
+            assertEquals("incorrect paths " + src + "->*",
+                         dijkstra.search(graph, src, null, scalarWeigher, ALL_PATHS).paths(),
+                         search.search(src, null, weights, ALL_PATHS));
+        }
+    }
+
+    @Test
+    public void weighedAsReached() {
+        for (TestVertex src : vertexes()) {
+            for (TestVertex dst : vertexes()) {
+                assertEquals("incorrect paths " + src + "->" + dst,
+                             search.search(src, dst, weights, ALL_PATHS),
+                             search.search(src, dst, scalarWeigher, ALL_PATHS));
+            }
+            assertEquals("incorrect paths " + src + "->*",
+                         search.search(src, null, weights, ALL_PATHS),
+                         search.search(src, null, scalarWeigher, ALL_PATHS));
+        }
+    }
+
+    @Test
+    public void weighedAsReachedNonScalar() {
+        CompactGraph<TestVertex, TestEdge> cg =
+                new CompactGraph<>(new AdjacencyListsGraph<>(vertexes(), edges()));
+        CompactPathSearch<TestVertex, TestEdge> cs = new CompactPathSearch<>(cg);
+        assertNull("non-scalar weights expected", cs.search(A, H, weigher, ALL_PATHS));
+        assertEquals("search state should not leak", 1,
+                     cs.search(A, H, cg.weights(null), ALL_PATHS).size());
+    }
+
+    @Test
+    public void equalCostPaths() {
+        Graph<TestVertex, TestEdge> g = new AdjacencyListsGraph<>(
+                of(A, B, C, D),
+                of(new TestEdge(A, B, S1), new TestEdge(B, C, S1),
+                   new TestEdge(A, D, S1), new TestEdge(D, C, S1)));
+        CompactGraph<TestVertex, TestEdge> cg = new CompactGraph<>(g);
+        CompactPathSearch<TestVertex, TestEdge> cs = new CompactPathSearch<>(cg);
+        Set<Path<TestVertex, TestEdge>> paths =
+                cs.search(A, C, cg.weights(scalarWeigher), ALL_PATHS);
+        assertEquals("incorrect paths count", 2, paths.size());
+        assertEquals("incorrect path cost", S2, paths.iterator().next().cost());
+        assertEquals("incorrect paths count", 1,
+                     cs.search(A, C, cg.weights(scalarWeigher), 1).size());
+    }
+
+    @Test
+    public void sameAsDijkstraOnRandomGraphs() {
+        Random random = new Random(42);
+        DijkstraGraphSearch<TestVertex, TestEdge> dijkstra = new DijkstraGraphSearch<>();
+        for (int round = 0; round < 50; round++) {
+            Graph<TestVertex, TestEdge> g = randomGraph(random, 12, 30);
+            CompactGraph<TestVertex, TestEdge> cg = new CompactGraph<>(g);
+            CompactPathSearch<TestVertex, TestEdge> cs = new CompactPathSearch<>(cg);
+            double[] w = cg.weights(scalarWeigher);
+            for (TestVertex src : g.getVertexes()) {
+                assertEquals("incorrect paths",
+                             dijkstra.search(g, src, null, scalarWeigher, ALL_PATHS).paths(),
+                             cs.search(src, null, w, ALL_PATHS));
+            }
+        }
+    }
+
+    @Test
+    public void breadthFirst() {
+        Set<Path<TestVertex, TestEdge>> paths = search.breadthFirstSearch(A, H, ALL_PATHS);
+        assertEquals("incorrect paths count", 1, paths.size());
+        assertEquals("incorrect hop count", 3, paths.iterator().next().edges().size());
+
+        paths = search.breadthFirstSearch(A, E, ALL_PATHS);
+        assertEquals("incorrect paths count", 2, paths.size());
+        assertTrue("no paths expected", search.breadthFirstSearch(H, A, ALL_PATHS).isEmpty());
+    }
+
+    @Test
+    public void disjointPaths() {
+        Graph<TestVertex, TestEdge> g = new AdjacencyListsGraph<>(
+                of(A, B, C, D, E),
+                of(new TestEdge(A, B, S1), new TestEdge(B, C, S1),
+                   new TestEdge(A, D, S1), new TestEdge(D, C, S1),
+                   new TestEdge(B, E, S2), new TestEdge(C, E, S1)));
+        CompactGraph<TestVertex, TestEdge> cg = new CompactGraph<>(g);
+        CompactPathSearch<TestVertex, TestEdge> cs = new CompactPathSearch<>(cg);
+
+        DisjointPathPair<TestVertex, TestEdge> pair =
+                cs.disjointPaths(A, E, cg.weights(scalarWeigher));
+        assertEquals("incorrect disjoint paths count", 2, pair.size());
+        assertEquals("incorrect combined cost", new ScalarWeight(6), pair.cost());
+        assertDisjoint(pair);
+
+        pair = cs.disjointPaths(A, B, cg.weights(scalarWeigher));
+        assertEquals("incorrect disjoint paths count", 1, pair.size());
+        assertNull("no path expected", cs.disjointPaths(E, A, cg.weights(scalarWeigher)));
+    }
+
+    @Test
+    public void disjointPathsTrap() {
+        // The shortest path A-B-C-D blocks both of the disjoint paths
+        // A-B-D and A-C-D, which requires the reversal of the edge B-C.
+        Graph<TestVertex, TestEdge> g = new AdjacencyListsGraph<>(
+                of(A, B, C, D),
+                of(new TestEdge(A, B, S1), new TestEdge(B, C, S1),
+                   new TestEdge(C, D, S1), new TestEdge(A, C, S3),
+                   new TestEdge(B, D, S3)));
+        CompactGraph<TestVertex, TestEdge> cg = new CompactGraph<>(g);
+        DisjointPathPair<TestVertex, TestEdge> pair =
+                new CompactPathSearch<>(cg).disjointPaths(A, D, cg.weights(scalarWeigher));
+        assertEquals("incorrect disjoint paths count", 2, pair.size());
+        assertEquals("incorrect combined cost", new ScalarWeight(8), pair.cost());
+        assertDisjoint(pair);
+    }
+
+    @Test
+    public void disjointPathsOnRandomGraphs() {
+        Random random = new Random(7);
+        SuurballeGraphSearch<TestVertex, TestEdge> suurballe = new SuurballeGraphSearch<>();
+        for (int round = 0; round < 50; round++) {
+            Graph<TestVertex, TestEdge> g = randomGraph(random, 8, 24);
+            CompactGraph<TestVertex, TestEdge> cg = new CompactGraph<>(g);
+            CompactPathSearch<TestVertex, TestEdge> cs = new CompactPathSearch<>(cg);
+            double[] w = cg.weights(scalarWeigher);
+            for (TestVertex src : g.getVertexes()) {
+                for (TestVertex dst : g.getVertexes()) {
+                    if (src.equals(dst)) {
+                        continue;
+                    }
+                    DisjointPathPair<TestVertex, TestEdge> pair = cs.disjointPaths(src, dst, w);
+                    Set<Path<TestVertex, TestEdge>> expected =
+                            suurballe.search(g, src, dst, scalarWeigher, ALL_PATHS).paths();
+                    if (pair == null) {
+                        assertTrue("no paths expected", expected.isEmpty());
+                        continue;
+                    }
+                    if (pair.size() == 2) {
+                        assertDisjoint(pair);
+                    }
+                    for (Path<TestVertex, TestEdge> path : expected) {
+                        DisjointPathPair<TestVertex, TestEdge> other =
+                                (DisjointPathPair<TestVertex, TestEdge>) path;
+                        if (other.size() == 2) {
+                            assertEquals("disjoint pair expected", 2, pair.size());
+                            assertTrue("pair should not cost more",
+                                       pair.cost().compareTo(other.cost()) <= 0);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void kShortestPaths() {
+        List<Path<TestVertex, TestEdge>> paths = search.kShortestPaths(A, E, weights, 6);
+        assertEquals("incorrect paths count", 4, paths.size());
+        for (int i = 1; i < paths.size(); i++) {
+            assertTrue("paths should be ordered by cost",
+                       paths.get(i - 1).cost().compareTo(paths.get(i).cost()) <= 0);
+        }
+        assertEquals("incorrect distinct paths count", 4, new HashSet<>(paths).size());
+        assertTrue("no paths expected", search.kShortestPaths(H, A, weights, 3).isEmpty());
+    }
+
+    @Test
+    public void kShortestPathsCosts() {
+        KShortestPathsSearch<TestVertex, TestEdge> yen = new KShortestPathsSearch<>();
+        List<Path<TestVertex, TestEdge>> paths = search.kShortestPaths(A, H, weights, 4);
+        int i = 0;
+        for (Path<TestVertex, TestEdge> path : yen.search(graph, A, H, scalarWeigher, 4).paths()) {
+            assertEquals("incorrect path cost", path.cost(), paths.get(i++).cost());
+        }
+    }
+
+    @Test
+    public void reusedForManySearches() {
+        Set<Path<TestVertex, TestEdge>> paths = search.search(A, H, weights, ALL_PATHS);
+        search.disjointPaths(A, H, weights);
+        search.kShortestPaths(A, H, weights, 3);
+        search.breadthFirstSearch(A, H, ALL_PATHS);
+        assertEquals("search state should not leak", paths,
+                     search.search(A, H, weights, ALL_PATHS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noSuchSourceArgument() {
+        search.search(Z, H, weights, ALL_PATHS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongWeightsArgument() {
+        search.search(A, H, new double[1], ALL_PATHS);
+    }
+
+    private void assertDisjoint(DisjointPathPair<TestVertex, TestEdge> pair) {
+        Set<TestVertex> vertexes = new HashSet<>();
+        for (TestEdge edge : pair.primary().edges()) {
+            vertexes.add(edge.dst());
+        }
+        vertexes.remove(pair.dst());
+        for (TestEdge edge : pair.secondary().edges()) {
+            assertFalse("paths should be disjoint", vertexes.contains(edge.dst()));
+        }
+        assertEquals("incorrect primary source", pair.src(), pair.primary().src());
+        assertEquals("incorrect secondary source", pair.src(), pair.secondary().src());
+        assertEquals("incorrect secondary destination", pair.dst(), pair.secondary().dst());
+    }
+
+    private Graph<TestVertex, TestEdge> randomGraph(Random random, int vertexCount,
+                                                    int edgeCount) {
+        Set<TestVertex> vertexes = new HashSet<>();
+        TestVertex[] array = new TestVertex[vertexCount];
+        for (int i = 0; i < vertexCount; i++) {
+            array[i] = new TestVertex("V" + i);
+            vertexes.add(array[i]);
+        }
+        Set<TestEdge> edges = new HashSet<>();
+        for (int i = 0; i < edgeCount; i++) {
+            TestVertex src = array[random.nextInt(vertexCount)];
+            TestVertex dst = array[random.nextInt(vertexCount)];
+            if (!src.equals(dst)) {
+                edges.add(new TestEdge(src, dst, new ScalarWeight(1 + random.nextInt(3))));
+            }
+        }
+        return new AdjacencyListsGraph<>(vertexes, edges);
+    }
+}
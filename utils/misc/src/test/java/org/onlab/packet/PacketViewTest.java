@@ -0,0 +1,184 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onlab.packet;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Unit tests for the PacketView class.
+ */
+public class PacketViewTest {
+
+    private static final MacAddress SRC_MAC = MacAddress.valueOf("00:00:00:00:00:01");
+    private static final MacAddress DST_MAC = MacAddress.valueOf("ff:ff:ff:ff:ff:fe");
+    private static final Ip4Address SRC_IP = Ip4Address.valueOf("10.0.0.1");
+    private static final Ip4Address DST_IP = Ip4Address.valueOf("10.0.0.2");
+
+    private static byte[] arpFrame() {
+        return ARP.buildArpRequest(SRC_MAC.toBytes(), SRC_IP.toOctets(), DST_IP.toOctets(),
+                                   Ethernet.VLAN_UNTAGGED).serialize();
+    }
+
+    private static byte[] lldpFrame() {
+        Ethernet eth = new Ethernet();
+        eth.setEtherType(Ethernet.TYPE_LLDP)
+                .setDestinationMACAddress(ONOSLLDP.LLDP_ONLAB)
+                .setSourceMACAddress(SRC_MAC)
+                .setPayload(ONOSLLDP.onosLLDP("of:0000000000000001", new ChassisId(1), 1));
+        return eth.serialize();
+    }
+
+    private static byte[] tcpFrame(short vlan) {
+        TCP tcp = new TCP();
+        tcp.setSourcePort(12345).setDestinationPort(80);
+        tcp.setPayload(new Data(new byte[512]));
+        IPv4 ip = new IPv4();
+        ip.setSourceAddress(SRC_IP.toInt())
+                .setDestinationAddress(DST_IP.toInt())
+                .setProtocol(IPv4.PROTOCOL_TCP)
+                .setTtl((byte) 64);
+        ip.setPayload(tcp);
+        Ethernet eth = new Ethernet();
+        eth.setEtherType(Ethernet.TYPE_IPV4)
+                .setVlanID(vlan)
+                .setDestinationMACAddress(DST_MAC)
+                .setSourceMACAddress(SRC_MAC)
+                .setPayload(ip);
+        return eth.serialize();
+    }
+
+    @Test
+    public void testArp() {
+        PacketView view = PacketView.wrap(ByteBuffer.wrap(arpFrame()));
+
+        assertEquals(Ethernet.TYPE_ARP, view.etherType());
+        assertEquals(Ethernet.VLAN_UNTAGGED, view.vlanId());
+        assertEquals(SRC_MAC, view.sourceMac());
+        assertEquals(MacAddress.BROADCAST, view.destinationMac());
+        assertEquals(-1, view.ipProtocol());
+        assertEquals(-1, view.destinationPort());
+        assertNull(view.ip4Source());
+    }
+
+    @Test
+    public void testLldp() {
+        PacketView view = PacketView.wrap(ByteBuffer.wrap(lldpFrame()));
+
+        assertEquals(Ethernet.TYPE_LLDP, view.etherType());
+        assertEquals(MacAddress.valueOf(ONOSLLDP.LLDP_ONLAB), view.destinationMac());
+    }
+
+    @Test
+    public void testTcp() {
+        PacketView view = PacketView.wrap(ByteBuffer.wrap(tcpFrame((short) 10)));
+
+        assertEquals(Ethernet.TYPE_IPV4, view.etherType());
+        assertEquals(10, view.vlanId());
+        assertEquals(IPv4.PROTOCOL_TCP, view.ipProtocol());
+        assertEquals(SRC_IP, view.ip4Source());
+        assertEquals(DST_IP, view.ip4Destination());
+        assertEquals(12345, view.sourcePort());
+        assertEquals(80, view.destinationPort());
+    }
+
+    @Test
+    public void testPayloadShared() throws Exception {
+        byte[] frame = tcpFrame(Ethernet.VLAN_UNTAGGED);
+        PacketView view = PacketView.wrap(frame, 0, frame.length);
+        ByteBuffer payload = view.payload();
+
+        assertEquals(frame.length - Ethernet.ETHERNET_HEADER_LENGTH, payload.remaining());
+        frame[Ethernet.ETHERNET_HEADER_LENGTH] = 0x46;
+        assertEquals(0x46, payload.get(0));
+        assertEquals(Ethernet.deserializer().deserialize(frame, 0, frame.length), view.ethernet());
+    }
+
+    @Test
+    public void testWrapLeavesBufferUntouched() {
+        byte[] frame = arpFrame();
+        ByteBuffer buffer = ByteBuffer.wrap(frame);
+        buffer.position(2);
+        PacketView view = PacketView.wrap(buffer);
+
+        assertEquals(2, buffer.position());
+        assertEquals(frame.length - 2, view.length());
+    }
+
+    @Test
+    public void testTruncated() {
+        PacketView view = PacketView.wrap(new byte[10], 0, 10);
+
+        assertFalse(view.isEthernet());
+        assertEquals(0, view.etherType());
+        assertNull(view.sourceMac());
+        assertEquals(-1, view.sourcePort());
+
+        byte[] frame = tcpFrame(Ethernet.VLAN_UNTAGGED);
+        view = PacketView.wrap(frame, 0, Ethernet.ETHERNET_HEADER_LENGTH + 20);
+        assertEquals(IPv4.PROTOCOL_TCP, view.ipProtocol());
+        assertEquals(-1, view.sourcePort());
+    }
+
+    /**
+     * Measures the time taken to find the EtherType and the TCP destination
+     * port of ARP, LLDP and IPv4/TCP frames, by deserializing the frames and
+     * through views.
+     */
+    @Test
+    @Ignore("benchmark")
+    public void benchmark() throws Exception {
+        byte[][] frames = {arpFrame(), lldpFrame(), tcpFrame(Ethernet.VLAN_UNTAGGED)};
+        String[] names = {"ARP", "LLDP", "IPv4/TCP"};
+        int iterations = 2_000_000;
+
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < frames.length; i++) {
+                byte[] frame = frames[i];
+                long found = 0;
+                long start = System.nanoTime();
+                for (int j = 0; j < iterations; j++) {
+                    Ethernet eth = Ethernet.deserializer().deserialize(frame, 0, frame.length);
+                    found += eth.getEtherType();
+                    if (eth.getPayload() instanceof IPv4 && eth.getPayload().getPayload() instanceof TCP) {
+                        found += ((TCP) eth.getPayload().getPayload()).getDestinationPort();
+                    }
+                }
+                long deserialized = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int j = 0; j < iterations; j++) {
+                    PacketView view = PacketView.wrap(frame, 0, frame.length);
+                    found -= view.etherType();
+                    if (view.ipProtocol() == IPv4.PROTOCOL_TCP) {
+                        found -= view.destinationPort();
+                    }
+                }
+                long viewed = System.nanoTime() - start;
+
+                System.out.printf("%s: deserializer %d ns/frame, view %d ns/frame (%d)%n", names[i],
+                                  deserialized / iterations,
+                                  viewed / iterations, found);
+            }
+        }
+    }
+}
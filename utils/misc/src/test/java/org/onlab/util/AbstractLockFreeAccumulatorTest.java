@@ -0,0 +1,316 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onlab.util;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Timer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+import static org.onlab.junit.TestTools.assertAfter;
+
+/**
+ * Tests the operation of the lock-free accumulator.
+ */
+public class AbstractLockFreeAccumulatorTest {
+
+    private final ManuallyAdvancingTimer timer = new ManuallyAdvancingTimer(true);
+
+    private static final int LONG_REAL_TIME_DELAY = 30;
+    private static final int SHORT_REAL_TIME_DELAY = 5;
+
+    @Test
+    public void basics() throws Exception {
+        TestAccumulator accumulator = new TestAccumulator();
+        assertEquals("incorrect timer", timer, accumulator.timer());
+        assertEquals("incorrect max events", 5, accumulator.maxItems());
+        assertEquals("incorrect max ms", 100, accumulator.maxBatchMillis());
+        assertEquals("incorrect idle ms", 70, accumulator.maxIdleMillis());
+    }
+
+    @Test
+    public void eventTrigger() {
+        TestAccumulator accumulator = new TestAccumulator();
+        accumulator.add(new TestItem("a"));
+        accumulator.add(new TestItem("b"));
+        accumulator.add(new TestItem("c"));
+        accumulator.add(new TestItem("d"));
+        assertTrue("should not have fired yet", accumulator.batch.isEmpty());
+        accumulator.add(new TestItem("e"));
+        timer.advanceTimeMillis(20, LONG_REAL_TIME_DELAY);
+        assertFalse("should have fired", accumulator.batch.isEmpty());
+        assertEquals("incorrect batch", "abcde", accumulator.batch);
+
+        // The tasks scheduled for the processed batch do not affect the next
+        accumulator.add(new TestItem("f"));
+        timer.advanceTimeMillis(60, SHORT_REAL_TIME_DELAY);
+        assertEquals("should not have fired yet", "abcde", accumulator.batch);
+        timer.advanceTimeMillis(10, LONG_REAL_TIME_DELAY);
+        assertEquals("incorrect batch", "abcdef", accumulator.batch);
+    }
+
+    @Test
+    public void timeTrigger() {
+        TestAccumulator accumulator = new TestAccumulator();
+        accumulator.add(new TestItem("a"));
+        timer.advanceTimeMillis(30, SHORT_REAL_TIME_DELAY);
+        assertTrue("should not have fired yet", accumulator.batch.isEmpty());
+        accumulator.add(new TestItem("b"));
+        timer.advanceTimeMillis(30, SHORT_REAL_TIME_DELAY);
+        assertTrue("should not have fired yet", accumulator.batch.isEmpty());
+        accumulator.add(new TestItem("c"));
+        timer.advanceTimeMillis(30, SHORT_REAL_TIME_DELAY);
+        assertTrue("should not have fired yet", accumulator.batch.isEmpty());
+        accumulator.add(new TestItem("d"));
+        timer.advanceTimeMillis(10, LONG_REAL_TIME_DELAY);
+        assertFalse("should have fired", accumulator.batch.isEmpty());
+        assertEquals("incorrect batch", "abcd", accumulator.batch);
+    }
+
+    @Test
+    public void idleTrigger() {
+        TestAccumulator accumulator = new TestAccumulator();
+        accumulator.add(new TestItem("a"));
+        assertTrue("should not have fired yet", accumulator.batch.isEmpty());
+        timer.advanceTimeMillis(20, SHORT_REAL_TIME_DELAY);
+        accumulator.add(new TestItem("b"));
+        timer.advanceTimeMillis(60, SHORT_REAL_TIME_DELAY);
+        assertTrue("should not have fired yet", accumulator.batch.isEmpty());
+        timer.advanceTimeMillis(10, LONG_REAL_TIME_DELAY);
+        assertFalse("should have fired", accumulator.batch.isEmpty());
+        assertEquals("incorrect batch", "ab", accumulator.batch);
+    }
+
+    @Test
+    public void readyIdleTrigger() {
+        TestAccumulator accumulator = new TestAccumulator();
+        accumulator.ready = false;
+        accumulator.add(new TestItem("a"));
+        assertTrue("should not have fired yet", accumulator.batch.isEmpty());
+        accumulator.add(new TestItem("b"));
+        timer.advanceTimeMillis(80, SHORT_REAL_TIME_DELAY);
+        assertTrue("should not have fired yet", accumulator.batch.isEmpty());
+        accumulator.ready = true;
+        timer.advanceTimeMillis(80, LONG_REAL_TIME_DELAY);
+        assertFalse("should have fired", accumulator.batch.isEmpty());
+        assertEquals("incorrect batch", "ab", accumulator.batch);
+    }
+
+    @Test
+    public void readyLongTrigger() {
+        TestAccumulator accumulator = new TestAccumulator();
+        accumulator.ready = false;
+        timer.advanceTimeMillis(120, SHORT_REAL_TIME_DELAY);
+        assertTrue("should not have fired yet", accumulator.batch.isEmpty());
+        accumulator.add(new TestItem("a"));
+        assertTrue("should not have fired yet", accumulator.batch.isEmpty());
+        accumulator.ready = true;
+        timer.advanceTimeMillis(120, LONG_REAL_TIME_DELAY);
+        assertFalse("should have fired", accumulator.batch.isEmpty());
+        assertEquals("incorrect batch", "a", accumulator.batch);
+    }
+
+    @Test
+    public void readyMaxTrigger() {
+        TestAccumulator accumulator = new TestAccumulator();
+        accumulator.ready = false;
+        accumulator.add(new TestItem("a"));
+        accumulator.add(new TestItem("b"));
+        accumulator.add(new TestItem("c"));
+        accumulator.add(new TestItem("d"));
+        accumulator.add(new TestItem("e"));
+        accumulator.add(new TestItem("f"));
+        assertTrue("should not have fired yet", accumulator.batch.isEmpty());
+        accumulator.ready = true;
+        accumulator.add(new TestItem("g"));
+        timer.advanceTimeMillis(10, LONG_REAL_TIME_DELAY);
+        assertFalse("should have fired", accumulator.batch.isEmpty());
+        assertEquals("incorrect batch", "abcdefg", accumulator.batch);
+    }
+
+    @Test
+    public void metrics() {
+        TestAccumulator accumulator = new TestAccumulator();
+        accumulator.add(new TestItem("a"));
+        accumulator.add(new TestItem("b"));
+        timer.advanceTimeMillis(70, LONG_REAL_TIME_DELAY);
+        IntStream.range(0, 5).forEach(i -> accumulator.add(new TestItem("#" + i)));
+        timer.advanceTimeMillis(1, LONG_REAL_TIME_DELAY);
+        assertEquals("incorrect item count", 7, accumulator.throughput().getCount());
+        assertEquals("incorrect batch count", 2, accumulator.latency().getCount());
+    }
+
+    @Test
+    public void concurrentProducers() throws Exception {
+        int producers = 8;
+        int itemsPerProducer = 10000;
+        Timer realTimer = new Timer("lock-free-accumulator-test");
+        CountingAccumulator<Integer> accumulator = new CountingAccumulator<>(realTimer);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        try {
+            IntStream.range(0, producers).forEach(p -> executor.execute(() -> {
+                for (int i = 0; i < itemsPerProducer; i++) {
+                    accumulator.add(i);
+                }
+            }));
+            // Every item is processed exactly once
+            assertAfter(5000, () -> assertEquals("wrong item count",
+                                                 producers * itemsPerProducer, accumulator.items.sum()));
+            Thread.sleep(50);
+            assertEquals("wrong item count", producers * itemsPerProducer, accumulator.items.sum());
+        } finally {
+            executor.shutdownNow();
+            realTimer.cancel();
+        }
+    }
+
+    @Test
+    public void flush() {
+        Timer realTimer = new Timer("lock-free-accumulator-test");
+        CountingAccumulator<Integer> accumulator = new CountingAccumulator<>(realTimer);
+        try {
+            IntStream.range(0, 100).forEach(accumulator::add);
+            accumulator.flush();
+            assertEquals("items should have been processed", 100, accumulator.items.sum());
+            accumulator.flush();
+            assertEquals("wrong item count", 100, accumulator.items.sum());
+        } finally {
+            realTimer.cancel();
+        }
+        // Flushing once the timer is cancelled does not block
+        accumulator.add(1);
+        accumulator.flush();
+    }
+
+    /**
+     * Compares the throughput of the lock-free accumulator to the one of the
+     * synchronized accumulator, at 1 to 32 producer threads.
+     */
+    @Test
+    @Ignore("benchmark")
+    public void benchmark() throws Exception {
+        int itemsPerRun = 10_000_000;
+        System.out.printf("%9s %16s %16s%n", "producers", "locking ops/s", "lock-free ops/s");
+        for (int producers = 1; producers <= 32; producers *= 2) {
+            double locking = run(LockingAccumulator::new, producers, itemsPerRun);
+            double lockFree = run(CountingAccumulator::new, producers, itemsPerRun);
+            System.out.printf("%9d %16.0f %16.0f%n", producers, locking, lockFree);
+        }
+    }
+
+    private double run(Function<Timer, Accumulator<Integer>> factory,
+                       int producers, int items) throws Exception {
+        Timer realTimer = new Timer("accumulator-benchmark");
+        Accumulator<Integer> accumulator = factory.apply(realTimer);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(producers);
+        int itemsPerProducer = items / producers;
+        for (int p = 0; p < producers; p++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < itemsPerProducer; i++) {
+                        accumulator.add(i);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            });
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await(1, TimeUnit.MINUTES);
+        long elapsed = System.nanoTime() - begin;
+        executor.shutdownNow();
+        realTimer.cancel();
+        return itemsPerProducer * producers * 1e9 / elapsed;
+    }
+
+    private class TestItem {
+        private final String s;
+
+        public TestItem(String s) {
+            this.s = s;
+        }
+    }
+
+    private class TestAccumulator extends AbstractLockFreeAccumulator<TestItem> {
+
+        String batch = "";
+        boolean ready = true;
+
+        protected TestAccumulator() {
+            super(timer, 5, 100, 70);
+        }
+
+        @Override
+        public void processItems(List<TestItem> items) {
+            for (TestItem item : items) {
+                batch += item.s;
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+
+        @Override
+        protected long currentTimeMillis() {
+            return timer.currentTimeInMillis();
+        }
+    }
+
+    private static class CountingAccumulator<T> extends AbstractLockFreeAccumulator<T> {
+
+        final LongAdder items = new LongAdder();
+
+        CountingAccumulator(Timer timer) {
+            super(timer, 1000, 10, 2);
+        }
+
+        @Override
+        public void processItems(List<T> batch) {
+            items.add(batch.size());
+        }
+    }
+
+    private static class LockingAccumulator<T> extends AbstractAccumulator<T> {
+
+        final AtomicLong items = new AtomicLong();
+
+        LockingAccumulator(Timer timer) {
+            super(timer, 1000, 10, 2);
+        }
+
+        @Override
+        public void processItems(List<T> batch) {
+            items.addAndGet(batch.size());
+        }
+    }
+}